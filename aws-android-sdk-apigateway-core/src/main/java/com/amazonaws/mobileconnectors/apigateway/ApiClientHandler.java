@@ -22,11 +22,11 @@ import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.Signer;
 import com.amazonaws.http.ExecutionContext;
 import com.amazonaws.http.HttpClient;
+import com.amazonaws.http.HttpClients;
 import com.amazonaws.http.HttpMethodName;
 import com.amazonaws.http.HttpRequest;
 import com.amazonaws.http.HttpRequestFactory;
 import com.amazonaws.http.HttpResponse;
-import com.amazonaws.http.UrlHttpClient;
 import com.amazonaws.mobileconnectors.apigateway.annotation.Operation;
 import com.amazonaws.mobileconnectors.apigateway.annotation.Parameter;
 import com.amazonaws.util.IOUtils;
@@ -75,7 +75,7 @@ class ApiClientHandler implements InvocationHandler {
         this.apiKey = apiKey;
 
         clientConfiguration = new ClientConfiguration();
-        client = new UrlHttpClient(clientConfiguration);
+        client = HttpClients.create(clientConfiguration);
         requestFactory = new HttpRequestFactory();
     }
 
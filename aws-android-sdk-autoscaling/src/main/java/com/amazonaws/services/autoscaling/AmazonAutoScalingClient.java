@@ -169,7 +169,7 @@ public class AmazonAutoScalingClient extends AmazonWebServiceClient implements A
      */
     public AmazonAutoScalingClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.util.StringUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs a DynamoDB PutItem request with Signature Version 4.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AWS4SignerBenchmark {
+
+    private static final URI ENDPOINT = URI.create("https://dynamodb.us-east-1.amazonaws.com");
+    private static final byte[] LARGE_PAYLOAD = new String(new char[64 * 1024])
+            .replace('\0', 'x').getBytes(StringUtils.UTF8);
+
+    private AWS4Signer signer;
+    private AWSCredentials credentials;
+    private byte[] content;
+
+    @Setup
+    public void setup() {
+        signer = new AWS4Signer();
+        signer.setServiceName("dynamodb");
+        signer.setRegionName("us-east-1");
+        credentials = new BasicAWSCredentials("AKIDEXAMPLE",
+                "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY");
+        content = StubHttpClient.recordedResponse("ddb-get-item.json");
+    }
+
+    @Benchmark
+    public Request<?> sign() {
+        Request<?> request = new DefaultRequest<Void>("AmazonDynamoDB");
+        request.setHttpMethod(HttpMethodName.POST);
+        request.setEndpoint(ENDPOINT);
+        request.setResourcePath("/");
+        request.addHeader("X-Amz-Target", "DynamoDB_20120810.PutItem");
+        request.addHeader("Content-Type", "application/x-amz-json-1.0");
+        request.addHeader("Content-Length", String.valueOf(content.length));
+        request.addHeader("User-Agent", "aws-sdk-android/2.2.15 Linux/3.4 Dalvik/2.1.0");
+        request.setContent(new ByteArrayInputStream(content));
+        signer.sign(request, credentials);
+        return request;
+    }
+
+    /**
+     * Signs a request with a 64 KB payload, which is dominated by hashing the
+     * content.
+     */
+    @Benchmark
+    public Request<?> signLargePayload() {
+        Request<?> request = new DefaultRequest<Void>("AmazonDynamoDB");
+        request.setHttpMethod(HttpMethodName.POST);
+        request.setEndpoint(ENDPOINT);
+        request.setResourcePath("/");
+        request.addHeader("X-Amz-Target", "DynamoDB_20120810.BatchWriteItem");
+        request.setContent(new ByteArrayInputStream(LARGE_PAYLOAD));
+        signer.sign(request, credentials);
+        return request;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.internal.StaticCredentialsProvider;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.util.json.JsonUtils;
+import com.amazonaws.util.json.JsonUtils.JsonEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs DynamoDB calls through the full client pipeline, from marshalling and
+ * signing the request to unmarshalling a recorded JSON response with each
+ * {@link JsonEngine}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamoDBBenchmark {
+
+    @Param({
+            "Gson", "Jackson", "Utf8"
+    })
+    public JsonEngine jsonEngine;
+
+    private StubHttpClient getItemHttpClient;
+    private StubHttpClient queryHttpClient;
+    private AmazonDynamoDBClient getItemClient;
+    private AmazonDynamoDBClient queryClient;
+    private GetItemRequest getItemRequest;
+    private QueryRequest queryRequest;
+
+    @Setup
+    public void setup() {
+        JsonUtils.setJsonEngine(jsonEngine);
+        getItemHttpClient = new StubHttpClient(
+                StubHttpClient.recordedResponse("ddb-get-item.json"),
+                "application/x-amz-json-1.0");
+        queryHttpClient = new StubHttpClient(
+                StubHttpClient.recordedResponse("ddb-query.json"),
+                "application/x-amz-json-1.0");
+        getItemClient = newClient(getItemHttpClient);
+        queryClient = newClient(queryHttpClient);
+
+        getItemRequest = new GetItemRequest()
+                .withTableName("BenchmarkItems")
+                .addKeyEntry("id", new AttributeValue("user-0001"))
+                .addKeyEntry("timestamp", new AttributeValue().withN("1458000001000"));
+        queryRequest = new QueryRequest()
+                .withTableName("BenchmarkItems")
+                .withKeyConditions(Collections.singletonMap("id", new Condition()
+                        .withComparisonOperator(ComparisonOperator.EQ)
+                        .withAttributeValueList(new AttributeValue("user-0001"))));
+    }
+
+    @TearDown
+    public void tearDown() {
+        getItemClient.shutdown();
+        queryClient.shutdown();
+        JsonUtils.setJsonEngine(JsonEngine.Gson);
+    }
+
+    @Benchmark
+    public GetItemResult getItem() {
+        return getItemClient.getItem(getItemRequest);
+    }
+
+    @Benchmark
+    public QueryResult query() {
+        return queryClient.query(queryRequest);
+    }
+
+    static AmazonDynamoDBClient newClient(StubHttpClient httpClient) {
+        return new AmazonDynamoDBClient(new StaticCredentialsProvider(
+                new BasicAWSCredentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY")),
+                new ClientConfiguration(), httpClient);
+    }
+}
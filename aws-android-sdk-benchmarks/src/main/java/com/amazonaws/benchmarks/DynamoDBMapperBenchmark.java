@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBQueryExpression;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.util.StringUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marshals and unmarshals {@link BenchmarkItem}s with the
+ * {@link DynamoDBMapper}, on top of a DynamoDB client backed by recorded
+ * responses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamoDBMapperBenchmark {
+
+    /**
+     * A mapper whose client replies to every call with the given recorded
+     * response.
+     */
+    public abstract static class MapperState {
+        AmazonDynamoDBClient client;
+        DynamoDBMapper mapper;
+
+        void setup(byte[] response) {
+            client = DynamoDBBenchmark.newClient(new StubHttpClient(response,
+                    "application/x-amz-json-1.0"));
+            mapper = new DynamoDBMapper(client);
+        }
+
+        @TearDown
+        public void tearDown() {
+            client.shutdown();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SaveState extends MapperState {
+        BenchmarkItem item;
+
+        @Setup
+        public void setup() {
+            // UpdateItem replies with an empty object
+            setup("{}".getBytes(StringUtils.UTF8));
+
+            item = new BenchmarkItem();
+            item.setId("user-0001");
+            item.setTimestamp(1458000001000L);
+            item.setName("Item number 1 with a moderately long description");
+            item.setCount(7);
+            item.setScore(1.01);
+            item.setActive(true);
+            item.setTags(new HashSet<String>(Arrays.asList("alpha", "beta", "tag-1")));
+            item.setPayload(new byte[48]);
+            item.setCreatedAt(new Date(1456913730000L));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LoadState extends MapperState {
+        @Setup
+        public void setup() {
+            setup(StubHttpClient.recordedResponse("ddb-get-item.json"));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class QueryState extends MapperState {
+        DynamoDBQueryExpression<BenchmarkItem> queryExpression;
+
+        @Setup
+        public void setup() {
+            setup(StubHttpClient.recordedResponse("ddb-query.json"));
+            BenchmarkItem hashKey = new BenchmarkItem();
+            hashKey.setId("user-0001");
+            queryExpression = new DynamoDBQueryExpression<BenchmarkItem>()
+                    .withHashKeyValues(hashKey);
+        }
+    }
+
+    @Benchmark
+    public BenchmarkItem save(SaveState state) {
+        state.mapper.save(state.item);
+        return state.item;
+    }
+
+    @Benchmark
+    public BenchmarkItem load(LoadState state) {
+        return state.mapper.load(BenchmarkItem.class, "user-0001", 1458000001000L);
+    }
+
+    @Benchmark
+    public QueryResultPage<BenchmarkItem> queryPage(QueryState state) {
+        return state.mapper.queryPage(BenchmarkItem.class, state.queryExpression);
+    }
+}
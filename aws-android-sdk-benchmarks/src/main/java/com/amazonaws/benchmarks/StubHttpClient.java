@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.http.HttpClient;
+import com.amazonaws.http.HttpRequest;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.util.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link HttpClient} which never touches the network. It drains the
+ * request content, the way a real client writes it out, and replies to every
+ * request with the same recorded response.
+ */
+public class StubHttpClient implements HttpClient {
+
+    private final byte[] scratch = new byte[8 * 1024];
+    private final Map<String, String> headers = new HashMap<String, String>();
+    private byte[] content;
+
+    /**
+     * @param content the body of every response
+     * @param contentType the content type of every response
+     */
+    public StubHttpClient(byte[] content, String contentType) {
+        this.content = content;
+        headers.put("Content-Type", contentType);
+        headers.put("Content-Length", String.valueOf(content.length));
+        headers.put("x-amzn-RequestId", "b6633655-283d-45b4-aee4-4e84e0ae6afa");
+        headers.put("x-amz-request-id", "b6633655-283d-45b4-aee4-4e84e0ae6afa");
+    }
+
+    /**
+     * Replaces the body of the following responses.
+     */
+    public void setContent(byte[] content) {
+        this.content = content;
+        headers.put("Content-Length", String.valueOf(content.length));
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        InputStream in = request.getContent();
+        if (in != null) {
+            while (in.read(scratch) != -1) {
+                // discard
+            }
+        }
+        HttpResponse.Builder builder = HttpResponse.builder()
+                .statusCode(200)
+                .statusText("OK")
+                .content(new ByteArrayInputStream(content));
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * Returns the recorded response with the given name, bundled with the
+     * benchmarks.
+     */
+    public static byte[] recordedResponse(String name) {
+        InputStream in = StubHttpClient.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IllegalArgumentException("No recorded response named " + name);
+        }
+        try {
+            return IOUtils.toByteArray(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read recorded response " + name, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignored
+            }
+        }
+    }
+}
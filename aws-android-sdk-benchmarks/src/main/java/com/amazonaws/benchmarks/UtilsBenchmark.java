@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.benchmarks;
+
+import com.amazonaws.util.Base64;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.DateUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The encoding and date utilities called for every request and response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+
+    private byte[] bytes;
+    private String base64;
+    private byte[] digest;
+    private String hex;
+    private Date date;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        bytes = new byte[1024];
+        random.nextBytes(bytes);
+        base64 = Base64.encodeAsString(bytes);
+        // the size of a SHA-256 digest, as hex encoded by the signer
+        digest = new byte[32];
+        random.nextBytes(digest);
+        hex = BinaryUtils.toHex(digest);
+        date = new Date(1458000001000L);
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return Base64.encodeAsString(bytes);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64.decode(base64);
+    }
+
+    @Benchmark
+    public String toHex() {
+        return BinaryUtils.toHex(digest);
+    }
+
+    @Benchmark
+    public byte[] fromHex() {
+        return BinaryUtils.fromHex(hex);
+    }
+
+    @Benchmark
+    public Date parseISO8601Date() {
+        return DateUtils.parseISO8601Date("2016-03-15T00:00:01.000Z");
+    }
+
+    @Benchmark
+    public Date parseRFC822Date() {
+        return DateUtils.parseRFC822Date("Tue, 15 Mar 2016 00:00:01 GMT");
+    }
+
+    @Benchmark
+    public Date parseCompressedISO8601Date() {
+        return DateUtils.parseCompressedISO8601Date("20160315T000001Z");
+    }
+
+    @Benchmark
+    public String formatISO8601Date() {
+        return DateUtils.formatISO8601Date(date);
+    }
+
+    @Benchmark
+    public String formatRFC822Date() {
+        return DateUtils.formatRFC822Date(date);
+    }
+}
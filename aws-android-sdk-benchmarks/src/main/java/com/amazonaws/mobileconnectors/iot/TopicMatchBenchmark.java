@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the subscriptions matching the topic of an incoming MQTT message,
+ * with {@link TopicTrie} and with the previous approach of testing every
+ * topic filter after splitting it and the topic. The subscriptions mix exact
+ * device shadow topics with + and # filters, as an app following a fleet of
+ * devices would. It's in the IoT package because the trie is package private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicMatchBenchmark {
+
+    private static final String[] SHADOW_TOPICS = {
+            "update/accepted", "update/rejected", "update/delta", "get/accepted",
+            "get/rejected"
+    };
+
+    @Param({
+            "50", "500"
+    })
+    int subscriptions;
+
+    private Map<String, AWSIotMqttTopic> topicListeners;
+    private TopicTrie trie;
+    private String[] topics;
+    private final List<AWSIotMqttTopic> matches = new ArrayList<AWSIotMqttTopic>();
+    private int next;
+
+    @Setup
+    public void setup() {
+        topicListeners = new HashMap<String, AWSIotMqttTopic>();
+        trie = new TopicTrie();
+        int devices = subscriptions / 10;
+        for (int i = 0; i < devices; i++) {
+            String thing = "$aws/things/device-" + i + "/shadow/";
+            for (String shadowTopic : SHADOW_TOPICS) {
+                subscribe(thing + shadowTopic);
+            }
+            subscribe("fleet/device-" + i + "/telemetry/+");
+            subscribe("fleet/device-" + i + "/events/#");
+            subscribe("fleet/+/alerts/device-" + i);
+            subscribe("fleet/device-" + i + "/config");
+            subscribe("site-" + (i % 7) + "/+/device-" + i + "/status");
+        }
+
+        Random random = new Random(42);
+        topics = new String[1024];
+        for (int i = 0; i < topics.length; i++) {
+            int device = random.nextInt(devices * 2);
+            switch (i % 4) {
+                case 0:
+                    topics[i] = "$aws/things/device-" + device + "/shadow/"
+                            + SHADOW_TOPICS[random.nextInt(SHADOW_TOPICS.length)];
+                    break;
+                case 1:
+                    topics[i] = "fleet/device-" + device + "/telemetry/temperature";
+                    break;
+                case 2:
+                    topics[i] = "fleet/device-" + device + "/events/door/open";
+                    break;
+                default:
+                    topics[i] = "site-" + (device % 7) + "/floor-2/device-" + device
+                            + "/status";
+                    break;
+            }
+        }
+    }
+
+    private void subscribe(String topicFilter) {
+        AWSIotMqttTopic topic = new AWSIotMqttTopic(topicFilter, AWSIotMqttQos.QOS0, null);
+        topicListeners.put(topicFilter, topic);
+        trie.put(topic);
+    }
+
+    private String nextTopic() {
+        next = (next + 1) & (topics.length - 1);
+        return topics[next];
+    }
+
+    @Benchmark
+    public int trie() {
+        matches.clear();
+        trie.match(nextTopic(), matches);
+        return matches.size();
+    }
+
+    @Benchmark
+    public int splitAndTestEveryFilter() {
+        String topic = nextTopic();
+        int count = 0;
+        for (String topicKey : topicListeners.keySet()) {
+            if (isTopicMatch(topicKey, topic)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The matching done for every subscription before the trie.
+     */
+    static boolean isTopicMatch(String topicFilter, String topic) {
+        String[] topicFilterTokens = topicFilter.split("/");
+        String[] topicTokens = topic.split("/");
+
+        if (topicFilterTokens.length > topicTokens.length) {
+            return false;
+        }
+
+        for (int i = 0; i < topicFilterTokens.length; i++) {
+            String topicFilterToken = topicFilterTokens[i];
+            String topicToken = topicTokens[i];
+            if (topicFilterToken.equals("#")) {
+                return true;
+            }
+            if (!topicFilterToken.equals("+") && !topicFilterToken.equals(topicToken)) {
+                return false;
+            }
+        }
+        return (topicFilterTokens.length == topicTokens.length);
+    }
+}
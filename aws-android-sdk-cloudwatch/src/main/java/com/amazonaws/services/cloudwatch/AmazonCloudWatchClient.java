@@ -205,7 +205,7 @@ public class AmazonCloudWatchClient extends AmazonWebServiceClient implements Am
      */
     public AmazonCloudWatchClient(AWSCredentialsProvider awsCredentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -184,7 +184,7 @@ public class AmazonCognitoSyncClient extends AmazonWebServiceClient implements A
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AmazonCognitoSyncClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -168,7 +168,7 @@ public class AmazonCognitoIdentityProviderClient extends AmazonWebServiceClient
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AmazonCognitoIdentityProviderClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
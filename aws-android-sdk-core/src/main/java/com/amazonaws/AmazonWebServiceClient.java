@@ -17,18 +17,24 @@ package com.amazonaws;
 
 import static com.amazonaws.SDKGlobalConfiguration.PROFILING_SYSTEM_PROPERTY;
 
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.RegionAwareSigner;
 import com.amazonaws.auth.Signer;
 import com.amazonaws.auth.SignerFactory;
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.handlers.RequestHandler;
 import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.http.AmazonHttpClient;
 import com.amazonaws.http.ExecutionContext;
 import com.amazonaws.http.HttpClient;
-import com.amazonaws.http.UrlHttpClient;
+import com.amazonaws.http.HttpClients;
+import com.amazonaws.http.HttpResponseHandler;
+import com.amazonaws.internal.SettableFuture;
 import com.amazonaws.metrics.AwsSdkMetrics;
 import com.amazonaws.metrics.RequestMetricCollector;
 import com.amazonaws.regions.Region;
+import com.amazonaws.transform.Marshaller;
 import com.amazonaws.util.AWSRequestMetrics;
 import com.amazonaws.util.AWSRequestMetrics.Field;
 import com.amazonaws.util.AwsHostNameUtils;
@@ -41,7 +47,12 @@ import org.apache.commons.logging.LogFactory;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Abstract base class for Amazon Web Service Java clients.
@@ -100,7 +111,7 @@ public abstract class AmazonWebServiceClient {
      * @param clientConfiguration The client configuration for this client.
      */
     protected AmazonWebServiceClient(ClientConfiguration clientConfiguration) {
-        this(clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -114,7 +125,7 @@ public abstract class AmazonWebServiceClient {
     @Deprecated
     protected AmazonWebServiceClient(ClientConfiguration clientConfiguration,
             RequestMetricCollector requestMetricCollector) {
-        this(clientConfiguration, new UrlHttpClient(clientConfiguration), null);
+        this(clientConfiguration, HttpClients.create(clientConfiguration), null);
     }
 
     /**
@@ -661,6 +672,171 @@ public abstract class AmazonWebServiceClient {
             awsRequestMetrics.log();
     }
 
+    /**
+     * Executes the given request on the asynchronous pipeline of the http
+     * client, for use by the asynchronous service clients. The request is
+     * marshalled and the credentials are resolved on the executor service,
+     * and the asynchronous handler, if any, is notified on completion.
+     *
+     * @param originalRequest the service request
+     * @param marshaller the marshaller for the service request
+     * @param responseHandler a response handler to accept a successful
+     *            response from the remote server
+     * @param errorResponseHandler a response handler to accept an
+     *            unsuccessful response from the remote server
+     * @param credentialsProvider the provider of the credentials to sign the
+     *            request with, unless the request has its own
+     * @param executorService the executor service on which the request is run
+     * @param asyncHandler the asynchronous handler, or null if there is none
+     * @return a future for the result of the request
+     * @see AmazonHttpClient#executeAsync(Request, HttpResponseHandler,
+     *      HttpResponseHandler, ExecutionContext, ExecutorService)
+     */
+    protected final <X, Y extends AmazonWebServiceRequest> Future<X> invokeAsync(
+            Y originalRequest,
+            Marshaller<Request<Y>, Y> marshaller,
+            HttpResponseHandler<AmazonWebServiceResponse<X>> responseHandler,
+            HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+            AWSCredentialsProvider credentialsProvider,
+            ExecutorService executorService,
+            AsyncHandler<Y, X> asyncHandler) {
+        AsyncInvocation<X, Y> invocation = new AsyncInvocation<X, Y>(originalRequest,
+                marshaller, responseHandler, errorResponseHandler, credentialsProvider,
+                executorService, asyncHandler);
+        try {
+            invocation.future.cancelWith(executorService.submit(invocation));
+        } catch (RejectedExecutionException e) {
+            invocation.fail(null, new AmazonClientException(
+                    "Unable to execute request: " + e.getMessage(), e));
+        }
+        return invocation.future;
+    }
+
+    /**
+     * Marshalls a request and hands it to the http client's asynchronous
+     * pipeline, then ends the client execution and notifies the asynchronous
+     * handler once the response future is done.
+     */
+    private final class AsyncInvocation<X, Y extends AmazonWebServiceRequest> implements
+            Runnable {
+        private final Y originalRequest;
+        private final Marshaller<Request<Y>, Y> marshaller;
+        private final HttpResponseHandler<AmazonWebServiceResponse<X>> responseHandler;
+        private final HttpResponseHandler<AmazonServiceException> errorResponseHandler;
+        private final AWSCredentialsProvider credentialsProvider;
+        private final ExecutorService executorService;
+        private final AsyncHandler<Y, X> asyncHandler;
+        private final ExecutionContext executionContext;
+        private final AWSRequestMetrics awsRequestMetrics;
+        private final SettableFuture<X> future = new SettableFuture<X>();
+
+        AsyncInvocation(Y originalRequest,
+                Marshaller<Request<Y>, Y> marshaller,
+                HttpResponseHandler<AmazonWebServiceResponse<X>> responseHandler,
+                HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+                AWSCredentialsProvider credentialsProvider,
+                ExecutorService executorService,
+                AsyncHandler<Y, X> asyncHandler) {
+            this.originalRequest = originalRequest;
+            this.marshaller = marshaller;
+            this.responseHandler = responseHandler;
+            this.errorResponseHandler = errorResponseHandler;
+            this.credentialsProvider = credentialsProvider;
+            this.executorService = executorService;
+            this.asyncHandler = asyncHandler;
+            this.executionContext = createExecutionContext(originalRequest);
+            this.awsRequestMetrics = executionContext.getAwsRequestMetrics();
+            awsRequestMetrics.startEvent(Field.ClientExecuteTime);
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return; // cancelled
+            }
+            Request<Y> request = null;
+            try {
+                awsRequestMetrics.startEvent(Field.RequestMarshallTime);
+                try {
+                    request = marshaller.marshall(originalRequest);
+                    // Binds the request metrics to the current request.
+                    request.setAWSRequestMetrics(awsRequestMetrics);
+                } finally {
+                    awsRequestMetrics.endEvent(Field.RequestMarshallTime);
+                }
+                request.setEndpoint(endpoint);
+                request.setTimeOffset(timeOffset);
+
+                AWSCredentials credentials;
+                awsRequestMetrics.startEvent(Field.CredentialsRequestTime);
+                try {
+                    credentials = credentialsProvider.getCredentials();
+                } finally {
+                    awsRequestMetrics.endEvent(Field.CredentialsRequestTime);
+                }
+                if (originalRequest.getRequestCredentials() != null) {
+                    credentials = originalRequest.getRequestCredentials();
+                }
+                executionContext.setCredentials(credentials);
+
+                final Request<Y> marshalledRequest = request;
+                final SettableFuture<Response<X>> responseFuture = client.executeAsync(
+                        request, responseHandler, errorResponseHandler, executionContext,
+                        executorService);
+                future.cancelWith(responseFuture);
+                responseFuture.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        complete(marshalledRequest, responseFuture);
+                    }
+                });
+            } catch (Throwable t) {
+                fail(request, t);
+            }
+        }
+
+        private void complete(Request<Y> request, Future<Response<X>> responseFuture) {
+            Response<X> response;
+            try {
+                response = responseFuture.get();
+            } catch (ExecutionException e) {
+                fail(request, e.getCause());
+                return;
+            } catch (CancellationException e) {
+                endClientExecution(awsRequestMetrics, request, null);
+                return;
+            } catch (InterruptedException e) {
+                // the future is already done, so get() doesn't block
+                Thread.currentThread().interrupt();
+                fail(request, e);
+                return;
+            }
+            endClientExecution(awsRequestMetrics, request, response);
+            X result = response.getAwsResponse();
+            if (asyncHandler != null) {
+                try {
+                    asyncHandler.onSuccess(originalRequest, result);
+                } catch (Throwable t) {
+                    future.setException(t);
+                    return;
+                }
+            }
+            future.set(result);
+        }
+
+        void fail(Request<Y> request, Throwable t) {
+            endClientExecution(awsRequestMetrics, request, null);
+            if (asyncHandler != null && t instanceof Exception) {
+                try {
+                    asyncHandler.onError((Exception) t);
+                } catch (Throwable handlerFailure) {
+                    log.warn("Exception thrown by async handler", handlerFailure);
+                }
+            }
+            future.setException(t);
+        }
+    }
+
     /**
      * @deprecated by {@link #getServiceName()}.
      */
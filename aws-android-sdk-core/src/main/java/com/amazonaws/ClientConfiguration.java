@@ -16,8 +16,11 @@
 package com.amazonaws;
 
 import com.amazonaws.http.IdleConnectionReaper;
+import com.amazonaws.http.PooledHttpClient;
+import com.amazonaws.http.UrlHttpClient;
 import com.amazonaws.retry.PredefinedRetryPolicies;
 import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.util.ResponseMetadataCache;
 import com.amazonaws.util.VersionInfoUtils;
 
 import java.net.InetAddress;
@@ -63,6 +66,22 @@ public class ClientConfiguration {
      */
     public static final boolean DEFAULT_USE_REAPER = true;
 
+    /**
+     * The default on whether to use the connection pooling
+     * {@link PooledHttpClient} instead of {@link UrlHttpClient}.
+     */
+    public static final boolean DEFAULT_USE_CONNECTION_POOL = false;
+
+    /** The default maximum idle time (in milliseconds) of pooled connections. */
+    public static final long DEFAULT_CONNECTION_MAX_IDLE_MILLIS = 60 * 1000;
+
+    /**
+     * The default size of the response metadata cache, which is disabled.
+     *
+     * @see ResponseMetadataCache
+     */
+    public static final int DEFAULT_RESPONSE_METADATA_CACHE_SIZE = 0;
+
     /** The HTTP user agent header passed with all HTTP requests. */
     private String userAgent = DEFAULT_USER_AGENT;
 
@@ -158,6 +177,24 @@ public class ClientConfiguration {
      */
     private boolean useReaper = DEFAULT_USE_REAPER;
 
+    /**
+     * Optional whether to send requests through the {@link PooledHttpClient},
+     * which keeps connections open between requests to the same host.
+     */
+    private boolean useConnectionPool = DEFAULT_USE_CONNECTION_POOL;
+
+    /**
+     * The maximum amount of time (in milliseconds) that a pooled connection
+     * may sit idle before it's closed.
+     */
+    private long connectionMaxIdleMillis = DEFAULT_CONNECTION_MAX_IDLE_MILLIS;
+
+    /**
+     * The maximum number of requests whose response metadata is kept for
+     * diagnostics, or zero to keep none.
+     */
+    private int responseMetadataCacheSize = DEFAULT_RESPONSE_METADATA_CACHE_SIZE;
+
     /**
      * Optional override to control which signature algorithm should be used to
      * sign requests to the service. If not explicitly set, the client will
@@ -186,6 +223,9 @@ public class ClientConfiguration {
         this.socketTimeout = other.socketTimeout;
         this.userAgent = other.userAgent;
         this.useReaper = other.useReaper;
+        this.useConnectionPool = other.useConnectionPool;
+        this.connectionMaxIdleMillis = other.connectionMaxIdleMillis;
+        this.responseMetadataCacheSize = other.responseMetadataCacheSize;
         this.socketReceiveBufferSizeHint = other.socketReceiveBufferSizeHint;
         this.socketSendBufferSizeHint = other.socketSendBufferSizeHint;
         this.signerOverride = other.signerOverride;
@@ -741,6 +781,118 @@ public class ClientConfiguration {
         return this;
     }
 
+    /**
+     * Checks if the {@link PooledHttpClient} is to be used by service
+     * clients.
+     *
+     * @return if the {@link PooledHttpClient} is to be used
+     */
+    public boolean useConnectionPool() {
+        return useConnectionPool;
+    }
+
+    /**
+     * Sets whether service clients send requests through the
+     * {@link PooledHttpClient}, which keeps connections open between requests
+     * to the same host, instead of the {@link UrlHttpClient}. The pooled
+     * client doesn't support proxies.
+     *
+     * @param use whether the {@link PooledHttpClient} is to be used
+     * @see PooledHttpClient
+     */
+    public void setUseConnectionPool(boolean use) {
+        this.useConnectionPool = use;
+    }
+
+    /**
+     * Sets whether service clients send requests through the
+     * {@link PooledHttpClient}, and returns the updated ClientConfiguration
+     * object so that additional method calls may be chained together.
+     *
+     * @param use whether the {@link PooledHttpClient} is to be used
+     * @return The updated ClientConfiguration object.
+     */
+    public ClientConfiguration withConnectionPool(boolean use) {
+        setUseConnectionPool(use);
+        return this;
+    }
+
+    /**
+     * Returns the maximum amount of time (in milliseconds) that a pooled
+     * connection may sit idle before it's closed.
+     *
+     * @return the maximum idle time of pooled connections, in milliseconds.
+     */
+    public long getConnectionMaxIdleMillis() {
+        return connectionMaxIdleMillis;
+    }
+
+    /**
+     * Sets the maximum amount of time (in milliseconds) that a pooled
+     * connection may sit idle before it's closed. It should be lower than the
+     * idle timeout of the service endpoints, otherwise requests are more
+     * likely to be sent on connections already closed by the remote end.
+     *
+     * @param connectionMaxIdleMillis the maximum idle time of pooled
+     *            connections, in milliseconds.
+     */
+    public void setConnectionMaxIdleMillis(long connectionMaxIdleMillis) {
+        this.connectionMaxIdleMillis = connectionMaxIdleMillis;
+    }
+
+    /**
+     * Sets the maximum amount of time (in milliseconds) that a pooled
+     * connection may sit idle before it's closed, and returns the updated
+     * ClientConfiguration object so that additional method calls may be
+     * chained together.
+     *
+     * @param connectionMaxIdleMillis the maximum idle time of pooled
+     *            connections, in milliseconds.
+     * @return The updated ClientConfiguration object.
+     */
+    public ClientConfiguration withConnectionMaxIdleMillis(long connectionMaxIdleMillis) {
+        setConnectionMaxIdleMillis(connectionMaxIdleMillis);
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of requests whose response metadata is kept
+     * for diagnostics, or zero if the response metadata cache is disabled.
+     *
+     * @return the size of the response metadata cache.
+     */
+    public int getResponseMetadataCacheSize() {
+        return responseMetadataCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of requests whose response metadata is kept for
+     * diagnostics, and returned by the clients'
+     * <code>getCachedResponseMetadata</code> method. The cache is disabled by
+     * default, since every entry holds memory until it's aged out.
+     *
+     * @param responseMetadataCacheSize the size of the response metadata
+     *            cache, or zero to disable it.
+     * @see ResponseMetadataCache
+     */
+    public void setResponseMetadataCacheSize(int responseMetadataCacheSize) {
+        this.responseMetadataCacheSize = responseMetadataCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of requests whose response metadata is kept for
+     * diagnostics, and returns the updated ClientConfiguration object so that
+     * additional method calls may be chained together.
+     *
+     * @param responseMetadataCacheSize the size of the response metadata
+     *            cache, or zero to disable it.
+     * @return The updated ClientConfiguration object.
+     */
+    public ClientConfiguration withResponseMetadataCacheSize(int responseMetadataCacheSize) {
+        setResponseMetadataCacheSize(responseMetadataCacheSize);
+        return this;
+    }
+
     /**
      * Returns the optional size hints (in bytes) for the low level TCP send and
      * receive buffers. This is an advanced option for advanced users who want
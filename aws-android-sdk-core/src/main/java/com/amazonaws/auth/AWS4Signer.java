@@ -32,7 +32,9 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Signer implementation that signs requests with the AWS4 signing protocol.
@@ -47,6 +49,26 @@ public class AWS4Signer extends AbstractAWSSigner
 
     /** Seconds in a week, which is the max expiration time Sig-v4 accepts */
     private final static long MAX_EXPIRATION_TIME_IN_SECONDS = 60 * 60 * 24 * 7;
+
+    /** Max number of derived signing keys kept in the cache */
+    private static final int MAX_SIGNING_KEY_CACHE_SIZE = 300;
+
+    /**
+     * Derived signing keys, keyed by the hash of the secret key, the region and
+     * the service. A key only changes with the date stamp, so it is reused by
+     * every request signed on the same day instead of running four HMACs per
+     * request.
+     */
+    private static final Map<String, SigningKey> SIGNING_KEY_CACHE =
+            new LinkedHashMap<String, SigningKey>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SigningKey> eldest) {
+                    return size() > MAX_SIGNING_KEY_CACHE_SIZE;
+                }
+            };
+
     /**
      * Service name override for use when the endpoint can't be used to
      * determine the service name.
@@ -204,42 +226,14 @@ public class AWS4Signer extends AbstractAWSSigner
     }
 
     protected String getCanonicalizedHeaderString(Request<?> request) {
-        List<String> sortedHeaders = new ArrayList<String>();
-        sortedHeaders.addAll(request.getHeaders().keySet());
-        Collections.sort(sortedHeaders, String.CASE_INSENSITIVE_ORDER);
-
         StringBuilder buffer = new StringBuilder();
-        for (String header : sortedHeaders) {
-            if (needsSign(header)) {
-                String key = StringUtils.lowerCase(header).replaceAll("\\s+", " ");
-                String value = request.getHeaders().get(header);
-
-                buffer.append(key).append(":");
-                if (value != null) {
-                    buffer.append(value.replaceAll("\\s+", " "));
-                }
-
-                buffer.append("\n");
-            }
-        }
-
+        appendCanonicalizedHeaders(buffer, request, getSortedSignedHeaders(request));
         return buffer.toString();
     }
 
     protected String getSignedHeadersString(Request<?> request) {
-        List<String> sortedHeaders = new ArrayList<String>();
-        sortedHeaders.addAll(request.getHeaders().keySet());
-        Collections.sort(sortedHeaders, String.CASE_INSENSITIVE_ORDER);
-
         StringBuilder buffer = new StringBuilder();
-        for (String header : sortedHeaders) {
-            if (needsSign(header)) {
-                if (buffer.length() > 0)
-                    buffer.append(";");
-                buffer.append(StringUtils.lowerCase(header));
-            }
-        }
-
+        appendSignedHeaders(buffer, getSortedSignedHeaders(request));
         return buffer.toString();
     }
 
@@ -248,18 +242,21 @@ public class AWS4Signer extends AbstractAWSSigner
         String path = HttpUtils.appendUri(request.getEndpoint().getPath(),
                 request.getResourcePath());
 
-        String canonicalRequest =
-                request.getHttpMethod().toString() + "\n" +
-                        /*
-                         * This would optionally double url-encode the resource
-                         * path
-                         */
-                        getCanonicalizedResourcePath(path, doubleUrlEncode) + "\n" +
-                        getCanonicalizedQueryString(request) + "\n" +
-                        getCanonicalizedHeaderString(request) + "\n" +
-                        getSignedHeadersString(request) + "\n" +
-                        contentSha256;
-        log.debug("AWS4 Canonical Request: '\"" + canonicalRequest + "\"");
+        // the header sections go through the overridable hooks, so that they
+        // match the SignedHeaders of the Authorization header
+        StringBuilder buffer = new StringBuilder(256);
+        buffer.append(request.getHttpMethod().toString()).append('\n');
+        /* This would optionally double url-encode the resource path */
+        buffer.append(getCanonicalizedResourcePath(path, doubleUrlEncode)).append('\n');
+        buffer.append(getCanonicalizedQueryString(request)).append('\n');
+        buffer.append(getCanonicalizedHeaderString(request)).append('\n');
+        buffer.append(getSignedHeadersString(request)).append('\n');
+        buffer.append(contentSha256);
+
+        String canonicalRequest = buffer.toString();
+        if (log.isDebugEnabled()) {
+            log.debug("AWS4 Canonical Request: '\"" + canonicalRequest + "\"");
+        }
         return canonicalRequest;
     }
 
@@ -270,10 +267,80 @@ public class AWS4Signer extends AbstractAWSSigner
                         dateTime + "\n" +
                         scope + "\n" +
                         BinaryUtils.toHex(hash(canonicalRequest));
-        log.debug("AWS4 String to Sign: '\"" + stringToSign + "\"");
+        if (log.isDebugEnabled()) {
+            log.debug("AWS4 String to Sign: '\"" + stringToSign + "\"");
+        }
         return stringToSign;
     }
 
+    /**
+     * Returns the names of the headers to sign, sorted case insensitively.
+     */
+    private List<String> getSortedSignedHeaders(Request<?> request) {
+        Map<String, String> headers = request.getHeaders();
+        List<String> sortedHeaders = new ArrayList<String>(headers.size());
+        for (String header : headers.keySet()) {
+            if (needsSign(header)) {
+                sortedHeaders.add(header);
+            }
+        }
+        Collections.sort(sortedHeaders, String.CASE_INSENSITIVE_ORDER);
+        return sortedHeaders;
+    }
+
+    private static void appendCanonicalizedHeaders(StringBuilder buffer, Request<?> request,
+            List<String> sortedHeaders) {
+        Map<String, String> headers = request.getHeaders();
+        for (String header : sortedHeaders) {
+            appendCompactedString(buffer, StringUtils.lowerCase(header));
+            buffer.append(':');
+            String value = headers.get(header);
+            if (value != null) {
+                appendCompactedString(buffer, value);
+            }
+            buffer.append('\n');
+        }
+    }
+
+    private static void appendSignedHeaders(StringBuilder buffer, List<String> sortedHeaders) {
+        for (int i = 0; i < sortedHeaders.size(); i++) {
+            if (i > 0) {
+                buffer.append(';');
+            }
+            buffer.append(StringUtils.lowerCase(sortedHeaders.get(i)));
+        }
+    }
+
+    /**
+     * Appends the string with each run of whitespace replaced by a single
+     * space, the same as <code>replaceAll("\\s+", " ")</code> without
+     * compiling a pattern for every header.
+     */
+    static void appendCompactedString(StringBuilder buffer, String source) {
+        boolean previousIsWhiteSpace = false;
+        int length = source.length();
+        for (int i = 0; i < length; i++) {
+            char ch = source.charAt(i);
+            if (isWhiteSpace(ch)) {
+                if (!previousIsWhiteSpace) {
+                    buffer.append(' ');
+                    previousIsWhiteSpace = true;
+                }
+            } else {
+                buffer.append(ch);
+                previousIsWhiteSpace = false;
+            }
+        }
+    }
+
+    /**
+     * Returns true for the characters matched by the regex <code>\\s</code>.
+     */
+    private static boolean isWhiteSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000b' || ch == '\f'
+                || ch == '\r';
+    }
+
     protected final HeaderSigningResult computeSignature(
             Request<?> request,
             String dateStamp,
@@ -289,18 +356,57 @@ public class AWS4Signer extends AbstractAWSSigner
         String stringToSign = getStringToSign(algorithm, timeStamp, scope,
                 getCanonicalRequest(request, contentSha256));
 
+        byte[] kSigning = getSigningKey(sanitizedCredentials.getAWSSecretKey(), dateStamp,
+                regionName, serviceName);
+
+        byte[] signature = sign(stringToSign.getBytes(StringUtils.UTF8), kSigning,
+                SigningAlgorithm.HmacSHA256);
+        return new HeaderSigningResult(timeStamp, scope, kSigning, signature);
+    }
+
+    /**
+     * Returns the derived signing key for the given scope, from the cache when
+     * it was already derived for the same date.
+     */
+    private byte[] getSigningKey(String secretKey, String dateStamp, String regionName,
+            String serviceName) {
+        // the secret itself is never kept in memory by the cache
+        String cacheKey = BinaryUtils.toHex(hash(secretKey)) + "/" + regionName + "/"
+                + serviceName;
+        SigningKey signingKey;
+        synchronized (SIGNING_KEY_CACHE) {
+            signingKey = SIGNING_KEY_CACHE.get(cacheKey);
+        }
+        if (signingKey != null && signingKey.dateStamp.equals(dateStamp)) {
+            return signingKey.kSigning;
+        }
+
         // AWS4 uses a series of derived keys, formed by hashing different
         // pieces of data
-        byte[] kSecret = ("AWS4" + sanitizedCredentials.getAWSSecretKey())
-                .getBytes(StringUtils.UTF8);
+        byte[] kSecret = ("AWS4" + secretKey).getBytes(StringUtils.UTF8);
         byte[] kDate = sign(dateStamp, kSecret, SigningAlgorithm.HmacSHA256);
         byte[] kRegion = sign(regionName, kDate, SigningAlgorithm.HmacSHA256);
         byte[] kService = sign(serviceName, kRegion, SigningAlgorithm.HmacSHA256);
         byte[] kSigning = sign(TERMINATOR, kService, SigningAlgorithm.HmacSHA256);
 
-        byte[] signature = sign(stringToSign.getBytes(StringUtils.UTF8), kSigning,
-                SigningAlgorithm.HmacSHA256);
-        return new HeaderSigningResult(timeStamp, scope, kSigning, signature);
+        synchronized (SIGNING_KEY_CACHE) {
+            SIGNING_KEY_CACHE.put(cacheKey, new SigningKey(dateStamp, kSigning));
+        }
+        return kSigning;
+    }
+
+    /** Returns the number of cached signing keys, for testing only. */
+    static int getSigningKeyCacheSize() {
+        synchronized (SIGNING_KEY_CACHE) {
+            return SIGNING_KEY_CACHE.size();
+        }
+    }
+
+    /** Clears the cached signing keys, for testing only. */
+    static void clearSigningKeyCache() {
+        synchronized (SIGNING_KEY_CACHE) {
+            SIGNING_KEY_CACHE.clear();
+        }
     }
 
     protected final String getTimeStamp(long dateMilli) {
@@ -366,6 +472,19 @@ public class AWS4Signer extends AbstractAWSSigner
         return;
     }
 
+    /**
+     * A derived signing key and the date stamp it is valid for.
+     */
+    private static final class SigningKey {
+        private final String dateStamp;
+        private final byte[] kSigning;
+
+        SigningKey(String dateStamp, byte[] kSigning) {
+            this.dateStamp = dateStamp;
+            this.kSigning = kSigning;
+        }
+    }
+
     protected static class HeaderSigningResult {
 
         private final String dateTime;
@@ -32,6 +32,7 @@ import java.io.InputStream;
 import java.net.URI;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
@@ -50,6 +51,18 @@ import javax.crypto.spec.SecretKeySpec;
  */
 public abstract class AbstractAWSSigner implements Signer {
 
+    private static final ThreadLocal<MessageDigest> SHA256_MESSAGE_DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new AmazonClientException(
+                        "Unable to get SHA256 Function" + e.getMessage(), e);
+            }
+        }
+    };
+
     /**
      * Computes an RFC 2104-compliant HMAC signature and returns the result as a
      * Base64 encoded string.
@@ -89,7 +102,7 @@ public abstract class AbstractAWSSigner implements Signer {
     protected byte[] sign(byte[] data, byte[] key, SigningAlgorithm algorithm)
             throws AmazonClientException {
         try {
-            Mac mac = Mac.getInstance(algorithm.toString());
+            Mac mac = algorithm.getMac();
             mac.init(new SecretKeySpec(key, algorithm.toString()));
             return mac.doFinal(data);
         } catch (Exception e) {
@@ -108,7 +121,7 @@ public abstract class AbstractAWSSigner implements Signer {
      */
     public byte[] hash(String text) throws AmazonClientException {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            MessageDigest md = getMessageDigestInstance();
             md.update(text.getBytes(UTF8));
             return md.digest();
         } catch (Exception e) {
@@ -119,7 +132,7 @@ public abstract class AbstractAWSSigner implements Signer {
 
     protected byte[] hash(InputStream input) throws AmazonClientException {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            MessageDigest md = getMessageDigestInstance();
             @SuppressWarnings("resource")
             DigestInputStream digestInputStream = new SdkDigestInputStream(input, md);
             byte[] buffer = new byte[1024];
@@ -140,9 +153,22 @@ public abstract class AbstractAWSSigner implements Signer {
      * @throws AmazonClientException If the hash cannot be computed.
      */
     public byte[] hash(byte[] data) throws AmazonClientException {
+        return hash(data, 0, data.length);
+    }
+
+    /**
+     * Hashes a range of the binary data using the SHA-256 algorithm.
+     *
+     * @param data The binary data to hash.
+     * @param offset The offset of the first byte to hash.
+     * @param length The number of bytes to hash.
+     * @return The hashed bytes from the specified range of data.
+     * @throws AmazonClientException If the hash cannot be computed.
+     */
+    public byte[] hash(byte[] data, int offset, int length) throws AmazonClientException {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(data);
+            MessageDigest md = getMessageDigestInstance();
+            md.update(data, offset, length);
             return md.digest();
         } catch (Exception e) {
             throw new AmazonClientException("Unable to compute hash while signing request: "
@@ -150,6 +176,16 @@ public abstract class AbstractAWSSigner implements Signer {
         }
     }
 
+    /**
+     * Returns the re-usable thread local version of MessageDigest, reset for
+     * a new digest.
+     */
+    private static MessageDigest getMessageDigestInstance() {
+        MessageDigest messageDigest = SHA256_MESSAGE_DIGEST.get();
+        messageDigest.reset();
+        return messageDigest;
+    }
+
     /**
      * Examines the specified query string parameters and returns a
      * canonicalized form.
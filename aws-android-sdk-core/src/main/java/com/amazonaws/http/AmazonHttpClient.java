@@ -32,6 +32,7 @@ import com.amazonaws.auth.Signer;
 import com.amazonaws.handlers.CredentialsRequestHandler;
 import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.internal.CRC32MismatchException;
+import com.amazonaws.internal.SettableFuture;
 import com.amazonaws.metrics.AwsSdkMetrics;
 import com.amazonaws.metrics.RequestMetricCollector;
 import com.amazonaws.retry.RetryPolicy;
@@ -39,6 +40,7 @@ import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.util.AWSRequestMetrics;
 import com.amazonaws.util.AWSRequestMetrics.Field;
 import com.amazonaws.util.DateUtils;
+import com.amazonaws.util.ResponseMetadataCache;
 import com.amazonaws.util.TimingInfo;
 
 import org.apache.commons.logging.Log;
@@ -54,6 +56,12 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class AmazonHttpClient {
 
@@ -89,6 +97,12 @@ public class AmazonHttpClient {
      */
     private final RequestMetricCollector requestMetricCollector;
 
+    /**
+     * Cache of the response metadata of recent requests, or null if it's
+     * disabled by the client configuration.
+     */
+    private final ResponseMetadataCache responseMetadataCache;
+
     private final HttpRequestFactory requestFactory = new HttpRequestFactory();
 
     /**
@@ -99,7 +113,7 @@ public class AmazonHttpClient {
      *            communicate with AWS (ex: proxy settings, retry count, etc.).
      */
     public AmazonHttpClient(ClientConfiguration config) {
-        this(config, new UrlHttpClient(config));
+        this(config, HttpClients.create(config));
     }
 
     /**
@@ -116,7 +130,7 @@ public class AmazonHttpClient {
     @Deprecated
     public AmazonHttpClient(ClientConfiguration config,
             RequestMetricCollector requestMetricCollector) {
-        this(config, new UrlHttpClient(config), requestMetricCollector);
+        this(config, HttpClients.create(config), requestMetricCollector);
     }
 
     /**
@@ -132,6 +146,7 @@ public class AmazonHttpClient {
         this.config = config;
         this.httpClient = httpClient;
         this.requestMetricCollector = null;
+        this.responseMetadataCache = newResponseMetadataCache(config);
     }
 
     /**
@@ -152,6 +167,12 @@ public class AmazonHttpClient {
         this.config = config;
         this.httpClient = httpClient;
         this.requestMetricCollector = requestMetricCollector;
+        this.responseMetadataCache = newResponseMetadataCache(config);
+    }
+
+    private static ResponseMetadataCache newResponseMetadataCache(ClientConfiguration config) {
+        int size = config.getResponseMetadataCacheSize();
+        return size > 0 ? new ResponseMetadataCache(size) : null;
     }
 
     /**
@@ -165,13 +186,23 @@ public class AmazonHttpClient {
      *            whose response metadata is desired.
      * @return The response metadata for the specified request, otherwise null
      *         if there is no response metadata available for the request.
-     * @deprecated ResponseMetadata cache can hold up to 50 requests and
-     *             responses in memory and will cause memory issue. This method
-     *             now always returns null.
+     * @deprecated ResponseMetadata cache can hold many requests and responses
+     *             in memory, so it's disabled by default and this method
+     *             returns null unless
+     *             {@link ClientConfiguration#setResponseMetadataCacheSize(int)}
+     *             enables it.
      */
     @Deprecated
     public ResponseMetadata getResponseMetadataForRequest(AmazonWebServiceRequest request) {
-        return null;
+        return responseMetadataCache == null ? null : responseMetadataCache.get(request);
+    }
+
+    /**
+     * Returns the cache of the response metadata of recent requests, or null
+     * if it's disabled.
+     */
+    public ResponseMetadataCache getResponseMetadataCache() {
+        return responseMetadataCache;
     }
 
     /**
@@ -243,6 +274,42 @@ public class AmazonHttpClient {
         return requestHandler2s;
     }
 
+    /**
+     * Executes the request asynchronously and returns a future for the
+     * result. Each attempt runs as a task on the given executor service, and
+     * the backoff delay between retries is scheduled on a shared timer rather
+     * than by sleeping, so no thread is held while a request waits to be
+     * retried. Request handlers are invoked the same way as
+     * {@link #execute(Request, HttpResponseHandler, HttpResponseHandler, ExecutionContext)}.
+     *
+     * @param request The AmazonWebServices request to send to the remote server
+     * @param responseHandler A response handler to accept a successful response
+     *            from the remote server
+     * @param errorResponseHandler A response handler to accept an unsuccessful
+     *            response from the remote server
+     * @param executionContext Additional information about the context of this
+     *            web service call
+     * @param executorService The executor service on which the attempts are
+     *            run
+     * @return A future for the response, which fails with the
+     *         AmazonClientException or AmazonServiceException that
+     *         {@link #execute(Request, HttpResponseHandler, HttpResponseHandler, ExecutionContext)}
+     *         would have thrown.
+     */
+    public <T> SettableFuture<Response<T>> executeAsync(Request<?> request,
+            HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
+            HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+            ExecutionContext executionContext,
+            ExecutorService executorService) {
+        if (executionContext == null)
+            throw new AmazonClientException(
+                    "Internal SDK Error: No execution context parameter specified.");
+        SettableFuture<Response<T>> future = new SettableFuture<Response<T>>();
+        new AsyncExecution<T>(request, responseHandler, errorResponseHandler,
+                executionContext, executorService, future).submit();
+        return future;
+    }
+
     /**
      * Internal method to execute the HTTP method given.
      *
@@ -257,44 +324,96 @@ public class AmazonHttpClient {
             ExecutionContext executionContext)
             throws AmazonClientException, AmazonServiceException
     {
-        /*
-         * Depending on which response handler we end up choosing to handle the
-         * HTTP response, it might require us to leave the underlying HTTP
-         * connection open, depending on whether or not it reads the complete
-         * HTTP response stream from the HTTP connection, or if delays reading
-         * any of the content until after a response is returned to the caller.
-         */
-        boolean leaveHttpConnectionOpen = false;
         AWSRequestMetrics awsRequestMetrics = executionContext.getAwsRequestMetrics();
-        /*
-         * add the service endpoint to the logs. You can infer service name from
-         * service endpoint
+        RequestExecution<T> execution = new RequestExecution<T>(request, responseHandler,
+                errorResponseHandler, executionContext);
+        while (true) {
+            Response<T> response = execution.attempt();
+            if (response != null) {
+                return response;
+            }
+            awsRequestMetrics.startEvent(Field.RetryPauseTime);
+            try {
+                pauseBeforeNextRetry(execution.nextBackoffDelay());
+            } catch (RuntimeException e) {
+                throw handleUnexpectedFailure(e, awsRequestMetrics);
+            } finally {
+                awsRequestMetrics.endEvent(Field.RetryPauseTime);
+            }
+        }
+    }
+
+    /**
+     * The state of a request across its attempts. Each call to
+     * {@link #attempt()} sends the request once; the caller decides how to
+     * wait out the backoff delay between attempts.
+     */
+    private final class RequestExecution<T> {
+        private final Request<?> request;
+        private final HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler;
+        private final HttpResponseHandler<AmazonServiceException> errorResponseHandler;
+        private final ExecutionContext executionContext;
+        private final AWSRequestMetrics awsRequestMetrics;
+        private final AWSCredentials credentials;
+        private final Map<String, String> originalParameters;
+        private final Map<String, String> originalHeaders;
+        private int requestCount = 0;
+        private long lastBackoffDelay = 0;
+        private URI redirectedURI = null;
+        private AmazonClientException retriedException = null;
+        private Signer signer = null;
+
+        RequestExecution(Request<?> request,
+                HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
+                HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+                ExecutionContext executionContext) {
+            this.request = request;
+            this.responseHandler = responseHandler;
+            this.errorResponseHandler = errorResponseHandler;
+            this.executionContext = executionContext;
+            this.awsRequestMetrics = executionContext.getAwsRequestMetrics();
+            /*
+             * add the service endpoint to the logs. You can infer service name
+             * from service endpoint
+             */
+            awsRequestMetrics.addProperty(Field.ServiceName, request.getServiceName());
+            awsRequestMetrics.addProperty(Field.ServiceEndpoint, request.getEndpoint());
+
+            // Apply whatever request options we know how to handle, such as
+            // user-agent.
+            setUserAgent(request);
+            request.addHeader(HEADER_SDK_TRANSACTION_ID, UUID.randomUUID().toString());
+
+            // Make a copy of the original request params and headers so that we
+            // can permute it in each attempt and start over with the original
+            // every time.
+            originalParameters = new LinkedHashMap<String, String>();
+            originalParameters.putAll(request.getParameters());
+            originalHeaders = new HashMap<String, String>();
+            originalHeaders.putAll(request.getHeaders());
+
+            credentials = executionContext.getCredentials();
+        }
+
+        /**
+         * Sends the request once.
+         *
+         * @return the response if the request succeeded, or null if it should
+         *         be retried after {@link #nextBackoffDelay()}
          */
-        awsRequestMetrics.addProperty(Field.ServiceName, request.getServiceName());
-        awsRequestMetrics.addProperty(Field.ServiceEndpoint, request.getEndpoint());
-
-        // Apply whatever request options we know how to handle, such as
-        // user-agent.
-        setUserAgent(request);
-        request.addHeader(HEADER_SDK_TRANSACTION_ID, UUID.randomUUID().toString());
-        int requestCount = 0;
-        long lastBackoffDelay = 0;
-        URI redirectedURI = null;
-        AmazonClientException retriedException = null;
-
-        // Make a copy of the original request params and headers so that we can
-        // permute it in this loop and start over with the original every time.
-        Map<String, String> originalParameters = new LinkedHashMap<String, String>();
-        originalParameters.putAll(request.getParameters());
-        Map<String, String> originalHeaders = new HashMap<String, String>();
-        originalHeaders.putAll(request.getHeaders());
-
-        final AWSCredentials credentials = executionContext.getCredentials();
-        Signer signer = null;
-        HttpResponse httpResponse = null;
-        HttpRequest httpRequest = null;
+        Response<T> attempt() throws AmazonClientException, AmazonServiceException {
+            /*
+             * Depending on which response handler we end up choosing to handle
+             * the HTTP response, it might require us to leave the underlying
+             * HTTP connection open, depending on whether or not it reads the
+             * complete HTTP response stream from the HTTP connection, or if
+             * delays reading any of the content until after a response is
+             * returned to the caller.
+             */
+            boolean leaveHttpConnectionOpen = false;
+            HttpResponse httpResponse = null;
+            HttpRequest httpRequest = null;
 
-        while (true) {
             ++requestCount;
             awsRequestMetrics.setCounter(Field.RequestCount, requestCount);
             if (requestCount > 1) { // retry
@@ -303,17 +422,6 @@ public class AmazonHttpClient {
             }
 
             try {
-                if (requestCount > 1) { // retry
-                    awsRequestMetrics.startEvent(Field.RetryPauseTime);
-                    try {
-                        lastBackoffDelay = pauseBeforeNextRetry(request.getOriginalRequest(),
-                                retriedException,
-                                requestCount,
-                                config.getRetryPolicy());
-                    } finally {
-                        awsRequestMetrics.endEvent(Field.RetryPauseTime);
-                    }
-                }
                 request.addHeader(HEADER_SDK_RETRY_INFO,
                         (requestCount - 1) + "/" + lastBackoffDelay);
 
@@ -355,6 +463,11 @@ public class AmazonHttpClient {
                 }
 
                 retriedException = null;
+                if (httpClient instanceof PooledHttpClient) {
+                    captureConnectionPoolMetrics(
+                            ((PooledHttpClient) httpClient).getConnectionPool(),
+                            awsRequestMetrics);
+                }
                 awsRequestMetrics.startEvent(Field.HttpRequestTime);
                 try {
                     httpResponse = httpClient.execute(httpRequest);
@@ -459,7 +572,154 @@ public class AmazonHttpClient {
                     }
                 }
             }
-        } /* end while (true) */
+            return null;
+        }
+
+        /**
+         * Returns the time to wait before the next attempt, as given by the
+         * backoff strategy of the configured retry policy.
+         */
+        long nextBackoffDelay() {
+            final int retries = requestCount - 1; // number of attempted retries
+
+            long delay = config.getRetryPolicy().getBackoffStrategy().delayBeforeNextRetry(
+                    request.getOriginalRequest(), retriedException, retries);
+
+            if (log.isDebugEnabled()) {
+                log.debug("Retriable error detected, " +
+                        "will retry in " + delay + "ms, attempt number: " + retries);
+            }
+            lastBackoffDelay = delay;
+            return delay;
+        }
+    }
+
+    /**
+     * Runs the attempts of a request as tasks on an executor service, and
+     * schedules the backoff delay between them on the shared retry timer.
+     */
+    private final class AsyncExecution<T> implements Runnable {
+        private final Request<?> request;
+        private final HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler;
+        private final HttpResponseHandler<AmazonServiceException> errorResponseHandler;
+        private final ExecutionContext executionContext;
+        private final ExecutorService executorService;
+        private final SettableFuture<Response<T>> future;
+        private List<RequestHandler2> requestHandler2s;
+        private RequestExecution<T> execution;
+
+        AsyncExecution(Request<?> request,
+                HttpResponseHandler<AmazonWebServiceResponse<T>> responseHandler,
+                HttpResponseHandler<AmazonServiceException> errorResponseHandler,
+                ExecutionContext executionContext,
+                ExecutorService executorService,
+                SettableFuture<Response<T>> future) {
+            this.request = request;
+            this.responseHandler = responseHandler;
+            this.errorResponseHandler = errorResponseHandler;
+            this.executionContext = executionContext;
+            this.executorService = executorService;
+            this.future = future;
+        }
+
+        /**
+         * Submits the next attempt to the executor service.
+         */
+        void submit() {
+            try {
+                future.cancelWith(executorService.submit(this));
+            } catch (RejectedExecutionException e) {
+                future.setException(new AmazonClientException(
+                        "Unable to execute HTTP request: " + e.getMessage(), e));
+            }
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return; // cancelled
+            }
+            Response<T> response = null;
+            try {
+                if (execution == null) {
+                    requestHandler2s = requestHandler2s(request, executionContext);
+                    execution = new RequestExecution<T>(request, responseHandler,
+                            errorResponseHandler, executionContext);
+                }
+                response = execution.attempt();
+                if (response == null) {
+                    scheduleRetry();
+                    return;
+                }
+                TimingInfo timingInfo = executionContext.getAwsRequestMetrics()
+                        .getTimingInfo().endTiming();
+                afterResponse(request, requestHandler2s, response, timingInfo);
+            } catch (AmazonClientException e) {
+                if (requestHandler2s != null) {
+                    afterError(request, response, requestHandler2s, e);
+                }
+                future.setException(e);
+                return;
+            } catch (Throwable t) {
+                future.setException(t);
+                return;
+            }
+            future.set(response);
+        }
+
+        private void scheduleRetry() {
+            final AWSRequestMetrics awsRequestMetrics = executionContext.getAwsRequestMetrics();
+            long delay;
+            try {
+                delay = execution.nextBackoffDelay();
+            } catch (RuntimeException e) {
+                throw handleUnexpectedFailure(e, awsRequestMetrics);
+            }
+            awsRequestMetrics.startEvent(Field.RetryPauseTime);
+            future.cancelWith(RetryTimer.INSTANCE.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    awsRequestMetrics.endEvent(Field.RetryPauseTime);
+                    submit();
+                }
+            }, delay, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Holds the timer on which asynchronous executions wait out the backoff
+     * delay between retries. The timer thread is only started once the first
+     * retry is scheduled.
+     */
+    private static final class RetryTimer {
+        static final ScheduledExecutorService INSTANCE = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "aws-sdk-retry-timer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Captures the connection pool metrics.
+     */
+    private void captureConnectionPoolMetrics(HttpConnectionPool connectionPool,
+            AWSRequestMetrics awsRequestMetrics) {
+        if (awsRequestMetrics.isEnabled()) {
+            awsRequestMetrics.setCounter(Field.HttpClientPoolAvailableCount,
+                    connectionPool.getAvailableCount());
+            awsRequestMetrics.setCounter(Field.HttpClientPoolLeasedCount,
+                    connectionPool.getLeasedCount());
+            awsRequestMetrics.setCounter(Field.HttpClientPoolHitCount,
+                    connectionPool.getHitCount());
+            awsRequestMetrics.setCounter(Field.HttpClientPoolMissCount,
+                    connectionPool.getMissCount());
+            awsRequestMetrics.setCounter(Field.HttpClientPoolEvictionCount,
+                    connectionPool.getEvictionCount());
+        }
     }
 
     /**
@@ -650,6 +910,11 @@ public class AmazonHttpClient {
             }
             awsRequestMetrics.addProperty(Field.AWSRequestID, awsResponse.getRequestId());
 
+            if (responseMetadataCache != null) {
+                responseMetadataCache.add(request.getOriginalRequest(),
+                        awsResponse.getResponseMetadata());
+            }
+
             return awsResponse.getResult();
         } catch (CRC32MismatchException e) {
             throw e;
@@ -721,33 +986,11 @@ public class AmazonHttpClient {
      * Sleep for a period of time on failed request to avoid flooding a service
      * with retries.
      *
-     * @param originalRequest The original service request that is being
-     *            executed.
-     * @param previousException Exception information for the previous attempt,
-     *            if any.
-     * @param requestCount current request count (including the next attempt
-     *            after the delay)
-     * @param retryPolicy The retry policy configured in this http client.
+     * @param delay the backoff delay in milliseconds
      */
-    private long pauseBeforeNextRetry(AmazonWebServiceRequest originalRequest,
-            AmazonClientException previousException,
-            int requestCount,
-            RetryPolicy retryPolicy) {
-        final int retries = requestCount // including next attempt
-                - 1 // number of attempted requests
-                - 1; // number of attempted retries
-
-        long delay = retryPolicy.getBackoffStrategy().delayBeforeNextRetry(
-                originalRequest, previousException, retries);
-
-        if (log.isDebugEnabled()) {
-            log.debug("Retriable error detected, " +
-                    "will retry in " + delay + "ms, attempt number: " + retries);
-        }
-
+    private void pauseBeforeNextRetry(long delay) {
         try {
             Thread.sleep(delay);
-            return delay;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new AmazonClientException(e.getMessage(), e);
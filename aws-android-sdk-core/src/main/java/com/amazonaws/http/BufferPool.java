@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of fixed size byte arrays, used as scratch buffers when
+ * copying request and response bodies so that a buffer isn't allocated for
+ * every request.
+ */
+final class BufferPool {
+
+    /** The default size of the pooled buffers. */
+    static final int DEFAULT_BUFFER_SIZE = 1024 * 8;
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param bufferSize the size of each buffer in bytes
+     * @param maxBuffers the maximum number of idle buffers kept in the pool
+     */
+    BufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+    }
+
+    /**
+     * Returns a buffer from the pool, or a newly allocated one if the pool is
+     * empty.
+     */
+    byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            return new byte[bufferSize];
+        }
+        size.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns the given buffer to the pool. The buffer is dropped if the pool
+     * is full or if it wasn't acquired from this pool.
+     */
+    void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize) {
+            return;
+        }
+        if (size.incrementAndGet() > maxBuffers) {
+            size.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+
+    /**
+     * For testing purposes. Returns the number of idle buffers in the pool.
+     */
+    int size() {
+        return size.get();
+    }
+}
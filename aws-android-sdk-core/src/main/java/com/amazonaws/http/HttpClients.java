@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import com.amazonaws.ClientConfiguration;
+
+/**
+ * Creates the {@link HttpClient} used by service clients, as selected by the
+ * {@link ClientConfiguration}.
+ */
+public final class HttpClients {
+
+    private HttpClients() {
+    }
+
+    /**
+     * Returns a new {@link PooledHttpClient} if
+     * {@link ClientConfiguration#useConnectionPool()} is set, and a new
+     * {@link UrlHttpClient} otherwise.
+     *
+     * @param config the client configuration
+     * @return a new HTTP client
+     */
+    public static HttpClient create(ClientConfiguration config) {
+        if (config.useConnectionPool()) {
+            return new PooledHttpClient(config);
+        }
+        return new UrlHttpClient(config);
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import static com.amazonaws.SDKGlobalConfiguration.DISABLE_CERT_CHECKING_SYSTEM_PROPERTY;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.metrics.AwsSdkMetrics;
+import com.amazonaws.metrics.ServiceLatencyProvider;
+import com.amazonaws.util.AWSServiceMetrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+/**
+ * A pool of persistent HTTP/1.1 connections used by {@link PooledHttpClient}.
+ * <p>
+ * Idle connections are kept per route, i.e. per scheme, host and port, and are
+ * handed out most recently used first, since those are the least likely to
+ * have been closed by the remote end. At most
+ * {@link ClientConfiguration#getMaxConnections()} idle connections are kept
+ * per route; extra connections are closed when they are released. Connections
+ * that have been idle for longer than
+ * {@link ClientConfiguration#getConnectionMaxIdleMillis()} are closed, either
+ * when they are next leased or periodically by the
+ * {@link IdleConnectionReaper}.
+ * <p>
+ * The pool keeps count of how many leases were served by an idle connection
+ * (hits), how many needed a new connection (misses) and how many idle
+ * connections were closed (evictions). These are reported as request metrics
+ * by {@link AmazonHttpClient}.
+ */
+public class HttpConnectionPool {
+
+    private static final Log log = LogFactory.getLog(HttpConnectionPool.class);
+
+    private static final int DEFAULT_HTTP_PORT = 80;
+    private static final int DEFAULT_HTTPS_PORT = 443;
+
+    private final ClientConfiguration config;
+    private final BufferPool bufferPool;
+
+    /** Idle connections by route, most recently used first. */
+    private final Map<String, LinkedList<PooledConnection>> idleConnections =
+            new HashMap<String, LinkedList<PooledConnection>>();
+    /** Guarded by this. */
+    private int availableCount;
+    /** Guarded by this. */
+    private boolean shutdown;
+
+    private final AtomicInteger leasedCount = new AtomicInteger();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private SSLSocketFactory sslSocketFactory;
+    private HostnameVerifier hostnameVerifier;
+
+    /**
+     * Creates a connection pool configured by the given client configuration,
+     * and registers it with the {@link IdleConnectionReaper} if
+     * {@link ClientConfiguration#useReaper()} is set.
+     *
+     * @param config the client configuration
+     */
+    public HttpConnectionPool(ClientConfiguration config) {
+        this.config = config;
+        this.bufferPool = new BufferPool(BufferPool.DEFAULT_BUFFER_SIZE,
+                config.getMaxConnections());
+        if (config.useReaper()) {
+            IdleConnectionReaper.registerConnectionPool(this);
+        }
+    }
+
+    /**
+     * Leases a connection to the host of the given URI, reusing an idle one
+     * if possible.
+     *
+     * @param uri the URI to connect to
+     * @return a connection, which must be given back through
+     *         {@link #release(PooledConnection, boolean)}
+     * @throws IOException if a new connection can't be established
+     */
+    PooledConnection lease(URI uri) throws IOException {
+        ServiceLatencyProvider latencyProvider = new ServiceLatencyProvider(
+                AWSServiceMetrics.HttpClientGetConnectionTime);
+        try {
+            PooledConnection connection = leaseIdle(routeOf(uri));
+            if (connection != null) {
+                hitCount.incrementAndGet();
+                return connection;
+            }
+            missCount.incrementAndGet();
+            return open(uri);
+        } finally {
+            AwsSdkMetrics.getServiceMetricCollector()
+                    .collectLatency(latencyProvider.endTiming());
+        }
+    }
+
+    /**
+     * Opens a new connection to the host of the given URI, bypassing any idle
+     * connection in the pool. This is used to retry a request that failed on
+     * a stale connection.
+     */
+    PooledConnection leaseNew(URI uri) throws IOException {
+        missCount.incrementAndGet();
+        return open(uri);
+    }
+
+    private PooledConnection leaseIdle(String route) {
+        List<PooledConnection> expired = null;
+        PooledConnection connection = null;
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("Connection pool has been shut down");
+            }
+            LinkedList<PooledConnection> idle = idleConnections.get(route);
+            long now = System.currentTimeMillis();
+            while (idle != null && !idle.isEmpty()) {
+                PooledConnection candidate = idle.removeFirst();
+                availableCount--;
+                if (candidate.isExpired(now, config.getConnectionMaxIdleMillis())) {
+                    if (expired == null) {
+                        expired = new ArrayList<PooledConnection>();
+                    }
+                    expired.add(candidate);
+                    continue;
+                }
+                connection = candidate;
+                break;
+            }
+            if (connection != null) {
+                leasedCount.incrementAndGet();
+            }
+        }
+        evict(expired);
+        return connection;
+    }
+
+    private PooledConnection open(URI uri) throws IOException {
+        String scheme = uri.getScheme();
+        String host = uri.getHost();
+        int port = portOf(uri);
+
+        Socket socket = new Socket();
+        PooledConnection connection;
+        try {
+            int[] bufferSizeHints = config.getSocketBufferSizeHints();
+            if (bufferSizeHints[0] > 0) {
+                socket.setSendBufferSize(bufferSizeHints[0]);
+            }
+            if (bufferSizeHints[1] > 0) {
+                socket.setReceiveBufferSize(bufferSizeHints[1]);
+            }
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(config.getSocketTimeout());
+            if (config.getLocalAddress() != null) {
+                socket.bind(new InetSocketAddress(config.getLocalAddress(), 0));
+            }
+            socket.connect(new InetSocketAddress(host, port), config.getConnectionTimeout());
+
+            if ("https".equalsIgnoreCase(scheme)) {
+                SSLSocket sslSocket = (SSLSocket) getSSLSocketFactory().createSocket(socket,
+                        host, port, true);
+                socket = sslSocket;
+                sslSocket.startHandshake();
+                if (!getHostnameVerifier().verify(host, sslSocket.getSession())) {
+                    throw new SSLPeerUnverifiedException("Hostname '" + host
+                            + "' doesn't match the certificate of the peer");
+                }
+            }
+            connection = new PooledConnection(routeOf(uri), socket);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        } catch (RuntimeException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+        leasedCount.incrementAndGet();
+        return connection;
+    }
+
+    /**
+     * Gives a leased connection back to the pool.
+     *
+     * @param connection the leased connection
+     * @param reusable whether the connection is in a state where it can be
+     *            used for another request; non reusable connections are
+     *            closed
+     */
+    void release(PooledConnection connection, boolean reusable) {
+        leasedCount.decrementAndGet();
+        if (!reusable) {
+            connection.close();
+            return;
+        }
+        PooledConnection evicted = null;
+        synchronized (this) {
+            if (shutdown) {
+                reusable = false;
+            } else {
+                LinkedList<PooledConnection> idle = idleConnections.get(connection.route);
+                if (idle == null) {
+                    idle = new LinkedList<PooledConnection>();
+                    idleConnections.put(connection.route, idle);
+                }
+                connection.markIdle(System.currentTimeMillis());
+                idle.addFirst(connection);
+                availableCount++;
+                if (idle.size() > config.getMaxConnections()) {
+                    evicted = idle.removeLast();
+                    availableCount--;
+                }
+            }
+        }
+        if (!reusable) {
+            connection.close();
+        }
+        if (evicted != null) {
+            evictionCount.incrementAndGet();
+            evicted.close();
+        }
+    }
+
+    /**
+     * Closes the connections that have been idle for longer than
+     * {@link ClientConfiguration#getConnectionMaxIdleMillis()}.
+     *
+     * @return the number of connections closed
+     */
+    public int closeIdleConnections() {
+        return closeIdleConnections(config.getConnectionMaxIdleMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the connections that have been idle for longer than the given
+     * time.
+     *
+     * @param idleTime the idle time
+     * @param unit the unit of the idle time
+     * @return the number of connections closed
+     */
+    public int closeIdleConnections(long idleTime, TimeUnit unit) {
+        long maxIdleMillis = unit.toMillis(idleTime);
+        long now = System.currentTimeMillis();
+        List<PooledConnection> expired = new ArrayList<PooledConnection>();
+        synchronized (this) {
+            for (LinkedList<PooledConnection> idle : idleConnections.values()) {
+                Iterator<PooledConnection> iterator = idle.iterator();
+                while (iterator.hasNext()) {
+                    PooledConnection connection = iterator.next();
+                    if (connection.isExpired(now, maxIdleMillis)) {
+                        iterator.remove();
+                        availableCount--;
+                        expired.add(connection);
+                    }
+                }
+            }
+        }
+        evict(expired);
+        return expired.size();
+    }
+
+    /**
+     * Closes all idle connections and stops pooling. Connections leased at the
+     * time of the call are closed when they are released.
+     */
+    public void shutdown() {
+        List<PooledConnection> idle = new ArrayList<PooledConnection>();
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            for (LinkedList<PooledConnection> connections : idleConnections.values()) {
+                idle.addAll(connections);
+            }
+            idleConnections.clear();
+            availableCount = 0;
+        }
+        for (PooledConnection connection : idle) {
+            connection.close();
+        }
+        IdleConnectionReaper.removeConnectionPool(this);
+    }
+
+    /**
+     * Returns the number of idle connections in the pool.
+     */
+    public synchronized int getAvailableCount() {
+        return availableCount;
+    }
+
+    /**
+     * Returns the number of connections currently leased to execute requests.
+     */
+    public int getLeasedCount() {
+        return leasedCount.get();
+    }
+
+    /**
+     * Returns the number of leases served by an idle pooled connection.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of leases that required a new connection.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of idle connections closed because they expired or
+     * the pool was full.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    private void evict(List<PooledConnection> connections) {
+        if (connections == null) {
+            return;
+        }
+        for (PooledConnection connection : connections) {
+            evictionCount.incrementAndGet();
+            connection.close();
+        }
+    }
+
+    private synchronized SSLSocketFactory getSSLSocketFactory() throws IOException {
+        if (sslSocketFactory == null) {
+            if (System.getProperty(DISABLE_CERT_CHECKING_SYSTEM_PROPERTY) != null) {
+                try {
+                    SSLContext sc = SSLContext.getInstance("TLS");
+                    sc.init(null, new TrustManager[] {
+                            new UrlHttpClient.TrustAllManager()
+                    }, null);
+                    sslSocketFactory = sc.getSocketFactory();
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Unable to initialize SSL context: " + e.getMessage());
+                }
+            } else {
+                sslSocketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+            }
+        }
+        return sslSocketFactory;
+    }
+
+    private synchronized HostnameVerifier getHostnameVerifier() {
+        if (hostnameVerifier == null) {
+            if (System.getProperty(DISABLE_CERT_CHECKING_SYSTEM_PROPERTY) != null) {
+                hostnameVerifier = new UrlHttpClient.AllowAllHostnameVerifier();
+            } else {
+                // wildcard certificates must match sub-subdomains for S3
+                // virtual hosting, see HttpClient
+                hostnameVerifier = org.apache.http.conn.ssl.SSLSocketFactory
+                        .BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+            }
+        }
+        return hostnameVerifier;
+    }
+
+    static String routeOf(URI uri) {
+        return uri.getScheme().toLowerCase() + "://" + uri.getHost().toLowerCase() + ":"
+                + portOf(uri);
+    }
+
+    static int portOf(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? DEFAULT_HTTPS_PORT
+                : DEFAULT_HTTP_PORT;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Unable to close socket", e);
+        }
+    }
+
+    /**
+     * A connection managed by the pool, with buffered streams that are kept
+     * for the lifetime of the connection.
+     */
+    static final class PooledConnection {
+        private final String route;
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private long idleSince;
+        private boolean reused;
+
+        PooledConnection(String route, Socket socket) throws IOException {
+            this.route = route;
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(),
+                    BufferPool.DEFAULT_BUFFER_SIZE);
+            this.out = new BufferedOutputStream(socket.getOutputStream(),
+                    BufferPool.DEFAULT_BUFFER_SIZE);
+        }
+
+        InputStream getInputStream() {
+            return in;
+        }
+
+        OutputStream getOutputStream() {
+            return out;
+        }
+
+        /**
+         * Returns true if this connection has served a request before, in
+         * which case the remote end may have closed it in the meantime.
+         */
+        boolean isReused() {
+            return reused;
+        }
+
+        void markIdle(long now) {
+            idleSince = now;
+            reused = true;
+        }
+
+        boolean isExpired(long now, long maxIdleMillis) {
+            return socket.isClosed() || now - idleSince > maxIdleMillis;
+        }
+
+        void close() {
+            closeQuietly(socket);
+        }
+    }
+}
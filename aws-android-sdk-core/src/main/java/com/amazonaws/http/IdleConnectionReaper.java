@@ -51,6 +51,12 @@ public final class IdleConnectionReaper extends Thread {
      * periodically checked and idle connections closed.
      */
     private static final ArrayList<ClientConnectionManager> connectionManagers = new ArrayList<ClientConnectionManager>();
+    /**
+     * The list of registered connection pools of {@link PooledHttpClient},
+     * whose connections will be periodically checked and idle connections
+     * closed.
+     */
+    private static final ArrayList<HttpConnectionPool> connectionPools = new ArrayList<HttpConnectionPool>();
     /**
      * Set to true when shutting down the reaper; Once set to true, this flag is
      * never set back to false.
@@ -94,7 +100,37 @@ public final class IdleConnectionReaper extends Thread {
     public static synchronized boolean removeConnectionManager(
             ClientConnectionManager connectionManager) {
         boolean b = connectionManagers.remove(connectionManager);
-        if (connectionManagers.isEmpty())
+        if (connectionManagers.isEmpty() && connectionPools.isEmpty())
+            shutdown();
+        return b;
+    }
+
+    /**
+     * Registers the given connection pool with this reaper;
+     *
+     * @return true if the connection pool has been successfully registered;
+     *         false otherwise.
+     */
+    public static synchronized boolean registerConnectionPool(
+            HttpConnectionPool connectionPool) {
+        if (instance == null) {
+            instance = new IdleConnectionReaper();
+            instance.start();
+        }
+        return connectionPools.add(connectionPool);
+    }
+
+    /**
+     * Removes the given connection pool from this reaper, and shutting down
+     * the reaper if there is zero connection manager or pool left.
+     *
+     * @return true if the connection pool has been successfully removed;
+     *         false otherwise.
+     */
+    public static synchronized boolean removeConnectionPool(
+            HttpConnectionPool connectionPool) {
+        boolean b = connectionPools.remove(connectionPool);
+        if (connectionManagers.isEmpty() && connectionPools.isEmpty())
             shutdown();
         return b;
     }
@@ -121,9 +157,12 @@ public final class IdleConnectionReaper extends Thread {
                 // (rather
                 // than block/lock while this loop executes).
                 List<ClientConnectionManager> connectionManagers = null;
+                List<HttpConnectionPool> connectionPools = null;
                 synchronized (IdleConnectionReaper.class) {
                     connectionManagers = (List<ClientConnectionManager>) IdleConnectionReaper.connectionManagers
                             .clone();
+                    connectionPools = (List<HttpConnectionPool>) IdleConnectionReaper.connectionPools
+                            .clone();
                 }
                 for (ClientConnectionManager connectionManager : connectionManagers) {
                     // When we release connections, the connection manager
@@ -136,6 +175,13 @@ public final class IdleConnectionReaper extends Thread {
                         log.warn("Unable to close idle connections", t);
                     }
                 }
+                for (HttpConnectionPool connectionPool : connectionPools) {
+                    try {
+                        connectionPool.closeIdleConnections();
+                    } catch (Exception t) {
+                        log.warn("Unable to close idle connections", t);
+                    }
+                }
             } catch (Throwable t) {
                 log.debug("Reaper thread: ", t);
             }
@@ -158,6 +204,7 @@ public final class IdleConnectionReaper extends Thread {
             instance.markShuttingDown();
             instance.interrupt();
             connectionManagers.clear();
+            connectionPools.clear();
             instance = null;
             return true;
         }
@@ -165,10 +212,10 @@ public final class IdleConnectionReaper extends Thread {
     }
 
     /**
-     * For testing purposes. Returns the number of connection managers currently
-     * monitored by this reaper.
+     * For testing purposes. Returns the number of connection managers and
+     * pools currently monitored by this reaper.
      */
     static synchronized int size() {
-        return connectionManagers.size();
+        return connectionManagers.size() + connectionPools.size();
     }
 }
@@ -0,0 +1,544 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.http.HttpConnectionPool.PooledConnection;
+import com.amazonaws.util.StringUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An implementation of {@link HttpClient} that speaks HTTP/1.1 over sockets
+ * kept in a {@link HttpConnectionPool}, so that consecutive requests to the
+ * same host reuse the TCP connection and TLS session instead of paying for a
+ * new handshake each time. This suits applications which make many small
+ * requests, e.g. to Amazon DynamoDB or Amazon Kinesis.
+ * <p>
+ * A connection goes back to the pool once the response content has been read
+ * to the end or closed. Requests sent on a pooled connection that turns out
+ * to have been closed by the remote end are transparently resent once on a new
+ * connection, as long as the content can be reset.
+ * <p>
+ * Compared to {@link UrlHttpClient}, this client doesn't support proxies, and
+ * doesn't send the 'Expect: 100-continue' header. Use
+ * {@link ClientConfiguration#setUseConnectionPool(boolean)} to select it for a
+ * service client.
+ */
+public class PooledHttpClient implements HttpClient {
+
+    private static final Log log = LogFactory.getLog(PooledHttpClient.class);
+
+    private static final String CRLF = "\r\n";
+    private static final String CONNECTION = "Connection";
+    private static final String TRANSFER_ENCODING = "Transfer-Encoding";
+
+    /**
+     * Remaining response content up to this size is read and discarded when
+     * the content is closed early, so that the connection can be reused.
+     */
+    private static final long MAX_DRAIN_BYTES = 1024 * 64;
+
+    private final HttpConnectionPool connectionPool;
+
+    /**
+     * @param config the client configuration
+     * @throws IllegalArgumentException if a proxy is configured
+     */
+    public PooledHttpClient(ClientConfiguration config) {
+        if (config.getProxyHost() != null) {
+            throw new IllegalArgumentException(
+                    "PooledHttpClient doesn't support proxies, use UrlHttpClient instead");
+        }
+        this.connectionPool = new HttpConnectionPool(config);
+    }
+
+    /**
+     * Returns the connection pool of this client.
+     */
+    public HttpConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        URI uri = request.getUri();
+        PooledConnection connection = connectionPool.lease(uri);
+        try {
+            return execute(request, connection);
+        } catch (IOException e) {
+            // A timeout means the remote end is alive, so the request may
+            // have been processed and mustn't be sent again.
+            if (!connection.isReused() || e instanceof InterruptedIOException
+                    || !resetContent(request)) {
+                throw e;
+            }
+            log.debug("Pooled connection failed, retrying on a new connection", e);
+        }
+        return execute(request, connectionPool.leaseNew(uri));
+    }
+
+    /**
+     * Forcefully shuts down the connection pool. Requests in flight are
+     * allowed to complete, but their connections are closed afterwards.
+     */
+    @Override
+    public void shutdown() {
+        connectionPool.shutdown();
+    }
+
+    private HttpResponse execute(HttpRequest request, PooledConnection connection)
+            throws IOException {
+        boolean released = false;
+        try {
+            writeRequest(request, connection.getOutputStream());
+            HttpResponse response = readResponse(request, connection);
+            released = true;
+            return response;
+        } finally {
+            if (!released) {
+                connectionPool.release(connection, false);
+            }
+        }
+    }
+
+    /**
+     * Resets the content of a request so that it can be sent again. Returns
+     * false if the content can't be reset. {@link AmazonHttpClient} marks the
+     * content before executing a request.
+     */
+    private boolean resetContent(HttpRequest request) {
+        InputStream content = request.getContent();
+        if (content == null) {
+            return true;
+        }
+        if (!content.markSupported()) {
+            return false;
+        }
+        try {
+            content.reset();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    void writeRequest(HttpRequest request, OutputStream os) throws IOException {
+        URI uri = request.getUri();
+        StringBuilder head = new StringBuilder(256);
+        String path = uri.getRawPath();
+        head.append(request.getMethod()).append(' ')
+                .append(path == null || path.isEmpty() ? "/" : path);
+        if (uri.getRawQuery() != null) {
+            head.append('?').append(uri.getRawQuery());
+        }
+        head.append(" HTTP/1.1").append(CRLF);
+
+        String host = request.getHeaders().get(HttpHeader.HOST);
+        if (host == null) {
+            host = uri.getHost();
+            if (uri.getPort() != -1) {
+                host += ":" + uri.getPort();
+            }
+        }
+        appendHeader(head, HttpHeader.HOST, host);
+
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            String key = header.getKey();
+            // Host and Content-Length are written separately. The request
+            // content is sent right away, so 100-continue doesn't apply.
+            if (key.equals(HttpHeader.HOST) || key.equals(HttpHeader.CONTENT_LENGTH)
+                    || key.equals(HttpHeader.EXPECT)) {
+                continue;
+            }
+            appendHeader(head, key, header.getValue());
+        }
+
+        InputStream content = request.getContent();
+        long contentLength = request.getContentLength();
+        if (content != null && contentLength >= 0) {
+            appendHeader(head, HttpHeader.CONTENT_LENGTH, String.valueOf(contentLength));
+        } else if (request.getHeaders().containsKey(HttpHeader.CONTENT_LENGTH)) {
+            appendHeader(head, HttpHeader.CONTENT_LENGTH, "0");
+            content = null;
+        } else {
+            content = null;
+        }
+        head.append(CRLF);
+        os.write(head.toString().getBytes(StringUtils.UTF8));
+
+        if (content != null) {
+            write(content, contentLength, os);
+        }
+        os.flush();
+    }
+
+    private static void appendHeader(StringBuilder head, String key, String value) {
+        head.append(key).append(": ").append(value == null ? "" : value).append(CRLF);
+    }
+
+    private void write(InputStream is, long length, OutputStream os) throws IOException {
+        byte[] buffer = connectionPool.getBufferPool().acquire();
+        try {
+            long remaining = length;
+            while (remaining > 0) {
+                int len = is.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (len == -1) {
+                    throw new IOException("Request content ended after "
+                            + (length - remaining) + " of " + length + " bytes");
+                }
+                os.write(buffer, 0, len);
+                remaining -= len;
+            }
+        } finally {
+            connectionPool.getBufferPool().release(buffer);
+        }
+    }
+
+    HttpResponse readResponse(HttpRequest request, PooledConnection connection)
+            throws IOException {
+        InputStream in = connection.getInputStream();
+        String statusLine;
+        int statusCode;
+        Map<String, String> headers;
+        // skip interim 1xx responses
+        do {
+            statusLine = readLine(in);
+            if (statusLine == null) {
+                throw new EOFException("Connection closed before a response was received");
+            }
+            statusCode = parseStatusCode(statusLine);
+            headers = readHeaders(in);
+        } while (statusCode >= 100 && statusCode < 200);
+
+        int reasonStart = statusLine.indexOf(' ', statusLine.indexOf(' ') + 1);
+        String statusText = reasonStart == -1 ? "" : statusLine.substring(reasonStart + 1);
+
+        String connectionHeader = headerValue(headers, CONNECTION);
+        boolean keepAlive = statusLine.startsWith("HTTP/1.1")
+                ? !"close".equalsIgnoreCase(connectionHeader)
+                : "keep-alive".equalsIgnoreCase(connectionHeader);
+
+        InputStream content;
+        String transferEncoding = headerValue(headers, TRANSFER_ENCODING);
+        String contentLength = headerValue(headers, HttpHeader.CONTENT_LENGTH);
+        if ("HEAD".equals(request.getMethod()) || statusCode == 204 || statusCode == 304) {
+            connectionPool.release(connection, keepAlive);
+            content = "HEAD".equals(request.getMethod()) ? null
+                    : new ByteArrayInputStream(new byte[0]);
+        } else if (transferEncoding != null && transferEncoding.equalsIgnoreCase("chunked")) {
+            content = new ChunkedInputStream(connection, keepAlive);
+        } else if (contentLength != null) {
+            long length;
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Invalid Content-Length: " + contentLength);
+            }
+            content = new FixedLengthInputStream(connection, keepAlive, length);
+        } else {
+            // the content is delimited by the end of the connection
+            content = new FixedLengthInputStream(connection, false, Long.MAX_VALUE);
+        }
+
+        HttpResponse.Builder builder = HttpResponse.builder()
+                .statusCode(statusCode)
+                .statusText(statusText)
+                .content(content);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.build();
+    }
+
+    private static int parseStatusCode(String statusLine) throws ProtocolException {
+        int start = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || start == -1 || statusLine.length() < start + 4) {
+            throw new ProtocolException("Invalid status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(start + 1, start + 4));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Invalid status line: " + statusLine);
+        }
+    }
+
+    private static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new ProtocolException("Invalid header: " + line);
+            }
+            String key = line.substring(0, colon).trim();
+            // No AWS service return a list of header values, so it's safe to
+            // keep the first one.
+            if (!headers.containsKey(key)) {
+                headers.put(key, line.substring(colon + 1).trim());
+            }
+        }
+        if (line == null) {
+            throw new EOFException("Connection closed while reading headers");
+        }
+        return headers;
+    }
+
+    private static String headerValue(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a CRLF terminated line. Returns null if the stream ends before any
+     * character is read.
+     */
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    /**
+     * Base class of the response content streams. Hands the connection back
+     * to the pool once the content has been fully read, or when the stream is
+     * closed.
+     */
+    private abstract class ResponseInputStream extends InputStream {
+        protected final PooledConnection connection;
+        protected final InputStream in;
+        private final boolean keepAlive;
+        private final byte[] singleByte = new byte[1];
+        private boolean released;
+
+        ResponseInputStream(PooledConnection connection, boolean keepAlive) {
+            this.connection = connection;
+            this.in = connection.getInputStream();
+            this.keepAlive = keepAlive;
+        }
+
+        /** Returns true once the content has been read to the end. */
+        protected abstract boolean isComplete();
+
+        protected final void checkNotReleased() throws IOException {
+            if (released) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        /** Releases the connection, keeping it if the content is complete. */
+        protected final void release(boolean reusable) {
+            if (!released) {
+                released = true;
+                connectionPool.release(connection, reusable && keepAlive);
+            }
+        }
+
+        /** Releases the connection after a read failure. */
+        protected final IOException fail(IOException e) {
+            release(false);
+            return e;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int len = read(singleByte, 0, 1);
+            return len == -1 ? -1 : singleByte[0] & 0xff;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (released) {
+                return;
+            }
+            if (!isComplete() && keepAlive) {
+                drain();
+            }
+            release(isComplete());
+        }
+
+        private void drain() {
+            byte[] buffer = connectionPool.getBufferPool().acquire();
+            try {
+                long drained = 0;
+                int len;
+                while (!isComplete() && drained < MAX_DRAIN_BYTES
+                        && (len = read(buffer, 0, buffer.length)) != -1) {
+                    drained += len;
+                }
+            } catch (IOException e) {
+                log.debug("Unable to drain response content", e);
+            } finally {
+                connectionPool.getBufferPool().release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Content delimited by Content-Length, or by the end of the connection
+     * when the length is {@link Long#MAX_VALUE}.
+     */
+    private final class FixedLengthInputStream extends ResponseInputStream {
+        private long remaining;
+
+        FixedLengthInputStream(PooledConnection connection, boolean keepAlive, long length) {
+            super(connection, keepAlive);
+            this.remaining = length;
+            if (remaining == 0) {
+                release(true);
+            }
+        }
+
+        @Override
+        protected boolean isComplete() {
+            return remaining == 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            checkNotReleased();
+            int read;
+            try {
+                read = in.read(b, off, (int) Math.min(len, remaining));
+            } catch (IOException e) {
+                throw fail(e);
+            }
+            if (read == -1) {
+                if (remaining != Long.MAX_VALUE) {
+                    throw fail(new EOFException("Connection closed with " + remaining
+                            + " bytes of content remaining"));
+                }
+                remaining = 0;
+                release(false);
+                return -1;
+            }
+            if (remaining != Long.MAX_VALUE) {
+                remaining -= read;
+                if (remaining == 0) {
+                    release(true);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (remaining == 0) {
+                return 0;
+            }
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+
+    /** Content with chunked transfer encoding. */
+    private final class ChunkedInputStream extends ResponseInputStream {
+        private long chunkRemaining;
+        private boolean complete;
+
+        ChunkedInputStream(PooledConnection connection, boolean keepAlive) {
+            super(connection, keepAlive);
+        }
+
+        @Override
+        protected boolean isComplete() {
+            return complete;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (complete) {
+                return -1;
+            }
+            checkNotReleased();
+            try {
+                if (chunkRemaining == 0) {
+                    chunkRemaining = readChunkSize();
+                    if (chunkRemaining == 0) {
+                        // skip trailers
+                        readHeaders(in);
+                        complete = true;
+                        release(true);
+                        return -1;
+                    }
+                }
+                int read = in.read(b, off, (int) Math.min(len, chunkRemaining));
+                if (read == -1) {
+                    throw new EOFException("Connection closed in the middle of a chunk");
+                }
+                chunkRemaining -= read;
+                if (chunkRemaining == 0) {
+                    readLine(in);
+                }
+                return read;
+            } catch (IOException e) {
+                throw fail(e);
+            }
+        }
+
+        private long readChunkSize() throws IOException {
+            String line = readLine(in);
+            if (line == null) {
+                throw new EOFException("Connection closed before the last chunk");
+            }
+            int extension = line.indexOf(';');
+            if (extension != -1) {
+                line = line.substring(0, extension);
+            }
+            try {
+                return Long.parseLong(line.trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Invalid chunk size: " + line);
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (complete || chunkRemaining == 0) {
+                return 0;
+            }
+            return (int) Math.min(in.available(), chunkRemaining);
+        }
+    }
+}
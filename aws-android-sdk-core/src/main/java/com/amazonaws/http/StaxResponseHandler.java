@@ -58,6 +58,13 @@ public class StaxResponseHandler<T> implements HttpResponseHandler<AmazonWebServ
         }
     }
 
+    /**
+     * An idle parser per thread, reset with a new input for each response. A
+     * handler which is reentered on the same thread creates a parser of its
+     * own.
+     */
+    private static final ThreadLocal<XmlPullParser> idleParser = new ThreadLocal<XmlPullParser>();
+
     /**
      * Constructs a new response handler that will use the specified StAX
      * unmarshaller to unmarshall the service response and uses the specified
@@ -90,33 +97,57 @@ public class StaxResponseHandler<T> implements HttpResponseHandler<AmazonWebServ
         if (content == null)
             content = new ByteArrayInputStream("<eof/>".getBytes(StringUtils.UTF8));
 
-        XmlPullParser xpp = xmlPullParserFactory.newPullParser();
-        xpp.setInput(content, null);
-
-        AmazonWebServiceResponse<T> awsResponse = new AmazonWebServiceResponse<T>();
-        StaxUnmarshallerContext unmarshallerContext = new StaxUnmarshallerContext(xpp,
-                response.getHeaders());
-        unmarshallerContext.registerMetadataExpression("ResponseMetadata/RequestId", 2,
-                ResponseMetadata.AWS_REQUEST_ID);
-        unmarshallerContext.registerMetadataExpression("requestId", 2,
-                ResponseMetadata.AWS_REQUEST_ID);
-        registerAdditionalMetadataExpressions(unmarshallerContext);
-
-        T result = responseUnmarshaller.unmarshall(unmarshallerContext);
-        awsResponse.setResult(result);
-
-        Map<String, String> metadata = unmarshallerContext.getMetadata();
-        Map<String, String> responseHeaders = response.getHeaders();
-        if (responseHeaders != null) {
-            if (responseHeaders.get("x-amzn-RequestId") != null) {
-                metadata.put(ResponseMetadata.AWS_REQUEST_ID,
-                        responseHeaders.get("x-amzn-RequestId"));
+        XmlPullParser xpp = obtainParser();
+        try {
+            xpp.setInput(content, null);
+
+            AmazonWebServiceResponse<T> awsResponse = new AmazonWebServiceResponse<T>();
+            StaxUnmarshallerContext unmarshallerContext = new StaxUnmarshallerContext(xpp,
+                    response.getHeaders());
+            unmarshallerContext.registerMetadataExpression("ResponseMetadata/RequestId", 2,
+                    ResponseMetadata.AWS_REQUEST_ID);
+            unmarshallerContext.registerMetadataExpression("requestId", 2,
+                    ResponseMetadata.AWS_REQUEST_ID);
+            registerAdditionalMetadataExpressions(unmarshallerContext);
+
+            T result = responseUnmarshaller.unmarshall(unmarshallerContext);
+            awsResponse.setResult(result);
+
+            Map<String, String> metadata = unmarshallerContext.getMetadata();
+            Map<String, String> responseHeaders = response.getHeaders();
+            if (responseHeaders != null) {
+                if (responseHeaders.get("x-amzn-RequestId") != null) {
+                    metadata.put(ResponseMetadata.AWS_REQUEST_ID,
+                            responseHeaders.get("x-amzn-RequestId"));
+                }
             }
+            awsResponse.setResponseMetadata(new ResponseMetadata(metadata));
+
+            log.trace("Done parsing service response");
+            return awsResponse;
+        } finally {
+            releaseParser(xpp);
         }
-        awsResponse.setResponseMetadata(new ResponseMetadata(metadata));
+    }
 
-        log.trace("Done parsing service response");
-        return awsResponse;
+    private static XmlPullParser obtainParser() throws XmlPullParserException {
+        XmlPullParser xpp = idleParser.get();
+        if (xpp == null) {
+            return xmlPullParserFactory.newPullParser();
+        }
+        idleParser.set(null);
+        return xpp;
+    }
+
+    private static void releaseParser(XmlPullParser xpp) {
+        try {
+            // drops the reference to the response content
+            xpp.setInput(null);
+        } catch (XmlPullParserException e) {
+            // the parser can't be reset, so leave it to the garbage collector
+            return;
+        }
+        idleParser.set(xpp);
     }
 
     /**
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Future} whose result is set explicitly, used to chain the stages
+ * of an asynchronous request. Listeners added with
+ * {@link #addListener(Runnable)} run once the future is done, on the thread
+ * that completed it.
+ *
+ * @param <V> the type of the result
+ */
+public class SettableFuture<V> implements Future<V> {
+
+    private final List<Runnable> listeners = new ArrayList<Runnable>();
+    private boolean done;
+    private boolean cancelled;
+    private boolean mayInterruptIfRunning;
+    private V value;
+    private Throwable exception;
+    private Future<?> task;
+
+    /**
+     * Completes this future with the given value.
+     *
+     * @return true if the future was completed by this call; false if it was
+     *         already done
+     */
+    public boolean set(V value) {
+        return complete(value, null, false);
+    }
+
+    /**
+     * Completes this future with the given exception, which is thrown by
+     * {@link #get()} as the cause of an {@link ExecutionException}.
+     *
+     * @return true if the future was completed by this call; false if it was
+     *         already done
+     */
+    public boolean setException(Throwable exception) {
+        if (exception == null) {
+            throw new IllegalArgumentException("exception cannot be null");
+        }
+        return complete(null, exception, false);
+    }
+
+    /**
+     * Sets the task currently working towards the result of this future, so
+     * that cancelling this future also cancels it. The task is cancelled
+     * immediately if this future is already cancelled.
+     */
+    public void cancelWith(Future<?> task) {
+        boolean interrupt;
+        synchronized (this) {
+            if (!done) {
+                this.task = task;
+                return;
+            }
+            if (!cancelled) {
+                return;
+            }
+            interrupt = mayInterruptIfRunning;
+        }
+        task.cancel(interrupt);
+    }
+
+    /**
+     * Adds a listener which runs once this future is done, or immediately if
+     * it already is.
+     */
+    public void addListener(Runnable listener) {
+        synchronized (this) {
+            if (!done) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        Future<?> current;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.mayInterruptIfRunning = mayInterruptIfRunning;
+            current = task;
+        }
+        if (!complete(null, null, true)) {
+            return false;
+        }
+        if (current != null) {
+            current.cancel(mayInterruptIfRunning);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized V get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized V get(long timeout, TimeUnit unit) throws InterruptedException,
+            ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private V getResult() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (exception != null) {
+            throw new ExecutionException(exception);
+        }
+        return value;
+    }
+
+    private boolean complete(V value, Throwable exception, boolean cancelled) {
+        List<Runnable> completed;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.done = true;
+            this.value = value;
+            this.exception = exception;
+            this.cancelled = cancelled;
+            this.task = null;
+            completed = new ArrayList<Runnable>(listeners);
+            listeners.clear();
+            notifyAll();
+        }
+        for (Runnable listener : completed) {
+            listener.run();
+        }
+        return true;
+    }
+}
@@ -745,6 +745,9 @@ public enum AwsSdkMetrics {
             metricTypes.add(Field.HttpClientPoolAvailableCount);
             metricTypes.add(Field.HttpClientPoolLeasedCount);
             metricTypes.add(Field.HttpClientPoolPendingCount);
+            metricTypes.add(Field.HttpClientPoolHitCount);
+            metricTypes.add(Field.HttpClientPoolMissCount);
+            metricTypes.add(Field.HttpClientPoolEvictionCount);
             metricTypes.add(AWSServiceMetrics.HttpClientGetConnectionTime);
             syncReadOnly();
         }
@@ -53,6 +53,16 @@
  * This metric is collected from the respective <a
  * href="https://hc.apache.org/httpcomponents-core-ga/httpcore/apidocs/org/apache/http/pool/PoolStats.html"
  * >PoolStats</a>. before the connection of a request is obtained</li>
+ * <li>HttpClientPoolHitCount - Cumulative number of connection leases served by
+ * an idle connection of the {@link com.amazonaws.http.PooledHttpClient}.
+ * Collected before the connection of a request is obtained.</li>
+ * <li>HttpClientPoolMissCount - Cumulative number of connection leases of the
+ * {@link com.amazonaws.http.PooledHttpClient} which required a new connection.
+ * Collected before the connection of a request is obtained.</li>
+ * <li>HttpClientPoolEvictionCount - Cumulative number of idle connections of the
+ * {@link com.amazonaws.http.PooledHttpClient} closed because they expired or
+ * the pool was full. Collected before the connection of a request is
+ * obtained.</li>
  * <li>HttpRequestTime - Number of milliseconds taken for a logical request/response
  * round trip to AWS. Captured on a per request type level.< /li>
  * <li>HttpClientSendRequestTime - Number of milliseconds taken for a physical request
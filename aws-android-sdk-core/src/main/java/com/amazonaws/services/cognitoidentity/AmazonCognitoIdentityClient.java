@@ -203,7 +203,7 @@ public class AmazonCognitoIdentityClient extends AmazonWebServiceClient implemen
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AmazonCognitoIdentityClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -20,11 +20,10 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Contains the unmarshalling state for the parsing of an XML response. The
@@ -36,11 +35,22 @@ import java.util.Map;
  */
 public class StaxUnmarshallerContext {
 
+    /**
+     * Max number of expressions whose tokens are cached. The expressions come
+     * from the unmarshallers, so in practice they are far fewer.
+     */
+    private static final int MAX_CACHED_EXPRESSIONS = 4096;
+
+    /** The element names of each expression tested so far */
+    private static final Map<String, String[]> EXPRESSION_TOKENS =
+            new ConcurrentHashMap<String, String[]>();
+
     private int currentEventType;
     private final XmlPullParser xpp;
 
-    public final Deque<String> stack = new LinkedList<String>();
-    private String stackString = "";
+    /** The names of the elements enclosing the current position */
+    private String[] elementNames = new String[16];
+    private int depth;
 
     private Map<String, String> metadata = new HashMap<String, String>();
     private List<MetadataExpression> metadataExpressions = new ArrayList<MetadataExpression>();
@@ -114,7 +124,7 @@ public class StaxUnmarshallerContext {
      *         document being parsed.
      */
     public int getCurrentDepth() {
-        return stack.size();
+        return depth;
     }
 
     /**
@@ -145,16 +155,7 @@ public class StaxUnmarshallerContext {
         if (expression.equals("."))
             return true;
 
-        int index = -1;
-        while ((index = expression.indexOf("/", index + 1)) > -1) {
-            // Don't consider attributes a new depth level
-            if (expression.charAt(index + 1) != '@') {
-                startingStackDepth++;
-            }
-        }
-
-        return (getCurrentDepth() == startingStackDepth
-        && stackString.endsWith("/" + expression));
+        return testTokens(getTokens(expression), startingStackDepth);
     }
 
     /**
@@ -189,9 +190,9 @@ public class StaxUnmarshallerContext {
 
         // look for meta data
         if (currentEventType == XmlPullParser.START_TAG) {
-            for (MetadataExpression metadataExpression : metadataExpressions) {
-                if (testExpression(metadataExpression.expression,
-                        metadataExpression.targetDepth)) {
+            for (int i = 0; i < metadataExpressions.size(); i++) {
+                MetadataExpression metadataExpression = metadataExpressions.get(i);
+                if (testTokens(metadataExpression.tokens, metadataExpression.targetDepth)) {
                     metadata.put(metadataExpression.key, readText());
                     break;
                 }
@@ -238,23 +239,70 @@ public class StaxUnmarshallerContext {
      */
     private static class MetadataExpression {
         public String expression;
+        public String[] tokens;
         public int targetDepth;
         public String key;
 
         public MetadataExpression(String expression, int targetDepth, String key) {
             this.expression = expression;
+            this.tokens = getTokens(expression);
             this.targetDepth = targetDepth;
             this.key = key;
         }
     }
 
+    /**
+     * Returns the names in the given expression, split on '/'. Attribute
+     * names, which start with '@', don't count as a depth level.
+     */
+    private static String[] getTokens(String expression) {
+        String[] tokens = EXPRESSION_TOKENS.get(expression);
+        if (tokens == null) {
+            tokens = expression.split("/", -1);
+            if (EXPRESSION_TOKENS.size() < MAX_CACHED_EXPRESSIONS) {
+                EXPRESSION_TOKENS.put(expression, tokens);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Tests whether the element names of an expression match the innermost
+     * elements of the current position, with the first one at the depth
+     * following the given one.
+     */
+    private boolean testTokens(String[] tokens, int startingStackDepth) {
+        int expectedDepth = startingStackDepth + tokens.length - 1;
+        for (int i = 1; i < tokens.length; i++) {
+            // Don't consider attributes a new depth level
+            if (tokens[i].startsWith("@")) {
+                expectedDepth--;
+            }
+        }
+        if (depth != expectedDepth || tokens.length > depth) {
+            return false;
+        }
+
+        // attributes are not on the stack, so they never match an element
+        int offset = depth - tokens.length;
+        for (int i = tokens.length - 1; i >= 0; i--) {
+            if (!tokens[i].equals(elementNames[offset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void updateContext() {
         if (currentEventType == XmlPullParser.START_TAG) {
-            stackString += "/" + xpp.getName();
-            stack.push(stackString);
+            if (depth == elementNames.length) {
+                String[] grown = new String[depth * 2];
+                System.arraycopy(elementNames, 0, grown, 0, depth);
+                elementNames = grown;
+            }
+            elementNames[depth++] = xpp.getName();
         } else if (currentEventType == XmlPullParser.END_TAG) {
-            stack.pop();
-            stackString = stack.isEmpty() ? "" : stack.peek();
+            elementNames[--depth] = null;
         }
     }
 }
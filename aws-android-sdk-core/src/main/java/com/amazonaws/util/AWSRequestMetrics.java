@@ -123,6 +123,23 @@ public class AWSRequestMetrics {
          * /apidocs/org/apache/http/pool/PoolStats.html
          */
         HttpClientPoolPendingCount,
+        /**
+         * The cumulative number of connection leases served by an idle pooled
+         * connection of the {@link com.amazonaws.http.PooledHttpClient}.
+         */
+        HttpClientPoolHitCount,
+        /**
+         * The cumulative number of connection leases of the
+         * {@link com.amazonaws.http.PooledHttpClient} which required a new
+         * connection.
+         */
+        HttpClientPoolMissCount,
+        /**
+         * The cumulative number of idle connections of the
+         * {@link com.amazonaws.http.PooledHttpClient} closed because they
+         * expired or the pool was full.
+         */
+        HttpClientPoolEvictionCount,
         RetryPauseTime,
         // S3DownloadThroughput, // migrated to S3RequestMetric in the S3 clint
         // library
@@ -19,14 +19,28 @@ import com.amazonaws.ResponseMetadata;
 
 import java.util.LinkedHashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Cache of response metadata for recently executed requests for diagnostic
  * purposes. This cache has a max size and as entries are added, the oldest
  * entry is aged out once the max size has been reached.
+ * <p>
+ * Entries are spread over independently locked stripes by the identity of
+ * their key, so that concurrent requests rarely contend on the same lock. Each
+ * stripe holds its share of the max size and ages out its own oldest entry. A
+ * cache with a max size of zero or less holds nothing.
  */
 public class ResponseMetadataCache {
-    private final InternalCache internalCache;
+    /** Max number of stripes; caches smaller than this per stripe use fewer */
+    private static final int MAX_STRIPES = 16;
+    /** Min number of entries per stripe before the cache is split further */
+    private static final int MIN_STRIPE_SIZE = 16;
+
+    private final InternalCache[] stripes;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
 
     /**
      * Creates a new cache that will contain, at most the specified number of
@@ -35,7 +49,22 @@ public class ResponseMetadataCache {
      * @param maxEntries The maximum size of this cache.
      */
     public ResponseMetadataCache(int maxEntries) {
-        internalCache = new InternalCache(maxEntries);
+        if (maxEntries <= 0) {
+            stripes = new InternalCache[0];
+            return;
+        }
+        // a power of two, so the stripe is picked by masking the hash
+        int stripeCount = 1;
+        while (stripeCount < MAX_STRIPES
+                && maxEntries / (stripeCount * 2) >= MIN_STRIPE_SIZE) {
+            stripeCount *= 2;
+        }
+        stripes = new InternalCache[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // spread the remainder so the sizes add up to maxEntries
+            int size = maxEntries / stripeCount + (i < maxEntries % stripeCount ? 1 : 0);
+            stripes[i] = new InternalCache(size, evictionCount);
+        }
     }
 
     /**
@@ -45,10 +74,14 @@ public class ResponseMetadataCache {
      * @param obj The key by which to store the metadata.
      * @param metadata The metadata for this entry.
      */
-    public synchronized void add(Object obj, ResponseMetadata metadata) {
-        if (obj == null)
+    public void add(Object obj, ResponseMetadata metadata) {
+        if (obj == null || stripes.length == 0)
             return;
-        internalCache.put(System.identityHashCode(obj), metadata);
+        int key = System.identityHashCode(obj);
+        InternalCache stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.put(key, metadata);
+        }
     }
 
     /**
@@ -60,11 +93,63 @@ public class ResponseMetadataCache {
      *         otherwise null if no metadata is associated with that object.
      */
     public ResponseMetadata get(Object obj) {
+        if (stripes.length == 0)
+            return null;
         // System.identityHashCode isn't guaranteed to be unique
         // on all platforms, but should be reasonable enough to use
         // for a few requests at a time. We can always easily move
         // to our own unique IDs if needed.
-        return internalCache.get(System.identityHashCode(obj));
+        int key = System.identityHashCode(obj);
+        InternalCache stripe = stripeFor(key);
+        ResponseMetadata metadata;
+        synchronized (stripe) {
+            metadata = stripe.get(key);
+        }
+        if (metadata == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return metadata;
+    }
+
+    /**
+     * Returns the number of entries currently in this cache.
+     */
+    public int size() {
+        int size = 0;
+        for (InternalCache stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups which found metadata.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups which found no metadata.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of entries aged out to make room for newer ones.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private InternalCache stripeFor(int hash) {
+        // identity hashes may differ only in their high bits
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
     }
 
     /**
@@ -73,16 +158,23 @@ public class ResponseMetadataCache {
      * LRU(ish) cache that automatically evicts old entries.
      */
     private static final class InternalCache extends LinkedHashMap<Integer, ResponseMetadata> {
-        private int maxSize;
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+        private final AtomicLong evictionCount;
 
-        public InternalCache(int maxSize) {
+        public InternalCache(int maxSize, AtomicLong evictionCount) {
             super(maxSize);
             this.maxSize = maxSize;
+            this.evictionCount = evictionCount;
         }
 
         @Override
-        protected boolean removeEldestEntry(Entry eldest) {
-            return size() > maxSize;
+        protected boolean removeEldestEntry(Entry<Integer, ResponseMetadata> eldest) {
+            if (size() > maxSize) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
         }
     }
 }
@@ -16,8 +16,11 @@
 package com.amazonaws.util.json;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.StringUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -54,7 +57,14 @@ public class JsonUtils {
          * @see <a
          *      href="https://github.com/FasterXML/jackson-core">jackson-core</a>
          */
-        Jackson
+        Jackson,
+        /**
+         * An engine which parses service responses directly from their UTF-8
+         * encoded bytes, without decoding them to characters first, and
+         * shares the field name strings between responses. Readers created
+         * from a {@link Reader} and all writers are powered by Gson.
+         */
+        Utf8
     }
 
     /**
@@ -70,6 +80,9 @@ public class JsonUtils {
             case Jackson:
                 factory = new JacksonFactory();
                 break;
+            case Utf8:
+                factory = new Utf8JsonFactory();
+                break;
             default:
                 throw new RuntimeException("Unsupported json engine");
         }
@@ -101,6 +114,26 @@ public class JsonUtils {
         return factory.getJsonReader(in);
     }
 
+    /**
+     * Gets a JSON reader for UTF-8 encoded JSON. The {@link JsonEngine#Utf8}
+     * engine parses the stream directly, other engines read it through an
+     * {@link InputStreamReader}. If no JSON engine is available, an
+     * {@link AmazonClientException} will be thrown.
+     *
+     * @param in input stream of UTF-8 encoded JSON
+     * @return a JSON reader
+     */
+    public static AwsJsonReader getJsonReader(InputStream in) {
+        AwsJsonFactory factory = JsonUtils.factory;
+        if (factory == null) {
+            throw new IllegalStateException("Json engine is unavailable.");
+        }
+        if (factory instanceof Utf8JsonFactory) {
+            return ((Utf8JsonFactory) factory).getJsonReader(in);
+        }
+        return factory.getJsonReader(new InputStreamReader(in, StringUtils.UTF8));
+    }
+
     /**
      * Gets a JSON writer. If no JSON engine is available, an
      * {@link AmazonClientException} will be thrown.
@@ -0,0 +1,624 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * An implementation of {@link AwsJsonFactory} which parses UTF-8 encoded JSON
+ * directly from an {@link InputStream}, without decoding it through an
+ * {@link java.io.InputStreamReader} first. Field names are looked up in a
+ * shared table so that the names of the model shapes, which repeat in every
+ * response, are only allocated once. Readers created from a {@link Reader}
+ * and all writers are provided by {@link GsonFactory}.
+ */
+final class Utf8JsonFactory implements AwsJsonFactory {
+
+    private final GsonFactory gsonFactory = new GsonFactory();
+
+    @Override
+    public AwsJsonReader getJsonReader(Reader in) {
+        return gsonFactory.getJsonReader(in);
+    }
+
+    /**
+     * Creates a JSON reader which parses UTF-8 encoded JSON from the given
+     * stream.
+     *
+     * @param in input {@link InputStream}
+     * @return a JSON reader
+     */
+    public AwsJsonReader getJsonReader(InputStream in) {
+        return new Utf8JsonReader(in);
+    }
+
+    @Override
+    public AwsJsonWriter getJsonWriter(Writer out) {
+        return gsonFactory.getJsonWriter(out);
+    }
+
+    /**
+     * A table of field names keyed by their characters. Entries are
+     * overwritten on collision, so the table stays bounded no matter how
+     * many distinct names are seen. Strings are immutable, so the racy reads
+     * and writes of the table are safe.
+     */
+    static final class NameTable {
+        private static final int SIZE = 2048;
+        private static final int MAX_NAME_LENGTH = 64;
+        private static final String[] NAMES = new String[SIZE];
+
+        private NameTable() {
+        }
+
+        static String lookup(char[] chars, int length, int hash) {
+            if (length > MAX_NAME_LENGTH) {
+                return new String(chars, 0, length);
+            }
+            int index = hash & (SIZE - 1);
+            String name = NAMES[index];
+            if (name != null && matches(name, chars, length)) {
+                return name;
+            }
+            name = new String(chars, 0, length);
+            NAMES[index] = name;
+            return name;
+        }
+
+        private static boolean matches(String name, char[] chars, int length) {
+            if (name.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (name.charAt(i) != chars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static final class Utf8JsonReader implements AwsJsonReader {
+        private static final int BUFFER_SIZE = 1024 * 8;
+
+        /* Scopes of the JSON structure being read. */
+        private static final int EMPTY_ARRAY = 1;
+        private static final int NONEMPTY_ARRAY = 2;
+        private static final int EMPTY_OBJECT = 3;
+        private static final int DANGLING_NAME = 4;
+        private static final int NONEMPTY_OBJECT = 5;
+        private static final int EMPTY_DOCUMENT = 6;
+        private static final int NONEMPTY_DOCUMENT = 7;
+
+        /* Tokens which have been peeked but not consumed yet. */
+        private static final int PEEKED_NONE = 0;
+        private static final int PEEKED_BEGIN_OBJECT = 1;
+        private static final int PEEKED_END_OBJECT = 2;
+        private static final int PEEKED_BEGIN_ARRAY = 3;
+        private static final int PEEKED_END_ARRAY = 4;
+        private static final int PEEKED_TRUE = 5;
+        private static final int PEEKED_FALSE = 6;
+        private static final int PEEKED_NULL = 7;
+        private static final int PEEKED_STRING = 8;
+        private static final int PEEKED_NAME = 9;
+        private static final int PEEKED_NUMBER = 10;
+        private static final int PEEKED_EOF = 11;
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int pos = 0;
+        private int limit = 0;
+
+        private char[] chars = new char[64];
+        private int[] stack = new int[32];
+        private int stackSize = 0;
+        private int peeked = PEEKED_NONE;
+
+        Utf8JsonReader(InputStream in) {
+            this.in = in;
+            stack[stackSize++] = EMPTY_DOCUMENT;
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            expect(PEEKED_BEGIN_ARRAY, "BEGIN_ARRAY");
+            push(EMPTY_ARRAY);
+            peeked = PEEKED_NONE;
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            expect(PEEKED_END_ARRAY, "END_ARRAY");
+            stackSize--;
+            peeked = PEEKED_NONE;
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            expect(PEEKED_BEGIN_OBJECT, "BEGIN_OBJECT");
+            push(EMPTY_OBJECT);
+            peeked = PEEKED_NONE;
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            expect(PEEKED_END_OBJECT, "END_OBJECT");
+            stackSize--;
+            peeked = PEEKED_NONE;
+        }
+
+        @Override
+        public boolean isContainer() throws IOException {
+            int p = peekInternal();
+            return p == PEEKED_BEGIN_ARRAY || p == PEEKED_BEGIN_OBJECT;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            int p = peekInternal();
+            return p != PEEKED_END_OBJECT && p != PEEKED_END_ARRAY && p != PEEKED_EOF;
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            expect(PEEKED_NAME, "FIELD_NAME");
+            String name = readString(true);
+            peeked = PEEKED_NONE;
+            return name;
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            int p = peekInternal();
+            String value;
+            switch (p) {
+                case PEEKED_STRING:
+                    value = readString(false);
+                    break;
+                case PEEKED_NUMBER:
+                    value = readNumber();
+                    break;
+                case PEEKED_TRUE:
+                    value = "true";
+                    break;
+                case PEEKED_FALSE:
+                    value = "false";
+                    break;
+                case PEEKED_NULL:
+                    value = null;
+                    break;
+                default:
+                    throw new IllegalStateException("Expected a value but was " + peek());
+            }
+            peeked = PEEKED_NONE;
+            return value;
+        }
+
+        @Override
+        public AwsJsonToken peek() throws IOException {
+            int p;
+            try {
+                p = peekInternal();
+            } catch (EOFException e) {
+                return null;
+            }
+            switch (p) {
+                case PEEKED_BEGIN_OBJECT:
+                    return AwsJsonToken.BEGIN_OBJECT;
+                case PEEKED_END_OBJECT:
+                    return AwsJsonToken.END_OBJECT;
+                case PEEKED_BEGIN_ARRAY:
+                    return AwsJsonToken.BEGIN_ARRAY;
+                case PEEKED_END_ARRAY:
+                    return AwsJsonToken.END_ARRAY;
+                case PEEKED_NAME:
+                    return AwsJsonToken.FIELD_NAME;
+                case PEEKED_TRUE:
+                case PEEKED_FALSE:
+                    return AwsJsonToken.VALUE_BOOLEAN;
+                case PEEKED_NULL:
+                    return AwsJsonToken.VALUE_NULL;
+                case PEEKED_STRING:
+                    return AwsJsonToken.VALUE_STRING;
+                case PEEKED_NUMBER:
+                    return AwsJsonToken.VALUE_NUMBER;
+                case PEEKED_EOF:
+                    return null;
+                default:
+                    return AwsJsonToken.UNKNOWN;
+            }
+        }
+
+        @Override
+        public void skipValue() throws IOException {
+            int depth = 0;
+            do {
+                int p = peekInternal();
+                switch (p) {
+                    case PEEKED_BEGIN_ARRAY:
+                        push(EMPTY_ARRAY);
+                        depth++;
+                        break;
+                    case PEEKED_BEGIN_OBJECT:
+                        push(EMPTY_OBJECT);
+                        depth++;
+                        break;
+                    case PEEKED_END_ARRAY:
+                    case PEEKED_END_OBJECT:
+                        stackSize--;
+                        depth--;
+                        break;
+                    case PEEKED_NAME:
+                    case PEEKED_STRING:
+                        skipString();
+                        break;
+                    case PEEKED_NUMBER:
+                        skipNumber();
+                        break;
+                    case PEEKED_EOF:
+                        throw new EOFException("End of input");
+                    default:
+                        break;
+                }
+                peeked = PEEKED_NONE;
+            } while (depth > 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            peeked = PEEKED_NONE;
+            stackSize = 0;
+            in.close();
+        }
+
+        private void expect(int expected, String name) throws IOException {
+            if (peekInternal() != expected) {
+                throw new IllegalStateException("Expected " + name + " but was " + peek());
+            }
+        }
+
+        private void push(int scope) {
+            if (stackSize == stack.length) {
+                int[] newStack = new int[stackSize * 2];
+                System.arraycopy(stack, 0, newStack, 0, stackSize);
+                stack = newStack;
+            }
+            stack[stackSize++] = scope;
+        }
+
+        private int peekInternal() throws IOException {
+            if (peeked == PEEKED_NONE) {
+                peeked = doPeek();
+            }
+            return peeked;
+        }
+
+        private int doPeek() throws IOException {
+            if (stackSize == 0) {
+                throw new IllegalStateException("JsonReader is closed");
+            }
+            int scope = stack[stackSize - 1];
+            if (scope == EMPTY_ARRAY) {
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+            } else if (scope == NONEMPTY_ARRAY) {
+                int c = nextNonWhitespace(true);
+                if (c == ']') {
+                    return PEEKED_END_ARRAY;
+                } else if (c != ',') {
+                    throw syntaxError("Unterminated array");
+                }
+            } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+                stack[stackSize - 1] = DANGLING_NAME;
+                if (scope == NONEMPTY_OBJECT) {
+                    int c = nextNonWhitespace(true);
+                    if (c == '}') {
+                        return PEEKED_END_OBJECT;
+                    } else if (c != ',') {
+                        throw syntaxError("Unterminated object");
+                    }
+                }
+                int c = nextNonWhitespace(true);
+                if (c == '"') {
+                    return PEEKED_NAME;
+                } else if (c == '}' && scope == EMPTY_OBJECT) {
+                    return PEEKED_END_OBJECT;
+                }
+                throw syntaxError("Expected name");
+            } else if (scope == DANGLING_NAME) {
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace(true) != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+            } else if (scope == EMPTY_DOCUMENT) {
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                if (nextNonWhitespace(false) == -1) {
+                    return PEEKED_EOF;
+                }
+                pos--;
+            } else if (scope == NONEMPTY_DOCUMENT) {
+                if (nextNonWhitespace(false) == -1) {
+                    return PEEKED_EOF;
+                }
+                throw syntaxError("Expected end of document");
+            }
+
+            int c = nextNonWhitespace(true);
+            switch (c) {
+                case ']':
+                    if (scope == EMPTY_ARRAY) {
+                        return PEEKED_END_ARRAY;
+                    }
+                    throw syntaxError("Unexpected value");
+                case '"':
+                    return PEEKED_STRING;
+                case '[':
+                    return PEEKED_BEGIN_ARRAY;
+                case '{':
+                    return PEEKED_BEGIN_OBJECT;
+                case 't':
+                    readLiteral("rue");
+                    return PEEKED_TRUE;
+                case 'f':
+                    readLiteral("alse");
+                    return PEEKED_FALSE;
+                case 'n':
+                    readLiteral("ull");
+                    return PEEKED_NULL;
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        pos--; // the number is read when it's consumed
+                        return PEEKED_NUMBER;
+                    }
+                    throw syntaxError("Unexpected character '" + (char) c + "'");
+            }
+        }
+
+        /**
+         * Returns the next non whitespace byte and consumes it. At the end of
+         * the stream, returns -1 or throws an {@link EOFException} if
+         * throwOnEof.
+         */
+        private int nextNonWhitespace(boolean throwOnEof) throws IOException {
+            while (true) {
+                if (pos == limit && !fill()) {
+                    if (throwOnEof) {
+                        throw new EOFException("End of input");
+                    }
+                    return -1;
+                }
+                int c = buffer[pos++] & 0xff;
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                    return c;
+                }
+            }
+        }
+
+        /**
+         * Refills the buffer once it's been consumed. Returns false at the end
+         * of the stream.
+         */
+        private boolean fill() throws IOException {
+            int read = in.read(buffer, 0, buffer.length);
+            while (read == 0) {
+                read = in.read(buffer, 0, buffer.length);
+            }
+            if (read == -1) {
+                return false;
+            }
+            pos = 0;
+            limit = read;
+            return true;
+        }
+
+        private int nextByte() throws IOException {
+            if (pos == limit && !fill()) {
+                throw new EOFException("Unterminated string");
+            }
+            return buffer[pos++] & 0xff;
+        }
+
+        private void readLiteral(String rest) throws IOException {
+            for (int i = 0; i < rest.length(); i++) {
+                if (pos == limit && !fill()) {
+                    throw new EOFException("End of input");
+                }
+                if (buffer[pos++] != rest.charAt(i)) {
+                    throw syntaxError("Unexpected literal");
+                }
+            }
+        }
+
+        /**
+         * Reads a string whose opening quote has already been consumed,
+         * decoding the UTF-8 bytes and escape sequences into the scratch
+         * buffer. Names are returned from the {@link NameTable}.
+         */
+        private String readString(boolean isName) throws IOException {
+            char[] chars = this.chars;
+            int length = 0;
+            int hash = 0;
+            while (true) {
+                // fast path for runs of ascii bytes within the buffer
+                int p = pos;
+                int l = limit;
+                byte[] b = buffer;
+                while (p < l) {
+                    int c = b[p];
+                    if (c == '"' || c == '\\' || c < 0x20) {
+                        break;
+                    }
+                    if (length == chars.length) {
+                        chars = grow(length);
+                    }
+                    chars[length++] = (char) c;
+                    hash = 31 * hash + c;
+                    p++;
+                }
+                pos = p;
+
+                int c = nextByte();
+                if (c == '"') {
+                    break;
+                }
+                char decoded;
+                if (c == '\\') {
+                    decoded = readEscape();
+                } else if (c < 0x20) {
+                    throw syntaxError("Unescaped control character in string");
+                } else if (c < 0x80) {
+                    decoded = (char) c; // the buffer was refilled
+                } else {
+                    int codePoint = readMultiByte(c);
+                    if (codePoint > 0xffff) {
+                        if (length + 2 > chars.length) {
+                            chars = grow(length + 1);
+                        }
+                        int supplementary = codePoint - 0x10000;
+                        char high = (char) ((supplementary >>> 10) + 0xd800);
+                        chars[length++] = high;
+                        hash = 31 * hash + high;
+                        decoded = (char) ((supplementary & 0x3ff) + 0xdc00);
+                    } else {
+                        decoded = (char) codePoint;
+                    }
+                }
+                if (length == chars.length) {
+                    chars = grow(length);
+                }
+                chars[length++] = decoded;
+                hash = 31 * hash + decoded;
+            }
+            return isName ? NameTable.lookup(chars, length, hash)
+                    : new String(chars, 0, length);
+        }
+
+        private char[] grow(int length) {
+            char[] newChars = new char[Math.max(chars.length * 2, length + 2)];
+            System.arraycopy(chars, 0, newChars, 0, length);
+            chars = newChars;
+            return newChars;
+        }
+
+        private char readEscape() throws IOException {
+            int c = nextByte();
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    return (char) c;
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(nextByte(), 16);
+                        if (digit == -1) {
+                            throw syntaxError("Invalid unicode escape");
+                        }
+                        value = (value << 4) | digit;
+                    }
+                    return (char) value;
+                default:
+                    throw syntaxError("Invalid escape sequence");
+            }
+        }
+
+        private int readMultiByte(int first) throws IOException {
+            int codePoint;
+            int continuations;
+            if ((first & 0xe0) == 0xc0) {
+                codePoint = first & 0x1f;
+                continuations = 1;
+            } else if ((first & 0xf0) == 0xe0) {
+                codePoint = first & 0x0f;
+                continuations = 2;
+            } else if ((first & 0xf8) == 0xf0) {
+                codePoint = first & 0x07;
+                continuations = 3;
+            } else {
+                throw syntaxError("Invalid UTF-8 byte");
+            }
+            for (int i = 0; i < continuations; i++) {
+                int c = nextByte();
+                if ((c & 0xc0) != 0x80) {
+                    throw syntaxError("Invalid UTF-8 byte");
+                }
+                codePoint = (codePoint << 6) | (c & 0x3f);
+            }
+            return codePoint;
+        }
+
+        private void skipString() throws IOException {
+            while (true) {
+                int c = nextByte();
+                if (c == '"') {
+                    return;
+                } else if (c == '\\') {
+                    nextByte();
+                }
+            }
+        }
+
+        private String readNumber() throws IOException {
+            int length = 0;
+            while (true) {
+                if (pos == limit && !fill()) {
+                    break;
+                }
+                int c = buffer[pos];
+                if (!isNumberChar(c)) {
+                    break;
+                }
+                if (length == chars.length) {
+                    grow(length);
+                }
+                chars[length++] = (char) c;
+                pos++;
+            }
+            if (length == 0) {
+                throw syntaxError("Expected a number");
+            }
+            return new String(chars, 0, length);
+        }
+
+        private void skipNumber() throws IOException {
+            while ((pos < limit || fill()) && isNumberChar(buffer[pos])) {
+                pos++;
+            }
+        }
+
+        private static boolean isNumberChar(int c) {
+            return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.'
+                    || c == 'e' || c == 'E';
+        }
+
+        private IOException syntaxError(String message) {
+            return new IOException("Malformed JSON: " + message);
+        }
+    }
+}
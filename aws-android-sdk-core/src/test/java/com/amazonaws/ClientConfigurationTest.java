@@ -91,6 +91,16 @@ public class ClientConfigurationTest {
         c.withReaper(true);
         assertTrue(c.useReaper());
 
+        c.withConnectionPool(true);
+        assertTrue(c.useConnectionPool());
+        c.setUseConnectionPool(false);
+        assertFalse(c.useConnectionPool());
+
+        c.withConnectionMaxIdleMillis(1);
+        assertEquals(c.getConnectionMaxIdleMillis(), 1);
+        c.setConnectionMaxIdleMillis(2);
+        assertEquals(c.getConnectionMaxIdleMillis(), 2);
+
         RetryPolicy rp = new RetryPolicy(null, null, 0, false);
         c.withRetryPolicy(rp);
         assertSame(rp, c.getRetryPolicy());
@@ -137,6 +147,8 @@ public class ClientConfigurationTest {
         c.withProxyPort(1);
         c.withProxyUsername("user");
         c.withReaper(true);
+        c.withConnectionPool(true);
+        c.withConnectionMaxIdleMillis(1);
         RetryPolicy rp = new RetryPolicy(null, null, 0, false);
         c.withRetryPolicy(rp);
         c.withSignerOverride("over");
@@ -156,6 +168,8 @@ public class ClientConfigurationTest {
         assertEquals(c.getProxyPort(), n.getProxyPort());
         assertEquals(c.getProxyUsername(), n.getProxyUsername());
         assertEquals(c.useReaper(), n.useReaper());
+        assertEquals(c.useConnectionPool(), n.useConnectionPool());
+        assertEquals(c.getConnectionMaxIdleMillis(), n.getConnectionMaxIdleMillis());
         assertEquals(c.getRetryPolicy(), n.getRetryPolicy());
         assertEquals(c.getSignerOverride(), n.getSignerOverride());
         assertArrayEquals(c.getSocketBufferSizeHints(), n.getSocketBufferSizeHints());
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.DefaultRequest;
 import com.amazonaws.Request;
+import com.amazonaws.http.HttpMethodName;
 import com.amazonaws.util.StringUtils;
 
 import org.junit.Assert;
@@ -100,6 +101,74 @@ public class AWS4SignerTest {
         assertFalse(signer.needsSign("User-Agent"));
     }
 
+    @Test
+    public void testSigningKeyIsCached() throws Exception {
+        AWS4Signer.clearSigningKeyCache();
+        AWSCredentials credentials = new BasicAWSCredentials("access", "secret");
+        Calendar c = new GregorianCalendar();
+        c.setTimeZone(TimeZone.getTimeZone("UTC"));
+        c.set(1981, 1, 16, 6, 30, 0);
+        signer.overrideDate(c.getTime());
+
+        Request<?> first = generateBasicRequest();
+        signer.sign(first, credentials);
+        Request<?> second = generateBasicRequest();
+        signer.sign(second, credentials);
+        assertEquals(first.getHeaders().get("Authorization"),
+                second.getHeaders().get("Authorization"));
+        assertEquals(1, AWS4Signer.getSigningKeyCacheSize());
+
+        // a new day derives a new key in place of the old one
+        c.add(Calendar.DAY_OF_MONTH, 1);
+        signer.overrideDate(c.getTime());
+        Request<?> nextDay = generateBasicRequest();
+        signer.sign(nextDay, credentials);
+        assertTrue(nextDay.getHeaders().get("Authorization").contains("/19810217/"));
+        assertFalse(first.getHeaders().get("Authorization").equals(
+                nextDay.getHeaders().get("Authorization")));
+        assertEquals(1, AWS4Signer.getSigningKeyCacheSize());
+
+        // other credentials get their own key
+        signer.sign(generateBasicRequest(), new BasicAWSCredentials("access", "other"));
+        assertEquals(2, AWS4Signer.getSigningKeyCacheSize());
+    }
+
+    @Test
+    public void testCanonicalRequestUsesOverriddenHeaderHooks() {
+        AWS4Signer hostOnlySigner = new AWS4Signer() {
+            @Override
+            protected String getCanonicalizedHeaderString(Request<?> request) {
+                return "host:" + request.getHeaders().get("Host") + "\n";
+            }
+
+            @Override
+            protected String getSignedHeadersString(Request<?> request) {
+                return "host";
+            }
+        };
+        Request<?> request = generateBasicRequest();
+        request.setHttpMethod(HttpMethodName.GET);
+
+        assertEquals("GET\n/\n\n"
+                + "host:demo.us-east-1.amazonaws.com\n\n"
+                + "host\n"
+                + "sha",
+                hostOnlySigner.getCanonicalRequest(request, "sha"));
+    }
+
+    @Test
+    public void testCanonicalizedHeaders() {
+        Request<?> request = generateBasicRequest();
+        request.addHeader("X-Amz-Meta", " a\t\tb \n c ");
+        request.addHeader("Content-Type", "not signed");
+        assertEquals("host:demo.us-east-1.amazonaws.com\n"
+                + "x-amz-archive-description:test test\n"
+                + "x-amz-meta: a b c \n",
+                signer.getCanonicalizedHeaderString(request));
+        assertEquals("host;x-amz-archive-description;x-amz-meta",
+                signer.getSignedHeadersString(request));
+    }
+
     /**
      * Tests that if passed anonymous credentials, signer will not generate a
      * signature
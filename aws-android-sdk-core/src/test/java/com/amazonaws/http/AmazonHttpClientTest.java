@@ -16,6 +16,8 @@
 package com.amazonaws.http;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -29,6 +31,7 @@ import com.amazonaws.DefaultRequest;
 import com.amazonaws.Request;
 import com.amazonaws.RequestClientOptions;
 import com.amazonaws.Response;
+import com.amazonaws.ResponseMetadata;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AnonymousAWSCredentials;
 import com.amazonaws.auth.Signer;
@@ -36,6 +39,7 @@ import com.amazonaws.handlers.CredentialsRequestHandler;
 import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.internal.CRC32MismatchException;
 import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.retry.RetryPolicy;
 import com.amazonaws.util.AWSRequestMetrics;
 
 import org.easymock.Capture;
@@ -50,7 +54,14 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class AmazonHttpClientTest {
     private HttpClient httpClient;
@@ -135,6 +146,52 @@ public class AmazonHttpClientTest {
         EasyMock.verify(httpClient, ec);
     }
 
+    @Test
+    public void testResponseMetadataCache() throws IOException {
+        HttpResponse response = HttpResponse.builder()
+                .content(new ByteArrayInputStream(new byte[0]))
+                .statusCode(200)
+                .statusText("OK")
+                .build();
+        EasyMock.expect(httpClient.execute(EasyMock.<HttpRequest> anyObject()))
+                .andReturn(response).times(2);
+        EasyMock.replay(httpClient);
+
+        HttpResponseHandler<AmazonWebServiceResponse<String>> responseHandler =
+                new HttpResponseHandler<AmazonWebServiceResponse<String>>() {
+                    @Override
+                    public AmazonWebServiceResponse<String> handle(HttpResponse response) {
+                        AmazonWebServiceResponse<String> awsResponse =
+                                new AmazonWebServiceResponse<String>();
+                        awsResponse.setResult("Result");
+                        awsResponse.setResponseMetadata(new ResponseMetadata(
+                                Collections.singletonMap(ResponseMetadata.AWS_REQUEST_ID, "42")));
+                        return awsResponse;
+                    }
+
+                    @Override
+                    public boolean needsConnectionLeftOpen() {
+                        return false;
+                    }
+                };
+
+        AmazonWebServiceRequest original = new AmazonWebServiceRequest() {
+        };
+        Request<?> request = new DefaultRequest<Object>(original, "testsvc");
+        request.setEndpoint(URI.create("http://testsvc.region.amazonaws.com"));
+
+        // disabled by default
+        assertNull(client.getResponseMetadataCache());
+        client.execute(request, responseHandler, null, new ExecutionContext());
+        assertNull(client.getResponseMetadataForRequest(original));
+
+        AmazonHttpClient cachingClient = new AmazonHttpClient(
+                new ClientConfiguration().withResponseMetadataCacheSize(10), httpClient);
+        cachingClient.execute(request, responseHandler, null, new ExecutionContext());
+        assertEquals("42", cachingClient.getResponseMetadataForRequest(original).getRequestId());
+        assertEquals(1, cachingClient.getResponseMetadataCache().getHitCount());
+    }
+
     @Test
     public void testRetryIOExceptionFromExecute() throws IOException {
         IOException exception = new IOException("BOOM");
@@ -218,6 +275,125 @@ public class AmazonHttpClientTest {
         EasyMock.verify(httpClient);
     }
 
+    @Test
+    public void testExecuteAsyncRetriesWithoutHoldingThread() throws Exception {
+        IOException exception = new IOException("BOOM");
+        HttpResponse successfulResponse = HttpResponse.builder().statusCode(200).content(null)
+                .build();
+
+        EasyMock
+                .expect(httpClient.execute(EasyMock.<HttpRequest> anyObject()))
+                .andThrow(exception)
+                .times(2);
+        EasyMock
+                .expect(httpClient.execute(EasyMock.<HttpRequest> anyObject()))
+                .andReturn(successfulResponse);
+
+        EasyMock.replay(httpClient);
+
+        RetryPolicy retryPolicy = new RetryPolicy(null, new RetryPolicy.BackoffStrategy() {
+            @Override
+            public long delayBeforeNextRetry(AmazonWebServiceRequest originalRequest,
+                    AmazonClientException exception, int retriesAttempted) {
+                return 200;
+            }
+        }, 3, false);
+        client = new AmazonHttpClient(new ClientConfiguration().withRetryPolicy(retryPolicy),
+                httpClient);
+
+        Request<?> request = new DefaultRequest<Object>("testsvc");
+        request.setEndpoint(java.net.URI.create(
+                "http://testsvc.region.amazonaws.com"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Response<String>> future = client.executeAsync(request,
+                    resultHandler("Result"), null, new ExecutionContext(), executor);
+            // the only executor thread is free to run other tasks while the
+            // retries are pending
+            assertFalse(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return future.isDone();
+                }
+            }).get(10, TimeUnit.SECONDS));
+            assertEquals("Result", future.get(10, TimeUnit.SECONDS).getAwsResponse());
+        } finally {
+            executor.shutdown();
+        }
+
+        EasyMock.verify(httpClient);
+    }
+
+    @Test
+    public void testExecuteAsyncFailure() throws Exception {
+        IOException exception = new IOException("BOOM");
+
+        EasyMock
+                .expect(httpClient.execute(EasyMock.<HttpRequest> anyObject()))
+                .andThrow(exception)
+                .times(4);
+
+        EasyMock.replay(httpClient);
+
+        final List<AmazonClientException> errors = new ArrayList<AmazonClientException>();
+        RequestHandler2 handler = new RequestHandler2() {
+            @Override
+            public void beforeRequest(Request<?> request) {
+            }
+
+            @Override
+            public void afterResponse(Request<?> request, Response<?> response) {
+            }
+
+            @Override
+            public void afterError(Request<?> request, Response<?> response, Exception e) {
+                errors.add((AmazonClientException) e);
+            }
+        };
+        List<RequestHandler2> handlers = new ArrayList<RequestHandler2>();
+        handlers.add(handler);
+        ExecutionContext context = new ExecutionContext(handlers, false, null);
+
+        Request<?> request = new DefaultRequest<Object>("testsvc");
+        request.setEndpoint(java.net.URI.create(
+                "http://testsvc.region.amazonaws.com"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Response<String>> future = client.executeAsync(request,
+                    resultHandler("Result"), null, context, executor);
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail("No exception when request repeatedly fails!");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AmazonClientException);
+            assertSame(exception, e.getCause().getCause());
+            assertEquals(1, errors.size());
+            assertSame(e.getCause(), errors.get(0));
+        } finally {
+            executor.shutdown();
+        }
+
+        EasyMock.verify(httpClient);
+    }
+
+    private static HttpResponseHandler<AmazonWebServiceResponse<String>> resultHandler(
+            final String result) {
+        return new HttpResponseHandler<AmazonWebServiceResponse<String>>() {
+            @Override
+            public AmazonWebServiceResponse<String> handle(HttpResponse response) {
+                AmazonWebServiceResponse<String> awsResponse = new AmazonWebServiceResponse<String>();
+                awsResponse.setResult(result);
+                return awsResponse;
+            }
+
+            @Override
+            public boolean needsConnectionLeftOpen() {
+                return false;
+            }
+        };
+    }
+
     @Test
     public void testHandleResponse() throws IOException {
 
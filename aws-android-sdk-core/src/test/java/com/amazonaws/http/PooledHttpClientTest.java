@@ -0,0 +1,329 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PooledHttpClientTest {
+
+    private StubServer server;
+    private PooledHttpClient client;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubServer();
+        client = new PooledHttpClient(new ClientConfiguration().withReaper(false));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 5\r\nx-amz-request-id: 1\r\n\r\nhello");
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nworld");
+
+        HttpResponse first = client.execute(get());
+        assertEquals(200, first.getStatusCode());
+        assertEquals("OK", first.getStatusText());
+        assertEquals("1", first.getHeaders().get("x-amz-request-id"));
+        assertEquals("hello", read(first));
+        assertEquals(1, client.getConnectionPool().getAvailableCount());
+
+        HttpResponse second = client.execute(get());
+        assertEquals("world", read(second));
+
+        assertEquals(1, server.connectionCount());
+        HttpConnectionPool pool = client.getConnectionPool();
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    @Test
+    public void testChunkedContent() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\n\r\n");
+        server.respond("HTTP/1.1 204 No Content\r\n\r\n");
+
+        assertEquals("hello world", read(client.execute(get())));
+        assertEquals(204, client.execute(get()).getStatusCode());
+        assertEquals(1, server.connectionCount());
+    }
+
+    @Test
+    public void testConnectionCloseIsNotReused() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 2\r\n\r\nok");
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+
+        assertEquals("ok", read(client.execute(get())));
+        assertEquals(0, client.getConnectionPool().getAvailableCount());
+        assertEquals("ok", read(client.execute(get())));
+        assertEquals(2, server.connectionCount());
+    }
+
+    @Test
+    public void testStaleConnectionIsRetried() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+        server.closeAfterResponse();
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nretry");
+
+        assertEquals("ok", read(client.execute(get())));
+        // wait for the server to close the connection
+        Thread.sleep(100);
+        assertEquals("retry", read(client.execute(post("body"))));
+        assertEquals(2, server.connectionCount());
+        assertEquals("body", server.lastRequestBody());
+    }
+
+    @Test
+    public void testHeadRequest() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\n");
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+
+        HttpResponse response = client.execute(new HttpRequest("HEAD", server.uri()));
+        assertNull(response.getContent());
+        assertEquals("ok", read(client.execute(get())));
+        assertEquals(1, server.connectionCount());
+    }
+
+    @Test
+    public void testRequestContent() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+
+        client.execute(post("{\"TableName\":\"t\"}"));
+        assertEquals("{\"TableName\":\"t\"}", server.lastRequestBody());
+        assertTrue(server.lastRequestHead().startsWith("POST /path?a=b HTTP/1.1\r\n"));
+        assertTrue(server.lastRequestHead().contains("Host: localhost:" + server.port()));
+    }
+
+    @Test
+    public void testCloseIdleConnections() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+
+        assertEquals("ok", read(client.execute(get())));
+        HttpConnectionPool pool = client.getConnectionPool();
+        assertEquals(0, pool.closeIdleConnections(1, TimeUnit.MINUTES));
+        Thread.sleep(10);
+        assertEquals(1, pool.closeIdleConnections(1, TimeUnit.MILLISECONDS));
+        assertEquals(0, pool.getAvailableCount());
+        assertEquals(1, pool.getEvictionCount());
+    }
+
+    @Test
+    public void testPartiallyReadContentIsDrained() throws Exception {
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 11\r\n\r\nhello world");
+        server.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+
+        HttpResponse response = client.execute(get());
+        InputStream content = response.getRawContent();
+        assertEquals('h', content.read());
+        content.close();
+        assertEquals("ok", read(client.execute(get())));
+        assertEquals(1, server.connectionCount());
+    }
+
+    @Test
+    public void testReaperRegistration() {
+        IdleConnectionReaper.shutdown();
+        PooledHttpClient reaped = new PooledHttpClient(new ClientConfiguration());
+        assertEquals(1, IdleConnectionReaper.size());
+        reaped.shutdown();
+        assertEquals(0, IdleConnectionReaper.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProxyIsNotSupported() {
+        new PooledHttpClient(new ClientConfiguration().withProxyHost("proxy"));
+    }
+
+    @Test
+    public void testHttpClientsSelection() {
+        ClientConfiguration config = new ClientConfiguration().withReaper(false);
+        assertTrue(HttpClients.create(config) instanceof UrlHttpClient);
+        HttpClient pooled = HttpClients.create(config.withConnectionPool(true));
+        assertTrue(pooled instanceof PooledHttpClient);
+        pooled.shutdown();
+    }
+
+    private HttpRequest get() {
+        return new HttpRequest("GET", server.uri());
+    }
+
+    private HttpRequest post(String body) {
+        byte[] bytes = body.getBytes(StringUtils.UTF8);
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(HttpHeader.CONTENT_LENGTH, String.valueOf(bytes.length));
+        headers.put(HttpHeader.CONTENT_TYPE, "application/x-amz-json-1.0");
+        InputStream content = new ByteArrayInputStream(bytes);
+        content.mark(-1);
+        return new HttpRequest("POST", URI.create(server.uri() + "/path?a=b"), headers, content);
+    }
+
+    private static String read(HttpResponse response) throws IOException {
+        return IOUtils.toString(response.getContent());
+    }
+
+    /**
+     * A minimal HTTP/1.1 server which replies to each request with the next
+     * scripted response, in order.
+     */
+    private static class StubServer implements Runnable {
+        private final ServerSocket serverSocket;
+        private final LinkedList<String> responses = new LinkedList<String>();
+        private final List<Socket> sockets = new ArrayList<Socket>();
+        private final AtomicInteger connections = new AtomicInteger();
+        private volatile boolean closeAfterResponse;
+        private volatile String lastRequestHead;
+        private volatile String lastRequestBody;
+
+        StubServer() throws IOException {
+            serverSocket = new ServerSocket(0);
+            Thread thread = new Thread(this, "stub-http-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        URI uri() {
+            return URI.create("http://localhost:" + port());
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        synchronized void respond(String response) {
+            responses.add(response);
+        }
+
+        void closeAfterResponse() {
+            closeAfterResponse = true;
+        }
+
+        int connectionCount() {
+            return connections.get();
+        }
+
+        String lastRequestHead() {
+            return lastRequestHead;
+        }
+
+        String lastRequestBody() {
+            return lastRequestBody;
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    synchronized (sockets) {
+                        sockets.add(socket);
+                    }
+                    Thread handler = new Thread() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    };
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try {
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+                while (true) {
+                    StringBuilder head = new StringBuilder();
+                    String line;
+                    int contentLength = 0;
+                    while ((line = PooledHttpClient.readLine(in)) != null && !line.isEmpty()) {
+                        head.append(line).append("\r\n");
+                        if (line.startsWith(HttpHeader.CONTENT_LENGTH + ":")) {
+                            contentLength = Integer.parseInt(line.substring(15).trim());
+                        }
+                    }
+                    if (line == null) {
+                        return;
+                    }
+                    byte[] body = new byte[contentLength];
+                    int read = 0;
+                    while (read < contentLength) {
+                        read += in.read(body, read, contentLength - read);
+                    }
+                    lastRequestHead = head.toString();
+                    lastRequestBody = new String(body, StringUtils.UTF8);
+                    String response;
+                    synchronized (this) {
+                        response = responses.removeFirst();
+                    }
+                    out.write(response.getBytes(StringUtils.UTF8));
+                    out.flush();
+                    if (closeAfterResponse) {
+                        closeAfterResponse = false;
+                        socket.close();
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                // connection closed by the client
+            }
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    socket.close();
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.amazonaws.http;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import com.amazonaws.AmazonWebServiceResponse;
 import com.amazonaws.transform.StaxUnmarshallerContext;
@@ -73,4 +74,54 @@ public class StaxResponseHandlerTest {
         StaxResponseHandler<String> handler = new StaxResponseHandler<String>(unmarshaller);
         assertEquals(handler.handle(response).getResult(), "Test");
     }
+
+    @Test
+    public void testParserIsReusableAfterFailure() throws Exception {
+        StaxResponseHandler<String> failing = new StaxResponseHandler<String>(
+                new Unmarshaller<String, StaxUnmarshallerContext>() {
+                    @Override
+                    public String unmarshall(StaxUnmarshallerContext in) throws Exception {
+                        in.nextEvent();
+                        throw new IllegalStateException("BOOM");
+                    }
+                });
+        try {
+            failing.handle(response("<data>Content</data>"));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("BOOM", e.getMessage());
+        }
+
+        assertEquals("Second", new StaxResponseHandler<String>(new TextUnmarshaller())
+                .handle(response("<data>Second</data>")).getResult());
+    }
+
+    @Test
+    public void testReentrantHandle() throws Exception {
+        final StaxResponseHandler<String> inner = new StaxResponseHandler<String>(
+                new TextUnmarshaller());
+        StaxResponseHandler<String> outer = new StaxResponseHandler<String>(
+                new Unmarshaller<String, StaxUnmarshallerContext>() {
+                    @Override
+                    public String unmarshall(StaxUnmarshallerContext in) throws Exception {
+                        in.nextEvent();
+                        String nested = inner.handle(response("<data>Inner</data>")).getResult();
+                        return nested + in.readText();
+                    }
+                });
+        assertEquals("InnerOuter", outer.handle(response("<data>Outer</data>")).getResult());
+    }
+
+    private static HttpResponse response(String xml) {
+        return new HttpResponse.Builder()
+                .content(new ByteArrayInputStream(xml.getBytes(StringUtils.UTF8))).build();
+    }
+
+    private static class TextUnmarshaller implements Unmarshaller<String, StaxUnmarshallerContext> {
+        @Override
+        public String unmarshall(StaxUnmarshallerContext in) throws Exception {
+            in.nextEvent();
+            return in.readText();
+        }
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SettableFutureTest {
+
+    @Test
+    public void testSet() throws Exception {
+        SettableFuture<String> future = new SettableFuture<String>();
+        final AtomicInteger notified = new AtomicInteger();
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                notified.incrementAndGet();
+            }
+        });
+        assertFalse(future.isDone());
+        assertTrue(future.set("value"));
+        assertFalse(future.set("other"));
+        assertEquals("value", future.get());
+        assertEquals(1, notified.get());
+
+        // listeners added after completion run immediately
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                notified.incrementAndGet();
+            }
+        });
+        assertEquals(2, notified.get());
+    }
+
+    @Test
+    public void testSetException() throws Exception {
+        SettableFuture<String> future = new SettableFuture<String>();
+        RuntimeException exception = new RuntimeException("BOOM");
+        assertTrue(future.setException(exception));
+        try {
+            future.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testGetTimeout() throws Exception {
+        new SettableFuture<String>().get(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testCancelCancelsTask() throws Exception {
+        SettableFuture<String> future = new SettableFuture<String>();
+        FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, null);
+        future.cancelWith(task);
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertTrue(task.isCancelled());
+        assertFalse(future.set("value"));
+
+        // tasks registered after cancellation are cancelled too
+        FutureTask<Void> late = new FutureTask<Void>(task, null);
+        future.cancelWith(late);
+        assertTrue(late.isCancelled());
+        try {
+            future.get();
+            fail("Expected CancellationException");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+}
@@ -125,4 +125,48 @@ public class StaxUnmarshallerContextTest {
         assertNull("non existing key", context.getHeader("invalid key"));
         assertEquals("header value", "value", context.getHeader("key"));
     }
+
+    @Test
+    public void testExpressionAfterEndTags() throws Exception {
+        context = getContext(XML_STRING, null);
+        // DescribeImagesResponse, requestId, architecture, imageSet, item, id
+        for (int i = 0; i < 6; i++) {
+            context.nextEvent();
+            if (i == 1 || i == 2) {
+                context.readText();
+            }
+        }
+        assertTrue(context.testExpression("imageSet/item/id", 2));
+        assertFalse("attributes are not elements", context.testExpression("item/@id", 3));
+        assertFalse(context.testExpression("DescribeImagesResponse/imageSet/item", 1));
+
+        // </id>, </item>, <item>
+        context.nextEvent();
+        context.nextEvent();
+        context.nextEvent();
+        assertEquals(3, context.getCurrentDepth());
+        assertTrue(context.testExpression("DescribeImagesResponse/imageSet/item", 1));
+        assertFalse(context.testExpression("id"));
+    }
+
+    @Test
+    public void testDeepDocument() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            xml.append("<e").append(i).append('>');
+        }
+        for (int i = 39; i >= 0; i--) {
+            xml.append("</e").append(i).append('>');
+        }
+        context = getContext(xml.toString(), null);
+        for (int i = 0; i < 40; i++) {
+            context.nextEvent();
+        }
+        assertEquals(40, context.getCurrentDepth());
+        assertTrue(context.testExpression("e38/e39", 39));
+        assertFalse(context.testExpression("e0/e1", 39));
+        while (context.nextEvent() != XmlPullParser.END_DOCUMENT)
+            ;
+        assertEquals(0, context.getCurrentDepth());
+    }
 }
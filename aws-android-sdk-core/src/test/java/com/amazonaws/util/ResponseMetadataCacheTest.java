@@ -16,14 +16,18 @@
 package com.amazonaws.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.ResponseMetadata;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
 
 /** Tests for the response metadata cache class. */
@@ -61,6 +65,49 @@ public class ResponseMetadataCacheTest {
         assertEquals(metadata4, cache.get(key4));
     }
 
+    /** Tests that a striped cache holds at most its max size. */
+    @Test
+    public void testStripedEviction() {
+        ResponseMetadataCache cache = new ResponseMetadataCache(100);
+        List<AmazonWebServiceRequest> keys = new ArrayList<AmazonWebServiceRequest>();
+        for (int i = 0; i < 1000; i++) {
+            AmazonWebServiceRequest key = new TestRequest();
+            keys.add(key);
+            cache.add(key, newResponseMetadata());
+        }
+        assertTrue(cache.size() <= 100);
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+
+        // the latest entry is never the one evicted
+        assertNotNull(cache.get(keys.get(999)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    /** Tests the hit and miss counters. */
+    @Test
+    public void testCounters() {
+        ResponseMetadataCache cache = new ResponseMetadataCache(3);
+        AmazonWebServiceRequest key = new TestRequest();
+        assertNull(cache.get(key));
+        cache.add(key, newResponseMetadata());
+        assertNotNull(cache.get(key));
+        assertNotNull(cache.get(key));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    /** Tests that a cache without capacity holds nothing. */
+    @Test
+    public void testDisabled() {
+        ResponseMetadataCache cache = new ResponseMetadataCache(0);
+        AmazonWebServiceRequest key = new TestRequest();
+        cache.add(key, newResponseMetadata());
+        assertNull(cache.get(key));
+        assertEquals(0, cache.size());
+    }
+
     private class TestRequest extends AmazonWebServiceRequest {
     }
 
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.util.StringUtils;
+import com.amazonaws.util.json.JsonUtils.JsonEngine;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+public class Utf8JsonFactoryTest {
+
+    private static final String ITEMS = "{\"Count\":2,\"Items\":["
+            + "{\"id\":{\"S\":\"1\"},\"tags\":{\"SS\":[\"a\",\"b\"]}},"
+            + "{\"id\":{\"S\":\"2\"},\"nested\":{\"M\":{\"x\":{\"N\":\"-1.5e3\"}}}}"
+            + "],\"ScannedCount\":2}";
+
+    private final Utf8JsonFactory factory = new Utf8JsonFactory();
+
+    @After
+    public void tearDown() {
+        JsonUtils.setJsonEngine(JsonEngine.Gson);
+    }
+
+    @Test
+    public void testReadTokens() throws IOException {
+        AwsJsonReader reader = reader(ITEMS, false);
+        reader.beginObject();
+        assertEquals("Count", reader.nextName());
+        assertEquals(AwsJsonToken.VALUE_NUMBER, reader.peek());
+        assertEquals("2", reader.nextString());
+        assertEquals("Items", reader.nextName());
+        assertTrue(reader.isContainer());
+        reader.beginArray();
+        int items = 0;
+        while (reader.hasNext()) {
+            reader.beginObject();
+            assertEquals("id", reader.nextName());
+            reader.beginObject();
+            assertEquals("S", reader.nextName());
+            assertEquals(String.valueOf(++items), reader.nextString());
+            reader.endObject();
+            // skips both the list and the nested map
+            reader.nextName();
+            reader.skipValue();
+            assertFalse(reader.hasNext());
+            reader.endObject();
+        }
+        reader.endArray();
+        assertEquals(2, items);
+        assertEquals("ScannedCount", reader.nextName());
+        assertEquals("2", reader.nextString());
+        reader.endObject();
+        assertNull(reader.peek());
+        reader.close();
+    }
+
+    @Test
+    public void testStringsAcrossBufferBoundaries() throws IOException {
+        String json = "{\"encoding\":\"Chloë € 😀\","
+                + "\"escapes\":\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00e9\","
+                + "\"literals\":[true,false,null,-12.5E+2]}";
+        AwsJsonReader reader = reader(json, true);
+        reader.beginObject();
+        assertEquals("encoding", reader.nextName());
+        assertEquals("Chloë € 😀", reader.nextString());
+        assertEquals("escapes", reader.nextName());
+        assertEquals("\"\\/\b\f\n\r\té", reader.nextString());
+        assertEquals("literals", reader.nextName());
+        reader.beginArray();
+        assertEquals(AwsJsonToken.VALUE_BOOLEAN, reader.peek());
+        assertEquals("true", reader.nextString());
+        assertEquals("false", reader.nextString());
+        assertEquals(AwsJsonToken.VALUE_NULL, reader.peek());
+        assertNull(reader.nextString());
+        assertEquals("-12.5E+2", reader.nextString());
+        reader.endArray();
+        reader.endObject();
+    }
+
+    @Test
+    public void testNamesAreShared() throws IOException {
+        AwsJsonReader first = reader("{\"TableName\":\"a\"}", false);
+        first.beginObject();
+        String name = first.nextName();
+
+        AwsJsonReader second = reader("{\"TableName\":\"b\"}", true);
+        second.beginObject();
+        assertSame(name, second.nextName());
+    }
+
+    @Test
+    public void testEmptyDocument() throws IOException {
+        assertNull(reader("", false).peek());
+        assertNull(reader("  \n", false).peek());
+    }
+
+    @Test
+    public void testMalformedJson() throws IOException {
+        AwsJsonReader reader = reader("{\"a\" 1}", false);
+        reader.beginObject();
+        reader.nextName();
+        try {
+            reader.nextString();
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Expected ':'"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnexpectedToken() throws IOException {
+        reader("[1]", false).beginObject();
+    }
+
+    @Test
+    public void testJsonUtilsInputStream() {
+        JsonUtils.setJsonEngine(JsonEngine.Utf8);
+        AwsJsonReader reader = JsonUtils.getJsonReader(stream("{}", false));
+        assertTrue(reader instanceof Utf8JsonFactory.Utf8JsonReader);
+
+        Map<String, String> map = JsonUtils.jsonToMap("{\"a\":\"b\",\"c\":[1]}");
+        assertEquals("b", map.get("a"));
+        assertEquals(1, map.size());
+    }
+
+    private AwsJsonReader reader(String json, boolean byteByByte) {
+        return factory.getJsonReader(stream(json, byteByByte));
+    }
+
+    /**
+     * Returns a stream of the UTF-8 encoded json, which optionally returns one
+     * byte per read to exercise the buffer refills.
+     */
+    private static InputStream stream(String json, boolean byteByByte) {
+        byte[] bytes = json.getBytes(StringUtils.UTF8);
+        if (!byteByByte) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+}
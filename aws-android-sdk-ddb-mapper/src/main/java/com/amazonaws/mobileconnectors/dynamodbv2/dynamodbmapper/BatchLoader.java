@@ -0,0 +1,278 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads items by key with several BatchGetItem calls in flight, returning them
+ * as the calls complete. Keys are sent 100 at a time; the unprocessed keys of
+ * a call go out in the next call, ahead of the keys not sent yet, instead of
+ * being retried on their own. Calls are made while the items are iterated, so
+ * the first items can be used before the last call returns.
+ * <p>
+ * Items are unmarshalled on the thread iterating, as with parallel scans.
+ *
+ * @param <T> the type the items are unmarshalled to
+ */
+abstract class BatchLoader<T> implements Iterator<T> {
+
+    /** The max number of keys allowed in a BatchGetItem request. */
+    static final int MAX_KEYS_PER_BATCH = 100;
+    private static final long BASE_BACKOFF_IN_MILLISECONDS = 100;
+    /** How long idle threads are kept, in case the iteration is abandoned. */
+    private static final long KEEP_ALIVE_IN_SECONDS = 1;
+
+    /**
+     * The attributes of a key or an item, and its table.
+     */
+    private static final class Attributes {
+        final String tableName;
+        final Map<String, AttributeValue> values;
+
+        Attributes(String tableName, Map<String, AttributeValue> values) {
+            this.tableName = tableName;
+            this.values = values;
+        }
+    }
+
+    /**
+     * The outcome of a BatchGetItem call.
+     */
+    private static final class Response {
+        final Map<String, List<Map<String, AttributeValue>>> items;
+        final Map<String, KeysAndAttributes> unprocessedKeys;
+
+        Response(BatchGetItemResult result) {
+            this.items = result.getResponses();
+            this.unprocessedKeys = result.getUnprocessedKeys();
+        }
+    }
+
+    private final AmazonDynamoDB db;
+    private final int maxConcurrentRequests;
+    private final boolean consistentReads;
+    private final RequestMetricCollector requestMetricCollector;
+    private final Random random = new Random();
+
+    /** Keys not sent yet. */
+    private final ArrayDeque<Attributes> pending = new ArrayDeque<Attributes>();
+    /** Keys a call left unprocessed, sent before the pending ones. */
+    private final ArrayDeque<Attributes> unprocessed = new ArrayDeque<Attributes>();
+    /** Items returned and not iterated yet, with their table names. */
+    private final ArrayDeque<Attributes> loaded = new ArrayDeque<Attributes>();
+
+    private ThreadPoolExecutor executor;
+    private CompletionService<Response> completions;
+    private int inFlight;
+    /** Calls in a row that returned no item but left keys unprocessed. */
+    private int emptyResponses;
+    /** When the next call may be made, in milliseconds. */
+    private long notBefore;
+
+    BatchLoader(AmazonDynamoDB db, int maxConcurrentRequests, boolean consistentReads,
+            RequestMetricCollector requestMetricCollector) {
+        this.db = db;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.consistentReads = consistentReads;
+        this.requestMetricCollector = requestMetricCollector;
+    }
+
+    /**
+     * Adds the key of an item to load from the table; called before iterating.
+     */
+    void add(String tableName, Map<String, AttributeValue> key) {
+        pending.add(new Attributes(tableName, key));
+    }
+
+    /**
+     * Unmarshalls an item loaded from the table.
+     */
+    abstract T unmarshall(String tableName, Map<String, AttributeValue> item);
+
+    @Override
+    public boolean hasNext() {
+        while (loaded.isEmpty()) {
+            if (inFlight == 0 && pending.isEmpty() && unprocessed.isEmpty()) {
+                if (executor != null) {
+                    executor.shutdown();
+                }
+                return false;
+            }
+            try {
+                long now = System.currentTimeMillis();
+                while (inFlight < maxConcurrentRequests && now >= notBefore
+                        && (!pending.isEmpty() || !unprocessed.isEmpty())) {
+                    submit();
+                }
+
+                Future<Response> done;
+                if (inFlight == 0) {
+                    Thread.sleep(notBefore - now);
+                    continue;
+                } else if (now < notBefore) {
+                    done = completions.poll(notBefore - now, TimeUnit.MILLISECONDS);
+                } else {
+                    done = completions.take();
+                }
+                if (done != null) {
+                    inFlight--;
+                    complete(done.get());
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException(e.getMessage(), e);
+            } catch (ExecutionException e) {
+                executor.shutdownNow();
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new AmazonClientException(e.getMessage(), e.getCause());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Attributes item = loaded.poll();
+        return unmarshall(item.tableName, item.values);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Sends the next call, the unprocessed keys first.
+     */
+    private void submit() {
+        Map<String, KeysAndAttributes> requestItems = new HashMap<String, KeysAndAttributes>();
+        for (int count = 0; count < MAX_KEYS_PER_BATCH; count++) {
+            Attributes key = unprocessed.isEmpty() ? pending.poll() : unprocessed.poll();
+            if (key == null) {
+                break;
+            }
+            KeysAndAttributes keys = requestItems.get(key.tableName);
+            if (keys == null) {
+                keys = new KeysAndAttributes().withConsistentRead(consistentReads)
+                        .withKeys(new ArrayList<Map<String, AttributeValue>>());
+                requestItems.put(key.tableName, keys);
+            }
+            keys.getKeys().add(key.values);
+        }
+
+        final BatchGetItemRequest request = new BatchGetItemRequest()
+                .withRequestItems(requestItems);
+        request.setRequestMetricCollector(requestMetricCollector);
+        DynamoDBMapper.applyBatchOperationUserAgent(request);
+        if (executor == null) {
+            executor = newExecutor(maxConcurrentRequests);
+            completions = new ExecutorCompletionService<Response>(executor);
+        }
+        completions.submit(new Callable<Response>() {
+            @Override
+            public Response call() {
+                return new Response(db.batchGetItem(request));
+            }
+        });
+        inFlight++;
+    }
+
+    /**
+     * Takes the items of a finished call and queues its unprocessed keys.
+     */
+    private void complete(Response response) {
+        int items = 0;
+        if (response.items != null) {
+            for (Map.Entry<String, List<Map<String, AttributeValue>>> entry
+                    : response.items.entrySet()) {
+                for (Map<String, AttributeValue> item : entry.getValue()) {
+                    loaded.add(new Attributes(entry.getKey(), item));
+                    items++;
+                }
+            }
+        }
+
+        if (response.unprocessedKeys == null || response.unprocessedKeys.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, KeysAndAttributes> entry : response.unprocessedKeys.entrySet()) {
+            for (Map<String, AttributeValue> key : entry.getValue().getKeys()) {
+                unprocessed.add(new Attributes(entry.getKey(), key));
+            }
+        }
+        if (items > 0) {
+            emptyResponses = 0;
+            return;
+        }
+        // nothing came back, give the table time before asking again
+        emptyResponses++;
+        if (emptyResponses > DynamoDBMapper.BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS) {
+            executor.shutdownNow();
+            throw new AmazonClientException(
+                    "Batch Get Item request to server hasn't received any data. "
+                            + "Please try again later.");
+        }
+        long ceiling = Math.min(DynamoDBMapper.MAX_BACKOFF_IN_MILLISECONDS,
+                BASE_BACKOFF_IN_MILLISECONDS << emptyResponses);
+        notBefore = System.currentTimeMillis() + (long) (random.nextDouble() * ceiling);
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_IN_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "DynamoDBMapper-batchLoad");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
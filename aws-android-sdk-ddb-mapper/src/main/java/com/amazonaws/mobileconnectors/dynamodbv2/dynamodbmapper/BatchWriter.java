@@ -0,0 +1,523 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatch;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.BatchWriteOptions;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.BatchWriteThroughputListener;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.amazonaws.util.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the write requests of a batch write with several BatchWriteItem calls
+ * in flight. Each call writes to a single table, taking turns between the
+ * tables, and is limited to 25 requests and to the byte limits of the
+ * service. Unprocessed items and throttled calls are put back with jittered
+ * exponential backoff and sent in later calls while the others keep going.
+ * When a target write capacity rate is set, the calls to each table are paced
+ * with a token bucket refilled at that rate and settled with the capacity the
+ * service reports.
+ */
+class BatchWriter {
+
+    /** The max size of a BatchWriteItem request. */
+    static final int MAX_BATCH_SIZE = 16 * 1024 * 1024;
+    /** The max size of an item; larger ones are sent alone to fail alone. */
+    static final int MAX_ITEM_SIZE = 400 * 1024;
+    /** The size of the items a write capacity unit is consumed for. */
+    private static final int CAPACITY_UNIT_SIZE = 1024;
+    private static final long BASE_BACKOFF_IN_MILLISECONDS = 100;
+    /** Attempts of a throttled call before its requests are failed. */
+    static final int MAX_THROTTLED_ATTEMPTS = 10;
+
+    private static final Comparator<Request> BY_NOT_BEFORE = new Comparator<Request>() {
+        @Override
+        public int compare(Request a, Request b) {
+            if (a.notBefore != b.notBefore) {
+                return a.notBefore < b.notBefore ? -1 : 1;
+            }
+            // keep the order the requests were put back in
+            return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    };
+
+    /**
+     * A write request waiting to be sent.
+     */
+    private static final class Request {
+        final WriteRequest writeRequest;
+        final int size;
+        /** Calls it was part of that it must be retried after. */
+        final int attempts;
+        /** When it may be sent again, in milliseconds. */
+        final long notBefore;
+        final long sequence;
+
+        Request(WriteRequest writeRequest, int attempts, long notBefore, long sequence) {
+            this.writeRequest = writeRequest;
+            this.size = writeRequestSize(writeRequest);
+            this.attempts = attempts;
+            this.notBefore = notBefore;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * The requests of a table and its counters.
+     */
+    private static final class Table {
+        final String name;
+        final ArrayDeque<Request> pending = new ArrayDeque<Request>();
+        final PriorityQueue<Request> retries = new PriorityQueue<Request>(11, BY_NOT_BEFORE);
+        /** Lowered when the service finds a request too large. */
+        int maxBatchSize = MAX_BATCH_SIZE;
+        int maxBatchItems = DynamoDBMapper.MAX_ITEMS_PER_BATCH;
+        double capacityTokens;
+        long refillTime;
+        long itemsWritten;
+        double consumedCapacity;
+        long startTime;
+        long endTime;
+
+        Table(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A BatchWriteItem call and its outcome.
+     */
+    private static final class Batch {
+        final Table table;
+        final List<Request> requests;
+        final int size;
+        final int attempts;
+        final double estimatedCapacity;
+        BatchWriteItemResult result;
+        Exception exception;
+
+        Batch(Table table, List<Request> requests, int size, int attempts) {
+            this.table = table;
+            this.requests = requests;
+            this.size = size;
+            this.attempts = attempts;
+            double capacity = 0;
+            for (Request request : requests) {
+                capacity += Math.max(1, (request.size + CAPACITY_UNIT_SIZE - 1)
+                        / CAPACITY_UNIT_SIZE);
+            }
+            this.estimatedCapacity = capacity;
+        }
+
+        List<WriteRequest> writeRequests() {
+            List<WriteRequest> writeRequests = new ArrayList<WriteRequest>(requests.size());
+            for (Request request : requests) {
+                writeRequests.add(request.writeRequest);
+            }
+            return writeRequests;
+        }
+    }
+
+    private final AmazonDynamoDB db;
+    private final int maxConcurrentRequests;
+    private final double targetCapacityPerSecond;
+    private final BatchWriteThroughputListener throughputListener;
+    private final Random random = new Random();
+    private long sequence;
+
+    BatchWriter(AmazonDynamoDB db, BatchWriteOptions options) {
+        if (options == null) {
+            options = BatchWriteOptions.DEFAULT;
+        }
+        this.db = db;
+        this.maxConcurrentRequests = options.getMaxConcurrentRequests();
+        this.targetCapacityPerSecond = options.getTargetWriteCapacityPerSecond();
+        this.throughputListener = options.getThroughputListener();
+    }
+
+    /**
+     * Writes the requests of each table.
+     *
+     * @return the requests that couldn't be written with the exceptions that
+     *         made them fail.
+     */
+    List<FailedBatch> write(Map<String, List<WriteRequest>> requestItems) {
+        List<FailedBatch> failedBatches = new LinkedList<FailedBatch>();
+        List<Table> tables = new ArrayList<Table>(requestItems.size());
+        for (Map.Entry<String, List<WriteRequest>> entry : requestItems.entrySet()) {
+            Table table = new Table(entry.getKey());
+            for (WriteRequest writeRequest : entry.getValue()) {
+                table.pending.add(new Request(writeRequest, 0, 0, sequence++));
+            }
+            tables.add(table);
+        }
+        if (tables.isEmpty()) {
+            return failedBatches;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrentRequests);
+        CompletionService<Batch> completions = new ExecutorCompletionService<Batch>(executor);
+        int inFlight = 0;
+        int nextTable = 0;
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                long wakeUp = Long.MAX_VALUE;
+                while (inFlight < maxConcurrentRequests) {
+                    Batch batch = null;
+                    for (int i = 0; i < tables.size() && batch == null; i++) {
+                        Table table = tables.get((nextTable + i) % tables.size());
+                        long readyTime = readyTime(table, now);
+                        if (readyTime <= now) {
+                            batch = takeBatch(table, now);
+                            nextTable = (nextTable + i + 1) % tables.size();
+                        } else {
+                            wakeUp = Math.min(wakeUp, readyTime);
+                        }
+                    }
+                    if (batch == null) {
+                        break;
+                    }
+                    completions.submit(send(batch));
+                    inFlight++;
+                }
+
+                if (inFlight == 0) {
+                    if (wakeUp == Long.MAX_VALUE) {
+                        break;
+                    }
+                    Thread.sleep(wakeUp - now);
+                    continue;
+                }
+                Future<Batch> done = wakeUp == Long.MAX_VALUE
+                        ? completions.take()
+                        : completions.poll(wakeUp - now, TimeUnit.MILLISECONDS);
+                if (done != null) {
+                    inFlight--;
+                    complete(done.get(), failedBatches);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new AmazonClientException(e.getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (throughputListener != null) {
+            for (Table table : tables) {
+                if (table.startTime > 0) {
+                    throughputListener.tableWritten(table.name, table.itemsWritten,
+                            table.consumedCapacity, table.endTime - table.startTime);
+                }
+            }
+        }
+        return failedBatches;
+    }
+
+    /**
+     * Returns when a call to the table can be made, Long.MAX_VALUE if it has
+     * no request left to send.
+     */
+    private long readyTime(Table table, long now) {
+        long readyTime;
+        Request retry = table.retries.peek();
+        if (!table.pending.isEmpty() || (retry != null && retry.notBefore <= now)) {
+            readyTime = now;
+        } else if (retry != null) {
+            readyTime = retry.notBefore;
+        } else {
+            return Long.MAX_VALUE;
+        }
+        if (targetCapacityPerSecond > 0) {
+            refill(table, now);
+            if (table.capacityTokens < 0) {
+                readyTime = Math.max(readyTime, now
+                        + (long) Math.ceil(-table.capacityTokens * 1000 / targetCapacityPerSecond));
+            }
+        }
+        return readyTime;
+    }
+
+    private void refill(Table table, long now) {
+        if (table.refillTime > 0) {
+            table.capacityTokens = Math.min(targetCapacityPerSecond, table.capacityTokens
+                    + (now - table.refillTime) * targetCapacityPerSecond / 1000);
+        }
+        table.refillTime = now;
+    }
+
+    /**
+     * Takes the requests of the next call to the table, the retries due first.
+     */
+    private Batch takeBatch(Table table, long now) {
+        List<Request> requests = new ArrayList<Request>(DynamoDBMapper.MAX_ITEMS_PER_BATCH);
+        int size = 0;
+        int attempts = 0;
+        while (requests.size() < table.maxBatchItems) {
+            Request retry = table.retries.peek();
+            boolean retryDue = retry != null && retry.notBefore <= now;
+            Request request = retryDue ? retry : table.pending.peek();
+            if (request == null) {
+                break;
+            }
+            if (!requests.isEmpty() && (size + request.size > table.maxBatchSize
+                    || request.size > MAX_ITEM_SIZE)) {
+                break;
+            }
+            if (retryDue) {
+                table.retries.poll();
+            } else {
+                table.pending.poll();
+            }
+            requests.add(request);
+            size += request.size;
+            attempts = Math.max(attempts, request.attempts);
+            if (request.size > MAX_ITEM_SIZE) {
+                break;
+            }
+        }
+
+        Batch batch = new Batch(table, requests, size, attempts);
+        table.capacityTokens -= batch.estimatedCapacity;
+        if (table.startTime == 0) {
+            table.startTime = now;
+        }
+        return batch;
+    }
+
+    private Callable<Batch> send(final Batch batch) {
+        final BatchWriteItemRequest request = DynamoDBMapper.applyBatchOperationUserAgent(
+                new BatchWriteItemRequest()
+                        .withRequestItems(Collections.singletonMap(batch.table.name,
+                                batch.writeRequests()))
+                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+        return new Callable<Batch>() {
+            @Override
+            public Batch call() {
+                try {
+                    batch.result = db.batchWriteItem(request);
+                } catch (Exception e) {
+                    batch.exception = e;
+                }
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Accounts for a finished call, putting back what has to be retried.
+     */
+    private void complete(Batch batch, List<FailedBatch> failedBatches) {
+        Table table = batch.table;
+        long now = System.currentTimeMillis();
+        table.endTime = now;
+
+        if (batch.exception == null) {
+            List<WriteRequest> unprocessed = null;
+            Map<String, List<WriteRequest>> unprocessedItems = batch.result.getUnprocessedItems();
+            if (unprocessedItems != null) {
+                unprocessed = unprocessedItems.get(table.name);
+            }
+            int unprocessedCount = unprocessed == null ? 0 : unprocessed.size();
+            table.itemsWritten += batch.requests.size() - unprocessedCount;
+
+            double consumed = consumedCapacity(batch.result, table.name);
+            table.consumedCapacity += consumed;
+            if (consumed >= 0) {
+                // settle the estimate taken from the bucket
+                table.capacityTokens += batch.estimatedCapacity - consumed;
+            }
+
+            if (unprocessedCount > 0) {
+                int attempts = batch.attempts + 1;
+                long notBefore = now + backoff(attempts);
+                for (WriteRequest writeRequest : unprocessed) {
+                    table.retries.add(new Request(writeRequest, attempts, notBefore, sequence++));
+                }
+            }
+            return;
+        }
+
+        // nothing was written
+        table.capacityTokens += batch.estimatedCapacity;
+        Exception e = batch.exception;
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException ase = (AmazonServiceException) e;
+            if (RetryUtils.isRequestEntityTooLargeException(ase) && batch.requests.size() > 1) {
+                // the sizes were underestimated, send smaller calls
+                table.maxBatchSize = Math.max(1, batch.size / 2);
+                table.maxBatchItems = (batch.requests.size() + 1) / 2;
+                for (int i = batch.requests.size() - 1; i >= 0; i--) {
+                    table.pending.addFirst(batch.requests.get(i));
+                }
+                return;
+            }
+            if (RetryUtils.isThrottlingException(ase)
+                    && batch.attempts + 1 < MAX_THROTTLED_ATTEMPTS) {
+                int attempts = batch.attempts + 1;
+                long notBefore = now + backoff(attempts);
+                for (Request request : batch.requests) {
+                    table.retries.add(new Request(request.writeRequest, attempts, notBefore,
+                            sequence++));
+                }
+                return;
+            }
+        }
+
+        FailedBatch failedBatch = new FailedBatch();
+        Map<String, List<WriteRequest>> unprocessedItems = new HashMap<String, List<WriteRequest>>();
+        unprocessedItems.put(table.name, batch.writeRequests());
+        failedBatch.setUnprocessedItems(unprocessedItems);
+        failedBatch.setException(e);
+        failedBatches.add(failedBatch);
+    }
+
+    /**
+     * Returns the capacity consumed by a call, -1 if it isn't reported.
+     */
+    private static double consumedCapacity(BatchWriteItemResult result, String tableName) {
+        List<ConsumedCapacity> consumedCapacities = result.getConsumedCapacity();
+        if (consumedCapacities == null) {
+            return -1;
+        }
+        for (ConsumedCapacity consumedCapacity : consumedCapacities) {
+            if (tableName.equals(consumedCapacity.getTableName())
+                    && consumedCapacity.getCapacityUnits() != null) {
+                return consumedCapacity.getCapacityUnits();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a random delay up to an exponentially growing ceiling.
+     */
+    private long backoff(int attempts) {
+        long ceiling = Math.min(DynamoDBMapper.MAX_BACKOFF_IN_MILLISECONDS,
+                BASE_BACKOFF_IN_MILLISECONDS << Math.min(attempts, 16));
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    /**
+     * Returns the size DynamoDB counts for the item or key of a request: the
+     * UTF-8 bytes of the attribute names and the sizes of the values.
+     */
+    static int writeRequestSize(WriteRequest writeRequest) {
+        if (writeRequest.getPutRequest() != null) {
+            return itemSize(writeRequest.getPutRequest().getItem());
+        }
+        if (writeRequest.getDeleteRequest() != null) {
+            return itemSize(writeRequest.getDeleteRequest().getKey());
+        }
+        return 0;
+    }
+
+    private static int itemSize(Map<String, AttributeValue> item) {
+        if (item == null) {
+            return 0;
+        }
+        int size = 0;
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            size += utf8Length(attribute.getKey()) + valueSize(attribute.getValue());
+        }
+        return size;
+    }
+
+    private static int valueSize(AttributeValue value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value.getS() != null) {
+            return utf8Length(value.getS());
+        }
+        if (value.getN() != null) {
+            return value.getN().length();
+        }
+        if (value.getB() != null) {
+            return value.getB().remaining();
+        }
+        if (value.getSS() != null) {
+            return stringsSize(value.getSS());
+        }
+        if (value.getNS() != null) {
+            return stringsSize(value.getNS());
+        }
+        if (value.getBS() != null) {
+            int size = 0;
+            for (ByteBuffer b : value.getBS()) {
+                size += b.remaining();
+            }
+            return size;
+        }
+        if (value.getM() != null) {
+            return 3 + itemSize(value.getM());
+        }
+        if (value.getL() != null) {
+            int size = 3;
+            for (AttributeValue element : value.getL()) {
+                size += 1 + valueSize(element);
+            }
+            return size;
+        }
+        // BOOL or NULL
+        return 1;
+    }
+
+    private static int stringsSize(Collection<String> strings) {
+        int size = 0;
+        for (String s : strings) {
+            size += utf8Length(s);
+        }
+        return size;
+    }
+
+    private static int utf8Length(String s) {
+        return s.getBytes(StringUtils.UTF8).length;
+    }
+}
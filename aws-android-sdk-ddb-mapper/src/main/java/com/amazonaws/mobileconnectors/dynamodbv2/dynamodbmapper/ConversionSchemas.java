@@ -94,11 +94,14 @@ import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Pre-defined strategies for mapping between Java types and DynamoDB types.
@@ -203,6 +206,18 @@ public final class ConversionSchemas {
         private final DynamoDBReflector reflector;
         private final S3ClientCache s3cc;
 
+        /*
+         * The marshallers and unmarshallers of the getters, including those
+         * of their members, and the attributes of each class mapped. Built
+         * once so that converting an item doesn't look anything up again.
+         */
+        private final ConcurrentMap<Method, ArgumentMarshaller> marshallers =
+                new ConcurrentHashMap<Method, ArgumentMarshaller>();
+        private final ConcurrentMap<Method, ArgumentUnmarshaller> unmarshallers =
+                new ConcurrentHashMap<Method, ArgumentUnmarshaller>();
+        private final ConcurrentMap<Class<?>, ItemPlan> itemPlans =
+                new ConcurrentHashMap<Class<?>, ItemPlan>();
+
         public StandardItemConverter(
                 MarshallerSet marshallerSet,
                 UnmarshallerSet unmarshallerSet,
@@ -264,19 +279,19 @@ public final class ConversionSchemas {
                 return null;
             }
 
-            Class<?> clazz = object.getClass();
+            AttributePlan[] plan = getItemPlan(object.getClass()).attributes;
             Map<String, AttributeValue> result =
-                    new HashMap<String, AttributeValue>();
+                    new HashMap<String, AttributeValue>(plan.length * 4 / 3 + 1);
 
-            for (Method getter : reflector.getRelevantGetters(clazz)) {
+            for (AttributePlan attribute : plan) {
                 Object getterResult =
-                        ReflectionUtils.safeInvoke(getter, object);
+                        ReflectionUtils.safeInvoke(attribute.getter, object);
 
                 if (getterResult != null) {
-                    AttributeValue value = convert(getter, getterResult);
+                    AttributeValue value =
+                            attribute.getMarshaller().marshall(getterResult);
                     if (value != null) {
-                        String name = reflector.getAttributeName(getter);
-                        result.put(name, value);
+                        result.put(attribute.name, value);
                     }
                 }
             }
@@ -284,12 +299,99 @@ public final class ConversionSchemas {
             return result;
         }
 
-        private ArgumentMarshaller getMarshaller(Method getter) {
-            ArgumentMarshaller marshaller =
-                    marshallerSet.getMarshaller(getter);
+        /**
+         * Returns the attributes of a class.
+         */
+        private ItemPlan getItemPlan(Class<?> clazz) {
+            ItemPlan plan = itemPlans.get(clazz);
+            if (plan == null) {
+                Collection<Method> getters = reflector.getRelevantGetters(clazz);
+                AttributePlan[] attributes = new AttributePlan[getters.size()];
+                int i = 0;
+                for (Method getter : getters) {
+                    attributes[i++] = new AttributePlan(getter,
+                            reflector.getAttributeName(getter));
+                }
+                plan = new ItemPlan(attributes);
+                ItemPlan existing = itemPlans.putIfAbsent(clazz, plan);
+                if (existing != null) {
+                    plan = existing;
+                }
+            }
+            return plan;
+        }
+
+        /**
+         * The attributes of a mapped class, in the order of its getters and
+         * by their names.
+         */
+        private final class ItemPlan {
+            final AttributePlan[] attributes;
+            final Map<String, AttributePlan> byName;
+
+            ItemPlan(AttributePlan[] attributes) {
+                this.attributes = attributes;
+                this.byName = new HashMap<String, AttributePlan>(
+                        attributes.length * 4 / 3 + 1);
+                for (AttributePlan attribute : attributes) {
+                    byName.put(attribute.name, attribute);
+                }
+            }
+        }
 
-            marshaller = augment(getter.getGenericReturnType(), marshaller);
+        /**
+         * An attribute of a mapped class. Its setter, marshaller and
+         * unmarshaller are resolved when first needed, so that a property
+         * that can't be converted only fails once a value is converted.
+         */
+        private final class AttributePlan {
+            final Method getter;
+            final String name;
+            private volatile ArgumentMarshaller marshaller;
+            private volatile Method setter;
+            private volatile ArgumentUnmarshaller unmarshaller;
+
+            AttributePlan(Method getter, String name) {
+                this.getter = getter;
+                this.name = name;
+            }
 
+            ArgumentMarshaller getMarshaller() {
+                ArgumentMarshaller result = marshaller;
+                if (result == null) {
+                    result = StandardItemConverter.this.getMarshaller(getter);
+                    marshaller = result;
+                }
+                return result;
+            }
+
+            Method getSetter() {
+                Method result = setter;
+                if (result == null) {
+                    result = reflector.getSetter(getter);
+                    setter = result;
+                }
+                return result;
+            }
+
+            ArgumentUnmarshaller getUnmarshaller() {
+                ArgumentUnmarshaller result = unmarshaller;
+                if (result == null) {
+                    result = StandardItemConverter.this.getUnmarshaller(getter,
+                            getSetter());
+                    unmarshaller = result;
+                }
+                return result;
+            }
+        }
+
+        private ArgumentMarshaller getMarshaller(Method getter) {
+            ArgumentMarshaller marshaller = marshallers.get(getter);
+            if (marshaller == null) {
+                marshaller = augment(getter.getGenericReturnType(),
+                        marshallerSet.getMarshaller(getter));
+                marshallers.putIfAbsent(getter, marshaller);
+            }
             return marshaller;
         }
 
@@ -413,41 +515,48 @@ public final class ConversionSchemas {
                 return result;
             }
 
-            for (Method m : reflector.getRelevantGetters(clazz)) {
-                String attributeName = reflector.getAttributeName(m);
-                AttributeValue av = value.get(attributeName);
+            ItemPlan plan = getItemPlan(clazz);
+            if (value.size() < plan.attributes.length) {
+                // a projected item; only visit the attributes it has, skipping
+                // those the class doesn't map
+                for (Map.Entry<String, AttributeValue> entry : value.entrySet()) {
+                    AttributePlan attribute = plan.byName.get(entry.getKey());
+                    if (attribute != null) {
+                        set(result, attribute, entry.getValue());
+                    }
+                }
+                return result;
+            }
+
+            for (AttributePlan attribute : plan.attributes) {
+                AttributeValue av = value.get(attribute.name);
                 if (av != null) {
-                    setValue(result, m, av);
+                    set(result, attribute, av);
                 }
             }
 
             return result;
         }
 
-        private void setValue(
-                Object target,
-                Method getter,
-                AttributeValue value) {
-
-            Method setter = reflector.getSetter(getter);
-            ArgumentUnmarshaller unmarshaller =
-                    getUnmarshaller(getter, setter);
-
-            Object unmarshalled = unmarshall(unmarshaller, setter, value);
-            ReflectionUtils.safeInvoke(setter, target, unmarshalled);
+        private void set(Object object, AttributePlan attribute, AttributeValue value) {
+            Method setter = attribute.getSetter();
+            Object unmarshalled =
+                    unmarshall(attribute.getUnmarshaller(), setter, value);
+            ReflectionUtils.safeInvoke(setter, object, unmarshalled);
         }
 
         private ArgumentUnmarshaller getUnmarshaller(
                 Method getter,
                 Method setter) {
 
-            ArgumentUnmarshaller unmarshaller =
-                    unmarshallerSet.getUnmarshaller(getter, setter);
-
-            unmarshaller = augment(
-                    setter.getGenericParameterTypes()[0], unmarshaller);
-
-            return new NullableUnmarshaller(unmarshaller);
+            ArgumentUnmarshaller unmarshaller = unmarshallers.get(getter);
+            if (unmarshaller == null) {
+                unmarshaller = new NullableUnmarshaller(augment(
+                        setter.getGenericParameterTypes()[0],
+                        unmarshallerSet.getUnmarshaller(getter, setter)));
+                unmarshallers.putIfAbsent(getter, unmarshaller);
+            }
+            return unmarshaller;
         }
 
         private ArgumentUnmarshaller getMemberUnmarshaller(Type type) {
@@ -1261,11 +1370,11 @@ public final class ConversionSchemas {
 
     static class CachingMarshallerSet implements MarshallerSet {
 
-        private final Map<Method, ArgumentMarshaller> cache =
-                new HashMap<Method, ArgumentMarshaller>();
+        private final ConcurrentMap<Method, ArgumentMarshaller> cache =
+                new ConcurrentHashMap<Method, ArgumentMarshaller>();
 
-        private final Map<Type, ArgumentMarshaller> memberCache =
-                new HashMap<Type, ArgumentMarshaller>();
+        private final ConcurrentMap<Type, ArgumentMarshaller> memberCache =
+                new ConcurrentHashMap<Type, ArgumentMarshaller>();
 
         private final MarshallerSet wrapped;
 
@@ -1275,40 +1384,36 @@ public final class ConversionSchemas {
 
         @Override
         public ArgumentMarshaller getMarshaller(Method getter) {
-            synchronized (cache) {
-                ArgumentMarshaller marshaler = cache.get(getter);
-                if (marshaler != null) {
-                    return marshaler;
-                }
-
-                marshaler = wrapped.getMarshaller(getter);
-                cache.put(getter, marshaler);
+            ArgumentMarshaller marshaler = cache.get(getter);
+            if (marshaler != null) {
                 return marshaler;
             }
+
+            marshaler = wrapped.getMarshaller(getter);
+            cache.putIfAbsent(getter, marshaler);
+            return marshaler;
         }
 
         @Override
         public ArgumentMarshaller getMemberMarshaller(Type memberType) {
-            synchronized (memberCache) {
-                ArgumentMarshaller marshaller = memberCache.get(memberType);
-                if (marshaller != null) {
-                    return marshaller;
-                }
-
-                marshaller = wrapped.getMemberMarshaller(memberType);
-                memberCache.put(memberType, marshaller);
+            ArgumentMarshaller marshaller = memberCache.get(memberType);
+            if (marshaller != null) {
                 return marshaller;
             }
+
+            marshaller = wrapped.getMemberMarshaller(memberType);
+            memberCache.putIfAbsent(memberType, marshaller);
+            return marshaller;
         }
     }
 
     static class CachingUnmarshallerSet implements UnmarshallerSet {
 
-        private final Map<Method, ArgumentUnmarshaller> cache =
-                new HashMap<Method, ArgumentUnmarshaller>();
+        private final ConcurrentMap<Method, ArgumentUnmarshaller> cache =
+                new ConcurrentHashMap<Method, ArgumentUnmarshaller>();
 
-        private final Map<Type, ArgumentUnmarshaller> memberCache =
-                new HashMap<Type, ArgumentUnmarshaller>();
+        private final ConcurrentMap<Type, ArgumentUnmarshaller> memberCache =
+                new ConcurrentHashMap<Type, ArgumentUnmarshaller>();
 
         private final UnmarshallerSet wrapped;
 
@@ -1321,30 +1426,26 @@ public final class ConversionSchemas {
                 Method getter,
                 Method setter) {
 
-            synchronized (cache) {
-                ArgumentUnmarshaller unmarshaler = cache.get(getter);
-                if (unmarshaler != null) {
-                    return unmarshaler;
-                }
-
-                unmarshaler = wrapped.getUnmarshaller(getter, setter);
-                cache.put(getter, unmarshaler);
+            ArgumentUnmarshaller unmarshaler = cache.get(getter);
+            if (unmarshaler != null) {
                 return unmarshaler;
             }
+
+            unmarshaler = wrapped.getUnmarshaller(getter, setter);
+            cache.putIfAbsent(getter, unmarshaler);
+            return unmarshaler;
         }
 
         @Override
         public ArgumentUnmarshaller getMemberUnmarshaller(Type memberType) {
-            synchronized (memberCache) {
-                ArgumentUnmarshaller unmarshaller = memberCache.get(memberType);
-                if (unmarshaller != null) {
-                    return unmarshaller;
-                }
-
-                unmarshaller = wrapped.getMemberUnmarshaller(memberType);
-                memberCache.put(memberType, unmarshaller);
+            ArgumentUnmarshaller unmarshaller = memberCache.get(memberType);
+            if (unmarshaller != null) {
                 return unmarshaller;
             }
+
+            unmarshaller = wrapped.getMemberUnmarshaller(memberType);
+            memberCache.putIfAbsent(memberType, unmarshaller);
+            return unmarshaller;
         }
     }
 
@@ -16,22 +16,20 @@
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import com.amazonaws.AmazonClientException;
-import com.amazonaws.AmazonServiceException;
 import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.BatchLoadOptions;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.ConsistentReads;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.ParallelScanOptions;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.SaveBehavior;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBTableSchemaParser.TableIndexesInfo;
-import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.AttributeAction;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
 import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
-import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
-import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
@@ -42,7 +40,6 @@ import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
 import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
 import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
 import com.amazonaws.services.dynamodbv2.model.GetItemResult;
-import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
 import com.amazonaws.services.dynamodbv2.model.PutItemResult;
 import com.amazonaws.services.dynamodbv2.model.PutRequest;
@@ -69,13 +66,15 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Object mapper for domain-object interaction with DynamoDB.
@@ -175,6 +174,12 @@ public class DynamoDBMapper {
     private final AmazonDynamoDB db;
     private final DynamoDBMapperConfig config;
     private final DynamoDBReflector reflector = new DynamoDBReflector();
+    /**
+     * The converter of each conversion schema used, kept so that the mapping
+     * plans they build are reused by later operations.
+     */
+    private final ConcurrentMap<ConversionSchema, ItemConverter> converters =
+            new ConcurrentHashMap<ConversionSchema, ItemConverter>();
     private final DynamoDBTableSchemaParser schemaParser = new DynamoDBTableSchemaParser();
     private final VersionIncrementor incrementor = new VersionIncrementor();
 
@@ -192,6 +197,9 @@ public class DynamoDBMapper {
      */
     static final int BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS = 5;
 
+    /** The prefix of the attribute name placeholders of projected properties */
+    private static final String PROJECTION_PLACEHOLDER_PREFIX = "#proj";
+
     /**
      * User agent for requests made using the {@link DynamoDBMapper}.
      */
@@ -1448,6 +1456,11 @@ public class DynamoDBMapper {
      * see, http://docs.aws.amazon
      * .com/amazondynamodb/latest/APIReference/API_BatchWriteItem.html
      * </p>
+     * <p>
+     * Several calls are kept in flight as set by
+     * {@link DynamoDBMapperConfig#getBatchWriteOptions()}; unprocessed items
+     * are retried in later calls after a jittered backoff.
+     * </p>
      *
      * @param objectsToWrite A list of objects to save to DynamoDB. <b>No
      *            version checks are performed</b>, as required by the
@@ -1457,7 +1470,8 @@ public class DynamoDBMapper {
      *            version checks are performed</b>, as required by the
      *            {@link AmazonDynamoDB#batchWriteItem(BatchWriteItemRequest)}
      *            API.
-     * @param config Only {@link DynamoDBMapperConfig#getTableNameOverride()} is
+     * @param config Only {@link DynamoDBMapperConfig#getTableNameOverride()}
+     *            and {@link DynamoDBMapperConfig#getBatchWriteOptions()} are
      *            considered; if specified, all objects in the two parameter
      *            lists will be considered to belong to the given table
      *            override. In particular, this method <b>always acts as if
@@ -1470,8 +1484,6 @@ public class DynamoDBMapper {
             List<? extends Object> objectsToDelete, DynamoDBMapperConfig config) {
         config = mergeConfig(config);
 
-        List<FailedBatch> totalFailedBatches = new LinkedList<FailedBatch>();
-
         HashMap<String, List<WriteRequest>> requestItems = new HashMap<String, List<WriteRequest>>();
 
         ItemConverter converter = getConverter(config);
@@ -1531,51 +1543,9 @@ public class DynamoDBMapper {
                     new WriteRequest().withDeleteRequest(new DeleteRequest().withKey(key)));
         }
 
-        // Break into chunks of 25 items and make service requests to DynamoDB
-        while (!requestItems.isEmpty()) {
-
-            HashMap<String, List<WriteRequest>> batch =
-                    new HashMap<String, List<WriteRequest>>();
-
-            int i = 0;
-
-            Iterator<Entry<String, List<WriteRequest>>> tableIter = requestItems.entrySet()
-                    .iterator();
-            while (tableIter.hasNext() && i < MAX_ITEMS_PER_BATCH) {
-
-                Entry<String, List<WriteRequest>> tableRequest = tableIter.next();
-
-                batch.put(tableRequest.getKey(), new LinkedList<WriteRequest>());
-                Iterator<WriteRequest> writeRequestIter = tableRequest.getValue().iterator();
-
-                while (writeRequestIter.hasNext() && i++ < MAX_ITEMS_PER_BATCH) {
-                    WriteRequest writeRequest = writeRequestIter.next();
-                    batch.get(tableRequest.getKey()).add(writeRequest);
-                    writeRequestIter.remove();
-                }
-
-                // If we've processed all the write requests for this table,
-                // remove it from the parent iterator.
-                if (!writeRequestIter.hasNext()) {
-                    tableIter.remove();
-                }
-            }
-
-            List<FailedBatch> failedBatches = writeOneBatch(batch);
-            if (failedBatches != null) {
-                totalFailedBatches.addAll(failedBatches);
-
-                // If contains throttling exception, we do a backoff
-                if (containsThrottlingException(failedBatches)) {
-                    try {
-                        Thread.sleep(1000 * 2);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new AmazonClientException(e.getMessage(), e);
-                    }
-                }
-            }
-        }
+        // Send the requests in concurrent batches, retrying unprocessed items
+        List<FailedBatch> totalFailedBatches =
+                new BatchWriter(db, config.getBatchWriteOptions()).write(requestItems);
 
         // Once the entire batch is processed, update assigned keys in memory
         for (ValueUpdate update : inMemoryUpdates) {
@@ -1585,128 +1555,6 @@ public class DynamoDBMapper {
         return totalFailedBatches;
     }
 
-    /**
-     * Process one batch of requests(max 25). It will divide the batch if
-     * receives request too large exception(the total size of the request is
-     * beyond 1M).
-     */
-    List<FailedBatch> writeOneBatch(Map<String, List<WriteRequest>> batch) {
-
-        List<FailedBatch> failedBatches = new LinkedList<FailedBatch>();
-        Map<String, List<WriteRequest>> firstHalfBatch = new HashMap<String, List<WriteRequest>>();
-        Map<String, List<WriteRequest>> secondHalfBatch = new HashMap<String, List<WriteRequest>>();
-        FailedBatch failedBatch = callUntilCompletion(batch);
-
-        if (failedBatch != null) {
-            // If the exception is request entity too large, we divide the batch
-            // into smaller parts.
-
-            if (failedBatch.getException() instanceof AmazonServiceException
-                    && RetryUtils
-                            .isRequestEntityTooLargeException((AmazonServiceException) failedBatch
-                                    .getException())) {
-
-                // If only one item left, the item size must beyond 64k, which
-                // exceedes the limit.
-
-                if (computeFailedBatchSize(failedBatch) == 1) {
-                    failedBatches.add(failedBatch);
-                } else {
-                    divideBatch(batch, firstHalfBatch, secondHalfBatch);
-                    failedBatches.addAll(writeOneBatch(firstHalfBatch));
-                    failedBatches.addAll(writeOneBatch(secondHalfBatch));
-                }
-
-            } else {
-                failedBatches.add(failedBatch);
-            }
-
-        }
-        return failedBatches;
-    }
-
-    /**
-     * Check whether there are throttling exception in the failed batches.
-     */
-    boolean containsThrottlingException(List<FailedBatch> failedBatches) {
-        for (FailedBatch failedBatch : failedBatches) {
-            Exception e = failedBatch.getException();
-            if (e instanceof AmazonServiceException
-                    && RetryUtils.isThrottlingException((AmazonServiceException) e)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Divide the batch of objects to save into two smaller batches. Each
-     * contains half of the elements.
-     */
-    private void divideBatch(Map<String, List<WriteRequest>> batch,
-            Map<String, List<WriteRequest>> firstHalfBatch,
-            Map<String, List<WriteRequest>> secondHalfBatch) {
-        for (String key : batch.keySet()) {
-
-            List<WriteRequest> requests = batch.get(key);
-
-            List<WriteRequest> firstHalfRequests = requests.subList(0, requests.size() / 2);
-
-            List<WriteRequest> secondHalfRequests = requests.subList(requests.size() / 2,
-                    requests.size());
-
-            firstHalfBatch.put(key, firstHalfRequests);
-
-            secondHalfBatch.put(key, secondHalfRequests);
-
-        }
-
-    }
-
-    /**
-     * Count the total number of unprocessed items in the failed batch.
-     */
-
-    private int computeFailedBatchSize(FailedBatch failedBatch) {
-
-        int count = 0;
-
-        for (String tableName : failedBatch.getUnprocessedItems().keySet()) {
-            count += failedBatch.getUnprocessedItems().get(tableName).size();
-        }
-        return count;
-    }
-
-    /**
-     * Continue trying to process the batch until it finishes or an exception
-     * occurs.
-     */
-
-    private FailedBatch callUntilCompletion(Map<String, List<WriteRequest>> batch) {
-        BatchWriteItemResult result = null;
-        int retries = 0;
-        FailedBatch failedBatch = null;
-        while (true) {
-            try {
-                result = db.batchWriteItem(applyBatchOperationUserAgent(
-                        new BatchWriteItemRequest().withRequestItems(batch)));
-            } catch (Exception e) {
-                failedBatch = new FailedBatch();
-                failedBatch.setUnprocessedItems(batch);
-                failedBatch.setException(e);
-                return failedBatch;
-            }
-            retries++;
-            batch = result.getUnprocessedItems();
-            if (batch.size() > 0) {
-                pauseExponentially(retries);
-            } else {
-                break;
-            }
-        }
-        return failedBatch;
-    }
-
     /**
      * Retrieves multiple items from multiple tables using their primary keys.
      *
@@ -1726,8 +1574,9 @@ public class DynamoDBMapper {
      *
      * @param itemsToGet Key objects, corresponding to the class to fetch, with
      *            their primary key values set.
-     * @param config Only {@link DynamoDBMapperConfig#getTableNameOverride()}
-     *            and {@link DynamoDBMapperConfig#getConsistentReads()} are
+     * @param config Only {@link DynamoDBMapperConfig#getTableNameOverride()},
+     *            {@link DynamoDBMapperConfig#getConsistentReads()} and
+     *            {@link DynamoDBMapperConfig#getBatchLoadOptions()} are
      *            considered.
      * @return A map of the loaded objects. Each key in the map is the name of a
      *         DynamoDB table. Each value in the map is a list of objects that
@@ -1737,48 +1586,27 @@ public class DynamoDBMapper {
      */
     public Map<String, List<Object>> batchLoad(List<Object> itemsToGet, DynamoDBMapperConfig config) {
         config = mergeConfig(config);
-        boolean consistentReads = (config.getConsistentReads() == ConsistentReads.CONSISTENT);
 
+        final Map<String, List<Object>> resultSet = new HashMap<String, List<Object>>();
         if (itemsToGet == null || itemsToGet.isEmpty()) {
-            return new HashMap<String, List<Object>>();
+            return resultSet;
         }
 
-        Map<String, KeysAndAttributes> requestItems = new HashMap<String, KeysAndAttributes>();
-        Map<String, Class<?>> classesByTableName = new HashMap<String, Class<?>>();
-        Map<String, List<Object>> resultSet = new HashMap<String, List<Object>>();
-        int count = 0;
-
-        ItemConverter converter = getConverter(config);
-
-        for (Object keyObject : itemsToGet) {
-            Class<?> clazz = keyObject.getClass();
-
-            String tableName = getTableName(clazz, keyObject, config);
-            classesByTableName.put(tableName, clazz);
-
-            if (!requestItems.containsKey(tableName)) {
-
-                requestItems.put(
-                        tableName,
-                        new KeysAndAttributes().withConsistentRead(consistentReads).withKeys(
-                                new LinkedList<Map<String, AttributeValue>>()));
-            }
-
-            requestItems.get(tableName).getKeys().add(
-                    getKey(converter, keyObject));
-
-            // Reach the maximum number which can be handled in a single
-            // batchGet
-            if (++count == 100) {
-                processBatchGetRequest(classesByTableName, requestItems, resultSet, config,
-                        converter);
-                requestItems.clear();
-                count = 0;
+        Iterator<Object> loader = new MapperBatchLoader(itemsToGet, config) {
+            @Override
+            Object unmarshall(String tableName, Map<String, AttributeValue> item) {
+                Object object = super.unmarshall(tableName, item);
+                List<Object> objects = resultSet.get(tableName);
+                if (objects == null) {
+                    objects = new LinkedList<Object>();
+                    resultSet.put(tableName, objects);
+                }
+                objects.add(object);
+                return object;
             }
-        }
-
-        if (count > 0) {
-            processBatchGetRequest(classesByTableName, requestItems, resultSet, config, converter);
+        };
+        while (loader.hasNext()) {
+            loader.next();
         }
 
         return resultSet;
@@ -1821,6 +1649,13 @@ public class DynamoDBMapper {
     public Map<String, List<Object>> batchLoad(Map<Class<?>, List<KeyPair>> itemsToGet,
             DynamoDBMapperConfig config) {
 
+        return batchLoad(createKeyObjects(itemsToGet), config);
+    }
+
+    /**
+     * Creates the key objects of the classes and key pairs given.
+     */
+    private List<Object> createKeyObjects(Map<Class<?>, List<KeyPair>> itemsToGet) {
         List<Object> keys = new ArrayList<Object>();
         if (itemsToGet != null) {
             for (Class<?> clazz : itemsToGet.keySet()) {
@@ -1831,69 +1666,102 @@ public class DynamoDBMapper {
                 }
             }
         }
-
-        return batchLoad(keys, config);
+        return keys;
     }
 
     /**
-     * @param config never null
+     * Retrieves multiple items from multiple tables using their primary keys,
+     * returning them as they are received.
+     *
+     * @see DynamoDBMapper#batchLoadIterator(List, DynamoDBMapperConfig)
      */
-    private void processBatchGetRequest(
-            final Map<String, Class<?>> classesByTableName,
-            final Map<String, KeysAndAttributes> requestItems,
-            final Map<String, List<Object>> resultSet,
-            final DynamoDBMapperConfig config,
-            final ItemConverter converter) {
+    public Iterator<Object> batchLoadIterator(List<Object> itemsToGet) {
+        return batchLoadIterator(itemsToGet, this.config);
+    }
 
-        BatchGetItemResult batchGetItemResult = null;
-        BatchGetItemRequest batchGetItemRequest = new BatchGetItemRequest()
-                .withRequestMetricCollector(config.getRequestMetricCollector());
-        batchGetItemRequest.setRequestItems(requestItems);
+    /**
+     * Retrieves multiple items from multiple tables using their primary keys,
+     * returning them as they are received. The keys are sent in several
+     * concurrent {@link AmazonDynamoDB#batchGetItem(BatchGetItemRequest)}
+     * calls, as set by {@link DynamoDBMapperConfig#getBatchLoadOptions()}, and
+     * the calls are made while the items are iterated, so the first items can
+     * be used before the last ones are received. The items come in no
+     * particular order.
+     *
+     * @param itemsToGet Key objects, corresponding to the class to fetch, with
+     *            their primary key values set.
+     * @param config Only {@link DynamoDBMapperConfig#getTableNameOverride()},
+     *            {@link DynamoDBMapperConfig#getConsistentReads()} and
+     *            {@link DynamoDBMapperConfig#getBatchLoadOptions()} are
+     *            considered.
+     * @return An iterator over the loaded objects, each of which can be cast to
+     *         the class of its key object. It throws
+     *         {@link AmazonClientException} if a call fails.
+     */
+    public Iterator<Object> batchLoadIterator(List<Object> itemsToGet,
+            DynamoDBMapperConfig config) {
+        config = mergeConfig(config);
+        if (itemsToGet == null) {
+            itemsToGet = Collections.emptyList();
+        }
+        return new MapperBatchLoader(itemsToGet, config);
+    }
 
-        int retries = 0;
+    /**
+     * Retrieves multiple items from multiple tables using their primary keys,
+     * returning them as they are received. Valid only for tables with a single
+     * hash key, or a single hash and range key.
+     *
+     * @param itemsToGet Map from class to load to list of primary key
+     *            attributes.
+     * @see DynamoDBMapper#batchLoadIterator(List, DynamoDBMapperConfig)
+     */
+    public Iterator<Object> batchLoadIterator(Map<Class<?>, List<KeyPair>> itemsToGet,
+            DynamoDBMapperConfig config) {
+        return batchLoadIterator(createKeyObjects(itemsToGet), config);
+    }
 
-        do {
-            if (batchGetItemResult != null) {
-                retries++;
+    /**
+     * A batch loader of the key objects given, unmarshalling the items to the
+     * classes of their keys.
+     */
+    private class MapperBatchLoader extends BatchLoader<Object> {
 
-                pauseExponentially(retries);
-                if (retries > BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS) {
-                    throw new AmazonClientException(
-                            "Batch Get Item request to server hasn't received any data. "
-                                    + "Please try again later.");
-                }
+        private final Map<String, Class<?>> classesByTableName = new HashMap<String, Class<?>>();
+        private final DynamoDBMapperConfig config;
+        private final ItemConverter converter;
 
-                batchGetItemRequest.setRequestItems(
-                        batchGetItemResult.getUnprocessedKeys());
+        /**
+         * @param config never null
+         */
+        MapperBatchLoader(List<Object> itemsToGet, DynamoDBMapperConfig config) {
+            super(db, batchLoadOptions(config).getMaxConcurrentRequests(),
+                    config.getConsistentReads() == ConsistentReads.CONSISTENT,
+                    config.getRequestMetricCollector());
+            this.config = config;
+            this.converter = getConverter(config);
+
+            for (Object keyObject : itemsToGet) {
+                Class<?> clazz = keyObject.getClass();
+                String tableName = getTableName(clazz, keyObject, config);
+                classesByTableName.put(tableName, clazz);
+                add(tableName, getKey(converter, keyObject));
             }
+        }
 
-            batchGetItemResult = db.batchGetItem(
-                    applyBatchOperationUserAgent(batchGetItemRequest));
-
-            Map<String, List<Map<String, AttributeValue>>> responses = batchGetItemResult
-                    .getResponses();
-            for (String tableName : responses.keySet()) {
-                List<Object> objects = null;
-                if (resultSet.get(tableName) != null) {
-                    objects = resultSet.get(tableName);
-                } else {
-                    objects = new LinkedList<Object>();
-                }
-
-                Class<?> clazz = classesByTableName.get(tableName);
-
-                for (Map<String, AttributeValue> item : responses.get(tableName)) {
-                    AttributeTransformer.Parameters<?> parameters =
-                            toParameters(item, clazz, tableName, config);
-                    objects.add(privateMarshallIntoObject(converter, parameters));
-                }
-
-                resultSet.put(tableName, objects);
-            }
-            // To see whether there are unprocessed keys.
-        } while (batchGetItemResult.getUnprocessedKeys() != null
-                && batchGetItemResult.getUnprocessedKeys().size() > 0);
+        @Override
+        Object unmarshall(String tableName, Map<String, AttributeValue> item) {
+            Class<?> clazz = classesByTableName.get(tableName);
+            AttributeTransformer.Parameters<?> parameters =
+                    toParameters(item, clazz, tableName, config);
+            return privateMarshallIntoObject(converter, parameters);
+        }
+    }
 
+    private static BatchLoadOptions batchLoadOptions(DynamoDBMapperConfig config) {
+        return config.getBatchLoadOptions() == null
+                ? BatchLoadOptions.DEFAULT
+                : config.getBatchLoadOptions();
     }
 
     private final class ValueUpdate {
@@ -2024,9 +1892,12 @@ public class DynamoDBMapper {
 
     /**
      * Scans through an Amazon DynamoDB table on logically partitioned segments
-     * in parallel. This method will create a thread pool of the specified size,
-     * and each thread will issue scan requests for its assigned segment,
-     * following the returned continuation token, until the end of its segment.
+     * in parallel. The scan requests of each segment are run on the executor
+     * set by {@link DynamoDBMapperConfig#getParallelScanOptions()}, or on a
+     * bounded executor shared by all parallel scans, following the returned
+     * continuation token until the end of the segment. A segment is scanned at
+     * most a few pages ahead of the results consumed, and its pages are added
+     * to the list as soon as they are received.
      * Callers should be responsible for setting the appropriate number of total
      * segments. More scan segments would result in better performance but more
      * consumed capacity of the table. The results are returned in one
@@ -2065,7 +1936,11 @@ public class DynamoDBMapper {
         // segment number.
         List<ScanRequest> parallelScanRequests = createParallelScanRequestsFromExpression(clazz,
                 scanExpression, totalSegments, config);
-        ParallelScanTask parallelScanTask = new ParallelScanTask(this, db, parallelScanRequests);
+        ParallelScanOptions options = config.getParallelScanOptions() == null
+                ? ParallelScanOptions.DEFAULT
+                : config.getParallelScanOptions();
+        ParallelScanTask parallelScanTask = new ParallelScanTask(db, parallelScanRequests,
+                options.getExecutor(), options.getPrefetchDepth());
 
         return new PaginatedParallelScanList<T>(this, clazz, db, parallelScanTask,
                 config.getPaginationLoadingStrategy(), config);
@@ -2248,6 +2123,12 @@ public class DynamoDBMapper {
         config = mergeConfig(config);
 
         ScanRequest scanRequest = createScanRequestFromExpression(clazz, scanExpression, config);
+        // counts can't be projected; drop the projection along with the
+        // attribute names only it used
+        scanRequest.setProjectionExpression(null);
+        scanRequest.setExpressionAttributeNames(attributeNamesUsedBy(
+                scanExpression.getExpressionAttributeNames(),
+                scanExpression.getFilterExpression()));
         scanRequest.setSelect(Select.COUNT);
 
         // Count scans can also be truncated for large datasets
@@ -2290,6 +2171,12 @@ public class DynamoDBMapper {
         config = mergeConfig(config);
 
         QueryRequest queryRequest = createQueryRequestFromExpression(clazz, queryExpression, config);
+        // counts can't be projected; drop the projection along with the
+        // attribute names only it used
+        queryRequest.setProjectionExpression(null);
+        queryRequest.setExpressionAttributeNames(attributeNamesUsedBy(
+                queryExpression.getExpressionAttributeNames(),
+                queryExpression.getFilterExpression()));
         queryRequest.setSelect(Select.COUNT);
 
         // Count queries can also be truncated for large datasets
@@ -2304,6 +2191,38 @@ public class DynamoDBMapper {
         return count;
     }
 
+    /**
+     * Returns the expression attribute names whose placeholder appears in the
+     * expression, or null if there are none, since DynamoDB rejects names no
+     * expression of the request uses.
+     */
+    private static Map<String, String> attributeNamesUsedBy(Map<String, String> attributeNames,
+            String expression) {
+        if (attributeNames == null || expression == null) {
+            return null;
+        }
+        Map<String, String> used = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : attributeNames.entrySet()) {
+            String placeholder = entry.getKey();
+            int index = expression.indexOf(placeholder);
+            while (index >= 0) {
+                int end = index + placeholder.length();
+                // #a doesn't match the start of #ab
+                if (end == expression.length()
+                        || !isPlaceholderPart(expression.charAt(end))) {
+                    used.put(placeholder, entry.getValue());
+                    break;
+                }
+                index = expression.indexOf(placeholder, end);
+            }
+        }
+        return used.isEmpty() ? null : used;
+    }
+
+    private static boolean isPlaceholderPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
     /**
      * Merges the config object given with the one specified at construction and
      * returns the result.
@@ -2328,8 +2247,15 @@ public class DynamoDBMapper {
         scanRequest.setSegment(scanExpression.getSegment());
         scanRequest.setConditionalOperator(scanExpression.getConditionalOperator());
         scanRequest.setFilterExpression(scanExpression.getFilterExpression());
-        scanRequest.setExpressionAttributeNames(scanExpression
-                .getExpressionAttributeNames());
+        Map<String, String> attributeNames = scanExpression.getExpressionAttributeNames();
+        if (scanExpression.getProjectedProperties() != null) {
+            attributeNames = attributeNames == null ? new HashMap<String, String>()
+                    : new HashMap<String, String>(attributeNames);
+        }
+        scanRequest.setProjectionExpression(createProjectionExpression(clazz,
+                scanExpression.getProjectionExpression(),
+                scanExpression.getProjectedProperties(), attributeNames));
+        scanRequest.setExpressionAttributeNames(attributeNames);
         scanRequest.setExpressionAttributeValues(scanExpression
                 .getExpressionAttributeValues());
         scanRequest.setRequestMetricCollector(config.getRequestMetricCollector());
@@ -2388,14 +2314,73 @@ public class DynamoDBMapper {
         queryRequest.setConditionalOperator(queryExpression.getConditionalOperator());
         queryRequest.setRequestMetricCollector(config.getRequestMetricCollector());
         queryRequest.setFilterExpression(queryExpression.getFilterExpression());
-        queryRequest.setExpressionAttributeNames(queryExpression
-                .getExpressionAttributeNames());
+        Map<String, String> attributeNames = queryExpression.getExpressionAttributeNames();
+        if (queryExpression.getProjectedProperties() != null) {
+            attributeNames = attributeNames == null ? new HashMap<String, String>()
+                    : new HashMap<String, String>(attributeNames);
+        }
+        queryRequest.setProjectionExpression(createProjectionExpression(clazz,
+                queryExpression.getProjectionExpression(),
+                queryExpression.getProjectedProperties(), attributeNames));
+        queryRequest.setExpressionAttributeNames(attributeNames);
         queryRequest.setExpressionAttributeValues(queryExpression
                 .getExpressionAttributeValues());
 
         return applyUserAgent(queryRequest);
     }
 
+    /**
+     * Returns the projection expression of a query or scan. When properties
+     * of the domain class are projected, it is generated from their
+     * attributes and those of the primary key, with a placeholder for each
+     * attribute name added to the attribute names given.
+     *
+     * @param attributeNames the expression attribute names of the request;
+     *            modifiable if projectedProperties is not null
+     */
+    private String createProjectionExpression(Class<?> clazz, String projectionExpression,
+            List<String> projectedProperties, Map<String, String> attributeNames) {
+        if (projectedProperties == null) {
+            return projectionExpression;
+        }
+        if (projectionExpression != null) {
+            throw new IllegalArgumentException(
+                    "Illegal expression: both a projection expression and projected properties are specified");
+        }
+
+        Map<String, Method> gettersByProperty = new HashMap<String, Method>();
+        for (Method getter : reflector.getRelevantGetters(clazz)) {
+            gettersByProperty.put(ReflectionUtils.getFieldNameByGetter(getter, true), getter);
+        }
+        Set<String> projected = new LinkedHashSet<String>();
+        for (Method keyGetter : reflector.getPrimaryKeyGetters(clazz)) {
+            projected.add(reflector.getAttributeName(keyGetter));
+        }
+        for (String property : projectedProperties) {
+            Method getter = gettersByProperty.get(property);
+            if (getter == null) {
+                throw new IllegalArgumentException("Class " + clazz.getName()
+                        + " has no mapped property named " + property);
+            }
+            projected.add(reflector.getAttributeName(getter));
+        }
+
+        StringBuilder expression = new StringBuilder();
+        int index = 0;
+        for (String attributeName : projected) {
+            String placeholder;
+            do {
+                placeholder = PROJECTION_PLACEHOLDER_PREFIX + index++;
+            } while (attributeNames.containsKey(placeholder));
+            attributeNames.put(placeholder, attributeName);
+            if (expression.length() > 0) {
+                expression.append(",");
+            }
+            expression.append(placeholder);
+        }
+        return expression.toString();
+    }
+
     /**
      * Utility method for checking the validity of both hash and range key
      * conditions. It also tries to infer the correct index name from the POJO
@@ -2896,31 +2881,18 @@ public class DynamoDBMapper {
 
     ItemConverter getConverter(DynamoDBMapperConfig config) {
         ConversionSchema schema = config.getConversionSchema();
+        ItemConverter converter = converters.get(schema);
+        if (converter != null) {
+            return converter;
+        }
 
         ConversionSchema.Dependencies params = new ConversionSchema.Dependencies()
                 .with(DynamoDBReflector.class, reflector)
                 .with(S3ClientCache.class, s3cc);
 
-        return schema.getConverter(params);
-    }
-
-    private void pauseExponentially(int retries) {
-        if (retries == 0) {
-            return;
-        }
-
-        Random random = new Random();
-        long delay = 0;
-        long scaleFactor = 500 + random.nextInt(100);
-        delay = (long) (Math.pow(2, retries) * scaleFactor);
-        delay = Math.min(delay, MAX_BACKOFF_IN_MILLISECONDS);
-
-        try {
-            Thread.sleep(delay);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new AmazonClientException(e.getMessage(), e);
-        }
+        converter = schema.getConverter(params);
+        ItemConverter existing = converters.putIfAbsent(schema, converter);
+        return existing == null ? converter : existing;
     }
 
     /**
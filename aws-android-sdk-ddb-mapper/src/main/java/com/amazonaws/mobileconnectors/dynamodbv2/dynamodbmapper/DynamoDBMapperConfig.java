@@ -17,6 +17,8 @@ package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import com.amazonaws.metrics.RequestMetricCollector;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * Immutable configuration object for service call behavior. An instance of this
  * configuration is supplied to every {@link DynamoDBMapper} at construction; if
@@ -52,6 +54,10 @@ public class DynamoDBMapperConfig {
         private PaginationLoadingStrategy paginationLoadingStrategy;
         private RequestMetricCollector requestMetricCollector;
         private ConversionSchema conversionSchema;
+        private BatchWriteOptions batchWriteOptions;
+        private BatchLoadOptions batchLoadOptions;
+        private ParallelScanOptions parallelScanOptions;
+        private StreamingOptions streamingOptions;
 
         /**
          * Creates a new builder initialized with the {@link #DEFAULT} values.
@@ -65,6 +71,10 @@ public class DynamoDBMapperConfig {
             paginationLoadingStrategy = DEFAULT.getPaginationLoadingStrategy();
             requestMetricCollector = DEFAULT.getRequestMetricCollector();
             conversionSchema = DEFAULT.getConversionSchema();
+            batchWriteOptions = DEFAULT.getBatchWriteOptions();
+            batchLoadOptions = DEFAULT.getBatchLoadOptions();
+            parallelScanOptions = DEFAULT.getParallelScanOptions();
+            streamingOptions = DEFAULT.getStreamingOptions();
         }
 
         /**
@@ -255,6 +265,98 @@ public class DynamoDBMapperConfig {
             return this;
         }
 
+        /**
+         * @return the current batch write options
+         */
+        public BatchWriteOptions getBatchWriteOptions() {
+            return batchWriteOptions;
+        }
+
+        /**
+         * @param value the new batch write options
+         */
+        public void setBatchWriteOptions(BatchWriteOptions value) {
+            batchWriteOptions = value;
+        }
+
+        /**
+         * @param value the new batch write options
+         * @return this builder
+         */
+        public Builder withBatchWriteOptions(BatchWriteOptions value) {
+            setBatchWriteOptions(value);
+            return this;
+        }
+
+        /**
+         * @return the current batch load options
+         */
+        public BatchLoadOptions getBatchLoadOptions() {
+            return batchLoadOptions;
+        }
+
+        /**
+         * @param value the new batch load options
+         */
+        public void setBatchLoadOptions(BatchLoadOptions value) {
+            batchLoadOptions = value;
+        }
+
+        /**
+         * @param value the new batch load options
+         * @return this builder
+         */
+        public Builder withBatchLoadOptions(BatchLoadOptions value) {
+            setBatchLoadOptions(value);
+            return this;
+        }
+
+        /**
+         * @return the current parallel scan options
+         */
+        public ParallelScanOptions getParallelScanOptions() {
+            return parallelScanOptions;
+        }
+
+        /**
+         * @param value the new parallel scan options
+         */
+        public void setParallelScanOptions(ParallelScanOptions value) {
+            parallelScanOptions = value;
+        }
+
+        /**
+         * @param value the new parallel scan options
+         * @return this builder
+         */
+        public Builder withParallelScanOptions(ParallelScanOptions value) {
+            setParallelScanOptions(value);
+            return this;
+        }
+
+        /**
+         * @return the current streaming options
+         */
+        public StreamingOptions getStreamingOptions() {
+            return streamingOptions;
+        }
+
+        /**
+         * @param value the new streaming options
+         */
+        public void setStreamingOptions(StreamingOptions value) {
+            streamingOptions = value;
+        }
+
+        /**
+         * @param value the new streaming options
+         * @return this builder
+         */
+        public Builder withStreamingOptions(StreamingOptions value) {
+            setStreamingOptions(value);
+            return this;
+        }
+
         /**
          * Builds a new {@code DynamoDBMapperConfig} object.
          *
@@ -269,7 +371,11 @@ public class DynamoDBMapperConfig {
                     objectTableNameResolver,
                     paginationLoadingStrategy,
                     requestMetricCollector,
-                    conversionSchema);
+                    conversionSchema,
+                    batchWriteOptions,
+                    batchLoadOptions,
+                    parallelScanOptions,
+                    streamingOptions);
         }
     }
 
@@ -360,7 +466,18 @@ public class DynamoDBMapperConfig {
          * Paginated list will eagerly load all the paginated results from
          * DynamoDB as soon as the list is initialized.
          */
-        EAGER_LOADING
+        EAGER_LOADING,
+
+        /**
+         * Like ITERATION_ONLY, the list could only be iterated once and keeps
+         * no result it has returned, but the next pages are loaded in the
+         * background while the current one is read, up to the number of pages
+         * set by {@link DynamoDBMapperConfig#getStreamingOptions()}.
+         * <p>
+         * Use this configuration to overlap the loading of pages with their
+         * processing in large exports, with constant memory use.
+         */
+        STREAMING
     }
 
     /**
@@ -428,6 +545,259 @@ public class DynamoDBMapperConfig {
         }
     }
 
+    /**
+     * Tunes how {@link DynamoDBMapper#batchWrite(java.util.List, java.util.List,
+     * DynamoDBMapperConfig)} sends its BatchWriteItem requests.
+     */
+    public static final class BatchWriteOptions {
+
+        /**
+         * Four requests in flight, no target write capacity rate and no
+         * throughput listener.
+         */
+        public static final BatchWriteOptions DEFAULT =
+                new BatchWriteOptions(4, 0, null);
+
+        private final int maxConcurrentRequests;
+        private final double targetWriteCapacityPerSecond;
+        private final BatchWriteThroughputListener throughputListener;
+
+        private BatchWriteOptions(
+                int maxConcurrentRequests,
+                double targetWriteCapacityPerSecond,
+                BatchWriteThroughputListener throughputListener) {
+
+            if (maxConcurrentRequests < 1) {
+                throw new IllegalArgumentException(
+                        "maxConcurrentRequests must be at least 1");
+            }
+            if (targetWriteCapacityPerSecond < 0) {
+                throw new IllegalArgumentException(
+                        "targetWriteCapacityPerSecond must not be negative");
+            }
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            this.targetWriteCapacityPerSecond = targetWriteCapacityPerSecond;
+            this.throughputListener = throughputListener;
+        }
+
+        /**
+         * Returns options with the given number of BatchWriteItem requests
+         * kept in flight at once, across all tables.
+         */
+        public BatchWriteOptions withMaxConcurrentRequests(int value) {
+            return new BatchWriteOptions(value, targetWriteCapacityPerSecond,
+                    throughputListener);
+        }
+
+        /**
+         * Returns options that pace the requests to each table so that they
+         * consume about the given write capacity units per second, or 0 for
+         * no pacing.
+         */
+        public BatchWriteOptions withTargetWriteCapacityPerSecond(double value) {
+            return new BatchWriteOptions(maxConcurrentRequests, value,
+                    throughputListener);
+        }
+
+        /**
+         * Returns options that report the throughput of each table written
+         * to the given listener.
+         */
+        public BatchWriteOptions withThroughputListener(
+                BatchWriteThroughputListener value) {
+
+            return new BatchWriteOptions(maxConcurrentRequests,
+                    targetWriteCapacityPerSecond, value);
+        }
+
+        /**
+         * Returns the number of BatchWriteItem requests kept in flight.
+         */
+        public int getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        /**
+         * Returns the write capacity units per second targeted for each
+         * table, 0 if requests aren't paced.
+         */
+        public double getTargetWriteCapacityPerSecond() {
+            return targetWriteCapacityPerSecond;
+        }
+
+        /**
+         * Returns the throughput listener, or null if there is none.
+         */
+        public BatchWriteThroughputListener getThroughputListener() {
+            return throughputListener;
+        }
+    }
+
+    /**
+     * Tunes how {@link DynamoDBMapper#batchLoad(java.util.List,
+     * DynamoDBMapperConfig)} and its streaming variants send their
+     * BatchGetItem requests.
+     */
+    public static final class BatchLoadOptions {
+
+        /**
+         * Four requests in flight.
+         */
+        public static final BatchLoadOptions DEFAULT = new BatchLoadOptions(4);
+
+        private final int maxConcurrentRequests;
+
+        private BatchLoadOptions(int maxConcurrentRequests) {
+            if (maxConcurrentRequests < 1) {
+                throw new IllegalArgumentException(
+                        "maxConcurrentRequests must be at least 1");
+            }
+            this.maxConcurrentRequests = maxConcurrentRequests;
+        }
+
+        /**
+         * Returns options with the given number of BatchGetItem requests kept
+         * in flight at once.
+         */
+        public BatchLoadOptions withMaxConcurrentRequests(int value) {
+            return new BatchLoadOptions(value);
+        }
+
+        /**
+         * Returns the number of BatchGetItem requests kept in flight.
+         */
+        public int getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+    }
+
+    /**
+     * Tunes how {@link DynamoDBMapper#parallelScan(Class, DynamoDBScanExpression,
+     * int, DynamoDBMapperConfig)} runs the scans of its segments.
+     */
+    public static final class ParallelScanOptions {
+
+        /**
+         * The shared executor and two pages prefetched per segment.
+         */
+        public static final ParallelScanOptions DEFAULT = new ParallelScanOptions(null, 2);
+
+        private final ExecutorService executor;
+        private final int prefetchDepth;
+
+        private ParallelScanOptions(ExecutorService executor, int prefetchDepth) {
+            if (prefetchDepth < 1) {
+                throw new IllegalArgumentException("prefetchDepth must be at least 1");
+            }
+            this.executor = executor;
+            this.prefetchDepth = prefetchDepth;
+        }
+
+        /**
+         * Returns options that run the segment scans on the given executor,
+         * or on an executor shared by all parallel scans if null. The
+         * executor isn't shut down by the scans.
+         */
+        public ParallelScanOptions withExecutor(ExecutorService value) {
+            return new ParallelScanOptions(value, prefetchDepth);
+        }
+
+        /**
+         * Returns options that scan at most the given number of pages of a
+         * segment ahead of the ones consumed.
+         */
+        public ParallelScanOptions withPrefetchDepth(int value) {
+            return new ParallelScanOptions(executor, value);
+        }
+
+        /**
+         * Returns the executor of the segment scans, or null for the shared
+         * one.
+         */
+        public ExecutorService getExecutor() {
+            return executor;
+        }
+
+        /**
+         * Returns the number of pages of a segment scanned ahead.
+         */
+        public int getPrefetchDepth() {
+            return prefetchDepth;
+        }
+    }
+
+    /**
+     * Tunes how paginated query and scan lists load pages ahead in the
+     * {@link PaginationLoadingStrategy#STREAMING} mode.
+     */
+    public static final class StreamingOptions {
+
+        /**
+         * The shared executor and two pages loaded ahead.
+         */
+        public static final StreamingOptions DEFAULT = new StreamingOptions(null, 2);
+
+        private final ExecutorService executor;
+        private final int maxBufferedPages;
+
+        private StreamingOptions(ExecutorService executor, int maxBufferedPages) {
+            if (maxBufferedPages < 1) {
+                throw new IllegalArgumentException("maxBufferedPages must be at least 1");
+            }
+            this.executor = executor;
+            this.maxBufferedPages = maxBufferedPages;
+        }
+
+        /**
+         * Returns options that load the pages on the given executor, or on
+         * the executor shared with parallel scans if null. The executor isn't
+         * shut down by the lists.
+         */
+        public StreamingOptions withExecutor(ExecutorService value) {
+            return new StreamingOptions(value, maxBufferedPages);
+        }
+
+        /**
+         * Returns options that load at most the given number of pages ahead
+         * of the page being read.
+         */
+        public StreamingOptions withMaxBufferedPages(int value) {
+            return new StreamingOptions(executor, value);
+        }
+
+        /**
+         * Returns the executor loading the pages, or null for the shared one.
+         */
+        public ExecutorService getExecutor() {
+            return executor;
+        }
+
+        /**
+         * Returns the number of pages loaded ahead.
+         */
+        public int getMaxBufferedPages() {
+            return maxBufferedPages;
+        }
+    }
+
+    /**
+     * Receives the throughput of each table written by a batch write.
+     */
+    public static interface BatchWriteThroughputListener {
+
+        /**
+         * Called once a batch write is done with a table.
+         *
+         * @param tableName The name of the table
+         * @param itemsWritten The number of items put or deleted
+         * @param consumedWriteCapacity The write capacity units consumed
+         * @param elapsedMillis The time from the first request to the table
+         *            to the last response, in milliseconds
+         */
+        public void tableWritten(String tableName, long itemsWritten,
+                double consumedWriteCapacity, long elapsedMillis);
+    }
+
     /**
      * Interface for a strategy used to determine the table name of an object
      * based on it's class. This resolver is used when an object isn't available
@@ -511,6 +881,10 @@ public class DynamoDBMapperConfig {
     private final PaginationLoadingStrategy paginationLoadingStrategy;
     private final RequestMetricCollector requestMetricCollector;
     private final ConversionSchema conversionSchema;
+    private final BatchWriteOptions batchWriteOptions;
+    private final BatchLoadOptions batchLoadOptions;
+    private final ParallelScanOptions parallelScanOptions;
+    private final StreamingOptions streamingOptions;
 
     /**
      * Legacy constructor, using default PaginationLoadingStrategy
@@ -578,7 +952,11 @@ public class DynamoDBMapperConfig {
                 null,
                 paginationLoadingStrategy,
                 requestMetricCollector,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT,
+                null,
+                null,
+                null,
+                null);
     }
 
     private DynamoDBMapperConfig(
@@ -589,7 +967,11 @@ public class DynamoDBMapperConfig {
             ObjectTableNameResolver objectTableNameResolver,
             PaginationLoadingStrategy paginationLoadingStrategy,
             RequestMetricCollector requestMetricCollector,
-            ConversionSchema conversionSchema) {
+            ConversionSchema conversionSchema,
+            BatchWriteOptions batchWriteOptions,
+            BatchLoadOptions batchLoadOptions,
+            ParallelScanOptions parallelScanOptions,
+            StreamingOptions streamingOptions) {
 
         this.saveBehavior = saveBehavior;
         this.consistentReads = consistentReads;
@@ -599,6 +981,10 @@ public class DynamoDBMapperConfig {
         this.paginationLoadingStrategy = paginationLoadingStrategy;
         this.requestMetricCollector = requestMetricCollector;
         this.conversionSchema = conversionSchema;
+        this.batchWriteOptions = batchWriteOptions;
+        this.batchLoadOptions = batchLoadOptions;
+        this.parallelScanOptions = parallelScanOptions;
+        this.streamingOptions = streamingOptions;
     }
 
     /**
@@ -606,7 +992,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(SaveBehavior saveBehavior) {
         this(saveBehavior, null, null, null, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null);
     }
 
     /**
@@ -615,7 +1001,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(ConsistentReads consistentReads) {
         this(null, consistentReads, null, null, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null);
     }
 
     /**
@@ -623,7 +1009,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(TableNameOverride tableNameOverride) {
         this(null, null, tableNameOverride, null, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null);
     }
 
     /**
@@ -632,7 +1018,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(TableNameResolver tableNameResolver) {
         this(null, null, null, tableNameResolver, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null);
     }
 
     /**
@@ -641,7 +1027,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(ObjectTableNameResolver objectTableNameResolver) {
         this(null, null, null, null, objectTableNameResolver, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null);
     }
 
     /**
@@ -651,7 +1037,7 @@ public class DynamoDBMapperConfig {
     public DynamoDBMapperConfig(TableNameResolver tableNameResolver,
             ObjectTableNameResolver objectTableNameResolver) {
         this(null, null, null, tableNameResolver, objectTableNameResolver, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null);
     }
 
     /**
@@ -662,14 +1048,14 @@ public class DynamoDBMapperConfig {
             PaginationLoadingStrategy paginationLoadingStrategy) {
 
         this(null, null, null, null, null, paginationLoadingStrategy, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null);
     }
 
     /**
      * Constructs a new configuration object with the conversion schema given.
      */
     public DynamoDBMapperConfig(ConversionSchema conversionSchema) {
-        this(null, null, null, null, null, null, null, conversionSchema);
+        this(null, null, null, null, null, null, null, conversionSchema, null, null, null, null);
     }
 
     /**
@@ -699,6 +1085,10 @@ public class DynamoDBMapperConfig {
                     defaults.getPaginationLoadingStrategy();
             this.requestMetricCollector = defaults.getRequestMetricCollector();
             this.conversionSchema = defaults.getConversionSchema();
+            this.batchWriteOptions = defaults.getBatchWriteOptions();
+            this.batchLoadOptions = defaults.getBatchLoadOptions();
+            this.parallelScanOptions = defaults.getParallelScanOptions();
+            this.streamingOptions = defaults.getStreamingOptions();
 
         } else {
 
@@ -736,6 +1126,22 @@ public class DynamoDBMapperConfig {
                     ? defaults.getConversionSchema()
                     : overrides.getConversionSchema();
 
+            this.batchWriteOptions = (overrides.getBatchWriteOptions() == null)
+                    ? defaults.getBatchWriteOptions()
+                    : overrides.getBatchWriteOptions();
+
+            this.batchLoadOptions = (overrides.getBatchLoadOptions() == null)
+                    ? defaults.getBatchLoadOptions()
+                    : overrides.getBatchLoadOptions();
+
+            this.parallelScanOptions = (overrides.getParallelScanOptions() == null)
+                    ? defaults.getParallelScanOptions()
+                    : overrides.getParallelScanOptions();
+
+            this.streamingOptions = (overrides.getStreamingOptions() == null)
+                    ? defaults.getStreamingOptions()
+                    : overrides.getStreamingOptions();
+
         }
     }
 
@@ -812,6 +1218,35 @@ public class DynamoDBMapperConfig {
         return conversionSchema;
     }
 
+    /**
+     * Returns the options of batch writes, or null if not specified.
+     */
+    public BatchWriteOptions getBatchWriteOptions() {
+        return batchWriteOptions;
+    }
+
+    /**
+     * Returns the options of batch loads, or null if not specified.
+     */
+    public BatchLoadOptions getBatchLoadOptions() {
+        return batchLoadOptions;
+    }
+
+    /**
+     * Returns the options of parallel scans, or null if not specified.
+     */
+    public ParallelScanOptions getParallelScanOptions() {
+        return parallelScanOptions;
+    }
+
+    /**
+     * Returns the options of the STREAMING pagination loading strategy, or
+     * null if not specified.
+     */
+    public StreamingOptions getStreamingOptions() {
+        return streamingOptions;
+    }
+
     /**
      * Default configuration uses UPDATE behavior for saves and EVENTUALly
      * consistent reads, with no table name override and lazy-loading strategy.
@@ -824,5 +1259,9 @@ public class DynamoDBMapperConfig {
             null, // ObjectTableNameResolver
             PaginationLoadingStrategy.LAZY_LOADING,
             null, // RequestMetricCollector
-            ConversionSchemas.DEFAULT);
+            ConversionSchemas.DEFAULT,
+            BatchWriteOptions.DEFAULT,
+            BatchLoadOptions.DEFAULT,
+            ParallelScanOptions.DEFAULT,
+            StreamingOptions.DEFAULT);
 }
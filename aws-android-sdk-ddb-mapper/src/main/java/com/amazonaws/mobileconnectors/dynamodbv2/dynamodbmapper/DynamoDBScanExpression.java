@@ -68,6 +68,17 @@ public class DynamoDBScanExpression {
      */
     private String filterExpression;
 
+    /**
+     * The attributes to retrieve from the table, as a projection expression.
+     */
+    private String projectionExpression;
+
+    /**
+     * The properties of the domain class to retrieve from the table; the
+     * mapper generates the projection expression for them.
+     */
+    private java.util.List<String> projectedProperties;
+
     /**
      * One or more substitution variables for simplifying complex expressions.
      * The following are some use cases for an ExpressionAttributeName:
@@ -418,6 +429,92 @@ public class DynamoDBScanExpression {
         return this;
     }
 
+    /**
+     * A string that identifies one or more attributes to retrieve from the
+     * table. The attributes in the expression must be separated by commas.
+     *
+     * @return The attributes to retrieve from the table.
+     * @see ScanRequest#getProjectionExpression()
+     */
+    public String getProjectionExpression() {
+        return projectionExpression;
+    }
+
+    /**
+     * A string that identifies one or more attributes to retrieve from the
+     * table. The attributes in the expression must be separated by commas.
+     * <p>
+     * Only the attributes retrieved are set on the items scanned; it cannot be
+     * used together with {@link #setProjectedProperties(java.util.Collection)}.
+     *
+     * @param projectionExpression The attributes to retrieve from the table.
+     * @see ScanRequest#setProjectionExpression(String)
+     */
+    public void setProjectionExpression(String projectionExpression) {
+        this.projectionExpression = projectionExpression;
+    }
+
+    /**
+     * A string that identifies one or more attributes to retrieve from the
+     * table. The attributes in the expression must be separated by commas.
+     * <p>
+     * Returns a reference to this object so that method calls can be chained
+     * together.
+     *
+     * @param projectionExpression The attributes to retrieve from the table.
+     * @return A reference to this updated object so that method calls can be
+     *         chained together.
+     * @see ScanRequest#withProjectionExpression(String)
+     */
+    public DynamoDBScanExpression withProjectionExpression(String projectionExpression) {
+        this.projectionExpression = projectionExpression;
+        return this;
+    }
+
+    /**
+     * Returns the properties of the domain class to retrieve from the table,
+     * or null if the whole items are retrieved.
+     *
+     * @return The properties of the domain class to retrieve from the table.
+     */
+    public java.util.List<String> getProjectedProperties() {
+        return projectedProperties;
+    }
+
+    /**
+     * Sets the properties of the domain class to retrieve from the table, by
+     * the names of their getters; for example, "rating" for
+     * <code>getRating()</code>. The mapper generates the projection expression
+     * for them, always including the primary key, and only these properties
+     * are set on the items scanned.
+     *
+     * @param projectedProperties The properties of the domain class to
+     *            retrieve from the table, or null to retrieve the whole items.
+     */
+    public void setProjectedProperties(java.util.Collection<String> projectedProperties) {
+        if (projectedProperties == null) {
+            this.projectedProperties = null;
+            return;
+        }
+        this.projectedProperties = new java.util.ArrayList<String>(projectedProperties);
+    }
+
+    /**
+     * Sets the properties of the domain class to retrieve from the table, by
+     * the names of their getters, and returns a reference to this object so
+     * that method calls can be chained together.
+     *
+     * @param projectedProperties The properties of the domain class to
+     *            retrieve from the table.
+     * @return A reference to this updated object so that method calls can be
+     *         chained together.
+     * @see #setProjectedProperties(java.util.Collection)
+     */
+    public DynamoDBScanExpression withProjectedProperties(String... projectedProperties) {
+        setProjectedProperties(java.util.Arrays.asList(projectedProperties));
+        return this;
+    }
+
     /**
      * One or more substitution variables for simplifying complex expressions.
      *
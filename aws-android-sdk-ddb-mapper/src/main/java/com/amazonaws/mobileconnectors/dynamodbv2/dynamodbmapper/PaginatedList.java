@@ -15,9 +15,12 @@
 
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.StreamingOptions;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -26,6 +29,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Unmodifiable list supporting paginated result sets from Amazon DynamoDB.
@@ -41,7 +46,7 @@ public abstract class PaginatedList<T> implements List<T> {
 
     private static final String UNMODIFIABLE_MESSAGE = "This is an unmodifiable list";
 
-    private static final String ITERATION_ONLY_UNSUPPORTED_OPERATION_MESSAGE = " is not supported when using ITERATION_ONLY configuration.";
+    private static final String ITERATION_ONLY_UNSUPPORTED_OPERATION_MESSAGE = " is not supported when using %s configuration.";
 
     /**
      * Reference to the DynamoDB mapper for marshalling DynamoDB attributes back
@@ -74,9 +79,13 @@ public abstract class PaginatedList<T> implements List<T> {
     /** The pagination loading strategy for this paginated list **/
     private final PaginationLoadingStrategy paginationLoadingStrategy;
 
+    /** How pages are loaded ahead in STREAMING mode */
+    private final StreamingOptions streamingOptions;
+
     /**
      * Keeps track on whether an iterator of the list has been retrieved. Only
-     * updated and checked when the list is in ITERATION_ONLY mode.
+     * updated and checked when the list is in ITERATION_ONLY or STREAMING
+     * mode.
      */
     private boolean iterationStarted = false;
 
@@ -103,11 +112,33 @@ public abstract class PaginatedList<T> implements List<T> {
      */
     public PaginatedList(DynamoDBMapper mapper, Class<T> clazz, AmazonDynamoDB dynamo,
             PaginationLoadingStrategy paginationLoadingStrategy) {
+        this(mapper, clazz, dynamo, paginationLoadingStrategy, null);
+    }
+
+    /**
+     * Constructs a PaginatedList instance.
+     *
+     * @param mapper The mapper for marshalling DynamoDB attributes into
+     *            objects.
+     * @param clazz The class of the annotated model.
+     * @param dynamo The DynamoDB client for making low-level request calls.
+     * @param paginationLoadingStrategy The strategy used for loading paginated
+     *            results. If null value is provided, LAZY_LOADING will be set
+     *            by default.
+     * @param streamingOptions How pages are loaded ahead in STREAMING mode. If
+     *            null value is provided, {@link StreamingOptions#DEFAULT} will
+     *            be used.
+     */
+    public PaginatedList(DynamoDBMapper mapper, Class<T> clazz, AmazonDynamoDB dynamo,
+            PaginationLoadingStrategy paginationLoadingStrategy,
+            StreamingOptions streamingOptions) {
         this.mapper = mapper;
         this.clazz = clazz;
         this.dynamo = dynamo;
         this.paginationLoadingStrategy = paginationLoadingStrategy == null ?
                 PaginationLoadingStrategy.LAZY_LOADING : paginationLoadingStrategy;
+        this.streamingOptions = streamingOptions == null ?
+                StreamingOptions.DEFAULT : streamingOptions;
 
         this.allResults = new ArrayList<T>();
 
@@ -191,6 +222,15 @@ public abstract class PaginatedList<T> implements List<T> {
      */
     protected abstract boolean atEndOfResults();
 
+    /**
+     * Returns whether pages are loaded in the background in STREAMING mode.
+     * Lists that already load their pages ahead return false, and are then
+     * iterated as in ITERATION_ONLY mode.
+     */
+    boolean readsAhead() {
+        return true;
+    }
+
     /**
      * Returns an iterator over this list that lazily initializes results as
      * necessary.
@@ -199,11 +239,157 @@ public abstract class PaginatedList<T> implements List<T> {
      * only retrieved once, and any previously loaded results will be cleared in
      * the memory during the iteration.
      * </p>
+     * <p>
+     * In STREAMING mode, the iterator could also be retrieved only once, and
+     * the next pages are loaded in the background while the current one is
+     * read.
+     * </p>
      */
     @Override
     public Iterator<T> iterator() {
-        return new PaginatedListIterator(
-                paginationLoadingStrategy == PaginationLoadingStrategy.ITERATION_ONLY);
+        if (paginationLoadingStrategy == PaginationLoadingStrategy.STREAMING && readsAhead()) {
+            return new ReadAheadIterator();
+        }
+        return new PaginatedListIterator(isIterationOnly());
+    }
+
+    private boolean isIterationOnly() {
+        return paginationLoadingStrategy == PaginationLoadingStrategy.ITERATION_ONLY
+                || paginationLoadingStrategy == PaginationLoadingStrategy.STREAMING;
+    }
+
+    private void startIteration() {
+        synchronized (this) {
+            if (iterationStarted) {
+                throw new UnsupportedOperationException(
+                        "The list could only be iterated once in " + paginationLoadingStrategy
+                                + " mode.");
+            }
+            iterationStarted = true;
+        }
+    }
+
+    /**
+     * Iterates over the pages while the next ones are loaded in the
+     * background, one at a time and at most
+     * {@link StreamingOptions#getMaxBufferedPages()} ahead. Nothing is kept
+     * once returned.
+     */
+    private class ReadAheadIterator implements Iterator<T> {
+
+        private final ExecutorService executor;
+
+        /** Pages loaded and not read yet. */
+        private final ArrayDeque<List<T>> pages = new ArrayDeque<List<T>>();
+
+        private Iterator<T> current;
+
+        /** Whether a page is being loaded. */
+        private boolean loading;
+
+        private boolean endReached;
+
+        private RuntimeException failure;
+
+        ReadAheadIterator() {
+            startIteration();
+            executor = streamingOptions.getExecutor() == null
+                    ? SharedExecutor.get()
+                    : streamingOptions.getExecutor();
+
+            // The first page was loaded by the list
+            current = new ArrayList<T>(allResults).iterator();
+            allResults.clear();
+            synchronized (this) {
+                endReached = atEndOfResults();
+                loadNextPage();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (current.hasNext()) {
+                return true;
+            }
+            synchronized (this) {
+                while (pages.isEmpty()) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    if (endReached && !loading) {
+                        return false;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new AmazonClientException(e.getMessage(), e);
+                    }
+                }
+                current = pages.poll().iterator();
+                loadNextPage();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(UNMODIFIABLE_MESSAGE);
+        }
+
+        /**
+         * Starts loading the next page unless one is being loaded, there is
+         * none or enough are loaded. Called holding the lock.
+         */
+        private void loadNextPage() {
+            if (loading || endReached || failure != null
+                    || pages.size() >= streamingOptions.getMaxBufferedPages()) {
+                return;
+            }
+            loading = true;
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<T> page = null;
+                        boolean end = false;
+                        RuntimeException exception = null;
+                        try {
+                            page = fetchNextPage();
+                            end = atEndOfResults();
+                        } catch (RuntimeException e) {
+                            exception = e;
+                        } catch (Error e) {
+                            exception = new AmazonClientException(e.getMessage(), e);
+                        }
+                        synchronized (ReadAheadIterator.this) {
+                            loading = false;
+                            if (exception != null) {
+                                failure = exception;
+                            } else {
+                                if (!page.isEmpty()) {
+                                    pages.add(page);
+                                }
+                                endReached = end;
+                                loadNextPage();
+                            }
+                            ReadAheadIterator.this.notifyAll();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                loading = false;
+                failure = new AmazonClientException("Unable to load the next page.", e);
+            }
+        }
     }
 
     private class PaginatedListIterator implements Iterator<T> {
@@ -228,13 +414,7 @@ public abstract class PaginatedList<T> implements List<T> {
             this.iterationOnly = iterationOnly;
 
             if (iterationOnly) {
-                synchronized (PaginatedList.this) {
-                    if (iterationStarted) {
-                        throw new UnsupportedOperationException(
-                                "The list could only be iterated once in ITERATION_ONLY mode.");
-                    }
-                    iterationStarted = true;
-                }
+                startIteration();
 
                 allResultsCopy = null; // not needed for ITERATION_ONLY mode
                 innerIterator = allResults.iterator();
@@ -505,9 +685,9 @@ public abstract class PaginatedList<T> implements List<T> {
     }
 
     void checkUnsupportedOperationForIterationOnlyMode(String methodSignature) {
-        if (this.paginationLoadingStrategy == PaginationLoadingStrategy.ITERATION_ONLY) {
-            throw new UnsupportedOperationException(methodSignature
-                    + ITERATION_ONLY_UNSUPPORTED_OPERATION_MESSAGE);
+        if (isIterationOnly()) {
+            throw new UnsupportedOperationException(methodSignature + String.format(
+                    ITERATION_ONLY_UNSUPPORTED_OPERATION_MESSAGE, paginationLoadingStrategy));
         }
     };
 }
@@ -68,6 +68,14 @@ public class PaginatedParallelScanList<T> extends PaginatedList<T> {
         }
     }
 
+    /**
+     * The parallel scan task already scans the segments ahead.
+     */
+    @Override
+    boolean readsAhead() {
+        return false;
+    }
+
     @Override
     protected boolean atEndOfResults() {
         return parallelScanTask.isAllSegmentScanFinished();
@@ -54,7 +54,8 @@ public class PaginatedQueryList<T> extends PaginatedList<T> {
             QueryResult queryResult,
             PaginationLoadingStrategy paginationLoadingStrategy,
             DynamoDBMapperConfig config) {
-        super(mapper, clazz, dynamo, paginationLoadingStrategy);
+        super(mapper, clazz, dynamo, paginationLoadingStrategy,
+                config == null ? null : config.getStreamingOptions());
 
         this.queryRequest = queryRequest;
         this.queryResult = queryResult;
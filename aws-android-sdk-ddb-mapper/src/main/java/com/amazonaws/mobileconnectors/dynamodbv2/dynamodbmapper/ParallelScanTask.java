@@ -17,21 +17,45 @@ package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the scans of the segments of a parallel scan. Each segment has at most
+ * one scan request running, and is scanned at most a few pages ahead of the
+ * pages consumed, so the memory held stays bounded. The pages are handed out
+ * in the order they are received, without waiting for the other segments.
+ * <p>
+ * The scans run on a caller-supplied executor, or on a bounded executor shared
+ * by all parallel scans.
+ */
 public class ParallelScanTask {
 
+    /** The number of pages of a segment scanned ahead by default. */
+    static final int DEFAULT_PREFETCH_DEPTH = 2;
+
+    /**
+     * The scan state of a segment, guarded by the task.
+     */
+    private static final class Segment {
+        /** The key to continue the scan from, null when not started. */
+        Map<String, AttributeValue> lastEvaluatedKey;
+        /** Pages received and not handed out yet. */
+        int bufferedPages;
+        boolean scanning;
+        boolean completed;
+        Exception failure;
+    }
+
     /**
      * The list of hard copies of ScanRequest with different segment number.
      */
@@ -39,27 +63,21 @@ public class ParallelScanTask {
 
     private final int totalSegments;
 
-    /**
-     * Cache all the future tasks, so that we can extract the exception when we
-     * see failed segment scan.
-     */
-    private final List<Future<ScanResult>> segmentScanFutureTasks;
+    private final List<Segment> segments;
 
     /**
-     * Cache all the most recent ScanResult on each segment.
+     * The pages received and not handed out yet, in the order received.
      */
-    private final List<ScanResult> segmentScanResults;
+    private final ArrayDeque<ScanResult> receivedPages = new ArrayDeque<ScanResult>();
 
-    /**
-     * The current state of the scan on each segment. Used as the monitor for
-     * synchronization.
-     */
-    private final List<SegmentScanState> segmentScanStates;
+    private final ExecutorService executorService;
 
-    private ExecutorService executorService;
+    private final int prefetchDepth;
 
     private final AmazonDynamoDB dynamo;
 
+    private boolean started;
+
     @Deprecated
     public ParallelScanTask(DynamoDBMapper mapper, AmazonDynamoDB dynamo,
             List<ScanRequest> parallelScanRequests) {
@@ -67,227 +85,159 @@ public class ParallelScanTask {
     }
 
     ParallelScanTask(AmazonDynamoDB dynamo, List<ScanRequest> parallelScanRequests) {
+        this(dynamo, parallelScanRequests, null, DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * @param executorService the executor of the segment scans, or null for
+     *            the shared one
+     * @param prefetchDepth the max number of pages of a segment received and
+     *            not handed out yet
+     */
+    ParallelScanTask(AmazonDynamoDB dynamo, List<ScanRequest> parallelScanRequests,
+            ExecutorService executorService, int prefetchDepth) {
         this.dynamo = dynamo;
         this.parallelScanRequests = parallelScanRequests;
         this.totalSegments = parallelScanRequests.size();
-        executorService = Executors.newCachedThreadPool();
-
-        // Create synchronized views of the list to guarantee any changes are
-        // visible across all threads.
-        segmentScanFutureTasks = Collections.synchronizedList(new ArrayList<Future<ScanResult>>(
-                totalSegments));
-        segmentScanResults = Collections.synchronizedList(new ArrayList<ScanResult>(totalSegments));
-        segmentScanStates = Collections.synchronizedList(new ArrayList<SegmentScanState>(
-                totalSegments));
+        this.executorService = executorService == null
+                ? SharedExecutor.get()
+                : executorService;
+        this.prefetchDepth = prefetchDepth;
 
-        initSegmentScanStates();
+        segments = new ArrayList<Segment>(totalSegments);
+        for (int segment = 0; segment < totalSegments; segment++) {
+            segments.add(new Segment());
+        }
     }
 
     String getTableName() {
         return parallelScanRequests.get(0).getTableName();
     }
 
-    public boolean isAllSegmentScanFinished() {
-        synchronized (segmentScanStates) {
-            for (int segment = 0; segment < totalSegments; segment++) {
-                if (segmentScanStates.get(segment) != SegmentScanState.SegmentScanCompleted)
-                    return false;
+    /**
+     * Returns whether every segment has been scanned and all the pages have
+     * been handed out.
+     */
+    public synchronized boolean isAllSegmentScanFinished() {
+        if (!receivedPages.isEmpty()) {
+            return false;
+        }
+        for (Segment segment : segments) {
+            if (!segment.completed) {
+                return false;
             }
-            // Shut down if all data have been scanned and loaded.
-            executorService.shutdown();
-            return true;
         }
+        return true;
     }
 
-    public List<ScanResult> getNextBatchOfScanResults() throws AmazonClientException {
-        /**
-         * Kick-off all the parallel scan tasks.
-         */
-        startScanNextPages();
-        /**
-         * Wait till all the tasks have finished.
-         */
-        synchronized (segmentScanStates) {
-            while (segmentScanStates.contains(SegmentScanState.Waiting)
-                    || segmentScanStates.contains(SegmentScanState.Scanning)) {
-                try {
-                    segmentScanStates.wait();
-                } catch (InterruptedException ie) {
-                    throw new AmazonClientException("Parallel scan interrupted by other thread.",
-                            ie);
-                }
+    /**
+     * Returns the pages received since the last call, waiting for one if none
+     * has been received yet. Returns an empty list once all the pages have
+     * been handed out.
+     */
+    public synchronized List<ScanResult> getNextBatchOfScanResults() throws AmazonClientException {
+        if (!started) {
+            started = true;
+            for (int segment = 0; segment < totalSegments; segment++) {
+                startScanNextPage(segment);
             }
-            /**
-             * Keep the lock on segmentScanStates until all the cached results
-             * are marshaled and returned.
-             */
-            return marshalParallelScanResults();
         }
 
-    }
+        while (receivedPages.isEmpty() && !isAllSegmentScanFinished()) {
+            rethrowFailure();
+            try {
+                wait();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Parallel scan interrupted by other thread.", ie);
+            }
+        }
+        rethrowFailure();
 
-    private void startScanNextPages() {
+        List<ScanResult> scanResults = new LinkedList<ScanResult>(receivedPages);
+        receivedPages.clear();
         for (int segment = 0; segment < totalSegments; segment++) {
-            final int currentSegment = segment;
-            final SegmentScanState currentSegmentState = segmentScanStates.get(currentSegment);
-            /**
-             * Assert: Should never see any task in state of "Scanning" when
-             * starting a new batch.
-             */
-            if (currentSegmentState == SegmentScanState.Scanning) {
-                throw new AmazonClientException(
-                        "Should never see a 'Scanning' state when starting parallel scans.");
-            }
-            /**
-             * Skip any failed or completed segment, and clear the corresponding
-             * cached result.
-             */
-            else if (currentSegmentState == SegmentScanState.Failed
-                    || currentSegmentState == SegmentScanState.SegmentScanCompleted) {
-                segmentScanResults.set(currentSegment, null);
-                continue;
-            }
-            /**
-             * Otherwise, submit a new future task and save it in
-             * segmentScanFutureTasks.
-             */
-            else {
-                // Update the state to "Scanning" and notify any waiting thread.
-                synchronized (segmentScanStates) {
-                    segmentScanStates.set(currentSegment, SegmentScanState.Scanning);
-                    segmentScanStates.notifyAll();
-                }
-                Future<ScanResult> futureTask = executorService.submit(new Callable<ScanResult>() {
-                    @Override
-                    public ScanResult call() throws Exception {
-                        try {
-                            if (currentSegmentState == SegmentScanState.HasNextPage) {
-                                return scanNextPageOfSegment(currentSegment, true);
-                            }
-                            else if (currentSegmentState == SegmentScanState.Waiting) {
-                                return scanNextPageOfSegment(currentSegment, false);
-                            }
-                            else {
-                                throw new AmazonClientException(
-                                        "Should not start a new future task");
-                            }
-                        } catch (Exception e) {
-                            synchronized (segmentScanStates) {
-                                segmentScanStates.set(currentSegment, SegmentScanState.Failed);
-                                segmentScanStates.notifyAll();
-                            }
-                            throw e;
+            segments.get(segment).bufferedPages = 0;
+            startScanNextPage(segment);
+        }
+        return scanResults;
+    }
+
+    /**
+     * Submits the scan of the next page of the segment unless it is being
+     * scanned, is done or is far enough ahead.
+     */
+    private void startScanNextPage(final int segment) {
+        final Segment state = segments.get(segment);
+        if (state.scanning || state.completed || state.failure != null
+                || state.bufferedPages >= prefetchDepth) {
+            return;
+        }
+        state.scanning = true;
+        try {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        boolean checkLastEvaluatedKey;
+                        synchronized (ParallelScanTask.this) {
+                            checkLastEvaluatedKey = state.lastEvaluatedKey != null;
+                        }
+                        scanNextPageOfSegment(segment, checkLastEvaluatedKey);
+                    } catch (Exception e) {
+                        synchronized (ParallelScanTask.this) {
+                            state.scanning = false;
+                            state.failure = e;
+                            ParallelScanTask.this.notifyAll();
                         }
                     }
-                });
-                // Cache the future task (for getting the Exceptions in the
-                // working thread).
-                segmentScanFutureTasks.set(currentSegment, futureTask);
-            }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            state.scanning = false;
+            state.failure = e;
         }
     }
 
-    private List<ScanResult> marshalParallelScanResults() {
-        List<ScanResult> scanResults = new LinkedList<ScanResult>();
+    /**
+     * Throws the exception of the first failed segment, if any.
+     */
+    private void rethrowFailure() {
         for (int segment = 0; segment < totalSegments; segment++) {
-            SegmentScanState currentSegmentState = segmentScanStates.get(segment);
-            /**
-             * Rethrow the exception from any failed segment scan.
-             */
-            if (currentSegmentState == SegmentScanState.Failed) {
-                try {
-                    segmentScanFutureTasks.get(segment).get();
-                    throw new AmazonClientException("No Exception found in the failed scan task.");
-                } catch (ExecutionException ee) {
-                    if (ee.getCause() instanceof AmazonClientException) {
-                        throw (AmazonClientException) (ee.getCause());
-                    } else {
-                        throw new AmazonClientException(
-                                "Internal error during the scan on segment #" + segment + ".",
-                                ee.getCause());
-                    }
-                } catch (Exception e) {
-                    throw new AmazonClientException("Error during the scan on segment #" + segment
-                            + ".", e);
-                }
-            }
-            /**
-             * Get the ScanResult from cache if the segment scan has finished.
-             */
-            else if (currentSegmentState == SegmentScanState.HasNextPage
-                    || currentSegmentState == SegmentScanState.SegmentScanCompleted) {
-                ScanResult scanResult = segmentScanResults.get(segment);
-                scanResults.add(scanResult);
-            }
-            else if (currentSegmentState == SegmentScanState.Waiting
-                    || currentSegmentState == SegmentScanState.Scanning) {
+            Exception failure = segments.get(segment).failure;
+            if (failure instanceof AmazonClientException) {
+                throw (AmazonClientException) failure;
+            } else if (failure != null) {
                 throw new AmazonClientException(
-                        "Should never see a 'Scanning' or 'Waiting' state when marshalling parallel scan results.");
+                        "Internal error during the scan on segment #" + segment + ".", failure);
             }
         }
-        return scanResults;
     }
 
     ScanResult scanNextPageOfSegment(int currentSegment, boolean checkLastEvaluatedKey) {
         ScanRequest segmentScanRequest = parallelScanRequests.get(currentSegment);
-        if (checkLastEvaluatedKey) {
-            ScanResult lastScanResult = segmentScanResults.get(currentSegment);
-            segmentScanRequest.setExclusiveStartKey(lastScanResult.getLastEvaluatedKey());
-        } else {
-            segmentScanRequest.setExclusiveStartKey(null);
+        Segment state = segments.get(currentSegment);
+        synchronized (this) {
+            segmentScanRequest.setExclusiveStartKey(
+                    checkLastEvaluatedKey ? state.lastEvaluatedKey : null);
         }
         ScanResult scanResult = dynamo.scan(DynamoDBMapper.applyUserAgent(segmentScanRequest));
 
         /**
-         * Cache the scan result in segmentScanResults. We should never try to
-         * get these scan results by calling get() on the cached future tasks.
+         * Hand the page out and continue the scan if the segment isn't too
+         * far ahead.
          */
-        segmentScanResults.set(currentSegment, scanResult);
-
-        /**
-         * Update the state and notify any waiting thread.
-         */
-        synchronized (segmentScanStates) {
-            if (null == scanResult.getLastEvaluatedKey())
-                segmentScanStates.set(currentSegment, SegmentScanState.SegmentScanCompleted);
-            else
-                segmentScanStates.set(currentSegment, SegmentScanState.HasNextPage);
-            segmentScanStates.notifyAll();
+        synchronized (this) {
+            receivedPages.add(scanResult);
+            state.bufferedPages++;
+            state.lastEvaluatedKey = scanResult.getLastEvaluatedKey();
+            state.completed = state.lastEvaluatedKey == null;
+            state.scanning = false;
+            if (started) {
+                startScanNextPage(currentSegment);
+            }
+            notifyAll();
         }
         return scanResult;
     }
-
-    private void initSegmentScanStates() {
-        for (int segment = 0; segment < totalSegments; segment++) {
-            segmentScanFutureTasks.add(null);
-            segmentScanResults.add(null);
-            segmentScanStates.add(SegmentScanState.Waiting);
-        }
-    }
-
-    /**
-     * Enumeration of the possible states of the scan on a segment.
-     */
-    private static enum SegmentScanState {
-        /**
-         * The scan on the segment is waiting for resources to execute and has
-         * not started yet.
-         */
-        Waiting,
-
-        /** The scan is in process, and hasn't finished yet. */
-        Scanning,
-
-        /** The scan has already failed. */
-        Failed,
-
-        /**
-         * The scan on the current page has finished, but there are more pages
-         * in the segment to be scanned.
-         */
-        HasNextPage,
-
-        /** The scan on the whole segment has completed. */
-        SegmentScanCompleted,
-    }
 }
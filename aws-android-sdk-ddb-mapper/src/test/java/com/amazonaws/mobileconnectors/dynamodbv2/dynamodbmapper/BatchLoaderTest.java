@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class BatchLoaderTest {
+
+    private static final String TABLE = "testTable";
+
+    private AmazonDynamoDB mockClient;
+    private BatchLoader<String> loader;
+
+    @Before
+    public void setup() {
+        mockClient = EasyMock.createMock(AmazonDynamoDBClient.class);
+        loader = new BatchLoader<String>(mockClient, 1, false, null) {
+            @Override
+            String unmarshall(String tableName, Map<String, AttributeValue> item) {
+                return item.get("id").getS();
+            }
+        };
+    }
+
+    @Test
+    public void testKeysAreSentInChunks() {
+        for (int i = 0; i < 250; i++) {
+            loader.add(TABLE, key(i));
+        }
+        Capture<BatchGetItemRequest> capture = new Capture<BatchGetItemRequest>(CaptureType.ALL);
+        EasyMock.expect(mockClient.batchGetItem(EasyMock.capture(capture)))
+                .andAnswer(new EchoAnswer(0)).times(3);
+        EasyMock.replay(mockClient);
+
+        Set<String> loaded = new HashSet<String>();
+        while (loader.hasNext()) {
+            loaded.add(loader.next());
+        }
+        EasyMock.verify(mockClient);
+
+        assertEquals(250, loaded.size());
+        assertEquals(100, keys(capture.getValues().get(0)).size());
+        assertEquals(100, keys(capture.getValues().get(1)).size());
+        assertEquals(50, keys(capture.getValues().get(2)).size());
+    }
+
+    @Test
+    public void testUnprocessedKeysAreSentFirstInNextChunk() {
+        for (int i = 0; i < 150; i++) {
+            loader.add(TABLE, key(i));
+        }
+        Capture<BatchGetItemRequest> capture = new Capture<BatchGetItemRequest>(CaptureType.ALL);
+        // the first call leaves its last 10 keys unprocessed
+        EasyMock.expect(mockClient.batchGetItem(EasyMock.capture(capture)))
+                .andAnswer(new EchoAnswer(10));
+        EasyMock.expect(mockClient.batchGetItem(EasyMock.capture(capture)))
+                .andAnswer(new EchoAnswer(0));
+        EasyMock.replay(mockClient);
+
+        Set<String> loaded = new HashSet<String>();
+        while (loader.hasNext()) {
+            loaded.add(loader.next());
+        }
+        EasyMock.verify(mockClient);
+
+        assertEquals(150, loaded.size());
+        List<Map<String, AttributeValue>> second = keys(capture.getValues().get(1));
+        assertEquals(60, second.size());
+        assertEquals(key(90), second.get(0));
+        assertEquals(key(100), second.get(10));
+    }
+
+    @Test
+    public void testItemsAreReturnedBeforeLastCall() {
+        for (int i = 0; i < 200; i++) {
+            loader.add(TABLE, key(i));
+        }
+        final List<BatchGetItemRequest> requests = new ArrayList<BatchGetItemRequest>();
+        EasyMock.expect(mockClient.batchGetItem(EasyMock.anyObject(BatchGetItemRequest.class)))
+                .andAnswer(new EchoAnswer(0) {
+                    @Override
+                    public BatchGetItemResult answer() {
+                        synchronized (requests) {
+                            requests.add((BatchGetItemRequest) EasyMock.getCurrentArguments()[0]);
+                        }
+                        return super.answer();
+                    }
+                }).times(2);
+        EasyMock.replay(mockClient);
+
+        assertTrue(loader.hasNext());
+        loader.next();
+        synchronized (requests) {
+            assertEquals(1, requests.size());
+        }
+        int count = 1;
+        while (loader.hasNext()) {
+            loader.next();
+            count++;
+        }
+        assertEquals(200, count);
+        assertFalse(loader.hasNext());
+        EasyMock.verify(mockClient);
+    }
+
+    @Test
+    public void testNoKeys() {
+        EasyMock.replay(mockClient);
+        assertFalse(loader.hasNext());
+        EasyMock.verify(mockClient);
+    }
+
+    private static Map<String, AttributeValue> key(int id) {
+        return Collections.singletonMap("id", new AttributeValue().withS(String.valueOf(id)));
+    }
+
+    private static List<Map<String, AttributeValue>> keys(BatchGetItemRequest request) {
+        return request.getRequestItems().get(TABLE).getKeys();
+    }
+
+    /**
+     * Returns the keys requested as items, leaving the last ones unprocessed.
+     */
+    private static class EchoAnswer implements IAnswer<BatchGetItemResult> {
+        private final int unprocessed;
+
+        EchoAnswer(int unprocessed) {
+            this.unprocessed = unprocessed;
+        }
+
+        @Override
+        public BatchGetItemResult answer() {
+            BatchGetItemRequest request = (BatchGetItemRequest) EasyMock.getCurrentArguments()[0];
+            List<Map<String, AttributeValue>> keys = keys(request);
+            int processed = keys.size() - unprocessed;
+            Map<String, List<Map<String, AttributeValue>>> responses =
+                    new HashMap<String, List<Map<String, AttributeValue>>>();
+            responses.put(TABLE, new ArrayList<Map<String, AttributeValue>>(
+                    keys.subList(0, processed)));
+            BatchGetItemResult result = new BatchGetItemResult().withResponses(responses);
+            if (unprocessed > 0) {
+                result.setUnprocessedKeys(Collections.singletonMap(TABLE,
+                        new KeysAndAttributes().withKeys(keys.subList(processed, keys.size()))));
+            }
+            return result;
+        }
+    }
+}
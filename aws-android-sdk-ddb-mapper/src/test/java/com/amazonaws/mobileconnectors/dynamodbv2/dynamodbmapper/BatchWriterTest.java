@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatch;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.BatchWriteOptions;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.BatchWriteThroughputListener;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BatchWriterTest {
+
+    private static final String TABLE = "testTable";
+
+    private AmazonDynamoDB mockClient;
+    private BatchWriter writer;
+
+    @Before
+    public void setup() {
+        mockClient = EasyMock.createMock(AmazonDynamoDBClient.class);
+        writer = new BatchWriter(mockClient, BatchWriteOptions.DEFAULT.withMaxConcurrentRequests(1));
+    }
+
+    @Test
+    public void testWriteWithEntityTooLarge() {
+        List<WriteRequest> batchList = new ArrayList<WriteRequest>();
+        batchList.add(new WriteRequest());
+        batchList.add(new WriteRequest());
+        batchList.add(new WriteRequest());
+
+        AmazonServiceException ase = new AmazonServiceException("TestException");
+        ase.setErrorCode("Request entity too large");
+
+        // Will cause batches to be split and re-tried
+        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+                .andThrow(ase);
+        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+                .andReturn(new BatchWriteItemResult());
+        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+                .andReturn(new BatchWriteItemResult());
+        EasyMock.replay(mockClient);
+
+        List<FailedBatch> result = writer.write(Collections.singletonMap(TABLE, batchList));
+        assertEquals(result.size(), 0);
+        EasyMock.verify(mockClient);
+    }
+
+    @Test
+    public void testUnprocessedItemsAreRetried() {
+        List<WriteRequest> batchList = new ArrayList<WriteRequest>();
+        for (int i = 0; i < 30; i++) {
+            batchList.add(put(i));
+        }
+
+        BatchWriteItemResult partial = new BatchWriteItemResult().withUnprocessedItems(
+                Collections.singletonMap(TABLE, batchList.subList(20, 25)));
+        Capture<BatchWriteItemRequest> capture = new Capture<BatchWriteItemRequest>(
+                CaptureType.ALL);
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.capture(capture)))
+                .andReturn(partial);
+        EasyMock.expect(mockClient.batchWriteItem(EasyMock.capture(capture)))
+                .andReturn(new BatchWriteItemResult()).times(2);
+        EasyMock.replay(mockClient);
+
+        List<FailedBatch> result = writer.write(Collections.singletonMap(TABLE, batchList));
+        assertEquals(result.size(), 0);
+        EasyMock.verify(mockClient);
+
+        List<BatchWriteItemRequest> requests = capture.getValues();
+        assertEquals(25, requests.get(0).getRequestItems().get(TABLE).size());
+        // the rest of the items go first, the unprocessed ones after their backoff
+        assertEquals(batchList.subList(25, 30), requests.get(1).getRequestItems().get(TABLE));
+        assertEquals(batchList.subList(20, 25), requests.get(2).getRequestItems().get(TABLE));
+    }
+
+    @Test
+    public void testNonRetryableExceptionFailsBatch() {
+        List<WriteRequest> batchList = new ArrayList<WriteRequest>();
+        batchList.add(put(0));
+        AmazonServiceException ase = new AmazonServiceException("InvalidInput");
+        ase.setErrorCode("ValidationException");
+
+        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+                .andThrow(ase);
+        EasyMock.replay(mockClient);
+
+        List<FailedBatch> result = writer.write(Collections.singletonMap(TABLE, batchList));
+        assertEquals(1, result.size());
+        assertSame(ase, result.get(0).getException());
+        assertEquals(batchList, result.get(0).getUnprocessedItems().get(TABLE));
+        EasyMock.verify(mockClient);
+    }
+
+    @Test
+    public void testThrottledBatchIsRetried() {
+        List<WriteRequest> batchList = new ArrayList<WriteRequest>();
+        batchList.add(put(0));
+        AmazonServiceException ase = new AmazonServiceException("ThrottlingException");
+        ase.setErrorCode("ProvisionedThroughputExceededException");
+        AmazonServiceException throttling = new AmazonServiceException("ThrottlingException");
+        throttling.setErrorCode("ThrottlingException");
+
+        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+                .andThrow(ase);
+        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+                .andThrow(throttling);
+        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+                .andReturn(new BatchWriteItemResult());
+        EasyMock.replay(mockClient);
+
+        List<FailedBatch> result = writer.write(Collections.singletonMap(TABLE, batchList));
+        assertEquals(0, result.size());
+        EasyMock.verify(mockClient);
+    }
+
+    @Test
+    public void testThroughputIsReported() {
+        final Map<String, Object[]> reported = new HashMap<String, Object[]>();
+        writer = new BatchWriter(mockClient, BatchWriteOptions.DEFAULT
+                .withThroughputListener(new BatchWriteThroughputListener() {
+                    @Override
+                    public void tableWritten(String tableName, long itemsWritten,
+                            double consumedWriteCapacity, long elapsedMillis) {
+                        reported.put(tableName, new Object[] {
+                                itemsWritten, consumedWriteCapacity
+                        });
+                    }
+                }));
+        List<WriteRequest> batchList = new ArrayList<WriteRequest>();
+        batchList.add(put(0));
+        batchList.add(put(1));
+
+        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
+                .andReturn(new BatchWriteItemResult().withConsumedCapacity(
+                        new ConsumedCapacity().withTableName(TABLE).withCapacityUnits(2.0)));
+        EasyMock.replay(mockClient);
+
+        writer.write(Collections.singletonMap(TABLE, batchList));
+        assertEquals(2L, reported.get(TABLE)[0]);
+        assertEquals(2.0, reported.get(TABLE)[1]);
+    }
+
+    @Test
+    public void testWriteRequestSize() {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue().withS("abc"));
+        item.put("n", new AttributeValue().withN("12"));
+        item.put("b", new AttributeValue().withBOOL(true));
+        WriteRequest request = new WriteRequest().withPutRequest(new PutRequest().withItem(item));
+        assertEquals(2 + 3 + 1 + 2 + 1 + 1, BatchWriter.writeRequestSize(request));
+    }
+
+    private static WriteRequest put(int id) {
+        return new WriteRequest().withPutRequest(new PutRequest().withItem(
+                Collections.singletonMap("id", new AttributeValue().withN(String.valueOf(id)))));
+    }
+}
@@ -15,17 +15,15 @@
 
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
-import static org.easymock.EasyMock.anyObject;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
-import com.amazonaws.AmazonServiceException;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.HashKeyAutoGenerated;
-import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatch;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.SaveObjectHandler;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
@@ -34,13 +32,14 @@ import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
 import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
-import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
-import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
 import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
-import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.Select;
 import com.amazonaws.util.StringUtils;
 
 import org.easymock.Capture;
@@ -50,6 +49,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -88,6 +88,28 @@ public class DynamoDBMapperTest {
                 MockTwoValuePlusVersionClass.class, "Hash", "Range");
     }
 
+    @Test
+    public void testConverterIsReusedAcrossOperations() {
+        ItemConverter converter = mapper.getConverter(config);
+        assertSame(converter, mapper.getConverter(config));
+
+        MockTwoValuePlusVersionClass item = new MockTwoValuePlusVersionClass("id", "first",
+                "second");
+        item.setVersion(3);
+        for (int i = 0; i < 2; i++) {
+            Map<String, AttributeValue> values = converter.convert(item);
+            assertEquals(4, values.size());
+            assertEquals("3", values.get("version").getN());
+
+            MockTwoValuePlusVersionClass copy = mapper.marshallIntoObject(
+                    MockTwoValuePlusVersionClass.class, values);
+            assertEquals("id", copy.getId());
+            assertEquals("first", copy.getFirstValue());
+            assertEquals("second", copy.getSecondValue());
+            assertEquals(Integer.valueOf(3), copy.getVersion());
+        }
+    }
+
     @Test
     public void testTransformAttributeUpdates() {
 
@@ -127,40 +149,6 @@ public class DynamoDBMapperTest {
         assertNull(transformed.get("id"));
     }
 
-    @Test
-    public void testWriteOneBatchWithEntityTooLarge() {
-        Map<String, List<WriteRequest>> batchMap = new HashMap<String, List<WriteRequest>>();
-        List<WriteRequest> batchList = new ArrayList<WriteRequest>();
-        WriteRequest wr1 = new WriteRequest();
-        WriteRequest wr2 = new WriteRequest();
-        WriteRequest wr3 = new WriteRequest();
-        batchList.add(wr1);
-        batchList.add(wr2);
-        batchList.add(wr3);
-        batchMap.put("testTable", batchList);
-        EasyMock.reset(mockClient);
-
-        AmazonServiceException ase = new AmazonServiceException("TestException");
-        ase.setErrorCode("Request entity too large");
-
-        BatchWriteItemResult mockResult = EasyMock.createMock(BatchWriteItemResult.class);
-        EasyMock.reset(mockResult);
-        EasyMock.expect(mockResult.getUnprocessedItems()).andReturn(
-                new HashMap<String, List<WriteRequest>>()).times(2);
-        // Will cause batches to be split and re-tried
-        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
-                .andThrow(ase);
-        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
-                .andReturn(mockResult);
-        EasyMock.expect(mockClient.batchWriteItem(anyObject(BatchWriteItemRequest.class)))
-                .andReturn(mockResult);
-        EasyMock.replay(mockClient, mockResult);
-
-        List<FailedBatch> result = mapper.writeOneBatch(batchMap);
-        assertEquals(result.size(), 0);
-        EasyMock.verify(mockClient);
-    }
-
     @Test
     public void testBatchLoadRetiresForUnprocessedItems() {
         List<Object> itemsToGet = new ArrayList<Object>();
@@ -434,22 +422,159 @@ public class DynamoDBMapperTest {
     }
 
     @Test
-    public void testContainsThrottlingException() {
-        List<FailedBatch> failedBatches = new ArrayList<FailedBatch>();
+    public void testCreateScanRequestFromProjectedProperties() {
+        Map<String, String> ean = new HashMap<String, String>();
+        ean.put("#f", "firstValue");
+        DynamoDBScanExpression se = new DynamoDBScanExpression()
+                .withFilterExpression("#f = :v")
+                .withExpressionAttributeNames(ean)
+                .withProjectedProperties("secondValue");
+
+        ScanRequest sr = mapper.createScanRequestFromExpression(
+                MockTwoValuePlusVersionClass.class, se, config);
+
+        // the hash key is always projected
+        assertEquals(sr.getProjectionExpression(), "#proj0,#proj1");
+        assertEquals(sr.getExpressionAttributeNames().size(), 3);
+        assertEquals(sr.getExpressionAttributeNames().get("#f"), "firstValue");
+        assertEquals(sr.getExpressionAttributeNames().get("#proj0"), "id");
+        assertEquals(sr.getExpressionAttributeNames().get("#proj1"), "secondValue");
+        // the expression's own names are left as they are
+        assertEquals(ean.size(), 1);
+    }
+
+    @Test
+    public void testCreateScanRequestFromProjectionExpression() {
+        DynamoDBScanExpression se = new DynamoDBScanExpression()
+                .withProjectionExpression("id,firstValue");
+
+        ScanRequest sr = mapper.createScanRequestFromExpression(
+                MockTwoValuePlusVersionClass.class, se, config);
+
+        assertEquals(sr.getProjectionExpression(), "id,firstValue");
+        assertNull(sr.getExpressionAttributeNames());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateScanRequestFromUnknownProjectedProperty() {
+        DynamoDBScanExpression se = new DynamoDBScanExpression()
+                .withProjectedProperties("thirdValue");
+        mapper.createScanRequestFromExpression(MockTwoValuePlusVersionClass.class, se, config);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateScanRequestFromBothProjections() {
+        DynamoDBScanExpression se = new DynamoDBScanExpression()
+                .withProjectionExpression("id")
+                .withProjectedProperties("firstValue");
+        mapper.createScanRequestFromExpression(MockTwoValuePlusVersionClass.class, se, config);
+    }
+
+    @Test
+    public void testCountScanIgnoresProjectedProperties() {
+        Map<String, String> ean = new HashMap<String, String>();
+        ean.put("#f", "firstValue");
+        DynamoDBScanExpression se = new DynamoDBScanExpression()
+                .withFilterExpression("attribute_exists(#f)")
+                .withExpressionAttributeNames(ean)
+                .withProjectedProperties("secondValue");
+
+        Capture<ScanRequest> capture = new Capture<ScanRequest>();
+        EasyMock.expect(mockClient.scan(EasyMock.capture(capture))).andReturn(
+                new ScanResult().withCount(3));
+        EasyMock.replay(mockClient);
+
+        assertEquals(mapper.count(MockTwoValuePlusVersionClass.class, se), 3);
+
+        EasyMock.verify(mockClient);
+        ScanRequest sr = capture.getValue();
+        assertEquals(sr.getSelect(), Select.COUNT.toString());
+        assertNull(sr.getProjectionExpression());
+        assertEquals(sr.getExpressionAttributeNames(), ean);
+    }
+
+    @Test
+    public void testCountScanDropsNamesOnlyProjected() {
+        Map<String, String> ean = new HashMap<String, String>();
+        ean.put("#f", "firstValue");
+        ean.put("#fs", "secondValue");
+        DynamoDBScanExpression se = new DynamoDBScanExpression()
+                .withFilterExpression("attribute_exists(#f)")
+                .withProjectionExpression("#fs, #f")
+                .withExpressionAttributeNames(ean);
+
+        Capture<ScanRequest> capture = new Capture<ScanRequest>();
+        EasyMock.expect(mockClient.scan(EasyMock.capture(capture))).andReturn(
+                new ScanResult().withCount(1));
+        EasyMock.replay(mockClient);
+
+        assertEquals(mapper.count(MockTwoValuePlusVersionClass.class, se), 1);
+
+        EasyMock.verify(mockClient);
+        ScanRequest sr = capture.getValue();
+        assertNull(sr.getProjectionExpression());
+        assertEquals(sr.getExpressionAttributeNames(),
+                Collections.singletonMap("#f", "firstValue"));
+    }
+
+    @Test
+    public void testCountQueryDropsNamesOnlyProjected() {
+        Map<String, String> ean = new HashMap<String, String>();
+        ean.put("#a", "firstValue");
+        DynamoDBQueryExpression<MockTwoValuePlusVersionClass> qe =
+                new DynamoDBQueryExpression<MockTwoValuePlusVersionClass>()
+                        .withHashKeyValues(new MockTwoValuePlusVersionClass("id", null, null))
+                        .withProjectionExpression("#a")
+                        .withExpressionAttributeNames(ean);
+
+        Capture<QueryRequest> capture = new Capture<QueryRequest>();
+        EasyMock.expect(mockClient.query(EasyMock.capture(capture))).andReturn(
+                new QueryResult().withCount(2));
+        EasyMock.replay(mockClient);
+
+        assertEquals(mapper.count(MockTwoValuePlusVersionClass.class, qe), 2);
+
+        EasyMock.verify(mockClient);
+        QueryRequest qr = capture.getValue();
+        assertNull(qr.getProjectionExpression());
+        assertNull(qr.getExpressionAttributeNames());
+    }
+
+    @Test
+    public void testCountQueryIgnoresProjectedProperties() {
+        DynamoDBQueryExpression<MockTwoValuePlusVersionClass> qe =
+                new DynamoDBQueryExpression<MockTwoValuePlusVersionClass>()
+                        .withHashKeyValues(new MockTwoValuePlusVersionClass("id", null, null))
+                        .withProjectedProperties("secondValue");
+
+        Capture<QueryRequest> capture = new Capture<QueryRequest>();
+        EasyMock.expect(mockClient.query(EasyMock.capture(capture))).andReturn(
+                new QueryResult().withCount(2));
+        EasyMock.replay(mockClient);
 
-        FailedBatch nonThrottle = new FailedBatch();
-        nonThrottle.setException(new AmazonServiceException("InvalidInput"));
-        failedBatches.add(nonThrottle);
+        assertEquals(mapper.count(MockTwoValuePlusVersionClass.class, qe), 2);
 
-        assertFalse(mapper.containsThrottlingException(failedBatches));
+        EasyMock.verify(mockClient);
+        QueryRequest qr = capture.getValue();
+        assertEquals(qr.getSelect(), Select.COUNT.toString());
+        assertNull(qr.getProjectionExpression());
+        assertNull(qr.getExpressionAttributeNames());
+    }
+
+    @Test
+    public void testMarshallIntoObjectFromProjectedItem() {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue("id"));
+        item.put("secondValue", new AttributeValue("second"));
+        item.put("unmapped", new AttributeValue("ignored"));
 
-        FailedBatch throttle = new FailedBatch();
-        AmazonServiceException ase = new AmazonServiceException("ThrottlingException");
-        ase.setErrorCode("ThrottlingException");
-        nonThrottle.setException(ase);
-        failedBatches.add(throttle);
+        MockTwoValuePlusVersionClass object = mapper.marshallIntoObject(
+                MockTwoValuePlusVersionClass.class, item);
 
-        assertTrue(mapper.containsThrottlingException(failedBatches));
+        assertEquals(object.getId(), "id");
+        assertEquals(object.getSecondValue(), "second");
+        assertNull(object.getFirstValue());
+        assertNull(object.getVersion());
     }
 
     @Test
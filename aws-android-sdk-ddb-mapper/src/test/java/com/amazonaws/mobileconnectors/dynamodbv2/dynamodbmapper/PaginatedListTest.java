@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.StreamingOptions;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PaginatedListTest {
+
+    /**
+     * A list of numbered pages of two items, the first one loaded up front.
+     */
+    private static class PageList extends PaginatedList<Integer> {
+        private final int totalPages;
+        private final int failingPage;
+        final AtomicInteger fetchedPages = new AtomicInteger(1);
+
+        PageList(int totalPages, int failingPage, PaginationLoadingStrategy strategy,
+                StreamingOptions options) {
+            super(null, Integer.class, null, strategy, options);
+            this.totalPages = totalPages;
+            this.failingPage = failingPage;
+            allResults.addAll(page(0));
+        }
+
+        @Override
+        protected List<Integer> fetchNextPage() {
+            int page = fetchedPages.getAndIncrement();
+            if (page == failingPage) {
+                throw new IllegalStateException("page " + page);
+            }
+            return page(page);
+        }
+
+        @Override
+        protected boolean atEndOfResults() {
+            return fetchedPages.get() >= totalPages;
+        }
+
+        private static List<Integer> page(int page) {
+            return Arrays.asList(2 * page, 2 * page + 1);
+        }
+    }
+
+    @Test
+    public void testStreamingReturnsAllItemsInOrder() {
+        PageList list = new PageList(50, -1, PaginationLoadingStrategy.STREAMING, null);
+        List<Integer> items = new ArrayList<Integer>();
+        for (Integer item : list) {
+            items.add(item);
+        }
+        assertEquals(100, items.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, items.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testStreamingLoadsAtMostMaxBufferedPagesAhead() {
+        // Pages load as soon as they are requested, so every read ahead has
+        // happened by the time the iterator returns
+        PageList list = new PageList(50, -1, PaginationLoadingStrategy.STREAMING,
+                StreamingOptions.DEFAULT.withExecutor(new DirectExecutorService())
+                        .withMaxBufferedPages(3));
+        Iterator<Integer> iterator = list.iterator();
+        // The first page and the three read ahead
+        assertEquals(4, list.fetchedPages.get());
+
+        // Reading the first page doesn't load anything
+        iterator.next();
+        assertEquals(4, list.fetchedPages.get());
+        iterator.next();
+        assertEquals(4, list.fetchedPages.get());
+        // Moving to the next page frees a slot for one more
+        iterator.next();
+        assertEquals(5, list.fetchedPages.get());
+        iterator.next();
+        assertEquals(5, list.fetchedPages.get());
+        iterator.next();
+        assertEquals(6, list.fetchedPages.get());
+    }
+
+    @Test
+    public void testStreamingRethrowsFailure() {
+        PageList list = new PageList(10, 3, PaginationLoadingStrategy.STREAMING, null);
+        Iterator<Integer> iterator = list.iterator();
+        int read = 0;
+        try {
+            while (iterator.hasNext()) {
+                iterator.next();
+                read++;
+            }
+            fail("expected the failure of page 3");
+        } catch (IllegalStateException e) {
+            assertEquals("page 3", e.getMessage());
+        }
+        assertEquals(6, read);
+    }
+
+    @Test
+    public void testStreamingIteratesOnce() {
+        PageList list = new PageList(1, -1, PaginationLoadingStrategy.STREAMING, null);
+        Iterator<Integer> iterator = list.iterator();
+        assertTrue(iterator.hasNext());
+        iterator.next();
+        iterator.next();
+        assertFalse(iterator.hasNext());
+        try {
+            list.iterator();
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            list.size();
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            assertTrue(expected.getMessage().contains("STREAMING"));
+        }
+    }
+
+    @Test
+    public void testStreamingWithEmptyPages() {
+        PageList list = new PageList(5, -1, PaginationLoadingStrategy.STREAMING, null) {
+            @Override
+            protected List<Integer> fetchNextPage() {
+                super.fetchNextPage();
+                return Collections.emptyList();
+            }
+        };
+        int read = 0;
+        for (Iterator<Integer> iterator = list.iterator(); iterator.hasNext(); iterator.next()) {
+            read++;
+        }
+        assertEquals(2, read);
+    }
+
+    /**
+     * Runs the tasks on the thread submitting them.
+     */
+    private static final class DirectExecutorService extends AbstractExecutorService {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<Runnable>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+}
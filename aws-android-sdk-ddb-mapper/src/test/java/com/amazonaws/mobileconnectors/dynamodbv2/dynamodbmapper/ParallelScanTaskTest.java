@@ -16,6 +16,7 @@
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -26,6 +27,7 @@ import com.amazonaws.services.dynamodbv2.model.ScanResult;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -33,6 +35,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ParallelScanTaskTest {
 
@@ -145,34 +150,72 @@ public class ParallelScanTaskTest {
         Map<String, AttributeValue> lastEvaluatedKey = new HashMap<String, AttributeValue>();
         lastEvaluatedKey.put("TestPrimaryKey", new AttributeValue().withS("Test1"));
         ScanResult resultWithMoreData = new ScanResult().withLastEvaluatedKey(lastEvaluatedKey);
-        ScanResult result2NoMoreData = new ScanResult().withLastEvaluatedKey(null);
+        ScanResult result1NoMoreData = new ScanResult().withLastEvaluatedKey(null).withCount(1);
+        ScanResult result2NoMoreData = new ScanResult().withLastEvaluatedKey(null).withCount(2);
 
         ParallelScanTask testTask = new ParallelScanTask(mockClient, list);
 
         EasyMock.expect(mockClient.scan(scan1)).andReturn(resultWithMoreData);
+        EasyMock.expect(mockClient.scan(scan1)).andReturn(result1NoMoreData);
         EasyMock.expect(mockClient.scan(scan2)).andReturn(result2NoMoreData);
         EasyMock.replay(mockClient);
 
-        List<ScanResult> firstBatch = testTask.getNextBatchOfScanResults();
-        EasyMock.verify(mockClient);
-        assertEquals(firstBatch.size(), 2);
-        assertTrue(firstBatch.contains(resultWithMoreData));
-        assertTrue(firstBatch.contains(result2NoMoreData));
+        // Pages are handed out as they arrive, without null entries for the
+        // segments that are done
+        List<ScanResult> pages = new ArrayList<ScanResult>();
+        while (!testTask.isAllSegmentScanFinished()) {
+            List<ScanResult> batch = testTask.getNextBatchOfScanResults();
+            assertFalse(batch.isEmpty());
+            pages.addAll(batch);
+        }
 
-        EasyMock.reset(mockClient);
-        EasyMock.expect(mockClient.scan(scan1)).andReturn(result2NoMoreData);
-        EasyMock.replay(mockClient);
+        EasyMock.verify(mockClient);
+        assertEquals(3, pages.size());
+        assertTrue(pages.contains(resultWithMoreData));
+        assertTrue(pages.contains(result1NoMoreData));
+        assertTrue(pages.contains(result2NoMoreData));
+        assertTrue(pages.indexOf(resultWithMoreData) < pages.indexOf(result1NoMoreData));
+        assertTrue(testTask.getNextBatchOfScanResults().isEmpty());
+    }
 
-        List<ScanResult> secondBatch = testTask.getNextBatchOfScanResults();
+    @Test
+    public void testSegmentIsNotScannedBeyondPrefetchDepth() {
+        ScanRequest scan1 = new ScanRequest().withTableName(TABLE);
+        List<ScanRequest> list = new ArrayList<ScanRequest>();
+        list.add(scan1);
 
-        EasyMock.verify(mockClient);
+        Map<String, AttributeValue> lastEvaluatedKey = new HashMap<String, AttributeValue>();
+        lastEvaluatedKey.put("TestPrimaryKey", new AttributeValue().withS("Test1"));
+        final ScanResult resultWithMoreData = new ScanResult()
+                .withLastEvaluatedKey(lastEvaluatedKey);
+        final AtomicInteger scans = new AtomicInteger();
+
+        // Scans run as soon as they are submitted, so every prefetch has
+        // happened by the time getNextBatchOfScanResults returns
+        ParallelScanTask testTask = new ParallelScanTask(mockClient, list,
+                new DirectExecutorService(), 1);
+
+        EasyMock.expect(mockClient.scan(scan1)).andAnswer(new IAnswer<ScanResult>() {
+            @Override
+            public ScanResult answer() {
+                scans.incrementAndGet();
+                return resultWithMoreData;
+            }
+        }).anyTimes();
+        EasyMock.replay(mockClient);
 
-        // Odd behavior that it doesn't just returna list of size one. But the
-        // existing code just returns the same size list with null entries for
-        // completed results
-        assertEquals(secondBatch.size(), 2);
-        assertEquals(secondBatch.get(0), result2NoMoreData);
-        assertNull(secondBatch.get(1));
+        assertEquals(0, scans.get());
+        // The first page is scanned, then the page after it is prefetched
+        // once the first is handed out
+        assertEquals(1, testTask.getNextBatchOfScanResults().size());
+        assertEquals(2, scans.get());
+        assertFalse(testTask.isAllSegmentScanFinished());
+        assertEquals(2, scans.get());
+        // The prefetched page is handed out and only the next one is scanned
+        assertEquals(1, testTask.getNextBatchOfScanResults().size());
+        assertEquals(3, scans.get());
+        assertEquals(1, testTask.getNextBatchOfScanResults().size());
+        assertEquals(4, scans.get());
     }
 
     @Test
@@ -192,4 +235,38 @@ public class ParallelScanTaskTest {
 
         assertTrue(testTask.isAllSegmentScanFinished());
     }
+
+    /**
+     * Runs the tasks on the thread submitting them.
+     */
+    private static final class DirectExecutorService extends AbstractExecutorService {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<Runnable>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
 }
@@ -14,7 +14,6 @@
  */
 package com.amazonaws.services.dynamodbv2;
 
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -28,6 +27,7 @@ import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 
 import com.amazonaws.services.dynamodbv2.model.*;
+import com.amazonaws.services.dynamodbv2.model.transform.*;
 
 /**
  * Asynchronous client for accessing AmazonDynamoDBv2.
@@ -502,11 +502,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<ScanResult> scanAsync(final ScanRequest scanRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ScanResult>() {
-            public ScanResult call() throws Exception {
-                return scan(scanRequest);
-        }
-    });
+        return invokeAsync(scanRequest, new ScanRequestMarshaller(),
+                new ScanResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -565,19 +562,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final ScanRequest scanRequest,
             final AsyncHandler<ScanRequest, ScanResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ScanResult>() {
-            public ScanResult call() throws Exception {
-              ScanResult result;
-                try {
-                result = scan(scanRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(scanRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(scanRequest, new ScanRequestMarshaller(),
+                new ScanResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -636,11 +622,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<UpdateTableResult> updateTableAsync(final UpdateTableRequest updateTableRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<UpdateTableResult>() {
-            public UpdateTableResult call() throws Exception {
-                return updateTable(updateTableRequest);
-        }
-    });
+        return invokeAsync(updateTableRequest, new UpdateTableRequestMarshaller(),
+                new UpdateTableResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -705,19 +688,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final UpdateTableRequest updateTableRequest,
             final AsyncHandler<UpdateTableRequest, UpdateTableResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<UpdateTableResult>() {
-            public UpdateTableResult call() throws Exception {
-              UpdateTableResult result;
-                try {
-                result = updateTable(updateTableRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(updateTableRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(updateTableRequest, new UpdateTableRequestMarshaller(),
+                new UpdateTableResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -766,11 +738,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<DeleteTableResult> deleteTableAsync(final DeleteTableRequest deleteTableRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<DeleteTableResult>() {
-            public DeleteTableResult call() throws Exception {
-                return deleteTable(deleteTableRequest);
-        }
-    });
+        return invokeAsync(deleteTableRequest, new DeleteTableRequestMarshaller(),
+                new DeleteTableResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -825,19 +794,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final DeleteTableRequest deleteTableRequest,
             final AsyncHandler<DeleteTableRequest, DeleteTableResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<DeleteTableResult>() {
-            public DeleteTableResult call() throws Exception {
-              DeleteTableResult result;
-                try {
-                result = deleteTable(deleteTableRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(deleteTableRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(deleteTableRequest, new DeleteTableRequestMarshaller(),
+                new DeleteTableResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -960,11 +918,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<BatchWriteItemResult> batchWriteItemAsync(final BatchWriteItemRequest batchWriteItemRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<BatchWriteItemResult>() {
-            public BatchWriteItemResult call() throws Exception {
-                return batchWriteItem(batchWriteItemRequest);
-        }
-    });
+        return invokeAsync(batchWriteItemRequest, new BatchWriteItemRequestMarshaller(),
+                new BatchWriteItemResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1093,19 +1048,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final BatchWriteItemRequest batchWriteItemRequest,
             final AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<BatchWriteItemResult>() {
-            public BatchWriteItemResult call() throws Exception {
-              BatchWriteItemResult result;
-                try {
-                result = batchWriteItem(batchWriteItemRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(batchWriteItemRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(batchWriteItemRequest, new BatchWriteItemRequestMarshaller(),
+                new BatchWriteItemResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1140,11 +1084,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<DescribeTableResult> describeTableAsync(final DescribeTableRequest describeTableRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<DescribeTableResult>() {
-            public DescribeTableResult call() throws Exception {
-                return describeTable(describeTableRequest);
-        }
-    });
+        return invokeAsync(describeTableRequest, new DescribeTableRequestMarshaller(),
+                new DescribeTableResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1185,19 +1126,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final DescribeTableRequest describeTableRequest,
             final AsyncHandler<DescribeTableRequest, DescribeTableResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<DescribeTableResult>() {
-            public DescribeTableResult call() throws Exception {
-              DescribeTableResult result;
-                try {
-                result = describeTable(describeTableRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(describeTableRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(describeTableRequest, new DescribeTableRequestMarshaller(),
+                new DescribeTableResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1231,11 +1161,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<GetItemResult> getItemAsync(final GetItemRequest getItemRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<GetItemResult>() {
-            public GetItemResult call() throws Exception {
-                return getItem(getItemRequest);
-        }
-    });
+        return invokeAsync(getItemRequest, new GetItemRequestMarshaller(),
+                new GetItemResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1275,19 +1202,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final GetItemRequest getItemRequest,
             final AsyncHandler<GetItemRequest, GetItemResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<GetItemResult>() {
-            public GetItemResult call() throws Exception {
-              GetItemResult result;
-                try {
-                result = getItem(getItemRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(getItemRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(getItemRequest, new GetItemRequestMarshaller(),
+                new GetItemResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1321,11 +1237,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<UpdateItemResult> updateItemAsync(final UpdateItemRequest updateItemRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<UpdateItemResult>() {
-            public UpdateItemResult call() throws Exception {
-                return updateItem(updateItemRequest);
-        }
-    });
+        return invokeAsync(updateItemRequest, new UpdateItemRequestMarshaller(),
+                new UpdateItemResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1365,19 +1278,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final UpdateItemRequest updateItemRequest,
             final AsyncHandler<UpdateItemRequest, UpdateItemResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<UpdateItemResult>() {
-            public UpdateItemResult call() throws Exception {
-              UpdateItemResult result;
-                try {
-                result = updateItem(updateItemRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(updateItemRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(updateItemRequest, new UpdateItemRequestMarshaller(),
+                new UpdateItemResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1419,11 +1321,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<DeleteItemResult> deleteItemAsync(final DeleteItemRequest deleteItemRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<DeleteItemResult>() {
-            public DeleteItemResult call() throws Exception {
-                return deleteItem(deleteItemRequest);
-        }
-    });
+        return invokeAsync(deleteItemRequest, new DeleteItemRequestMarshaller(),
+                new DeleteItemResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1471,19 +1370,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final DeleteItemRequest deleteItemRequest,
             final AsyncHandler<DeleteItemRequest, DeleteItemResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<DeleteItemResult>() {
-            public DeleteItemResult call() throws Exception {
-              DeleteItemResult result;
-                try {
-                result = deleteItem(deleteItemRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(deleteItemRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(deleteItemRequest, new DeleteItemRequestMarshaller(),
+                new DeleteItemResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1579,11 +1467,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<DescribeLimitsResult> describeLimitsAsync(final DescribeLimitsRequest describeLimitsRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<DescribeLimitsResult>() {
-            public DescribeLimitsResult call() throws Exception {
-                return describeLimits(describeLimitsRequest);
-        }
-    });
+        return invokeAsync(describeLimitsRequest, new DescribeLimitsRequestMarshaller(),
+                new DescribeLimitsResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1685,19 +1570,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final DescribeLimitsRequest describeLimitsRequest,
             final AsyncHandler<DescribeLimitsRequest, DescribeLimitsResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<DescribeLimitsResult>() {
-            public DescribeLimitsResult call() throws Exception {
-              DescribeLimitsResult result;
-                try {
-                result = describeLimits(describeLimitsRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(describeLimitsRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(describeLimitsRequest, new DescribeLimitsRequestMarshaller(),
+                new DescribeLimitsResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1743,11 +1617,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<CreateTableResult> createTableAsync(final CreateTableRequest createTableRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<CreateTableResult>() {
-            public CreateTableResult call() throws Exception {
-                return createTable(createTableRequest);
-        }
-    });
+        return invokeAsync(createTableRequest, new CreateTableRequestMarshaller(),
+                new CreateTableResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1799,19 +1670,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final CreateTableRequest createTableRequest,
             final AsyncHandler<CreateTableRequest, CreateTableResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<CreateTableResult>() {
-            public CreateTableResult call() throws Exception {
-              CreateTableResult result;
-                try {
-                result = createTable(createTableRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(createTableRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(createTableRequest, new CreateTableRequestMarshaller(),
+                new CreateTableResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1903,11 +1763,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<BatchGetItemResult> batchGetItemAsync(final BatchGetItemRequest batchGetItemRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<BatchGetItemResult>() {
-            public BatchGetItemResult call() throws Exception {
-                return batchGetItem(batchGetItemRequest);
-        }
-    });
+        return invokeAsync(batchGetItemRequest, new BatchGetItemRequestMarshaller(),
+                new BatchGetItemResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -2005,19 +1862,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final BatchGetItemRequest batchGetItemRequest,
             final AsyncHandler<BatchGetItemRequest, BatchGetItemResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<BatchGetItemResult>() {
-            public BatchGetItemResult call() throws Exception {
-              BatchGetItemResult result;
-                try {
-                result = batchGetItem(batchGetItemRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(batchGetItemRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(batchGetItemRequest, new BatchGetItemRequestMarshaller(),
+                new BatchGetItemResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -2075,11 +1921,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<QueryResult> queryAsync(final QueryRequest queryRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<QueryResult>() {
-            public QueryResult call() throws Exception {
-                return query(queryRequest);
-        }
-    });
+        return invokeAsync(queryRequest, new QueryRequestMarshaller(),
+                new QueryResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -2143,19 +1986,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final QueryRequest queryRequest,
             final AsyncHandler<QueryRequest, QueryResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<QueryResult>() {
-            public QueryResult call() throws Exception {
-              QueryResult result;
-                try {
-                result = query(queryRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(queryRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(queryRequest, new QueryRequestMarshaller(),
+                new QueryResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -2216,11 +2048,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<PutItemResult> putItemAsync(final PutItemRequest putItemRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<PutItemResult>() {
-            public PutItemResult call() throws Exception {
-                return putItem(putItemRequest);
-        }
-    });
+        return invokeAsync(putItemRequest, new PutItemRequestMarshaller(),
+                new PutItemResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -2287,19 +2116,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final PutItemRequest putItemRequest,
             final AsyncHandler<PutItemRequest, PutItemResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<PutItemResult>() {
-            public PutItemResult call() throws Exception {
-              PutItemResult result;
-                try {
-                result = putItem(putItemRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(putItemRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(putItemRequest, new PutItemRequestMarshaller(),
+                new PutItemResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -2326,11 +2144,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
      */
     public Future<ListTablesResult> listTablesAsync(final ListTablesRequest listTablesRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ListTablesResult>() {
-            public ListTablesResult call() throws Exception {
-                return listTables(listTablesRequest);
-        }
-    });
+        return invokeAsync(listTablesRequest, new ListTablesRequestMarshaller(),
+                new ListTablesResultJsonUnmarshaller(), executorService, null);
     }
 
     /**
@@ -2363,19 +2178,8 @@ public class AmazonDynamoDBAsyncClient extends AmazonDynamoDBClient
             final ListTablesRequest listTablesRequest,
             final AsyncHandler<ListTablesRequest, ListTablesResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ListTablesResult>() {
-            public ListTablesResult call() throws Exception {
-              ListTablesResult result;
-                try {
-                result = listTables(listTablesRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(listTablesRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(listTablesRequest, new ListTablesRequestMarshaller(),
+                new ListTablesResultJsonUnmarshaller(), executorService, asyncHandler);
     }
     
 }
@@ -34,15 +34,29 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.SocketFactory;
 
@@ -60,6 +74,19 @@ public class AWSIotMqttManager {
     private static final Integer MILLIS_IN_ONE_SECOND = 1000;
     /** Constant for log prefix. */
     private static final String LOG_TAG = AWSIotMqttManager.class.getCanonicalName();
+    /**
+     * Runs the draining of the offline queues of all managers off the main
+     * thread. Its thread is started by the first drain.
+     */
+    private static final ScheduledExecutorService DRAIN_EXECUTOR = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AWSIotMqttManager-drain");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
 
     /** Default value for starting delay in exponential backoff reconnect algorithm. */
     public static final Integer DEFAULT_MIN_RECONNECT_RETRY_TIME_SECONDS = 4;
@@ -75,8 +102,13 @@ public class AWSIotMqttManager {
     public static final Boolean DEFAULT_OFFLINE_PUBLISH_QUEUE_ENABLED = true;
     /** Default value for offline publish queue bound. */
     public static final Integer DEFAULT_OFFLINE_PUBLISH_QUEUE_BOUND = 100;
-    /** Constant for milliseconds between queue publishes. */
+    /** Constant for milliseconds before draining resumes after a queue publish error. */
     private static final Long DEFAULT_MILLIS_BETWEEN_QUEUE_PUBLISHES = 250L;
+    /**
+     * Queued messages published and not yet acknowledged at any time while
+     * draining. Matches the default max inflight of the Paho client.
+     */
+    private static final int MAX_IN_FLIGHT_QUEUE_PUBLISHES = 10;
     /** Default value for "connection established" hysteresis timer. */
     private static final Integer DEFAULT_CONNECTION_STABILITY_TIME_SECONDS = 10;
 
@@ -104,11 +136,44 @@ public class AWSIotMqttManager {
      * to proved per-topic message arrived callbacks.
      */
     private final Map<String, AWSIotMqttTopic> topicListeners;
+    /**
+     * The subscriptions of topicListeners indexed by topic filter levels, to
+     * find the ones matching the topic of a message.
+     */
+    private final TopicTrie topicTrie;
+    /**
+     * Subscriptions matching the message being dispatched, reused across
+     * messages. Only used by the MQTT client's callback thread.
+     */
+    private final List<AWSIotMqttTopic> matchingTopics;
     /**
      * Queue for messages attempted to publish while MQTT client was offline.
      * Republished upon reconnect.
      */
-    private final List<AWSIotMqttQueueMessage> mqttMessageQueue;
+    private volatile OfflinePublishQueue mqttMessageQueue;
+    /** File storing the offline publish queue, null if it's kept in memory. */
+    private volatile File offlinePublishQueueFile;
+    /** Publishes the next queued messages the in flight window allows. */
+    private final Runnable drainTask;
+    /** Gets the acknowledgement of each publish from the offline queue. */
+    private final IMqttActionListener queuePublishListener;
+    /**
+     * Queued messages published and not yet acknowledged, in the order they
+     * were sent, including the failed ones until they're queued again. Only
+     * used on the drain thread.
+     */
+    private final List<AWSIotMqttQueueMessage> queuePublishesInFlight;
+    /**
+     * The messages of queuePublishesInFlight whose publish failed. Only used
+     * on the drain thread.
+     */
+    private final Set<AWSIotMqttQueueMessage> failedQueuePublishes;
+    /** Queued messages acknowledged since draining started. */
+    private final AtomicLong drainedMessages;
+    /** When draining last started, in milliseconds. */
+    private volatile long drainStartTime;
+    /** When a queued message was last acknowledged, in milliseconds. */
+    private volatile long lastDrainedTime;
     /** KeepAlive interval specified by the user. */
     private int userKeepAlive;
     /** MQTT Will parameters. */
@@ -136,7 +201,10 @@ public class AWSIotMqttManager {
     private Integer offlinePublishQueueBound;
     /** Full queue behavior (keep oldest or keep newest)? */
     private boolean fullQueueKeepsOldest;
-    /** Milliseconds between publishes when publishing queued messages (draining interval). */
+    /**
+     * Milliseconds before draining the offline queue resumes after a publish
+     * from the queue failed (draining interval).
+     */
     private long drainingInterval;
     /** Was this disconnect requested by the user? */
     private boolean userDisconnect;
@@ -154,8 +222,8 @@ public class AWSIotMqttManager {
      * Used to determine connection stability.
      */
     private Long lastConnackTime;
-    /** The current connection status of the MQTT client. */
-    private MqttManagerConnectionState connectionState;
+    /** The current connection status of the MQTT client, also read on the drain thread. */
+    private volatile MqttManagerConnectionState connectionState;
 
     /** Override value for System.currentTimeInMillis.  Used for unit testing reconnect logic. */
     private Long unitTestMillisOverride;
@@ -325,16 +393,103 @@ public class AWSIotMqttManager {
     }
 
     /**
-     * Get the "draining interval" (the time between publish messages are sent from the offline queue when reconnected).
-     * @return long containing the number of milliseconds between publishes.
+     * Get the file storing the offline publish queue.
+     *
+     * @return the file, or null if the queue is kept in memory.
+     */
+    public File getOfflinePublishQueueFile() {
+        return offlinePublishQueueFile;
+    }
+
+    /**
+     * Store the offline publish queue in a file, so messages queued while offline survive the
+     * app process and are published upon the next connect. The file is memory mapped; queued
+     * messages aren't kept on the heap. Messages already queued are moved to the file.
+     *
+     * @param queueFile file storing the queue, for instance in the app's files directory, or
+     *            null to keep the queue in memory (default).
+     */
+    public void setOfflinePublishQueueFile(File queueFile) {
+        if (queueFile == null ? offlinePublishQueueFile == null
+                : queueFile.equals(offlinePublishQueueFile)) {
+            return;
+        }
+        final OfflinePublishQueue queue;
+        if (queueFile == null) {
+            queue = new MessageRingBuffer();
+        } else {
+            try {
+                queue = new PersistentMessageQueue(queueFile);
+            } catch (IOException e) {
+                throw new AmazonClientException("Failed to open the offline publish queue file.",
+                        e);
+            }
+        }
+        final File file = queueFile;
+        // swapped on the drain thread, so not between the peek and the poll
+        // of a message being published
+        Future<?> swap = DRAIN_EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                replaceMqttMessageQueue(queue);
+                offlinePublishQueueFile = file;
+            }
+        });
+        try {
+            swap.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException(
+                    "Interrupted while replacing the offline publish queue.", e);
+        } catch (ExecutionException e) {
+            throw new AmazonClientException("Failed to replace the offline publish queue.",
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Moves the queued messages to a new queue, which replaces the offline
+     * publish queue. Only runs on the drain thread.
+     *
+     * @param queue the new queue.
+     */
+    private void replaceMqttMessageQueue(OfflinePublishQueue queue) {
+        OfflinePublishQueue previous = mqttMessageQueue;
+        // putMessageInQueue adds to the queue it holds the lock of
+        synchronized (previous) {
+            // the messages being published are moved too, they're published
+            // again rather than lost if the process dies before their
+            // acknowledgement
+            previous.restore();
+            AWSIotMqttQueueMessage message;
+            while ((message = previous.poll()) != null) {
+                queue.add(message);
+            }
+            mqttMessageQueue = queue;
+        }
+        if (previous instanceof Closeable) {
+            try {
+                ((Closeable) previous).close();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Error closing the offline publish queue file.", e);
+            }
+        }
+    }
+
+    /**
+     * Get the "draining interval". Messages are sent from the offline queue when reconnected as
+     * soon as the previous ones are acknowledged; draining pauses for this interval when a
+     * publish from the queue fails.
+     * @return long containing the number of milliseconds draining pauses after an error.
      */
     public Long getDrainingInterval() {
         return drainingInterval;
     }
 
     /**
-     * Set the "draining interval" (the time between publish messages are sent from the offline queue when reconnected).
-     * @param interval milliseconds between offline queue publishes.
+     * Set the "draining interval", the time draining of the offline queue pauses when a publish
+     * from the queue fails.
+     * @param interval milliseconds draining pauses after an offline queue publish error.
      */
     public void setDrainingInterval(Long interval) {
         drainingInterval = interval;
@@ -418,7 +573,7 @@ public class AWSIotMqttManager {
      *
      * @return offline message queue.
      */
-    List<AWSIotMqttQueueMessage> getMqttMessageQueue() {
+    OfflinePublishQueue getMqttMessageQueue() {
         return mqttMessageQueue;
     }
 
@@ -430,6 +585,27 @@ public class AWSIotMqttManager {
         return connectionState;
     }
 
+    /**
+     * Sets MQTT client status.  Used for unit tests.
+     * @param state desired mqtt client status.
+     */
+    void setConnectionState(MqttManagerConnectionState state) {
+        connectionState = state;
+    }
+
+    /**
+     * Waits for the tasks already given to the drain thread to run.  Used for
+     * unit tests.
+     * @throws Exception if a task could not be run.
+     */
+    static void awaitDrainThread() throws Exception {
+        DRAIN_EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
     /**
      * Sets override value for System.currentTimeInMillis.
      * Used for unit testing reconnect logic.
@@ -495,7 +671,49 @@ public class AWSIotMqttManager {
         unitTestMillisOverride = null;
 
         this.topicListeners = new HashMap<String, AWSIotMqttTopic>();
-        this.mqttMessageQueue = new LinkedList<AWSIotMqttQueueMessage>();
+        this.topicTrie = new TopicTrie();
+        this.matchingTopics = new ArrayList<AWSIotMqttTopic>();
+        this.mqttMessageQueue = new MessageRingBuffer();
+        this.queuePublishesInFlight = new LinkedList<AWSIotMqttQueueMessage>();
+        this.failedQueuePublishes = Collections.newSetFromMap(
+                new IdentityHashMap<AWSIotMqttQueueMessage, Boolean>());
+        this.drainedMessages = new AtomicLong();
+        this.drainTask = new Runnable() {
+            @Override
+            public void run() {
+                drainQueue();
+            }
+        };
+        this.queuePublishListener = new IMqttActionListener() {
+            @Override
+            public void onSuccess(final IMqttToken asyncActionToken) {
+                DRAIN_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        AWSIotMqttQueueMessage message = (AWSIotMqttQueueMessage) asyncActionToken
+                                .getUserContext();
+                        queuePublishesInFlight.remove(message);
+                        mqttMessageQueue.acknowledge(message);
+                        drainedMessages.incrementAndGet();
+                        lastDrainedTime = getSystemTimeMs();
+                        drainQueue();
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(final IMqttToken asyncActionToken, Throwable e) {
+                Log.e(LOG_TAG, "Error while publishing from offline message queue.", e);
+                DRAIN_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        failedQueuePublishes.add((AWSIotMqttQueueMessage) asyncActionToken
+                                .getUserContext());
+                        requeueFailedPublishes();
+                    }
+                });
+            }
+        };
     }
 
     /**
@@ -576,7 +794,12 @@ public class AWSIotMqttManager {
         options.setKeepAliveInterval(userKeepAlive);
 
         topicListeners.clear();
-        mqttMessageQueue.clear();
+        topicTrie.clear();
+        // messages stored in a file were queued before the app restarted,
+        // they're replayed upon connecting
+        if (offlinePublishQueueFile == null) {
+            mqttMessageQueue.clear();
+        }
 
         resetReconnect();
         userDisconnect = false;
@@ -796,6 +1019,7 @@ public class AWSIotMqttManager {
             }
             AWSIotMqttTopic topicModel = new AWSIotMqttTopic(topic, qos, callback);
             topicListeners.put(topic, topicModel);
+            topicTrie.put(topicModel);
         }
     }
 
@@ -817,6 +1041,7 @@ public class AWSIotMqttManager {
                 throw new AmazonClientException("Client error while unsubscribing.", e);
             }
             topicListeners.remove(topic);
+            topicTrie.remove(topic);
         }
     }
 
@@ -914,49 +1139,120 @@ public class AWSIotMqttManager {
      */
     void putMessageInQueue(byte[] data, String topic, AWSIotMqttQos qos) {
         AWSIotMqttQueueMessage message = new AWSIotMqttQueueMessage(topic, data, qos);
-        message.setTopic(topic);
-        message.setMessage(data);
 
-        if (mqttMessageQueue.size() >= offlinePublishQueueBound) {
-            if (fullQueueKeepsOldest) {
+        while (true) {
+            OfflinePublishQueue queue = mqttMessageQueue;
+            synchronized (queue) {
+                if (queue != mqttMessageQueue) {
+                    // replaced while waiting for the lock
+                    continue;
+                }
+                if (queue.size() >= offlinePublishQueueBound) {
+                    if (fullQueueKeepsOldest) {
+                        return;
+                    } else {
+                        queue.poll();
+                    }
+                }
+
+                queue.add(message);
                 return;
-            } else {
-                mqttMessageQueue.remove(0);
             }
         }
-
-        mqttMessageQueue.add(message);
     }
 
     /**
      * Publish messages from the message queue.
      * Called to handle publishing messages accumulated in the message queue when the client was unable to publish.
+     * Draining happens on a background thread, which keeps up to
+     * MAX_IN_FLIGHT_QUEUE_PUBLISHES messages published and sends the next one
+     * as each is acknowledged.
      */
     void publishMessagesFromQueue() {
-        if (connectionState == MqttManagerConnectionState.Connected && mqttMessageQueue != null
-                && !mqttMessageQueue.isEmpty()) {
-            final AWSIotMqttQueueMessage message = mqttMessageQueue.get(0);
-            if (message != null) {
+        drainedMessages.set(0);
+        drainStartTime = getSystemTimeMs();
+        lastDrainedTime = drainStartTime;
+        DRAIN_EXECUTOR.execute(drainTask);
+    }
+
+    /**
+     * Publishes queued messages until the in flight window is full or the
+     * queue is empty. Only runs on the drain thread.
+     */
+    private void drainQueue() {
+        if (!failedQueuePublishes.isEmpty()) {
+            requeueFailedPublishes();
+            return;
+        }
+        while (connectionState == MqttManagerConnectionState.Connected
+                && queuePublishesInFlight.size() < MAX_IN_FLIGHT_QUEUE_PUBLISHES) {
+            // only replaced on this thread
+            OfflinePublishQueue queue = mqttMessageQueue;
+            AWSIotMqttQueueMessage message;
+            // the message stays queued while it's published so that messages
+            // published meanwhile are queued behind it, and the lock keeps
+            // putMessageInQueue from removing it from a full queue before
+            // it's taken. The queue keeps it until it's acknowledged.
+            synchronized (queue) {
+                message = queue.peek();
+                if (message == null) {
+                    return;
+                }
                 try {
-                    mqttClient.publish(message.getTopic(), message.getMessage(), message.getQos()
-                            .asInt(), false);
-                    mqttMessageQueue.remove(0);
+                    mqttClient.publish(message.getTopic(), message.getMessage(), message
+                            .getQos().asInt(), false, message, queuePublishListener);
                 } catch (MqttException e) {
                     Log.e(LOG_TAG, "Error while publishing from offline message queue.", e);
+                    DRAIN_EXECUTOR.schedule(drainTask, drainingInterval, TimeUnit.MILLISECONDS);
+                    return;
                 }
+                queue.take();
             }
+            // acks are handled on this thread, after this task
+            queuePublishesInFlight.add(message);
+        }
+    }
 
-            (new Handler(Looper.getMainLooper())).postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    if (!mqttMessageQueue.isEmpty()) {
-                        if (connectionState == MqttManagerConnectionState.Connected) {
-                            publishMessagesFromQueue();
-                        }
-                    }
-                }
-            }, drainingInterval);
+    /**
+     * Once no publish from the queue is in flight other than the failed ones,
+     * puts the failed messages back at the front of the queue in the order
+     * they were first sent. Draining resumes after the interval or upon
+     * reconnect. Only runs on the drain thread.
+     */
+    private void requeueFailedPublishes() {
+        if (failedQueuePublishes.size() < queuePublishesInFlight.size()) {
+            return;
+        }
+        // the queue kept them since they weren't acknowledged
+        mqttMessageQueue.restore();
+        queuePublishesInFlight.clear();
+        failedQueuePublishes.clear();
+        DRAIN_EXECUTOR.schedule(drainTask, drainingInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the number of messages waiting in the offline publish queue.
+     *
+     * @return number of queued messages.
+     */
+    public int getOfflinePublishQueueDepth() {
+        return mqttMessageQueue.size();
+    }
+
+    /**
+     * Gets the rate at which the offline publish queue was drained since the
+     * client last connected, as the number of queued messages acknowledged per
+     * second until the latest acknowledgement.
+     *
+     * @return messages drained per second, 0 if none was drained yet.
+     */
+    public double getOfflinePublishQueueDrainRate() {
+        long drained = drainedMessages.get();
+        long elapsed = lastDrainedTime - drainStartTime;
+        if (drained == 0 || elapsed <= 0) {
+            return 0;
         }
+        return drained * (double) MILLIS_IN_ONE_SECOND / elapsed;
     }
 
     /**
@@ -989,15 +1285,16 @@ public class AWSIotMqttManager {
             public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
                 byte[] data = mqttMessage.getPayload();
 
-                for (String topicKey : topicListeners.keySet()) {
-                    if (isTopicMatch(topicKey, topic)) {
-                        AWSIotMqttTopic topicModel = topicListeners.get(topicKey);
-                        if (topicModel != null) {
-                            if (topicModel.getCallback() != null) {
-                                topicModel.getCallback().onMessageArrived(topic, data);
-                            }
+                topicTrie.match(topic, matchingTopics);
+                try {
+                    for (int i = 0; i < matchingTopics.size(); i++) {
+                        AWSIotMqttTopic topicModel = matchingTopics.get(i);
+                        if (topicModel.getCallback() != null) {
+                            topicModel.getCallback().onMessageArrived(topic, data);
                         }
                     }
+                } finally {
+                    matchingTopics.clear();
                 }
             }
 
@@ -1054,55 +1351,4 @@ public class AWSIotMqttManager {
             }
         }
     }
-
-    /**
-     * Does the topic match the topic filter?
-     *
-     * @param topicFilter MQTT topic filter (subscriptions, including
-     *            wildcards).
-     * @param topic - the aboslute topic (no wildcards) on which a message was
-     *            published.
-     * @return true if the topic matches the filter, false otherwise.
-     */
-    static boolean isTopicMatch(String topicFilter, String topic) {
-        String[] topicFilterTokens = topicFilter.split("/");
-        String[] topicTokens = topic.split("/");
-
-        if (topicFilterTokens.length > topicTokens.length) {
-            return false;
-        }
-
-        for (int i = 0; i < topicFilterTokens.length; i++) {
-            String topicFilterToken = topicFilterTokens[i];
-            String topicToken = topicTokens[i];
-
-            // we're equal up to this point, the # matches all that is left
-            if (topicFilterToken.equals("#")) {
-                return true;
-            }
-
-            // if the filter has a +, go to the next token
-            // if the filter token matches the topic token, go to the next token
-            // if neither are true then we've discovered a mismatch
-            if (!topicFilterToken.equals("+") && !topicFilterToken.equals(topicToken)) {
-                return false;
-            }
-        }
-
-        // if we're here the strings matched token-for-token (including any
-        // '+'s)
-        // and we have reached the end of the topic filter
-        // we have a match unless there are more tokens left in the topic
-        // if we have filter 1/2/3 then:
-        // 1/2/3 matches
-        // 1/2/3/4 does not match
-        //
-        // if we have filter 1/2/+ then:
-        // 1/2/3 matches
-        // 1/2/3/4 does not match
-        //
-        // we already know the filter can't be longer than the topic (from
-        // above)
-        return (topicFilterTokens.length == topicTokens.length);
-    }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Offline publish queue kept in memory, in a ring buffer so adding and
+ * removing at either end takes constant time. The buffer grows as needed.
+ */
+class MessageRingBuffer implements OfflinePublishQueue {
+    /** Initial capacity, a power of two. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    private AWSIotMqttQueueMessage[] elements =
+            new AWSIotMqttQueueMessage[INITIAL_CAPACITY];
+    /** Index of the first message. */
+    private int head;
+    private int size;
+    /** Messages taken and not acknowledged, in the order they were taken. */
+    private final ArrayDeque<AWSIotMqttQueueMessage> taken =
+            new ArrayDeque<AWSIotMqttQueueMessage>();
+
+    @Override
+    public synchronized void add(AWSIotMqttQueueMessage message) {
+        ensureCapacity();
+        elements[(head + size) & (elements.length - 1)] = message;
+        size++;
+    }
+
+    @Override
+    public synchronized AWSIotMqttQueueMessage peek() {
+        return size == 0 ? null : elements[head];
+    }
+
+    @Override
+    public synchronized AWSIotMqttQueueMessage poll() {
+        if (size == 0) {
+            return null;
+        }
+        AWSIotMqttQueueMessage message = elements[head];
+        elements[head] = null;
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return message;
+    }
+
+    @Override
+    public synchronized AWSIotMqttQueueMessage take() {
+        AWSIotMqttQueueMessage message = poll();
+        if (message != null) {
+            taken.add(message);
+        }
+        return message;
+    }
+
+    @Override
+    public synchronized void acknowledge(AWSIotMqttQueueMessage message) {
+        Iterator<AWSIotMqttQueueMessage> it = taken.iterator();
+        while (it.hasNext()) {
+            if (it.next() == message) {
+                it.remove();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void restore() {
+        AWSIotMqttQueueMessage message;
+        while ((message = taken.pollLast()) != null) {
+            ensureCapacity();
+            head = (head - 1) & (elements.length - 1);
+            elements[head] = message;
+            size++;
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public synchronized void clear() {
+        elements = new AWSIotMqttQueueMessage[INITIAL_CAPACITY];
+        head = 0;
+        size = 0;
+        taken.clear();
+    }
+
+    private void ensureCapacity() {
+        if (size < elements.length) {
+            return;
+        }
+        AWSIotMqttQueueMessage[] grown = new AWSIotMqttQueueMessage[elements.length * 2];
+        int firstPart = elements.length - head;
+        System.arraycopy(elements, head, grown, 0, firstPart);
+        System.arraycopy(elements, 0, grown, firstPart, head);
+        elements = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.mobileconnectors.iot;
+
+/**
+ * FIFO of messages queued while offline, waiting to be published. The queue
+ * bound is enforced by the caller. Implementations are thread safe.
+ * <p>
+ * Messages being published are taken from the queue and kept until their
+ * publish is acknowledged, so that a queue which survives the process still
+ * holds them if it dies first, or they can be put back if the publish fails.
+ */
+interface OfflinePublishQueue {
+    /**
+     * Adds a message at the end of the queue.
+     *
+     * @param message message to add.
+     */
+    void add(AWSIotMqttQueueMessage message);
+
+    /**
+     * Returns the first message without removing it.
+     *
+     * @return the first message, or null if the queue is empty.
+     */
+    AWSIotMqttQueueMessage peek();
+
+    /**
+     * Removes and returns the first message.
+     *
+     * @return the first message, or null if the queue is empty.
+     */
+    AWSIotMqttQueueMessage poll();
+
+    /**
+     * Removes and returns the first message to publish it. The message is
+     * kept until it's acknowledged or put back with {@link #restore()}.
+     *
+     * @return the first message, or null if the queue is empty.
+     */
+    AWSIotMqttQueueMessage take();
+
+    /**
+     * Drops a message returned by {@link #take()} once its publish is
+     * acknowledged. Unknown messages are ignored.
+     *
+     * @param message the message taken.
+     */
+    void acknowledge(AWSIotMqttQueueMessage message);
+
+    /**
+     * Puts the messages taken and not acknowledged back at the front of the
+     * queue, in the order they were taken.
+     */
+    void restore();
+
+    int size();
+
+    boolean isEmpty();
+
+    void clear();
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.mobileconnectors.iot;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.util.StringUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+
+/**
+ * Offline publish queue stored in a memory mapped file, so queued messages
+ * survive the app process and aren't kept on the heap. Only the message at
+ * the head is decoded.
+ * <p>
+ * The file starts with a header holding the offset of the first message.
+ * Messages are appended after it as records of a length, a CRC32 checksum and
+ * the QoS, topic and payload. A zero length ends the records. Every change
+ * leaves a valid queue in the file at each step, so the queue survives the
+ * process dying at any point: records are written beyond the end before it
+ * moves past them, and records are moved by copying them where they don't
+ * overlap the queue before the head is moved to the copy. The head is
+ * written with its checksum in a single store. Records whose checksum doesn't
+ * match end the queue when the file is opened. Removing messages only moves
+ * the head. The space before the head is reused when the file is full, or
+ * the file grows.
+ * <p>
+ * Messages taken to be published stay before the head until they're
+ * acknowledged in order, so the ones in flight are published again when the
+ * file is opened after the process died. A message removed behind one in
+ * flight is also only dropped from the file along with it.
+ */
+class PersistentMessageQueue implements OfflinePublishQueue, Closeable {
+    private static final int MAGIC = 0x4d514f51;
+    /** Magic and, aligned, the head offset and its checksum. */
+    static final int HEADER_SIZE = 16;
+    private static final int HEAD_OFFSET = 8;
+    /** Length and checksum of a record. */
+    private static final int RECORD_HEADER_SIZE = 8;
+    /** QoS and topic length at the start of a record's body. */
+    private static final int BODY_HEADER_SIZE = 3;
+    /** Size of the zero length ending the records. */
+    private static final int END_MARKER_SIZE = 4;
+    static final int INITIAL_FILE_SIZE = 64 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+    /** Offset of the first record, as stored in the header. */
+    private int head;
+    /** Offset of the first record not taken. */
+    private int next;
+    /** Offset past the last record. */
+    private int tail;
+    /** Number of messages from next which aren't acknowledged. */
+    private int size;
+    /** Message at next, decoded by peek. */
+    private AWSIotMqttQueueMessage headMessage;
+    /** Records from the head to next, in order. */
+    private final ArrayDeque<Entry> taken = new ArrayDeque<Entry>();
+    /**
+     * Records from next which were taken before being restored, in order.
+     * The first one is never acknowledged.
+     */
+    private final ArrayDeque<Entry> restored = new ArrayDeque<Entry>();
+
+    /**
+     * Opens the queue stored in a file, creating the file if needed.
+     *
+     * @param queueFile the file.
+     * @throws IOException if the file can't be opened or mapped.
+     */
+    PersistentMessageQueue(File queueFile) throws IOException {
+        file = new RandomAccessFile(queueFile, "rw");
+        channel = file.getChannel();
+        try {
+            map((int) Math.max(file.length(), INITIAL_FILE_SIZE));
+            load();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the head in the header and the records after it, stopping at the
+     * first one missing or corrupted.
+     */
+    private void load() {
+        head = HEADER_SIZE;
+        if (buffer.getInt(0) == MAGIC) {
+            long storedHead = buffer.getLong(HEAD_OFFSET);
+            int position = (int) (storedHead >>> 32);
+            if (position >= HEADER_SIZE && position <= buffer.capacity()
+                    && (int) storedHead == checksum(position)) {
+                head = position;
+            }
+        } else {
+            buffer.putInt(0, MAGIC);
+        }
+        int position = head;
+        size = 0;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < BODY_HEADER_SIZE
+                    || length > buffer.capacity() - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            byte[] body = readBody(position, length);
+            crc.reset();
+            crc.update(body, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+            size++;
+        }
+        tail = position;
+        next = head;
+        if (size == 0) {
+            reset();
+        } else {
+            writeEndMarker();
+            writeHead(head);
+        }
+    }
+
+    @Override
+    public synchronized void add(AWSIotMqttQueueMessage message) {
+        byte[] record = encode(message);
+        try {
+            ensureSpace(record.length);
+        } catch (IOException e) {
+            throw new AmazonClientException("Failed to grow the offline publish queue file", e);
+        }
+        // end the records past the new one before it can be read
+        buffer.putInt(tail + record.length, 0);
+        writeRecord(tail, record);
+        tail += record.length;
+        size++;
+    }
+
+    @Override
+    public synchronized AWSIotMqttQueueMessage peek() {
+        if (size == 0) {
+            return null;
+        }
+        if (headMessage == null) {
+            if (restored.isEmpty()) {
+                int length = buffer.getInt(next);
+                headMessage = decode(readBody(next, length));
+            } else {
+                headMessage = restored.peek().message;
+            }
+        }
+        return headMessage;
+    }
+
+    @Override
+    public synchronized AWSIotMqttQueueMessage poll() {
+        AWSIotMqttQueueMessage message = take();
+        if (message != null) {
+            acknowledge(message);
+        }
+        return message;
+    }
+
+    @Override
+    public synchronized AWSIotMqttQueueMessage take() {
+        AWSIotMqttQueueMessage message = peek();
+        if (message == null) {
+            return null;
+        }
+        Entry entry = restored.isEmpty()
+                ? new Entry(RECORD_HEADER_SIZE + buffer.getInt(next), message)
+                : restored.poll();
+        taken.add(entry);
+        next += entry.length;
+        headMessage = null;
+        size--;
+        skipAcknowledged();
+        return message;
+    }
+
+    @Override
+    public synchronized void acknowledge(AWSIotMqttQueueMessage message) {
+        for (Entry entry : taken) {
+            if (entry.message == message) {
+                entry.acknowledged = true;
+                release();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void restore() {
+        Iterator<Entry> it = taken.descendingIterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            restored.addFirst(entry);
+            next -= entry.length;
+            if (!entry.acknowledged) {
+                size++;
+            }
+        }
+        taken.clear();
+        headMessage = null;
+        skipAcknowledged();
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public synchronized void clear() {
+        headMessage = null;
+        size = 0;
+        taken.clear();
+        restored.clear();
+        reset();
+    }
+
+    /**
+     * Closes the file. The queue can't be used afterwards.
+     *
+     * @throws IOException if closing the file fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    /**
+     * Empties the file, ending the records at the start before moving the
+     * head there, so that a crash in between leaves either the queue or an
+     * empty one.
+     */
+    private void reset() {
+        buffer.putInt(HEADER_SIZE, 0);
+        head = HEADER_SIZE;
+        next = HEADER_SIZE;
+        tail = HEADER_SIZE;
+        writeHead(head);
+    }
+
+    /**
+     * Moves the acknowledged records restored to the ones taken, so that
+     * next is at a message to publish.
+     */
+    private void skipAcknowledged() {
+        while (!restored.isEmpty() && restored.peek().acknowledged) {
+            Entry entry = restored.poll();
+            taken.add(entry);
+            next += entry.length;
+        }
+        release();
+    }
+
+    /**
+     * Moves the head past the acknowledged records at the front of the ones
+     * taken, emptying the file once none is left.
+     */
+    private void release() {
+        int position = head;
+        while (!taken.isEmpty() && taken.peek().acknowledged) {
+            position += taken.poll().length;
+        }
+        if (position == head) {
+            return;
+        }
+        if (position == tail) {
+            reset();
+        } else {
+            head = position;
+            writeHead(head);
+        }
+    }
+
+    /**
+     * Makes room for a record of the given size after the tail, moving the
+     * records to the start of the file when the space freed before the head
+     * can hold them all, or growing the file.
+     */
+    private void ensureSpace(int recordSize) throws IOException {
+        if (tail + recordSize + END_MARKER_SIZE <= buffer.capacity()) {
+            return;
+        }
+        int used = tail - head;
+        if (used + END_MARKER_SIZE <= head - HEADER_SIZE
+                && HEADER_SIZE + used + recordSize + END_MARKER_SIZE <= buffer.capacity()) {
+            // neither the copy nor its end marker overlap the records, which
+            // stay valid until the head is moved to the copy
+            buffer.putInt(HEADER_SIZE + used, 0);
+            copyRecords(HEADER_SIZE);
+            writeHead(HEADER_SIZE);
+            next -= head - HEADER_SIZE;
+            head = HEADER_SIZE;
+            tail = HEADER_SIZE + used;
+            return;
+        }
+        grow((long) tail + recordSize + END_MARKER_SIZE);
+    }
+
+    /**
+     * Grows the file, doubling its size until it holds the given number of
+     * bytes.
+     */
+    private void grow(long required) throws IOException {
+        long capacity = buffer.capacity();
+        if (required <= capacity) {
+            return;
+        }
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("Offline publish queue file is full");
+        }
+        map((int) capacity);
+    }
+
+    /**
+     * Copies the records from the head to the tail to the given position,
+     * which must not overlap them.
+     */
+    private void copyRecords(int position) {
+        byte[] records = new byte[tail - head];
+        buffer.position(head);
+        buffer.get(records);
+        buffer.position(position);
+        buffer.put(records);
+    }
+
+    private void map(int capacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Writes a record, its length last so it's only read once complete.
+     * What follows the record must already be an end marker or a record.
+     */
+    private void writeRecord(int position, byte[] record) {
+        buffer.position(position + 4);
+        buffer.put(record, 4, record.length - 4);
+        buffer.putInt(position, record.length - RECORD_HEADER_SIZE);
+    }
+
+    private void writeEndMarker() {
+        if (tail + END_MARKER_SIZE <= buffer.capacity()) {
+            buffer.putInt(tail, 0);
+        }
+    }
+
+    /**
+     * Writes the head and its checksum with a single store, so they can't be
+     * torn apart.
+     */
+    private void writeHead(int position) {
+        buffer.putLong(HEAD_OFFSET, ((long) position << 32) | (checksum(position) & 0xffffffffL));
+    }
+
+    private int checksum(int value) {
+        crc.reset();
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            crc.update(value >>> shift);
+        }
+        return (int) crc.getValue();
+    }
+
+    private byte[] readBody(int position, int length) {
+        byte[] body = new byte[length];
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.get(body);
+        return body;
+    }
+
+    private byte[] encode(AWSIotMqttQueueMessage message) {
+        byte[] topic = message.getTopic().getBytes(StringUtils.UTF8);
+        byte[] payload = message.getMessage();
+        int length = BODY_HEADER_SIZE + topic.length + payload.length;
+        byte[] record = new byte[RECORD_HEADER_SIZE + length];
+        int position = RECORD_HEADER_SIZE;
+        record[position++] = (byte) message.getQos().asInt();
+        record[position++] = (byte) (topic.length >>> 8);
+        record[position++] = (byte) topic.length;
+        System.arraycopy(topic, 0, record, position, topic.length);
+        System.arraycopy(payload, 0, record, position + topic.length, payload.length);
+
+        crc.reset();
+        crc.update(record, RECORD_HEADER_SIZE, length);
+        int checksum = (int) crc.getValue();
+        record[4] = (byte) (checksum >>> 24);
+        record[5] = (byte) (checksum >>> 16);
+        record[6] = (byte) (checksum >>> 8);
+        record[7] = (byte) checksum;
+        return record;
+    }
+
+    private static AWSIotMqttQueueMessage decode(byte[] body) {
+        AWSIotMqttQos qos = body[0] == 0 ? AWSIotMqttQos.QOS0 : AWSIotMqttQos.QOS1;
+        int topicLength = ((body[1] & 0xff) << 8) | (body[2] & 0xff);
+        String topic = new String(body, BODY_HEADER_SIZE, topicLength, StringUtils.UTF8);
+        byte[] payload = new byte[body.length - BODY_HEADER_SIZE - topicLength];
+        System.arraycopy(body, BODY_HEADER_SIZE + topicLength, payload, 0, payload.length);
+        return new AWSIotMqttQueueMessage(topic, payload, qos);
+    }
+
+    /** A record taken, or restored after it was taken. */
+    private static final class Entry {
+        /** Size of the record, header included. */
+        final int length;
+        final AWSIotMqttQueueMessage message;
+        boolean acknowledged;
+
+        Entry(int length, AWSIotMqttQueueMessage message) {
+            this.length = length;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import java.util.List;
+
+/**
+ * Subscriptions indexed by the levels of their topic filters. Finds the
+ * subscriptions matching the topic of a message by walking the levels of the
+ * topic once, without splitting it or testing every filter. Filters may use
+ * the + (single level) and # (multi level) wildcards; # also matches the
+ * parent level, so a/# matches a. As MQTT requires, wildcards at the first
+ * level don't match topics starting with $, which the server reserves. Thread
+ * safe.
+ */
+class TopicTrie {
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+    private static final char LEVEL_SEPARATOR = '/';
+    private static final char RESERVED_TOPIC_PREFIX = '$';
+
+    /**
+     * A level of a topic filter.
+     */
+    private static final class Node {
+        final Node parent;
+        /** Level name, null for the root and the wildcards. */
+        final String level;
+        final int hash;
+        /** Children with a level name, open addressed by hash. */
+        Node[] children;
+        int childCount;
+        /** Child for the + wildcard. */
+        Node singleLevel;
+        /** Child for the # wildcard. */
+        Node multiLevel;
+        /** Subscription whose filter ends at this level. */
+        AWSIotMqttTopic subscription;
+
+        Node(Node parent, String level) {
+            this.parent = parent;
+            this.level = level;
+            this.hash = level == null ? 0 : level.hashCode();
+        }
+
+        /**
+         * Finds the child named after the characters of topic between start
+         * (inclusive) and end (exclusive).
+         */
+        Node child(String topic, int start, int end, int hash) {
+            if (children == null) {
+                return null;
+            }
+            int length = end - start;
+            int mask = children.length - 1;
+            for (int i = hash & mask;; i = (i + 1) & mask) {
+                Node child = children[i];
+                if (child == null) {
+                    return null;
+                }
+                if (child.hash == hash && child.level.length() == length
+                        && topic.regionMatches(start, child.level, 0, length)) {
+                    return child;
+                }
+            }
+        }
+
+        void addChild(Node child) {
+            if (children == null) {
+                children = new Node[4];
+            } else if ((childCount + 1) * 2 > children.length) {
+                Node[] old = children;
+                children = new Node[old.length * 2];
+                for (Node node : old) {
+                    if (node != null) {
+                        insert(children, node);
+                    }
+                }
+            }
+            insert(children, child);
+            childCount++;
+        }
+
+        void removeChild(Node child) {
+            if (child == singleLevel) {
+                singleLevel = null;
+            } else if (child == multiLevel) {
+                multiLevel = null;
+            } else {
+                // rebuild the table, removing from an open addressed table
+                // would break the probe sequences of other children
+                Node[] old = children;
+                childCount--;
+                children = childCount == 0 ? null : new Node[old.length];
+                for (Node node : old) {
+                    if (node != null && node != child) {
+                        insert(children, node);
+                    }
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return childCount == 0 && singleLevel == null && multiLevel == null
+                    && subscription == null;
+        }
+
+        private static void insert(Node[] table, Node node) {
+            int mask = table.length - 1;
+            int i = node.hash & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = node;
+        }
+    }
+
+    private final Node root = new Node(null, null);
+
+    /**
+     * Adds a subscription, replacing the one with the same topic filter.
+     *
+     * @param subscription the subscription.
+     */
+    synchronized void put(AWSIotMqttTopic subscription) {
+        String filter = subscription.getTopic();
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int end = levelEnd(filter, start);
+            Node child = findChild(node, filter, start, end);
+            if (child == null) {
+                if (isWildcard(filter, start, end, SINGLE_LEVEL_WILDCARD)) {
+                    child = new Node(node, null);
+                    node.singleLevel = child;
+                } else if (isWildcard(filter, start, end, MULTI_LEVEL_WILDCARD)) {
+                    child = new Node(node, null);
+                    node.multiLevel = child;
+                } else {
+                    child = new Node(node, filter.substring(start, end));
+                    node.addChild(child);
+                }
+            }
+            node = child;
+            if (end == filter.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        node.subscription = subscription;
+    }
+
+    /**
+     * Removes the subscription with the given topic filter.
+     *
+     * @param topicFilter the topic filter of the subscription.
+     * @return the subscription removed, or null if there was none.
+     */
+    synchronized AWSIotMqttTopic remove(String topicFilter) {
+        Node node = root;
+        int start = 0;
+        while (node != null) {
+            int end = levelEnd(topicFilter, start);
+            node = findChild(node, topicFilter, start, end);
+            if (end == topicFilter.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        if (node == null || node.subscription == null) {
+            return null;
+        }
+        AWSIotMqttTopic subscription = node.subscription;
+        node.subscription = null;
+        // prune the levels no other filter goes through
+        while (node != root && node.isEmpty()) {
+            node.parent.removeChild(node);
+            node = node.parent;
+        }
+        return subscription;
+    }
+
+    /**
+     * Removes all subscriptions.
+     */
+    synchronized void clear() {
+        root.children = null;
+        root.childCount = 0;
+        root.singleLevel = null;
+        root.multiLevel = null;
+        root.subscription = null;
+    }
+
+    /**
+     * Adds the subscriptions whose topic filter matches a topic to a list.
+     * Nothing is allocated other than what the list needs to grow.
+     *
+     * @param topic the topic a message was published on, without wildcards.
+     * @param matches the list the subscriptions are added to.
+     */
+    synchronized void match(String topic, List<AWSIotMqttTopic> matches) {
+        if (topic.length() > 0 && topic.charAt(0) == RESERVED_TOPIC_PREFIX) {
+            // skip the wildcards of the root, only the exact level can match
+            int end = levelEnd(topic, 0);
+            Node child = root.child(topic, 0, end, levelHash(topic, 0, end));
+            if (child != null) {
+                match(child, topic, end + 1, matches);
+            }
+            return;
+        }
+        match(root, topic, 0, matches);
+    }
+
+    /**
+     * Matches the levels of topic from start against the children of node.
+     * start is past the end of the topic once all levels were matched.
+     */
+    private static void match(Node node, String topic, int start,
+            List<AWSIotMqttTopic> matches) {
+        if (node.multiLevel != null && node.multiLevel.subscription != null) {
+            matches.add(node.multiLevel.subscription);
+        }
+        if (start > topic.length()) {
+            if (node.subscription != null) {
+                matches.add(node.subscription);
+            }
+            return;
+        }
+        int end = levelEnd(topic, start);
+        if (node.children != null) {
+            Node child = node.child(topic, start, end, levelHash(topic, start, end));
+            if (child != null) {
+                match(child, topic, end + 1, matches);
+            }
+        }
+        if (node.singleLevel != null) {
+            match(node.singleLevel, topic, end + 1, matches);
+        }
+    }
+
+    /**
+     * Finds the child of node for a level of a topic filter, including the
+     * wildcards.
+     */
+    private static Node findChild(Node node, String filter, int start, int end) {
+        if (isWildcard(filter, start, end, SINGLE_LEVEL_WILDCARD)) {
+            return node.singleLevel;
+        }
+        if (isWildcard(filter, start, end, MULTI_LEVEL_WILDCARD)) {
+            return node.multiLevel;
+        }
+        return node.child(filter, start, end, filter.substring(start, end).hashCode());
+    }
+
+    private static boolean isWildcard(String filter, int start, int end, String wildcard) {
+        return end - start == 1 && filter.charAt(start) == wildcard.charAt(0);
+    }
+
+    /**
+     * Hashes a level of topic in place, as String.hashCode() would hash it.
+     */
+    private static int levelHash(String topic, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + topic.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int levelEnd(String topic, int start) {
+        int end = topic.indexOf(LEVEL_SEPARATOR, start);
+        return end < 0 ? topic.length() : end;
+    }
+}
@@ -172,7 +172,7 @@ public class AWSIotClient extends AmazonWebServiceClient implements AWSIot {
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AWSIotClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
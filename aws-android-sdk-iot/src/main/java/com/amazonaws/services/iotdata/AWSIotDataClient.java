@@ -167,7 +167,7 @@ public class AWSIotDataClient extends AmazonWebServiceClient implements AWSIotDa
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AWSIotDataClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class AWSIotMqttManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MqttAsyncClient client = mock(MqttAsyncClient.class);
+    private AWSIotMqttManager manager;
+
+    @Before
+    public void setUp() {
+        manager = new AWSIotMqttManager("client", Region.getRegion(Regions.US_EAST_1),
+                "prefix");
+        manager.setMqttClient(client);
+        // draining resumes only when the tests ask for it
+        manager.setDrainingInterval(60 * 60 * 1000L);
+        manager.setConnectionState(MqttManagerConnectionState.Connected);
+    }
+
+    @After
+    public void tearDown() {
+        manager.setConnectionState(MqttManagerConnectionState.Disconnected);
+    }
+
+    @Test
+    public void testDrainPublishesAsAcknowledged() throws Exception {
+        AWSIotMqttQueueMessage[] messages = queue(15);
+
+        manager.publishMessagesFromQueue();
+        AWSIotMqttManager.awaitDrainThread();
+
+        // the window is full
+        List<Object> published = verifyPublished(10);
+        assertEquals(5, manager.getOfflinePublishQueueDepth());
+        for (int i = 0; i < 10; i++) {
+            assertSame(messages[i], published.get(i));
+        }
+
+        // each ack sends the next message
+        listener().onSuccess(token(messages[0]));
+        AWSIotMqttManager.awaitDrainThread();
+        published = verifyPublished(11);
+        assertSame(messages[10], published.get(10));
+        assertEquals(4, manager.getOfflinePublishQueueDepth());
+
+        for (int i = 1; i < 10; i++) {
+            listener().onSuccess(token(messages[i]));
+        }
+        AWSIotMqttManager.awaitDrainThread();
+        published = verifyPublished(15);
+        for (int i = 10; i < 15; i++) {
+            assertSame(messages[i], published.get(i));
+        }
+        assertEquals(0, manager.getOfflinePublishQueueDepth());
+    }
+
+    @Test
+    public void testMessageStaysQueuedWhenPublishThrows() throws Exception {
+        AWSIotMqttQueueMessage[] messages = queue(2);
+        when(client.publish(anyString(), any(byte[].class), anyInt(), anyBoolean(),
+                any(), any(IMqttActionListener.class))).thenThrow(
+                new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED));
+
+        manager.publishMessagesFromQueue();
+        AWSIotMqttManager.awaitDrainThread();
+
+        verifyPublished(1);
+        assertEquals(2, manager.getOfflinePublishQueueDepth());
+        assertSame(messages[0], manager.getMqttMessageQueue().peek());
+    }
+
+    @Test
+    public void testFailedPublishesAreQueuedAgainInOrder() throws Exception {
+        AWSIotMqttQueueMessage[] messages = queue(4);
+        manager.publishMessagesFromQueue();
+        AWSIotMqttManager.awaitDrainThread();
+        verifyPublished(4);
+
+        // failures come back in any order
+        listener().onFailure(token(messages[2]), new MqttException(0));
+        listener().onFailure(token(messages[0]), new MqttException(0));
+        listener().onSuccess(token(messages[3]));
+        AWSIotMqttManager.awaitDrainThread();
+        // nothing is queued again while messages[1] is in flight
+        assertEquals(0, manager.getOfflinePublishQueueDepth());
+
+        // and nothing new is sent
+        AWSIotMqttQueueMessage later = new AWSIotMqttQueueMessage("topic/later", new byte[] {
+                1
+        }, AWSIotMqttQos.QOS1);
+        manager.putMessageInQueue(later.getMessage(), later.getTopic(), later.getQos());
+        manager.publishMessagesFromQueue();
+        AWSIotMqttManager.awaitDrainThread();
+        verifyPublished(4);
+
+        listener().onFailure(token(messages[1]), new MqttException(0));
+        AWSIotMqttManager.awaitDrainThread();
+
+        OfflinePublishQueue queue = manager.getMqttMessageQueue();
+        assertEquals(4, queue.size());
+        assertSame(messages[0], queue.poll());
+        assertSame(messages[1], queue.poll());
+        assertSame(messages[2], queue.poll());
+        assertEquals("topic/later", queue.poll().getTopic());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testEnqueueIntoFullQueueWhileDraining() throws Exception {
+        manager.setOfflinePublishQueueBound(3);
+        queue(3);
+        final CountDownLatch publishing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(client.publish(anyString(), any(byte[].class), anyInt(), anyBoolean(),
+                any(), any(IMqttActionListener.class))).thenAnswer(
+                new Answer<IMqttDeliveryToken>() {
+                    @Override
+                    public IMqttDeliveryToken answer(InvocationOnMock invocation)
+                            throws Throwable {
+                        publishing.countDown();
+                        release.await();
+                        return null;
+                    }
+                }).thenReturn(null);
+
+        manager.publishMessagesFromQueue();
+        publishing.await();
+        // the queue is full while topic/0 is being published
+        Thread enqueue = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                manager.putMessageInQueue(new byte[] {
+                        3
+                }, "topic/3", AWSIotMqttQos.QOS1);
+            }
+        });
+        enqueue.start();
+        while (enqueue.isAlive() && enqueue.getState() != Thread.State.BLOCKED) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        enqueue.join();
+        manager.publishMessagesFromQueue();
+        AWSIotMqttManager.awaitDrainThread();
+
+        // the message being published isn't the one dropped for topic/3
+        List<Object> published = verifyPublished(4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("topic/" + i, ((AWSIotMqttQueueMessage) published.get(i)).getTopic());
+        }
+        assertEquals(0, manager.getOfflinePublishQueueDepth());
+    }
+
+    @Test
+    public void testOfflinePublishQueueFileKeepsQueuedMessages() throws Exception {
+        queue(3);
+        File file = new File(folder.getRoot(), "queue");
+
+        manager.setOfflinePublishQueueFile(file);
+        assertEquals(file, manager.getOfflinePublishQueueFile());
+        assertTrue(manager.getMqttMessageQueue() instanceof PersistentMessageQueue);
+        assertEquals(3, manager.getOfflinePublishQueueDepth());
+
+        // a queue published from meanwhile loses nothing, the messages in
+        // flight are moved too
+        manager.publishMessagesFromQueue();
+        manager.setOfflinePublishQueueFile(null);
+        AWSIotMqttManager.awaitDrainThread();
+        assertTrue(manager.getMqttMessageQueue() instanceof MessageRingBuffer);
+        List<Object> published = verifyPublished(3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("topic/" + i, ((AWSIotMqttQueueMessage) published.get(i)).getTopic());
+        }
+        assertEquals(3, manager.getOfflinePublishQueueDepth());
+        assertEquals("topic/0", manager.getMqttMessageQueue().peek().getTopic());
+    }
+
+    @Test
+    public void testOfflinePublishQueueFileKeepsMessagesUntilAcknowledged() throws Exception {
+        File file = new File(folder.getRoot(), "queue");
+        manager.setOfflinePublishQueueFile(file);
+        queue(3);
+
+        manager.publishMessagesFromQueue();
+        AWSIotMqttManager.awaitDrainThread();
+        List<Object> published = verifyPublished(3);
+        assertEquals(0, manager.getOfflinePublishQueueDepth());
+        listener().onSuccess(token((AWSIotMqttQueueMessage) published.get(0)));
+        AWSIotMqttManager.awaitDrainThread();
+
+        // the process dies with two messages in flight
+        PersistentMessageQueue reopened = new PersistentMessageQueue(file);
+        try {
+            assertEquals(2, reopened.size());
+            assertEquals("topic/1", reopened.poll().getTopic());
+            assertEquals("topic/2", reopened.poll().getTopic());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private AWSIotMqttQueueMessage[] queue(int count) {
+        for (int i = 0; i < count; i++) {
+            manager.putMessageInQueue(new byte[] {
+                    (byte) i
+            }, "topic/" + i, AWSIotMqttQos.QOS1);
+        }
+        // rotates the queue through once to get the messages it holds
+        AWSIotMqttQueueMessage[] messages = new AWSIotMqttQueueMessage[count];
+        OfflinePublishQueue queue = manager.getMqttMessageQueue();
+        for (int i = 0; i < count; i++) {
+            messages[i] = queue.poll();
+            queue.add(messages[i]);
+        }
+        return messages;
+    }
+
+    private List<Object> verifyPublished(int count) throws MqttException {
+        ArgumentCaptor<Object> userContexts = ArgumentCaptor.forClass(Object.class);
+        verify(client, times(count)).publish(anyString(), any(byte[].class), anyInt(),
+                anyBoolean(), userContexts.capture(), any(IMqttActionListener.class));
+        return userContexts.getAllValues();
+    }
+
+    private IMqttActionListener listener() throws MqttException {
+        ArgumentCaptor<IMqttActionListener> listeners = ArgumentCaptor
+                .forClass(IMqttActionListener.class);
+        verify(client, atLeastOnce()).publish(anyString(),
+                any(byte[].class), anyInt(), anyBoolean(), any(), listeners.capture());
+        return listeners.getValue();
+    }
+
+    private static IMqttToken token(AWSIotMqttQueueMessage message) {
+        IMqttToken token = mock(IMqttDeliveryToken.class);
+        when(token.getUserContext()).thenReturn(message);
+        return token;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MessageRingBufferTest {
+
+    private final MessageRingBuffer queue = new MessageRingBuffer();
+
+    @Test
+    public void testEmptyQueue() {
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertNull(queue.peek());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testFifoOrder() {
+        AWSIotMqttQueueMessage[] messages = messages(3);
+        for (AWSIotMqttQueueMessage message : messages) {
+            queue.add(message);
+        }
+        assertEquals(3, queue.size());
+        assertFalse(queue.isEmpty());
+
+        for (AWSIotMqttQueueMessage message : messages) {
+            assertSame(message, queue.peek());
+            assertSame(message, queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testRestoreTakenMessages() {
+        AWSIotMqttQueueMessage[] messages = messages(4);
+        for (AWSIotMqttQueueMessage message : messages) {
+            queue.add(message);
+        }
+        for (int i = 0; i < 3; i++) {
+            assertSame(messages[i], queue.take());
+        }
+        assertEquals(1, queue.size());
+        queue.acknowledge(messages[1]);
+
+        // the messages not acknowledged come back in the order taken
+        queue.restore();
+        assertEquals(3, queue.size());
+        assertSame(messages[0], queue.poll());
+        assertSame(messages[2], queue.poll());
+        assertSame(messages[3], queue.poll());
+        queue.restore();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testGrowsWhenWrappedAround() {
+        AWSIotMqttQueueMessage[] messages = messages(100);
+        // move the head off the start of the array before growing
+        for (int i = 0; i < 10; i++) {
+            queue.add(messages[i]);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertSame(messages[i], queue.poll());
+        }
+        for (int i = 10; i < 100; i++) {
+            queue.add(messages[i]);
+        }
+        assertEquals(95, queue.size());
+        for (int i = 5; i < 100; i++) {
+            assertSame(messages[i], queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testGrowsWhenRestoring() {
+        AWSIotMqttQueueMessage[] messages = messages(40);
+        for (AWSIotMqttQueueMessage message : messages) {
+            queue.add(message);
+            queue.take();
+        }
+        queue.restore();
+        assertEquals(40, queue.size());
+        for (AWSIotMqttQueueMessage message : messages) {
+            assertSame(message, queue.poll());
+        }
+    }
+
+    @Test
+    public void testClear() {
+        for (AWSIotMqttQueueMessage message : messages(20)) {
+            queue.add(message);
+        }
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peek());
+
+        AWSIotMqttQueueMessage message = messages(1)[0];
+        queue.add(message);
+        assertSame(message, queue.poll());
+    }
+
+    static AWSIotMqttQueueMessage[] messages(int count) {
+        AWSIotMqttQueueMessage[] messages = new AWSIotMqttQueueMessage[count];
+        for (int i = 0; i < count; i++) {
+            messages[i] = new AWSIotMqttQueueMessage("topic/" + i, new byte[] {
+                    (byte) i
+            }, AWSIotMqttQos.QOS1);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.util.StringUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+
+public class PersistentMessageQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private PersistentMessageQueue queue;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "queue");
+        queue = new PersistentMessageQueue(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.close();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peek());
+        assertNull(queue.poll());
+
+        queue.add(message("a/b", "first", AWSIotMqttQos.QOS0));
+        queue.add(message("c", "", AWSIotMqttQos.QOS1));
+        queue.add(message("t\u00f6pic", "third", AWSIotMqttQos.QOS1));
+        assertEquals(3, queue.size());
+
+        assertMessage("a/b", "first", AWSIotMqttQos.QOS0, queue.peek());
+        assertMessage("a/b", "first", AWSIotMqttQos.QOS0, queue.poll());
+        assertMessage("c", "", AWSIotMqttQos.QOS1, queue.poll());
+        assertMessage("t\u00f6pic", "third", AWSIotMqttQos.QOS1, queue.poll());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        queue.add(message("a", "1", AWSIotMqttQos.QOS1));
+        queue.add(message("b", "2", AWSIotMqttQos.QOS1));
+        queue.add(message("c", "3", AWSIotMqttQos.QOS0));
+        queue.poll();
+        reopen();
+
+        assertEquals(2, queue.size());
+        assertMessage("b", "2", AWSIotMqttQos.QOS1, queue.poll());
+        reopen();
+
+        assertEquals(1, queue.size());
+        assertMessage("c", "3", AWSIotMqttQos.QOS0, queue.poll());
+        reopen();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testReopenWithMessagesInFlight() throws IOException {
+        queue.add(message("a", "1", AWSIotMqttQos.QOS1));
+        queue.add(message("b", "2", AWSIotMqttQos.QOS1));
+        queue.add(message("c", "3", AWSIotMqttQos.QOS1));
+        queue.add(message("d", "4", AWSIotMqttQos.QOS1));
+        AWSIotMqttQueueMessage a = queue.take();
+        AWSIotMqttQueueMessage b = queue.take();
+        queue.take();
+        // dropped, but behind a message in flight
+        queue.poll();
+        assertTrue(queue.isEmpty());
+        queue.acknowledge(b);
+
+        // the process dies before a is acknowledged, everything after it is
+        // published again
+        PersistentMessageQueue reopened = new PersistentMessageQueue(file);
+        assertEquals(4, reopened.size());
+        assertMessage("a", "1", AWSIotMqttQos.QOS1, reopened.poll());
+        reopened.close();
+
+        queue.acknowledge(a);
+        reopened = new PersistentMessageQueue(file);
+        assertEquals(2, reopened.size());
+        assertMessage("c", "3", AWSIotMqttQos.QOS1, reopened.poll());
+        assertMessage("d", "4", AWSIotMqttQos.QOS1, reopened.poll());
+        reopened.close();
+    }
+
+    @Test
+    public void testRestore() throws IOException {
+        queue.add(message("a", "1", AWSIotMqttQos.QOS1));
+        queue.add(message("b", "2", AWSIotMqttQos.QOS1));
+        queue.add(message("c", "3", AWSIotMqttQos.QOS1));
+        queue.add(message("d", "4", AWSIotMqttQos.QOS1));
+        AWSIotMqttQueueMessage a = queue.take();
+        AWSIotMqttQueueMessage b = queue.take();
+        AWSIotMqttQueueMessage c = queue.take();
+        queue.acknowledge(b);
+
+        // the messages not acknowledged come back in the order taken
+        queue.restore();
+        assertEquals(3, queue.size());
+        assertSame(a, queue.take());
+        assertSame(c, queue.peek());
+        queue.acknowledge(a);
+        queue.restore();
+        assertEquals(2, queue.size());
+        reopen();
+
+        assertEquals(2, queue.size());
+        assertMessage("c", "3", AWSIotMqttQos.QOS1, queue.poll());
+        assertMessage("d", "4", AWSIotMqttQos.QOS1, queue.poll());
+        assertNull(queue.take());
+        reopen();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testRemovedMessagesStayRemoved() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            queue.add(message("t", Integer.toString(i), AWSIotMqttQos.QOS1));
+        }
+        // emptying the queue leaves the records of the removed messages in
+        // the file
+        for (int i = 0; i < 5; i++) {
+            queue.poll();
+        }
+        queue.add(message("t", "new", AWSIotMqttQos.QOS1));
+        reopen();
+
+        assertEquals(1, queue.size());
+        assertMessage("t", "new", AWSIotMqttQos.QOS1, queue.poll());
+    }
+
+    @Test
+    public void testTruncatedRecordIsIgnored() throws IOException {
+        queue.add(message("a", "1", AWSIotMqttQos.QOS1));
+        int tail = recordEnd();
+        queue.close();
+
+        // the process died after writing the length of a record but not
+        // all of its body
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(tail);
+        raf.writeInt(100);
+        raf.writeInt(0);
+        raf.write(new byte[] {
+                1, 0, 1, 'b'
+        });
+        raf.close();
+
+        queue = new PersistentMessageQueue(file);
+        assertEquals(1, queue.size());
+        assertMessage("a", "1", AWSIotMqttQos.QOS1, queue.poll());
+
+        // the next message replaces the partial record
+        queue.add(message("c", "3", AWSIotMqttQos.QOS1));
+        reopen();
+        assertEquals(1, queue.size());
+        assertMessage("c", "3", AWSIotMqttQos.QOS1, queue.poll());
+    }
+
+    @Test
+    public void testCorruptRecordEndsTheQueue() throws IOException {
+        queue.add(message("a", "1", AWSIotMqttQos.QOS1));
+        int second = recordEnd();
+        queue.add(message("b", "2", AWSIotMqttQos.QOS1));
+        queue.add(message("c", "3", AWSIotMqttQos.QOS1));
+        queue.close();
+
+        // flip the last byte of the second message's payload
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        int payloadEnd = second + 8 + 3 + 1 + 1;
+        raf.seek(payloadEnd - 1);
+        int b = raf.read();
+        raf.seek(payloadEnd - 1);
+        raf.write(b ^ 0xff);
+        raf.close();
+
+        queue = new PersistentMessageQueue(file);
+        assertEquals(1, queue.size());
+        assertMessage("a", "1", AWSIotMqttQos.QOS1, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testCorruptHeaderStartsOver() throws IOException {
+        queue.add(message("a", "1", AWSIotMqttQos.QOS1));
+        queue.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(0);
+        raf.writeInt(0);
+        raf.close();
+
+        queue = new PersistentMessageQueue(file);
+        // the records from the start of the file are still read
+        assertEquals(1, queue.size());
+        assertMessage("a", "1", AWSIotMqttQos.QOS1, queue.poll());
+    }
+
+    @Test
+    public void testFreedSpaceIsReused() throws IOException {
+        byte[] payload = new byte[1000];
+        // several times the file size goes through the queue, which never
+        // holds more than a few messages
+        for (int i = 0; i < 500; i++) {
+            queue.add(new AWSIotMqttQueueMessage("t/" + i, payload, AWSIotMqttQos.QOS1));
+            if (i >= 3) {
+                assertEquals("t/" + (i - 3), queue.poll().getTopic());
+            }
+        }
+        assertEquals(PersistentMessageQueue.INITIAL_FILE_SIZE, file.length());
+        reopen();
+        assertEquals(3, queue.size());
+        for (int i = 497; i < 500; i++) {
+            assertEquals("t/" + i, queue.poll().getTopic());
+        }
+    }
+
+    @Test
+    public void testFreedSpaceIsReusedWithMessagesInFlight() throws IOException {
+        byte[] payload = new byte[1000];
+        ArrayDeque<AWSIotMqttQueueMessage> inFlight = new ArrayDeque<AWSIotMqttQueueMessage>();
+        // the records moved to the start of the file include the ones in
+        // flight
+        for (int i = 0; i < 500; i++) {
+            queue.add(new AWSIotMqttQueueMessage("t/" + i, payload, AWSIotMqttQos.QOS1));
+            if (i >= 3) {
+                AWSIotMqttQueueMessage message = queue.take();
+                assertEquals("t/" + (i - 3), message.getTopic());
+                inFlight.add(message);
+                if (inFlight.size() > 2) {
+                    queue.acknowledge(inFlight.poll());
+                }
+            }
+        }
+        assertEquals(PersistentMessageQueue.INITIAL_FILE_SIZE, file.length());
+        reopen();
+        assertEquals(5, queue.size());
+        for (int i = 495; i < 500; i++) {
+            assertEquals("t/" + i, queue.poll().getTopic());
+        }
+    }
+
+    @Test
+    public void testGrows() throws IOException {
+        byte[] payload = new byte[1000];
+        for (int i = 0; i < 100; i++) {
+            queue.add(new AWSIotMqttQueueMessage("t/" + i, payload, AWSIotMqttQos.QOS1));
+        }
+        assertTrue(file.length() > PersistentMessageQueue.INITIAL_FILE_SIZE);
+        reopen();
+
+        assertEquals(100, queue.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("t/" + i, queue.poll().getTopic());
+        }
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        queue.add(message("a", "1", AWSIotMqttQos.QOS1));
+        queue.add(message("b", "2", AWSIotMqttQos.QOS1));
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        reopen();
+        assertTrue(queue.isEmpty());
+    }
+
+    private void reopen() throws IOException {
+        queue.close();
+        queue = new PersistentMessageQueue(file);
+    }
+
+    /**
+     * Returns the offset past the records, given that the file was written
+     * from an empty queue without removing any message.
+     */
+    private int recordEnd() throws IOException {
+        int position = PersistentMessageQueue.HEADER_SIZE;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            while (true) {
+                raf.seek(position);
+                int length = raf.readInt();
+                if (length == 0) {
+                    return position;
+                }
+                position += 8 + length;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static AWSIotMqttQueueMessage message(String topic, String payload,
+            AWSIotMqttQos qos) {
+        return new AWSIotMqttQueueMessage(topic, payload.getBytes(StringUtils.UTF8), qos);
+    }
+
+    private static void assertMessage(String topic, String payload, AWSIotMqttQos qos,
+            AWSIotMqttQueueMessage message) {
+        assertEquals(topic, message.getTopic());
+        assertArrayEquals(payload.getBytes(StringUtils.UTF8), message.getMessage());
+        assertEquals(qos, message.getQos());
+    }
+}
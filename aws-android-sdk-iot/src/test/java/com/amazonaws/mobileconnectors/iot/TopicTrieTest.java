@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.iot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class TopicTrieTest {
+
+    private final TopicTrie trie = new TopicTrie();
+
+    @Test
+    public void testExactMatch() {
+        subscribe("a/b/c", "a/b", "a/b/c/d", "b/b/c");
+        assertMatches("a/b/c", "a/b/c");
+        assertMatches("a/b", "a/b");
+        assertMatches("a/b/d");
+        assertMatches("a");
+        assertMatches("a/b/c/d/e");
+    }
+
+    @Test
+    public void testSingleLevelWildcard() {
+        subscribe("a/+/c", "+/b/+", "+", "a/+");
+        assertMatches("a/b/c", "a/+/c", "+/b/+");
+        assertMatches("a/x/c", "a/+/c");
+        assertMatches("a/b", "a/+");
+        assertMatches("a", "+");
+        assertMatches("a/b/c/d");
+        assertMatches("x/y/z");
+    }
+
+    @Test
+    public void testMultiLevelWildcard() {
+        subscribe("#", "a/#", "a/b/#", "a/+/#");
+        assertMatches("a/b/c/d", "#", "a/#", "a/b/#", "a/+/#");
+        assertMatches("x/y", "#");
+        assertMatches("a/x", "#", "a/#", "a/+/#");
+    }
+
+    @Test
+    public void testMultiLevelWildcardMatchesParentLevel() {
+        subscribe("a/#", "a/b/#", "+/#");
+        assertMatches("a", "a/#", "+/#");
+        assertMatches("a/b", "a/#", "a/b/#", "+/#");
+        assertMatches("b", "+/#");
+    }
+
+    @Test
+    public void testEmptyLevels() {
+        subscribe("/", "a//b", "a/+/b", "+/+", "/a");
+        assertMatches("/", "/", "+/+");
+        assertMatches("a//b", "a//b", "a/+/b");
+        assertMatches("/a", "/a", "+/+");
+        assertMatches("a/", "+/+");
+        assertMatches("a");
+    }
+
+    @Test
+    public void testReservedTopicsDoNotMatchLeadingWildcards() {
+        subscribe("#", "+/shadow/#", "$aws/things/+/shadow/#", "$aws/#");
+        assertMatches("$aws/things/t/shadow/update", "$aws/things/+/shadow/#", "$aws/#");
+        assertMatches("$SYS/load");
+        assertMatches("things/shadow/update", "#", "+/shadow/#");
+        // only a leading $ is reserved
+        assertMatches("a/$b", "#");
+    }
+
+    @Test
+    public void testSubscribeReplacesSameFilter() {
+        subscribe("a/+");
+        AWSIotMqttTopic second = subscribe("a/+");
+
+        List<AWSIotMqttTopic> matches = new ArrayList<AWSIotMqttTopic>();
+        trie.match("a/b", matches);
+        assertEquals(1, matches.size());
+        assertSame(second, matches.get(0));
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        subscribe("a/b/c", "a/b", "a/+/c", "a/#", "#");
+
+        assertEquals("a/b/c", trie.remove("a/b/c").getTopic());
+        assertMatches("a/b/c", "a/+/c", "a/#", "#");
+        // the parent filter is still there
+        assertMatches("a/b", "a/b", "a/#", "#");
+
+        assertEquals("a/+/c", trie.remove("a/+/c").getTopic());
+        assertEquals("a/#", trie.remove("a/#").getTopic());
+        assertEquals("#", trie.remove("#").getTopic());
+        assertMatches("a/b/c");
+        assertMatches("a/b", "a/b");
+
+        assertEquals("a/b", trie.remove("a/b").getTopic());
+        assertMatches("a/b");
+    }
+
+    @Test
+    public void testUnsubscribeUnknownFilter() {
+        subscribe("a/b/c");
+        assertNull(trie.remove("a/b"));
+        assertNull(trie.remove("a/b/c/d"));
+        assertNull(trie.remove("x/y"));
+        assertNull(trie.remove("a/+/c"));
+        assertMatches("a/b/c", "a/b/c");
+
+        assertEquals("a/b/c", trie.remove("a/b/c").getTopic());
+        assertNull(trie.remove("a/b/c"));
+    }
+
+    @Test
+    public void testResubscribeAfterUnsubscribe() {
+        subscribe("a/b");
+        trie.remove("a/b");
+        subscribe("a/b");
+        assertMatches("a/b", "a/b");
+    }
+
+    @Test
+    public void testClear() {
+        subscribe("a/b", "+", "#");
+        trie.clear();
+        assertMatches("a/b");
+        assertMatches("a");
+
+        subscribe("a/b");
+        assertMatches("a/b", "a/b");
+    }
+
+    @Test
+    public void testManyChildrenGrowTheTable() {
+        for (int i = 0; i < 100; i++) {
+            subscribe("things/" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertMatches("things/" + i, "things/" + i);
+        }
+        assertMatches("things/100");
+
+        // removing rebuilds the table, the remaining children stay reachable
+        for (int i = 0; i < 100; i += 2) {
+            trie.remove("things/" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            if (i % 2 == 0) {
+                assertMatches("things/" + i);
+            } else {
+                assertMatches("things/" + i, "things/" + i);
+            }
+        }
+    }
+
+    @Test
+    public void testLevelsWithSameHash() {
+        // "Aa" and "BB" have the same hash code
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        subscribe("Aa", "BB", "x/Aa/BB");
+        assertMatches("Aa", "Aa");
+        assertMatches("BB", "BB");
+        assertMatches("x/Aa/BB", "x/Aa/BB");
+        assertMatches("x/BB/Aa");
+
+        trie.remove("Aa");
+        assertMatches("Aa");
+        assertMatches("BB", "BB");
+    }
+
+    private AWSIotMqttTopic subscribe(String... topicFilters) {
+        AWSIotMqttTopic subscription = null;
+        for (String topicFilter : topicFilters) {
+            subscription = new AWSIotMqttTopic(topicFilter, AWSIotMqttQos.QOS0, null);
+            trie.put(subscription);
+        }
+        return subscription;
+    }
+
+    private void assertMatches(String topic, String... expectedFilters) {
+        List<AWSIotMqttTopic> matches = new ArrayList<AWSIotMqttTopic>();
+        trie.match(topic, matches);
+        Set<String> filters = new HashSet<String>();
+        for (AWSIotMqttTopic match : matches) {
+            filters.add(match.getTopic());
+        }
+        assertEquals("duplicate matches for " + topic, matches.size(), filters.size());
+        Set<String> expected = new HashSet<String>();
+        Collections.addAll(expected, expectedFilters);
+        assertEquals("matches for " + topic, expected, filters);
+    }
+}
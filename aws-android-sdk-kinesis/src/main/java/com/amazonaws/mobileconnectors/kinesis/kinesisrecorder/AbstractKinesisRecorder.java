@@ -18,12 +18,24 @@ package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 import android.util.Log;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.Position;
 import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
 import com.amazonaws.util.StringUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * An abstract class for Amazon Kinesis recorders. It manages local file store
@@ -33,15 +45,24 @@ public abstract class AbstractKinesisRecorder {
     private static final String TAG = "AbstractKinesisRecorder";
 
     /**
-     * Maximum number of records per batch. Note that Kinesis Stream and Kinesis
-     * Firehose have much higher limits. The limits are lowered for performance
-     * consideration.
+     * Number of consecutive batches without any record accepted after which
+     * submission stops.
      */
-    private static final int MAX_RECORDS_PER_BATCH = 128;
+    private static final int MAX_RETRY = 3;
+
+    /** Suffix of the name of the file journaling records to send again **/
+    private static final String RETRY_FILE_SUFFIX = "_retry";
+
     /**
-     * Maximum size in bytes of records in PutRecordBatch.
+     * Runs tasks on the calling thread, used when one batch is in flight at a
+     * time.
      */
-    private static final int MAX_BATCH_RECORDS_SIZE_BYTES = 512 * 1024;
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
 
     /**
      * The configurable options for Kinesis Recorder, includes the
@@ -50,6 +71,9 @@ public abstract class AbstractKinesisRecorder {
     protected KinesisRecorderConfig config;
     protected FileRecordStore recordStore;
 
+    /** Records rejected by the service, guarded by this recorder **/
+    private final RetryQueue retryQueue;
+
     /**
      * Gets the sender to send saved records.
      * 
@@ -69,6 +93,8 @@ public abstract class AbstractKinesisRecorder {
         }
         this.recordStore = recordStore;
         this.config = config;
+        // the journal shares the storage limit of the record store
+        this.retryQueue = new RetryQueue(recordStore.companion(RETRY_FILE_SUFFIX));
     }
 
     /**
@@ -94,7 +120,7 @@ public abstract class AbstractKinesisRecorder {
      */
     public void saveRecord(byte[] data, String streamName) {
         try {
-            recordStore.put(FileRecordParser.asString(streamName, data));
+            recordStore.put(streamName, data);
         } catch (IOException e) {
             throw new AmazonClientException("Error saving record", e);
         }
@@ -108,6 +134,18 @@ public abstract class AbstractKinesisRecorder {
      * invalid) will be deleted. Note: Since KinesisRecorder uses synchronous
      * methods to make calls to Amazon Kinesis, do not call submitAll() on the
      * main thread of your application.
+     * <p>
+     * Up to {@link KinesisRecorderConfig#getMaxConcurrentBatches()} requests
+     * are in flight at once, and the next batches are read from disk in the
+     * meantime. Records are only deleted once their request and the requests
+     * of all the records saved before them completed, so if submission stops
+     * on an error, records of later requests which went through may be sent
+     * again.
+     * <p>
+     * Records rejected by the service are kept in memory and sent again in a
+     * later batch, after a backoff if they were throttled, rather than being
+     * saved again. Records whose backoff hasn't elapsed when no other record
+     * is left are sent by the next call.
      *
      * @throws AmazonClientException Thrown if there was an unrecoverable error
      *             during submission. Note: If the request appears to be
@@ -117,55 +155,105 @@ public abstract class AbstractKinesisRecorder {
     public synchronized void submitAllRecords() {
         RecordSender sender = getRecordSender();
         RecordIterator iterator = recordStore.iterator();
-        List<byte[]> data = new ArrayList<byte[]>(MAX_RECORDS_PER_BATCH);
+        int maxInFlight = config.getMaxConcurrentBatches();
+        ExecutorService executor = maxInFlight > 1 ? Executors.newFixedThreadPool(maxInFlight)
+                : null;
+        CompletionService<Batch> completionService = new ExecutorCompletionService<Batch>(
+                executor != null ? executor : DIRECT_EXECUTOR);
+
+        // batches in the order they were read, until they are removed
+        LinkedList<Batch> pending = new LinkedList<Batch>();
+        Set<String> streamsInFlight = new HashSet<String>();
+        Batch prefetched = null;
+        RuntimeException failure = null;
+        int inFlight = 0;
         int retry = 0;
         int count = 0;
         try {
-            while (iterator.hasNext() && retry < 3) {
-                String streamName = nextBatch(iterator, data, MAX_RECORDS_PER_BATCH,
-                        MAX_BATCH_RECORDS_SIZE_BYTES);
-                if (streamName == null || data.isEmpty()) {
+            while (true) {
+                // fill the pipeline
+                while (failure == null && retry < MAX_RETRY && inFlight < maxInFlight) {
+                    // records to send again go first
+                    Batch batch = pollRetryBatch(sender, streamsInFlight);
+                    if (batch == null) {
+                        if (prefetched == null) {
+                            prefetched = readBatch(sender, iterator);
+                            if (prefetched == null) {
+                                break;
+                            }
+                        }
+                        if (config.isPreserveStreamOrder()
+                                && streamsInFlight.contains(prefetched.streamName)) {
+                            break;
+                        }
+                        batch = prefetched;
+                        prefetched = null;
+                        pending.add(batch);
+                    }
+                    completionService.submit(new SendBatchTask(sender, batch));
+                    streamsInFlight.add(batch.streamName);
+                    inFlight++;
+                }
+                if (inFlight == 0) {
                     break;
                 }
-
-                try {
-                    iterator.removeReadRecords();
-                } catch (IOException e) {
-                    throw new AmazonClientException("Failed to removed records.", e);
+                // read the next batch while requests are in flight
+                if (prefetched == null && failure == null && retry < MAX_RETRY) {
+                    prefetched = readBatch(sender, iterator);
                 }
 
-                try {
-                    List<byte[]> failures = sender.sendBatch(streamName, data);
-                    int successCount = data.size() - failures.size();
+                Batch batch = take(completionService);
+                inFlight--;
+                streamsInFlight.remove(batch.streamName);
+                if (batch.error == null) {
+                    int successCount = batch.data.size() - batch.failures.size();
                     count += successCount;
                     if (successCount == 0) {
                         // no record went through, increase retry count.
                         retry++;
                     }
-                    if (!failures.isEmpty()) {
-                        for (byte[] bytes : failures) {
-                            saveRecord(bytes, streamName);
-                        }
+                    retryFailures(batch, batch.failures);
+                    batch.completed = true;
+                } else if (batch.error instanceof AmazonClientException
+                        && sender.isRecoverable((AmazonClientException) batch.error)) {
+                    Log.e(TAG,
+                            "ServiceException in submit all, the values of the data inside the requests appears valid.  The request will be kept",
+                            batch.error);
+                    if (batch.retries != null) {
+                        retryFailures(batch, batch.data);
                     }
-                } catch (AmazonClientException ace) {
-                    if (sender.isRecoverable(ace)) {
-                        for (byte[] bytes : data) {
-                            saveRecord(bytes, streamName);
-                        }
-                        Log.e(TAG,
-                                "ServiceException in submit all, the values of the data inside the requests appears valid.  The request will be kept",
-                                ace);
-                    } else {
-                        // We have reason to believe the values in the request
-                        // is invalid and cannot be sent or recovered.
-                        Log.e(TAG,
-                                "ServiceException in submit all, the last request is presumed to be the cause and will be dropped",
-                                ace);
+                } else {
+                    // We have reason to believe the values in the request
+                    // is invalid and cannot be sent or recovered.
+                    Log.e(TAG,
+                            "ServiceException in submit all, the last request is presumed to be the cause and will be dropped",
+                            batch.error);
+                    if (batch.retries != null) {
+                        retryFailures(batch, Collections.<byte[]> emptyList());
+                    }
+                    batch.completed = true;
+                }
+                if (batch.error != null && failure == null) {
+                    failure = batch.error;
+                }
+
+                // remove the records up to the first batch still in flight
+                Position position = null;
+                while (!pending.isEmpty() && pending.getFirst().completed) {
+                    position = pending.removeFirst().position;
+                }
+                if (position != null) {
+                    try {
+                        recordStore.removeRecordsBefore(position);
+                    } catch (IOException e) {
+                        throw new AmazonClientException("Failed to removed records.", e);
                     }
-                    throw ace;
                 }
             }
         } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
             Log.d(TAG, String.format("submitAllRecords sent %d records", count));
             try {
                 iterator.close();
@@ -173,6 +261,127 @@ public abstract class AbstractKinesisRecorder {
                 throw new AmazonClientException("Failed to close record file", e);
             }
         }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns a batch of the records to send again whose backoff elapsed, or
+     * null if there is none.
+     */
+    private Batch pollRetryBatch(RecordSender sender, Set<String> streamsInFlight) {
+        if (retryQueue.isEmpty()) {
+            return null;
+        }
+        Set<String> excludedStreams = config.isPreserveStreamOrder() ? streamsInFlight
+                : Collections.<String> emptySet();
+        List<RetryQueue.Entry> entries = retryQueue.poll(System.currentTimeMillis(),
+                config.getMaxBatchRecords(), getMaxBatchBytes(sender),
+                sender.getRecordOverheadBytes(), excludedStreams);
+        if (entries == null) {
+            return null;
+        }
+        List<byte[]> data = new ArrayList<byte[]>(entries.size());
+        for (RetryQueue.Entry entry : entries) {
+            data.add(entry.data);
+        }
+        Batch batch = new Batch(entries.get(0).streamName, data, null);
+        batch.retries = entries;
+        return batch;
+    }
+
+    /**
+     * Hands the records of a batch which failed to the retry queue.
+     */
+    private void retryFailures(Batch batch, List<byte[]> failures) {
+        long now = System.currentTimeMillis();
+        try {
+            if (batch.retries != null) {
+                retryQueue.complete(batch.retries, failures, batch.throttled, now);
+            } else if (!failures.isEmpty()) {
+                retryQueue.add(batch.streamName, failures, batch.throttled, now);
+            }
+        } catch (IOException e) {
+            throw new AmazonClientException("Error saving record", e);
+        }
+    }
+
+    private Batch readBatch(RecordSender sender, RecordIterator iterator) {
+        List<byte[]> data = new ArrayList<byte[]>();
+        String streamName = nextBatch(iterator, data, config.getMaxBatchRecords(),
+                getMaxBatchBytes(sender), sender.getRecordOverheadBytes());
+        if (streamName == null || data.isEmpty()) {
+            return null;
+        }
+        return new Batch(streamName, data, iterator.getReadPosition());
+    }
+
+    /**
+     * Returns the maximum size of a batch, which is capped at the limit of
+     * the service.
+     */
+    private int getMaxBatchBytes(RecordSender sender) {
+        return Math.min(config.getMaxBatchBytes(), sender.getMaxBatchBytes());
+    }
+
+    private static Batch take(CompletionService<Batch> completionService) {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while submitting records", e);
+        } catch (ExecutionException e) {
+            // SendBatchTask catches exceptions, so this is an Error
+            throw new AmazonClientException("Failed to submit records", e.getCause());
+        }
+    }
+
+    /**
+     * A batch of records of a stream and its outcome.
+     */
+    private static final class Batch {
+        final String streamName;
+        final List<byte[]> data;
+        /**
+         * Position after the last record of the batch, null for records sent
+         * again
+         **/
+        final Position position;
+        /** Entries of the retry queue sent, null for records read from disk **/
+        List<RetryQueue.Entry> retries;
+        List<byte[]> failures;
+        /** Failures rejected due to throttling **/
+        final List<byte[]> throttled = new ArrayList<byte[]>();
+        RuntimeException error;
+        /** Whether the records can be removed **/
+        boolean completed;
+
+        Batch(String streamName, List<byte[]> data, Position position) {
+            this.streamName = streamName;
+            this.data = data;
+            this.position = position;
+        }
+    }
+
+    private static final class SendBatchTask implements Callable<Batch> {
+        private final RecordSender sender;
+        private final Batch batch;
+
+        SendBatchTask(RecordSender sender, Batch batch) {
+            this.sender = sender;
+            this.batch = batch;
+        }
+
+        @Override
+        public Batch call() {
+            try {
+                batch.failures = sender.sendBatch(batch.streamName, batch.data, batch.throttled);
+            } catch (RuntimeException e) {
+                batch.error = e;
+            }
+            return batch;
+        }
     }
 
     /**
@@ -182,42 +391,63 @@ public abstract class AbstractKinesisRecorder {
      * @param iterator record iterator
      * @param data a list to hold data.
      * @param maxCount maximum number of records in a batch
-     * @param maxSize a threshold that concludes a batch. It allows one extra
-     *            record that brings the total size over this threshold.
+     * @param maxSize maximum total size of the data in a batch. A record
+     *            larger than this makes a batch on its own.
      * @return the stream name that the batch belongs to
      */
     protected String nextBatch(RecordIterator iterator, List<byte[]> data, int maxCount,
             int maxSize) {
+        return nextBatch(iterator, data, maxCount, maxSize, 0);
+    }
+
+    /**
+     * Reads a batch of records like
+     * {@link #nextBatch(RecordIterator, List, int, int)}, counting the given
+     * number of bytes for each record on top of its data.
+     *
+     * @param recordOverhead bytes counted for each record besides its data
+     */
+    String nextBatch(RecordIterator iterator, List<byte[]> data, int maxCount, int maxSize,
+            int recordOverhead) {
         data.clear();
 
         String lastStreamName = null;
         int size = 0;
         int count = 0;
-        FileRecordParser frp = new FileRecordParser();
-        while (iterator.hasNext() && count < maxCount && size < maxSize) {
-            String line = iterator.peek();
-            if (line == null || line.isEmpty()) {
-                continue;
-            }
-            // parse a line. Skip in case of corrupted data
-            try {
-                frp.parse(line);
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to read line. Skip.", e);
-                continue;
+        FileRecordParser frp = null;
+        while (iterator.hasNext() && count < maxCount) {
+            String streamName = iterator.peekStreamName();
+            byte[] bytes;
+            if (streamName == null) {
+                // a line saved by a previous version. Skip in case of
+                // corrupted data
+                if (frp == null) {
+                    frp = new FileRecordParser();
+                }
+                try {
+                    frp.parse(iterator.peek());
+                } catch (Exception e) {
+                    Log.w(TAG, "Failed to read line. Skip.", e);
+                    iterator.nextData();
+                    continue;
+                }
+                streamName = frp.streamName;
+                bytes = frp.bytes;
+            } else {
+                bytes = iterator.peekData();
             }
 
-            // check whether it belongs to previous batch
-            if (lastStreamName == null || lastStreamName.equals(frp.streamName)) {
-                data.add(frp.bytes);
-                // update counter
-                count++;
-                size += frp.bytes.length;
-                lastStreamName = frp.streamName;
-                iterator.next();
-            } else {
+            // check whether it belongs to previous batch and fits in it
+            if (lastStreamName != null && (!lastStreamName.equals(streamName)
+                    || size + bytes.length + recordOverhead > maxSize)) {
                 break;
             }
+            data.add(bytes);
+            // update counter
+            count++;
+            size += bytes.length + recordOverhead;
+            lastStreamName = streamName;
+            iterator.nextData();
         }
 
         return lastStreamName;
@@ -241,7 +471,7 @@ public abstract class AbstractKinesisRecorder {
      * @return long The number of bytes used
      */
     public long getDiskBytesUsed() {
-        return recordStore.getFileSize();
+        return recordStore.getFileSize() + retryQueue.getJournalSize();
     }
 
     /**
@@ -263,6 +493,7 @@ public abstract class AbstractKinesisRecorder {
     public synchronized void deleteAllRecords() {
         try {
             recordStore.iterator().removeAllRecords();
+            retryQueue.clear();
         } catch (IOException e) {
             throw new AmazonClientException("Error deleting events", e);
         }
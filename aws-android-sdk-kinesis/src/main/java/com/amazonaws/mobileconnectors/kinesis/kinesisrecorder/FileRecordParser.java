@@ -21,6 +21,10 @@ import com.amazonaws.util.Base64;
  * A parser for Kinesis records. It has a helper method to serialize a Kinesis
  * record. The serialized data can be read via {@link #parse(String)}. It's not
  * thread safe.
+ * <p>
+ * This is the line format of previous versions. Records are now stored in the
+ * binary format of {@link FileRecordStore}; the parser is kept to read record
+ * files which were written before.
  */
 class FileRecordParser {
     /**
@@ -20,36 +20,133 @@ import android.util.Log;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.util.StringUtils;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
 /**
  * The FileRecordStore is responsible for recording Kinesis PutRecordRequests to
- * the Android disk. Currently it stores each request as a JSON object
- * representing it's properties. One request per line.
+ * the Android disk. Each record is stored as a binary frame holding the stream
+ * name and the raw data of the request.
+ * <p>
+ * Records are appended to a log made of segment files. The first segment is
+ * named after the record file, so a record file written by a previous version
+ * is read as the first segment, and the following segments get the segment
+ * number as a suffix. A new segment is started once the active one reaches
+ * the segment size, records are never split across segments. Instead of
+ * rewriting the file when records are removed, the position after the last
+ * removed record is saved in a checkpoint file, and segments are deleted once
+ * all their records are removed.
+ * <p>
+ * A segment starts with {@link #SEGMENT_MAGIC}, followed by frames. A frame
+ * starts with a varint tag: 0 defines a stream name, 1 is a record without a
+ * stream, and greater values are records of the stream defined with that id
+ * earlier in the same segment. A stream definition is followed by the varint
+ * id and the varint length and UTF-8 bytes of the name, a record by the varint
+ * length and the bytes of the data. Every frame ends with the CRC32 of the
+ * preceding bytes of the frame. Segments written by previous versions hold one
+ * record per line instead; they are read as records without a stream and are
+ * never appended to.
+ * <p>
+ * The storage limit applies to the records which haven't been removed, and
+ * is shared with the companion stores. Since removed records are only deleted
+ * with their segment, the files may take up to one segment more than the
+ * limit.
  */
 class FileRecordStore {
     private static final String TAG = "FileRecordStore";
+
+    /** Default size after which a new segment is started **/
+    static final long DEFAULT_SEGMENT_SIZE = 256 * 1024;
+
+    /**
+     * Header of binary segments. It starts with a byte which can't start a
+     * line of a text segment.
+     */
+    static final byte[] SEGMENT_MAGIC = {
+            0, 'K', 'R', 1
+    };
+
+    private static final int TAG_STREAM_DEFINITION = 0;
+    private static final int TAG_NO_STREAM = 1;
+    private static final int FIRST_STREAM_ID = 2;
+
+    /** Frames with longer data are considered corrupted **/
+    static final int MAX_DATA_LENGTH = 16 * 1024 * 1024;
+
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final int NEW_LINE = '\n';
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int CRC_LENGTH = 4;
+    private static final int MAX_VARINT_LENGTH = 5;
+
     private final ReentrantLock accessLock = new ReentrantLock(true);
 
-    /** The file the requests are stored in **/
-    private File recordFile;
+    /**
+     * Held by the thread flushing appended records. Must be acquired before
+     * the access lock when both are needed.
+     */
+    private final Object commitLock = new Object();
 
     /** The FileManager used for interacting with the FS **/
     private final FileManager fileManager;
 
+    private final File workDirectory;
     private final String recordFileName;
     private final long maxStorageSize;
+    private final long segmentSize;
+
+    private File recordsDirectory;
+
+    /** Segment numbers in ascending order, the last one is the active segment **/
+    private final List<Long> segments = new ArrayList<Long>();
+
+    /** Appends to the active segment, opened on the first put **/
+    private OutputStream output;
+    private long activeSegmentSize;
+
+    /**
+     * Whether the active segment was written before the store was opened, or
+     * an append to it failed. It may be a text segment or end with a
+     * partially written frame, and its stream definitions aren't known, so a
+     * new segment is started instead of appending to it.
+     */
+    private boolean sealActiveSegment;
+
+    /** Stream ids defined in the active segment **/
+    private final Map<String, Integer> streamIds = new HashMap<String, Integer>();
+    private final CRC32 writeCrc = new CRC32();
+    private final byte[] frameHeader = new byte[3 * MAX_VARINT_LENGTH];
+
+    /** Position after the last removed record **/
+    private long checkpointSegment;
+    private long checkpointOffset;
+
+    /** Bytes of the records which haven't been removed **/
+    private long storedBytes;
+
+    /** Bytes stored by this store and its companions **/
+    private final AtomicLong sharedStoredBytes;
+
+    /** Number of records appended, guarded by the access lock **/
+    private long appendCount;
+
+    /** Number of records flushed to the file, guarded by the commit lock **/
+    private long commitCount;
 
     /**
      * Creates the FileRecordStore
@@ -60,137 +157,504 @@ class FileRecordStore {
      * @param maxStorageSize Maximum storage size in bytes
      */
     public FileRecordStore(File workDirectory, String recordFileName, long maxStorageSize) {
-        this.fileManager = new FileManager(workDirectory);
+        this(workDirectory, recordFileName, maxStorageSize, DEFAULT_SEGMENT_SIZE,
+                new AtomicLong());
+    }
+
+    /**
+     * Creates the FileRecordStore
+     *
+     * @param recorderDirectory The directory (which the FileRecordStore is only
+     *            used for the KinesisRecorder) to use to store requests in
+     * @param recordFileName Name of the record file
+     * @param maxStorageSize Maximum storage size in bytes
+     * @param segmentSize Size in bytes after which a new segment is started
+     */
+    FileRecordStore(File workDirectory, String recordFileName, long maxStorageSize,
+            long segmentSize) {
+        this(workDirectory, recordFileName, maxStorageSize, segmentSize, new AtomicLong());
+    }
+
+    private FileRecordStore(File workDirectory, String recordFileName, long maxStorageSize,
+            long segmentSize, AtomicLong sharedStoredBytes) {
+        this(new FileManager(workDirectory), workDirectory, recordFileName, maxStorageSize,
+                segmentSize, sharedStoredBytes);
+    }
+
+    /**
+     * Creates the FileRecordStore using the given FileManager.
+     */
+    FileRecordStore(FileManager fileManager, File workDirectory, String recordFileName,
+            long maxStorageSize, long segmentSize, AtomicLong sharedStoredBytes) {
+        this.fileManager = fileManager;
+        this.workDirectory = workDirectory;
         this.recordFileName = recordFileName;
         this.maxStorageSize = maxStorageSize;
+        this.segmentSize = segmentSize;
+        this.sharedStoredBytes = sharedStoredBytes;
         try {
-            tryCreateRecordsFile();
+            open();
         } catch (IOException ioe) {
             throw new AmazonClientException("Failed to create fire store", ioe);
         }
     }
 
+    /**
+     * Creates a store next to this one which shares its storage limit, so the
+     * records of both stores take at most the limit together. Its files are
+     * named after the record file followed by the suffix, so they aren't
+     * mistaken for segments of this store.
+     *
+     * @param suffix suffix of the name of the record file, not starting with
+     *            a dot
+     * @return the store
+     */
+    FileRecordStore companion(String suffix) {
+        return new FileRecordStore(workDirectory, recordFileName + suffix, maxStorageSize,
+                segmentSize, sharedStoredBytes);
+    }
+
+    /**
+     * Appends a record without a stream.
+     *
+     * @param record the record
+     * @return true if the record was stored, false if there isn't enough
+     *         storage left
+     */
     public boolean put(final String record) throws IOException {
-        boolean success = false;
-        BufferedWriter writer = null;
+        return put(null, record.getBytes(StringUtils.UTF8));
+    }
+
+    /**
+     * Appends a record. The record has been written to the file when this
+     * returns; records appended concurrently are flushed together.
+     *
+     * @param streamName the stream of the record, or null
+     * @param data the data of the record
+     * @return true if the record was stored, false if there isn't enough
+     *         storage left
+     */
+    public boolean put(final String streamName, final byte[] data) throws IOException {
+        return append(streamName, data) != null;
+    }
+
+    /**
+     * Appends a record like {@link #put(String, byte[])}, and returns the
+     * position after it, which can be passed to {@link #removeRecordsBefore}.
+     *
+     * @param streamName the stream of the record, or null
+     * @param data the data of the record
+     * @return the position after the record, or null if there isn't enough
+     *         storage left
+     */
+    Position append(final String streamName, final byte[] data) throws IOException {
+        if (data.length > MAX_DATA_LENGTH) {
+            throw new IllegalArgumentException("Record is too large: " + data.length);
+        }
+        long sequence;
+        Position position;
         accessLock.lock();
         try {
-            writer = tryInitializeWriter();
-            if (recordFile.length() + record.getBytes(StringUtils.UTF8).length <= maxStorageSize) {
-                writer.write(record);
-                writer.newLine();
-                writer.flush();
-                success = true;
+            if (sealActiveSegment) {
+                // nothing can be flushing the output since it isn't open yet
+                rollSegment();
+                sealActiveSegment = false;
             }
-        } finally {
-            if (writer != null) {
-                writer.close();
+            Integer streamId = streamName == null ? Integer.valueOf(TAG_NO_STREAM)
+                    : streamIds.get(streamName);
+            byte[] definition = null;
+            if (streamId == null) {
+                streamId = FIRST_STREAM_ID + streamIds.size();
+                definition = encodeStreamDefinition(streamId, streamName);
+            }
+            int headerLength = encodeVarint(streamId, frameHeader, 0);
+            headerLength = encodeVarint(data.length, frameHeader, headerLength);
+            long frameLength = headerLength + data.length + CRC_LENGTH
+                    + (definition == null ? 0 : definition.length)
+                    + (activeSegmentSize == 0 ? SEGMENT_MAGIC.length : 0);
+            if (!reserve(frameLength)) {
+                return null;
+            }
+
+            try {
+                if (output == null) {
+                    output = new BufferedOutputStream(fileManager.newOutputStream(
+                            segmentFile(activeSegment()), true), BUFFER_SIZE);
+                }
+                if (activeSegmentSize == 0) {
+                    output.write(SEGMENT_MAGIC);
+                }
+                if (definition != null) {
+                    output.write(definition);
+                    streamIds.put(streamName, streamId);
+                }
+                writeCrc.reset();
+                writeCrc.update(frameHeader, 0, headerLength);
+                writeCrc.update(data);
+                output.write(frameHeader, 0, headerLength);
+                output.write(data);
+                writeInt(output, (int) writeCrc.getValue());
+            } catch (IOException e) {
+                // the record isn't stored, give its storage back
+                sharedStoredBytes.addAndGet(-frameLength);
+                // the segment may end with part of the frame, so the next
+                // append starts a new one. Closing flushes the records
+                // appended before, and a commit flushing the output
+                // meanwhile finishes first since the stream is synchronized.
+                try {
+                    closeOutput();
+                } catch (IOException closeFailure) {
+                    Log.e(TAG, "Failed to close the active segment", closeFailure);
+                }
+                sealActiveSegment = true;
+                throw e;
             }
+            storedBytes += frameLength;
+            activeSegmentSize += frameLength;
+            // still valid once the segment is sealed
+            position = new Position(activeSegment(), activeSegmentSize);
+            sequence = ++appendCount;
+        } finally {
             accessLock.unlock();
         }
 
-        return success;
+        commit(sequence);
+        return position;
     }
 
-    public long getFileSize() {
-        return recordFile == null ? 0 : recordFile.length();
+    /**
+     * Adds bytes to the storage shared with the companion stores, unless it
+     * would exceed the limit.
+     */
+    private boolean reserve(long bytes) {
+        while (true) {
+            long shared = sharedStoredBytes.get();
+            if (shared + bytes > maxStorageSize) {
+                return false;
+            }
+            if (sharedStoredBytes.compareAndSet(shared, shared + bytes)) {
+                return true;
+            }
+        }
     }
 
-    private void tryCreateRecordsFile() throws IOException {
-        if (recordFile != null && recordFile.exists()) {
-            return;
+    /**
+     * Sets the bytes of the records which haven't been removed. Must hold the
+     * access lock.
+     */
+    private void setStoredBytes(long bytes) {
+        sharedStoredBytes.addAndGet(bytes - storedBytes);
+        storedBytes = bytes;
+    }
+
+    private byte[] encodeStreamDefinition(int streamId, String streamName) {
+        byte[] name = streamName.getBytes(StringUtils.UTF8);
+        byte[] frame = new byte[3 * MAX_VARINT_LENGTH + name.length + CRC_LENGTH];
+        int length = encodeVarint(TAG_STREAM_DEFINITION, frame, 0);
+        length = encodeVarint(streamId, frame, length);
+        length = encodeVarint(name.length, frame, length);
+        System.arraycopy(name, 0, frame, length, name.length);
+        length += name.length;
+        writeCrc.reset();
+        writeCrc.update(frame, 0, length);
+        int crc = (int) writeCrc.getValue();
+        frame[length++] = (byte) (crc >>> 24);
+        frame[length++] = (byte) (crc >>> 16);
+        frame[length++] = (byte) (crc >>> 8);
+        frame[length++] = (byte) crc;
+        byte[] result = new byte[length];
+        System.arraycopy(frame, 0, result, 0, length);
+        return result;
+    }
+
+    private static int encodeVarint(int value, byte[] buffer, int offset) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
         }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Returns the number of bytes taken by the records which haven't been
+     * removed.
+     */
+    public long getFileSize() {
+        accessLock.lock();
+        try {
+            return storedBytes;
+        } finally {
+            accessLock.unlock();
+        }
+    }
 
-        synchronized (this) {
-            if (recordFile != null && recordFile.exists()) {
+    /**
+     * Flushes the records appended so far unless another thread already did,
+     * and starts a new segment if the active one is full.
+     */
+    private void commit(long sequence) throws IOException {
+        synchronized (commitLock) {
+            if (commitCount >= sequence) {
                 return;
             }
-
-            File recordDir = fileManager.createDirectory(
-                    Constants.RECORDS_DIRECTORY);
-            recordFile = fileManager.createFile(new File(
-                    recordDir, recordFileName));
+            long target;
+            OutputStream out;
+            accessLock.lock();
+            try {
+                target = appendCount;
+                if (activeSegmentSize >= segmentSize) {
+                    // closing the output flushes it
+                    rollSegment();
+                    commitCount = target;
+                    return;
+                }
+                out = output;
+            } finally {
+                accessLock.unlock();
+            }
+            // other threads keep appending while the buffer is flushed
+            if (out != null) {
+                out.flush();
+            }
+            commitCount = target;
         }
     }
 
-    private BufferedWriter tryInitializeWriter() throws IOException {
-        BufferedWriter writer = null;
-        tryCreateRecordsFile();
-        OutputStream stream = fileManager.newOutputStream(recordFile, true);
-        writer = new BufferedWriter(new OutputStreamWriter(stream, StringUtils.UTF8));
+    /**
+     * Must hold the access lock, and the commit lock unless the output isn't
+     * open.
+     */
+    private void rollSegment() throws IOException {
+        closeOutput();
+        long segment = activeSegment() + 1;
+        fileManager.createFile(segmentFile(segment));
+        segments.add(segment);
+        activeSegmentSize = 0;
+        streamIds.clear();
+    }
 
-        return writer;
+    private void closeOutput() throws IOException {
+        if (output != null) {
+            try {
+                output.close();
+            } finally {
+                output = null;
+            }
+        }
     }
 
-    private File deleteAllRecords() throws IOException {
-        File recordsDir = fileManager.createDirectory(
-                Constants.RECORDS_DIRECTORY);
+    private void open() throws IOException {
+        recordsDirectory = fileManager.createDirectory(Constants.RECORDS_DIRECTORY);
+        segments.clear();
+        for (File file : fileManager.listFilesInDirectory(recordsDirectory)) {
+            long segment = segmentNumber(file.getName());
+            if (segment >= 0) {
+                segments.add(segment);
+            }
+        }
+        Collections.sort(segments);
 
-        recordFile.delete();
+        readCheckpoint();
+        // drop segments which were consumed but not deleted
+        while (segments.size() > 1 && segments.get(0) < checkpointSegment) {
+            deleteSegment(segments.remove(0));
+        }
+        if (segments.isEmpty()) {
+            fileManager.createFile(segmentFile(0));
+            segments.add(0L);
+        }
+        if (segments.get(0) != checkpointSegment) {
+            checkpointSegment = segments.get(0);
+            checkpointOffset = 0;
+        }
+
+        long totalBytes = 0;
+        for (long segment : segments) {
+            totalBytes += segmentFile(segment).length();
+        }
+        checkpointOffset = Math.min(checkpointOffset, segmentFile(checkpointSegment).length());
+        setStoredBytes(totalBytes - checkpointOffset);
 
-        recordFile = fileManager.createFile(new File(
-                recordsDir, recordFileName));
-        return recordFile;
+        activeSegmentSize = segmentFile(activeSegment()).length();
+        sealActiveSegment = activeSegmentSize > 0;
     }
 
-    private File deleteReadRecords(final int lineNumber) throws IOException {
-        // Write all records after line number to a temporary file
-        File recordsDir = fileManager.createDirectory(
-                Constants.RECORDS_DIRECTORY);
+    private void readCheckpoint() {
+        checkpointSegment = 0;
+        checkpointOffset = 0;
+        File file = checkpointFile();
+        if (!file.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(fileManager.newInputStream(file));
+            long segment = in.readLong();
+            long offset = in.readLong();
+            if (segment >= 0 && offset >= 0) {
+                checkpointSegment = segment;
+                checkpointOffset = offset;
+            }
+        } catch (IOException e) {
+            // start over from the first segment rather than lose records
+            Log.e(TAG, "Failed to read the checkpoint", e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
 
-        File tempRecordsFile = null;
-        File tempFile = new File(
-                recordsDir, recordFileName + ".tmp");
-        if (tempFile.exists()) {
-            if (!tempFile.delete()) {
-                throw new IOException("Failed to delete previous temp file");
+    private void writeCheckpoint(long segment, long offset) throws IOException {
+        File file = checkpointFile();
+        File tempFile = new File(recordsDirectory, recordFileName + CHECKPOINT_SUFFIX + ".tmp");
+        DataOutputStream out = new DataOutputStream(fileManager.newOutputStream(tempFile, false));
+        try {
+            out.writeLong(segment);
+            out.writeLong(offset);
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+            throw new IOException("Failed to persist the checkpoint");
+        }
+        checkpointSegment = segment;
+        checkpointOffset = offset;
+    }
+
+    /**
+     * Moves the checkpoint to the given position, which is after the last
+     * record returned by an iterator, and deletes the segments before it.
+     * Must hold the access lock.
+     */
+    private void deleteReadRecords(long segment, long offset) throws IOException {
+        // skip over sealed segments whose records were all read
+        int index = segments.indexOf(segment);
+        while (index >= 0 && index < segments.size() - 1
+                && offset >= segmentFile(segment).length()) {
+            segment = segments.get(++index);
+            offset = 0;
+        }
+
+        // segments before the active one are sealed, so their length is final
+        long removedBytes = offset - checkpointOffset;
+        for (long s : segments) {
+            if (s >= checkpointSegment && s < segment) {
+                removedBytes += segmentFile(s).length();
+            }
+        }
+
+        writeCheckpoint(segment, offset);
+        while (segments.get(0) < segment) {
+            deleteSegment(segments.remove(0));
+        }
+        setStoredBytes(Math.max(0, storedBytes - removedBytes));
+    }
+
+    /**
+     * Removes the records before the given position, unless they were
+     * already removed. Unlike {@link RecordIterator#removeReadRecords()},
+     * iterators keep their position, so records can be removed while they
+     * are still being read.
+     *
+     * @param position a position returned by
+     *            {@link RecordIterator#getReadPosition()}
+     */
+    public void removeRecordsBefore(Position position) throws IOException {
+        accessLock.lock();
+        try {
+            if (position.segment > checkpointSegment
+                    || position.segment == checkpointSegment
+                    && position.offset > checkpointOffset) {
+                deleteReadRecords(position.segment, position.offset);
             }
+        } finally {
+            accessLock.unlock();
         }
-        tempRecordsFile = fileManager.createFile(tempFile);
+    }
 
-        if (tempRecordsFile != null && recordFile.exists() && tempRecordsFile.exists()) {
-            BufferedReader reader = null;
-            PrintWriter writer = null;
+    private void deleteAllRecords() throws IOException {
+        synchronized (commitLock) {
+            accessLock.lock();
             try {
-                reader = new BufferedReader(new InputStreamReader(new FileInputStream(recordFile),
-                        StringUtils.UTF8));
-                writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(
-                        tempRecordsFile, true), StringUtils.UTF8));
-
-                String line = null;
-                int currentLineNumber = 0;
-                while ((line = reader.readLine()) != null) {
-                    currentLineNumber++;
-                    if (currentLineNumber > lineNumber) {
-                        writer.println(line);
-                        writer.flush();
-                    }
+                closeOutput();
+                for (long segment : segments) {
+                    deleteSegment(segment);
                 }
-            } finally {
-                if (writer != null) {
-                    writer.close();
+                segments.clear();
+                File checkpoint = checkpointFile();
+                if (checkpoint.exists() && !checkpoint.delete()) {
+                    Log.e(TAG, "Failed to delete the checkpoint");
                 }
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
+                fileManager.createFile(segmentFile(0));
+                segments.add(0L);
+                checkpointSegment = 0;
+                checkpointOffset = 0;
+                activeSegmentSize = 0;
+                sealActiveSegment = false;
+                streamIds.clear();
+                setStoredBytes(0);
+            } finally {
+                accessLock.unlock();
+            }
+        }
+    }
 
-                    }
-                }
+    private void deleteSegment(long segment) {
+        File file = segmentFile(segment);
+        if (file.exists() && !fileManager.deleteFile(file)) {
+            Log.e(TAG, "Failed to delete segment " + file.getName());
+        }
+    }
 
-                if (!recordFile.delete() || !tempRecordsFile.renameTo(recordFile)) {
-                    throw new IOException(
-                            "Failed to delete read records and persist unread records");
-                }
-            }
+    private long activeSegment() {
+        return segments.get(segments.size() - 1);
+    }
 
-            if (tempFile.exists()) {
-                if (!tempFile.delete()) {
-                    Log.e(TAG, "Failed to delete temp file");
-                }
+    /** Returns the segment after the given one, or -1 if it's the active one **/
+    private long nextSegment(long segment) {
+        for (long s : segments) {
+            if (s > segment) {
+                return s;
             }
         }
-        return recordFile;
+        return -1;
+    }
+
+    File segmentFile(long segment) {
+        return new File(recordsDirectory,
+                segment == 0 ? recordFileName : recordFileName + "." + segment);
+    }
+
+    private File checkpointFile() {
+        return new File(recordsDirectory, recordFileName + CHECKPOINT_SUFFIX);
+    }
+
+    private long segmentNumber(String fileName) {
+        if (fileName.equals(recordFileName)) {
+            return 0;
+        }
+        if (!fileName.startsWith(recordFileName + ".")) {
+            return -1;
+        }
+        try {
+            long segment = Long.parseLong(fileName.substring(recordFileName.length() + 1));
+            return segment > 0 ? segment : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     public RecordIterator iterator() {
@@ -198,28 +662,121 @@ class FileRecordStore {
 
     }
 
+    /**
+     * A position in the store, after a record returned by an iterator.
+     */
+    static final class Position implements Comparable<Position> {
+        final long segment;
+        final long offset;
+
+        Position(long segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            if (segment != other.segment) {
+                return segment < other.segment ? -1 : 1;
+            }
+            return offset < other.offset ? -1 : (offset == other.offset ? 0 : 1);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Position)) {
+                return false;
+            }
+            Position other = (Position) obj;
+            return segment == other.segment && offset == other.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (31 * segment + offset);
+        }
+    }
+
+    /**
+     * Iterates over the records which haven't been removed, starting at the
+     * checkpoint. Only complete frames are returned, so a record which is
+     * being appended is never read partially. {@link #next()} returns the
+     * data of a record as a string, while {@link #peekStreamName()} and
+     * {@link #nextData()} give access to the stream and the raw data.
+     */
     public class RecordIterator implements java.util.Iterator<String> {
-        int linesRead = 0;
-        String nextBuffer = null;
-        BufferedReader reader = null;
         boolean isEndOfFile = false;
+        InputStream reader = null;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final byte[] header = new byte[3 * MAX_VARINT_LENGTH];
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final CRC32 crc = new CRC32();
+        private int bufferPos;
+        private int bufferLimit;
+
+        /** Position of the reader **/
+        private long segment = -1;
+        private long offset;
 
-        private boolean tryOpenReader() throws FileNotFoundException {
+        /** Where to reopen the current segment, after the last complete record **/
+        private long resumeOffset;
+        private boolean binarySegment;
+        private final Map<Integer, String> streamNames = new HashMap<Integer, String>();
+
+        /** The buffered record and the position after it **/
+        private boolean hasBuffered;
+        private String nextStreamName;
+        private byte[] nextData;
+        private long nextSegment;
+        private long nextOffset;
+
+        /** Position after the last record returned **/
+        private long readSegment = -1;
+        private long readOffset;
+
+        private boolean tryOpenReader() throws IOException {
             if (reader != null) {
                 return true;
             }
+            if (isEndOfFile) {
+                return false;
+            }
+            if (segment < 0) {
+                segment = checkpointSegment;
+                resumeOffset = checkpointOffset;
+            }
+            long startOffset = resumeOffset;
+            reader = fileManager.newInputStream(segmentFile(segment));
+            bufferPos = 0;
+            bufferLimit = 0;
+            offset = 0;
+            streamNames.clear();
 
-            if (!isEndOfFile) {
-                InputStreamReader streamReader = null;
-                streamReader = new InputStreamReader(fileManager.newInputStream(recordFile),
-                        StringUtils.UTF8);
-
-                if (streamReader != null) {
-                    reader = new BufferedReader(streamReader);
+            if (!fill()) {
+                // empty segment
+                binarySegment = true;
+                return true;
+            }
+            binarySegment = buffer[bufferPos] == SEGMENT_MAGIC[0];
+            if (!binarySegment) {
+                skip(startOffset);
+                return true;
+            }
+            for (byte b : SEGMENT_MAGIC) {
+                if (read() != (b & 0xFF)) {
+                    // truncated or unknown header, nothing to read
+                    skip(Long.MAX_VALUE);
                     return true;
                 }
             }
-            return false;
+            // stream definitions before the start offset are still needed
+            while (offset < startOffset) {
+                if (!readFrame(false)) {
+                    break;
+                }
+            }
+            return true;
         }
 
         private void tryCloseReader() throws IOException {
@@ -229,43 +786,213 @@ class FileRecordStore {
             }
         }
 
+        private boolean fill() throws IOException {
+            if (bufferPos < bufferLimit) {
+                return true;
+            }
+            int n = reader.read(buffer);
+            if (n <= 0) {
+                return false;
+            }
+            bufferPos = 0;
+            bufferLimit = n;
+            return true;
+        }
+
+        private int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            offset++;
+            return buffer[bufferPos++] & 0xFF;
+        }
+
+        private boolean readFully(byte[] b, int length) throws IOException {
+            int read = 0;
+            while (read < length) {
+                if (!fill()) {
+                    return false;
+                }
+                int n = Math.min(length - read, bufferLimit - bufferPos);
+                System.arraycopy(buffer, bufferPos, b, read, n);
+                bufferPos += n;
+                offset += n;
+                read += n;
+            }
+            return true;
+        }
+
+        private boolean skip(long length) throws IOException {
+            long remaining = length;
+            while (remaining > 0) {
+                if (!fill()) {
+                    return false;
+                }
+                int n = (int) Math.min(remaining, bufferLimit - bufferPos);
+                bufferPos += n;
+                offset += n;
+                remaining -= n;
+            }
+            return true;
+        }
+
+        /**
+         * Reads a varint into the header buffer. Returns the value, or -1 at
+         * the end of the segment or if the varint is malformed.
+         */
+        private int readVarint(int[] headerLength) throws IOException {
+            int value = 0;
+            for (int i = 0; i < MAX_VARINT_LENGTH; i++) {
+                int b = read();
+                if (b < 0) {
+                    return -1;
+                }
+                header[headerLength[0]++] = (byte) b;
+                value |= (b & 0x7F) << (7 * i);
+                if ((b & 0x80) == 0) {
+                    return value < 0 ? -1 : value;
+                }
+            }
+            return -1;
+        }
+
+        private boolean checkCrc(byte[] data, int length) throws IOException {
+            int expected = 0;
+            for (int i = 0; i < CRC_LENGTH; i++) {
+                int b = read();
+                if (b < 0) {
+                    return false;
+                }
+                expected = (expected << 8) | b;
+            }
+            if (data != null) {
+                crc.update(data, 0, length);
+            }
+            if ((int) crc.getValue() != expected) {
+                Log.e(TAG, "Corrupted record in segment " + segment + " at " + offset);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Reads frames until a record is read. Returns false at the end of
+         * the segment or at a corrupted frame. Records are only verified and
+         * buffered if requested, otherwise they are skipped.
+         */
+        private boolean readFrame(boolean bufferRecord) throws IOException {
+            int[] headerLength = new int[1];
+            while (true) {
+                headerLength[0] = 0;
+                int tag = readVarint(headerLength);
+                if (tag < 0) {
+                    return false;
+                }
+                if (tag == TAG_STREAM_DEFINITION) {
+                    int id = readVarint(headerLength);
+                    int length = readVarint(headerLength);
+                    if (id < FIRST_STREAM_ID || length < 0 || length > MAX_DATA_LENGTH) {
+                        return false;
+                    }
+                    byte[] name = new byte[length];
+                    if (!readFully(name, length)) {
+                        return false;
+                    }
+                    crc.reset();
+                    crc.update(header, 0, headerLength[0]);
+                    if (!checkCrc(name, length)) {
+                        return false;
+                    }
+                    streamNames.put(id, new String(name, StringUtils.UTF8));
+                    continue;
+                }
+
+                int length = readVarint(headerLength);
+                if (length < 0 || length > MAX_DATA_LENGTH) {
+                    return false;
+                }
+                if (!bufferRecord) {
+                    return skip(length + CRC_LENGTH);
+                }
+                byte[] data = new byte[length];
+                if (!readFully(data, length)) {
+                    return false;
+                }
+                crc.reset();
+                crc.update(header, 0, headerLength[0]);
+                if (!checkCrc(data, length)) {
+                    return false;
+                }
+                String streamName = null;
+                if (tag != TAG_NO_STREAM) {
+                    streamName = streamNames.get(tag);
+                    if (streamName == null) {
+                        Log.e(TAG, "Undefined stream in segment " + segment + " at " + offset);
+                        return false;
+                    }
+                }
+                nextStreamName = streamName;
+                nextData = data;
+                return true;
+            }
+        }
+
+        /** Reads a line of a text segment written by a previous version **/
+        private boolean readLine() throws IOException {
+            line.reset();
+            while (fill()) {
+                int start = bufferPos;
+                while (bufferPos < bufferLimit && buffer[bufferPos] != NEW_LINE) {
+                    bufferPos++;
+                }
+                line.write(buffer, start, bufferPos - start);
+                offset += bufferPos - start;
+                if (bufferPos < bufferLimit) {
+                    bufferPos++;
+                    offset++;
+                    nextStreamName = null;
+                    nextData = line.toByteArray();
+                    return true;
+                }
+            }
+            // a trailing line without a line break is incomplete
+            return false;
+        }
+
+        /**
+         * Reads the next record, moving on to the next segment at the end of
+         * a sealed one. Returns false at the end of the active segment.
+         */
+        private boolean readRecord() throws IOException {
+            while (tryOpenReader()) {
+                if (binarySegment ? readFrame(true) : readLine()) {
+                    nextSegment = segment;
+                    nextOffset = offset;
+                    resumeOffset = offset;
+                    return true;
+                }
+                tryCloseReader();
+                long next = nextSegment(segment);
+                if (next < 0) {
+                    isEndOfFile = true;
+                    return false;
+                }
+                segment = next;
+                resumeOffset = 0;
+            }
+            return false;
+        }
+
         @Override
         public boolean hasNext() {
-            boolean hasNext = false;
             accessLock.lock();
             try {
                 // If there is something already buffered then there is a
                 // next
-                if (nextBuffer != null) {
-                    hasNext = true;
-                } else {
-                    if (!tryOpenReader()) {
-                        return hasNext;
-                    }
-                    // Nothing was previously buffered so try to read one
-                    // more line
-                    boolean found = false;
-                    while (!found) {
-                        try {
-                            nextBuffer = reader.readLine();
-                            found = true;
-                        } catch (IOException e) {
-                            nextBuffer = null;
-                            found = true;
-                        }
-                    }
-                    if (nextBuffer != null) {
-                        // There was at least one more line so there is a
-                        // next
-                        hasNext = true;
-                    } else {
-                        // The next line was null so it should be the end of
-                        // the file. Try to close the reader
-                        isEndOfFile = true;
-                        tryCloseReader();
-                    }
+                if (!hasBuffered) {
+                    hasBuffered = readRecord();
                 }
-                return hasNext;
+                return hasBuffered;
             } catch (FileNotFoundException fnfe) {
                 throw new AmazonClientException("Cannot find records file", fnfe);
             } catch (IOException ioe) {
@@ -275,41 +1002,46 @@ class FileRecordStore {
             }
         }
 
+        /**
+         * Returns the data of the next record decoded as UTF-8, or null if
+         * there are no more records.
+         */
         @Override
         public String next() {
-            String next = null;
+            byte[] data = nextData();
+            return data == null ? null : new String(data, StringUtils.UTF8);
+        }
+
+        /**
+         * Returns the data of the next record, or null if there are no more
+         * records.
+         */
+        public byte[] nextData() {
             accessLock.lock();
             try {
-                if (nextBuffer != null) {
-                    next = nextBuffer;
-                    linesRead++;
-                    nextBuffer = null;
-                } else {
-                    if (!tryOpenReader()) {
-                        return next;
-                    }
-                    boolean found = false;
-                    while (!found) {
-                        try {
-                            next = reader.readLine();
-                            found = true;
-                        } catch (IOException e) {
-                            next = null;
-                            found = true;
-                        }
-                    }
-                    if (next != null) {
-                        linesRead++;
-                    } else {
-                        isEndOfFile = true;
-                        tryCloseReader();
-                    }
+                if (!hasNext()) {
+                    return null;
                 }
-                return next;
-            } catch (FileNotFoundException e) {
-                throw new AmazonClientException("Cannot find records file", e);
-            } catch (IOException ioe) {
-                throw new AmazonClientException("IO Error", ioe);
+                byte[] data = nextData;
+                hasBuffered = false;
+                nextData = null;
+                nextStreamName = null;
+                readSegment = nextSegment;
+                readOffset = nextOffset;
+                return data;
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        /**
+         * Returns the data of the next record without consuming it, or null
+         * if there are no more records. The array must not be modified.
+         */
+        public byte[] peekData() {
+            accessLock.lock();
+            try {
+                return hasNext() ? nextData : null;
             } finally {
                 accessLock.unlock();
             }
@@ -318,8 +1050,33 @@ class FileRecordStore {
         public String peek() {
             accessLock.lock();
             try {
-                hasNext();
-                return nextBuffer;
+                return hasNext() ? new String(nextData, StringUtils.UTF8) : null;
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        /**
+         * Returns the stream of the next record, or null if there are no more
+         * records or the record has no stream.
+         */
+        public String peekStreamName() {
+            accessLock.lock();
+            try {
+                return hasNext() ? nextStreamName : null;
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        /**
+         * Returns the position after the last record returned, or null if no
+         * record was returned since the iterator was created or reset.
+         */
+        public Position getReadPosition() {
+            accessLock.lock();
+            try {
+                return readSegment < 0 ? null : new Position(readSegment, readOffset);
             } finally {
                 accessLock.unlock();
             }
@@ -331,10 +1088,16 @@ class FileRecordStore {
                     "The remove() operation is not supported for this iterator");
         }
 
+        /**
+         * Removes the records returned so far and starts over from the first
+         * record which wasn't removed.
+         */
         public void removeReadRecords() throws IOException {
             accessLock.lock();
             try {
-                deleteReadRecords(linesRead);
+                if (readSegment >= 0) {
+                    deleteReadRecords(readSegment, readOffset);
+                }
                 resetReader();
             } finally {
                 accessLock.unlock();
@@ -342,9 +1105,10 @@ class FileRecordStore {
         }
 
         public void removeAllRecords() throws IOException {
+            // deleteAllRecords acquires the commit lock before the access lock
+            deleteAllRecords();
             accessLock.lock();
             try {
-                deleteAllRecords();
                 resetReader();
             } finally {
                 accessLock.unlock();
@@ -353,9 +1117,13 @@ class FileRecordStore {
 
         private void resetReader() throws IOException {
             tryCloseReader();
-            linesRead = 0;
-            nextBuffer = null;
+            hasBuffered = false;
+            nextData = null;
+            nextStreamName = null;
             isEndOfFile = false;
+            segment = -1;
+            readSegment = -1;
+            readOffset = 0;
         }
 
         public void close() throws IOException {
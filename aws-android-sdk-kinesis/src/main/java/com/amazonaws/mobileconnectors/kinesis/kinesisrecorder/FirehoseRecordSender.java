@@ -34,6 +34,17 @@ import java.util.List;
  */
 class FirehoseRecordSender implements RecordSender {
 
+    /**
+     * Error code of records rejected because the delivery stream's
+     * throughput was exceeded.
+     */
+    private static final String THROTTLED_ERROR_CODE = "ServiceUnavailableException";
+
+    /**
+     * Maximum size of the data of a PutRecordBatch request.
+     */
+    static final int MAX_BATCH_BYTES = 4 * 1024 * 1024;
+
     private AmazonKinesisFirehose client;
     private String userAgent;
 
@@ -49,7 +60,7 @@ class FirehoseRecordSender implements RecordSender {
     }
 
     @Override
-    public List<byte[]> sendBatch(String streamName, List<byte[]> data)
+    public List<byte[]> sendBatch(String streamName, List<byte[]> data, List<byte[]> throttled)
             throws AmazonClientException {
         if (data == null || data.isEmpty()) {
             return Collections.emptyList();
@@ -71,9 +82,14 @@ class FirehoseRecordSender implements RecordSender {
         int size = result.getRequestResponses().size();
         List<byte[]> failures = new ArrayList<byte[]>(result.getFailedPutCount());
         for (int i = 0; i < size; i++) {
-            // Error code is either ServiceUnavailable or InternalFailure
-            if (result.getRequestResponses().get(i).getErrorCode() != null) {
+            // Error code is either ServiceUnavailableException or
+            // InternalFailure
+            String errorCode = result.getRequestResponses().get(i).getErrorCode();
+            if (errorCode != null) {
                 failures.add(data.get(i));
+                if (throttled != null && THROTTLED_ERROR_CODE.equals(errorCode)) {
+                    throttled.add(data.get(i));
+                }
             }
         }
         return failures;
@@ -87,9 +103,19 @@ class FirehoseRecordSender implements RecordSender {
                     || "ServiceUnavailable".equals(errorCode)
                     || "Throttling".equals(errorCode)
                     // Amazon Kinesis Firehose specific exceptions
-                    || "ServiceUnavailableException".equals(errorCode);
+                    || THROTTLED_ERROR_CODE.equals(errorCode);
         } else {
             return ace.getCause() != null && ace.getCause() instanceof IOException;
         }
     }
+
+    @Override
+    public int getMaxBatchBytes() {
+        return MAX_BATCH_BYTES;
+    }
+
+    @Override
+    public int getRecordOverheadBytes() {
+        return 0;
+    }
 }
@@ -23,7 +23,23 @@ import com.amazonaws.ClientConfiguration;
  */
 public class KinesisRecorderConfig {
 
+    /**
+     * Maximum number of records per request accepted by PutRecords and
+     * PutRecordBatch.
+     */
+    static final int MAX_BATCH_RECORDS_LIMIT = 500;
+
+    /**
+     * Maximum size in bytes of a request accepted by any of the services.
+     * Each {@link RecordSender} caps batches at the limit of its service.
+     */
+    static final int MAX_BATCH_BYTES_LIMIT = 5 * 1024 * 1024;
+
     private long maxStorageSize = 1024 * 1024 * 5L;
+    private int maxBatchRecords = 128;
+    private int maxBatchBytes = 512 * 1024;
+    private int maxConcurrentBatches = 1;
+    private boolean preserveStreamOrder = false;
     private ClientConfiguration clientConfiguration;
 
     /**
@@ -56,6 +72,10 @@ public class KinesisRecorderConfig {
      */
     public KinesisRecorderConfig(KinesisRecorderConfig other) {
         this.maxStorageSize = other.getMaxStorageSize();
+        this.maxBatchRecords = other.getMaxBatchRecords();
+        this.maxBatchBytes = other.getMaxBatchBytes();
+        this.maxConcurrentBatches = other.getMaxConcurrentBatches();
+        this.preserveStreamOrder = other.isPreserveStreamOrder();
         this.clientConfiguration = new ClientConfiguration(other.getClientConfiguration());
     }
 
@@ -79,6 +99,107 @@ public class KinesisRecorderConfig {
         return this.maxStorageSize;
     }
 
+    /**
+     * Sets the maximum number of records submitted in a single request. The
+     * default is 128, and the service allows up to 500.
+     *
+     * @param maxBatchRecords number of records between 1 and 500
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withMaxBatchRecords(int maxBatchRecords) {
+        if (maxBatchRecords < 1 || maxBatchRecords > MAX_BATCH_RECORDS_LIMIT) {
+            throw new IllegalArgumentException("Invalid max batch records: " + maxBatchRecords);
+        }
+        this.maxBatchRecords = maxBatchRecords;
+        return this;
+    }
+
+    /**
+     * @return The maximum number of records submitted in a single request.
+     */
+    public int getMaxBatchRecords() {
+        return maxBatchRecords;
+    }
+
+    /**
+     * Sets the maximum size in bytes of the data submitted in a single
+     * request. A record larger than this is submitted on its own. The default
+     * is 512 KB. Amazon Kinesis accepts up to 5 MB per request, counting the
+     * partition key of each record, while Amazon Kinesis Firehose accepts up
+     * to 4 MB. Batches are capped at the limit of the service, whatever this
+     * is set to.
+     *
+     * @param maxBatchBytes size in bytes between 1 and 5 MB
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withMaxBatchBytes(int maxBatchBytes) {
+        if (maxBatchBytes < 1 || maxBatchBytes > MAX_BATCH_BYTES_LIMIT) {
+            throw new IllegalArgumentException("Invalid max batch bytes: " + maxBatchBytes);
+        }
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    /**
+     * @return The maximum size in bytes of the data submitted in a single
+     *         request.
+     */
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Sets the number of requests submitAllRecords() keeps in flight at
+     * once. While requests are in flight, the next batches are read from
+     * disk. The default is 1, which sends one request at a time.
+     *
+     * @param maxConcurrentBatches number of requests, at least 1
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withMaxConcurrentBatches(int maxConcurrentBatches) {
+        if (maxConcurrentBatches < 1) {
+            throw new IllegalArgumentException("Invalid max concurrent batches: "
+                    + maxConcurrentBatches);
+        }
+        this.maxConcurrentBatches = maxConcurrentBatches;
+        return this;
+    }
+
+    /**
+     * @return The number of requests submitAllRecords() keeps in flight at
+     *         once.
+     */
+    public int getMaxConcurrentBatches() {
+        return maxConcurrentBatches;
+    }
+
+    /**
+     * Sets whether batches of the same stream are submitted one at a time, in
+     * the order the records were saved, when more than one request may be in
+     * flight. Defaults to false.
+     * <p>
+     * Records rejected by the service are kept in a retry queue, journaled
+     * next to the saved records, and submitted again before the records which
+     * haven't been read yet. Records of the stream which were already
+     * submitted, or submitted while a throttled record waits for its backoff,
+     * go through before them. When false, a batch of rejected records may
+     * also be in flight at the same time as later batches of its stream.
+     *
+     * @param preserveStreamOrder whether to keep the order within a stream
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withPreserveStreamOrder(boolean preserveStreamOrder) {
+        this.preserveStreamOrder = preserveStreamOrder;
+        return this;
+    }
+
+    /**
+     * @return Whether batches of the same stream are submitted one at a time.
+     */
+    public boolean isPreserveStreamOrder() {
+        return preserveStreamOrder;
+    }
+
     /**
      * Returns the client configuration the Kinesis Recorder will use when
      * making requests to Amazon Kinesis
@@ -34,6 +34,20 @@ import java.util.UUID;
  */
 class KinesisStreamRecordSender implements RecordSender {
 
+    /**
+     * Error code of records rejected because the shard's throughput was
+     * exceeded.
+     */
+    private static final String THROTTLED_ERROR_CODE = "ProvisionedThroughputExceededException";
+
+    /**
+     * Maximum size of the data and partition keys of a PutRecords request.
+     */
+    static final int MAX_BATCH_BYTES = 5 * 1024 * 1024;
+
+    /** Length of the UUID used as partition key **/
+    static final int PARTITION_KEY_LENGTH = 36;
+
     private AmazonKinesis client;
     private String userAgent;
 
@@ -49,7 +63,7 @@ class KinesisStreamRecordSender implements RecordSender {
     }
 
     @Override
-    public List<byte[]> sendBatch(String streamName, List<byte[]> data)
+    public List<byte[]> sendBatch(String streamName, List<byte[]> data, List<byte[]> throttled)
             throws AmazonClientException {
         if (data == null || data.isEmpty()) {
             return Collections.emptyList();
@@ -73,9 +87,13 @@ class KinesisStreamRecordSender implements RecordSender {
         int size = result.getRecords().size();
         List<byte[]> failures = new ArrayList<byte[]>(result.getFailedRecordCount());
         for (int i = 0; i < size; i++) {
-            if (result.getRecords().get(i).getErrorCode() != null) {
+            String errorCode = result.getRecords().get(i).getErrorCode();
+            if (errorCode != null) {
                 // always retry failed record
                 failures.add(data.get(i));
+                if (throttled != null && THROTTLED_ERROR_CODE.equals(errorCode)) {
+                    throttled.add(data.get(i));
+                }
             }
         }
         return failures;
@@ -89,9 +107,19 @@ class KinesisStreamRecordSender implements RecordSender {
                     || "ServiceUnavailable".equals(errorCode)
                     || "Throttling".equals(errorCode)
                     // Amazon Kinesis service error
-                    || "ProvisionedThroughputExceededException".equals(errorCode);
+                    || THROTTLED_ERROR_CODE.equals(errorCode);
         } else {
             return ace.getCause() != null && ace.getCause() instanceof IOException;
         }
     }
+
+    @Override
+    public int getMaxBatchBytes() {
+        return MAX_BATCH_BYTES;
+    }
+
+    @Override
+    public int getRecordOverheadBytes() {
+        return PARTITION_KEY_LENGTH;
+    }
 }
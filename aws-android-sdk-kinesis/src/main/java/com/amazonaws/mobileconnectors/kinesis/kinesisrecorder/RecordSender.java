@@ -25,14 +25,18 @@ import java.util.List;
 interface RecordSender {
     /**
      * Sends a batch of data to the given stream. If some data is rejected by
-     * the server and is retryable, it should be added to the return list.
+     * the server and is retryable, it should be added to the return list. Data
+     * rejected because the stream's throughput was exceeded is also added to
+     * the throttled list.
      * 
      * @param streamName stream name
      * @param data a list of data to be sent
+     * @param throttled a list to hold data rejected due to throttling, or null
      * @return a list to data that is failed to send
      * @throws AmazonClientException
      */
-    List<byte[]> sendBatch(String streamName, List<byte[]> data) throws AmazonClientException;
+    List<byte[]> sendBatch(String streamName, List<byte[]> data, List<byte[]> throttled)
+            throws AmazonClientException;
 
     /**
      * Tests whether an exception is recoverable. If true, the list of data
@@ -42,4 +46,21 @@ interface RecordSender {
      * @return true if the exception is recoverable, or false otherwise
      */
     boolean isRecoverable(AmazonClientException ace);
+
+    /**
+     * Returns the maximum size in bytes of the records of a request accepted
+     * by the service, including the bytes added by
+     * {@link #getRecordOverheadBytes()}.
+     *
+     * @return size in bytes
+     */
+    int getMaxBatchBytes();
+
+    /**
+     * Returns the number of bytes the service counts for each record besides
+     * its data, such as its partition key.
+     *
+     * @return size in bytes
+     */
+    int getRecordOverheadBytes();
 }
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import android.util.Log;
+
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.Position;
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Holds the records rejected by the service until they are sent again. The
+ * records are kept in memory, so a record which keeps failing is written to
+ * disk once instead of being saved again after every attempt. To survive the
+ * process, records are written to a journal when they first fail, and the
+ * journal is loaded when the queue is created. Like the record store, the
+ * journal is checkpointed as records are done with: the records before the
+ * oldest record still waiting or in flight are removed. Records done with
+ * after that one are acknowledged by a record without a stream holding their
+ * positions in the journal, so records which went through aren't sent again
+ * by the next process.
+ * <p>
+ * A record rejected due to throttling is sent again after an exponential
+ * backoff with full jitter, other records are sent again in the next batch.
+ * It's not thread safe.
+ */
+class RetryQueue {
+    private static final String TAG = "RetryQueue";
+
+    /** Backoff of the first retry of a throttled record **/
+    static final long BASE_BACKOFF_MILLIS = 500;
+    /** Maximum backoff of a throttled record **/
+    static final long MAX_BACKOFF_MILLIS = 60 * 1000;
+
+    /** Size of a position in an acknowledgement **/
+    private static final int POSITION_LENGTH = 16;
+
+    /**
+     * A record waiting to be sent again.
+     */
+    static final class Entry {
+        final String streamName;
+        final byte[] data;
+        /** Position after the record in the journal **/
+        final Position position;
+        /** Whether the record went through or was dropped **/
+        boolean done;
+        /** Number of times the record was throttled in a row **/
+        int throttledCount;
+        /** Time before which the record isn't sent again **/
+        long notBefore;
+
+        Entry(String streamName, byte[] data, Position position) {
+            this.streamName = streamName;
+            this.data = data;
+            this.position = position;
+        }
+    }
+
+    private final FileRecordStore journal;
+    /** Records waiting, oldest first **/
+    private final LinkedList<Entry> entries = new LinkedList<Entry>();
+    /** Records in the journal which haven't been removed, in journal order **/
+    private final LinkedList<Entry> journaled = new LinkedList<Entry>();
+    private final Random random = new Random();
+
+    /**
+     * Creates a queue and loads the records journaled by a previous process.
+     *
+     * @param journal the record store the records are journaled in
+     */
+    RetryQueue(FileRecordStore journal) {
+        this.journal = journal;
+        Map<Position, Entry> loaded = new HashMap<Position, Entry>();
+        RecordIterator iterator = journal.iterator();
+        try {
+            while (iterator.hasNext()) {
+                String streamName = iterator.peekStreamName();
+                byte[] data = iterator.nextData();
+                if (streamName != null) {
+                    Entry entry = new Entry(streamName, data, iterator.getReadPosition());
+                    journaled.add(entry);
+                    loaded.put(entry.position, entry);
+                } else {
+                    for (Position position : decodePositions(data)) {
+                        Entry entry = loaded.get(position);
+                        if (entry != null) {
+                            entry.done = true;
+                        }
+                    }
+                }
+            }
+        } finally {
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        for (Entry entry : journaled) {
+            if (!entry.done) {
+                entries.add(entry);
+            }
+        }
+        try {
+            checkpoint(Collections.<Entry> emptyList());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to checkpoint the journal", e);
+        }
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Returns the number of records waiting to be sent again.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of bytes taken by the journal.
+     */
+    long getJournalSize() {
+        return journal.getFileSize();
+    }
+
+    /**
+     * Adds records which failed for the first time, and journals them.
+     *
+     * @param streamName the stream of the records
+     * @param failures the data of the records
+     * @param throttled the records rejected due to throttling
+     * @param now the current time
+     */
+    void add(String streamName, Collection<byte[]> failures, Collection<byte[]> throttled,
+            long now) throws IOException {
+        Set<byte[]> throttledSet = identitySet(throttled);
+        for (byte[] data : failures) {
+            Position position = journal.append(streamName, data);
+            if (position == null) {
+                Log.e(TAG, "Not enough storage to keep a failed record. It will be dropped");
+                continue;
+            }
+            Entry entry = new Entry(streamName, data, position);
+            schedule(entry, throttledSet.contains(data), now);
+            entries.add(entry);
+            journaled.add(entry);
+        }
+    }
+
+    /**
+     * Removes and returns the records of a stream which can be sent at the
+     * given time, oldest first. The stream is the one of the oldest record
+     * which can be sent and isn't excluded. Their outcome must be reported
+     * with {@link #complete}.
+     *
+     * @param now the current time
+     * @param maxCount maximum number of records
+     * @param maxSize maximum total size of the records, unless the first
+     *            record alone is larger
+     * @param recordOverhead bytes counted for each record besides its data
+     * @param excludedStreams streams whose records aren't returned
+     * @return the records, or null if none can be sent
+     */
+    List<Entry> poll(long now, int maxCount, int maxSize, int recordOverhead,
+            Set<String> excludedStreams) {
+        List<Entry> batch = null;
+        String streamName = null;
+        int size = 0;
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext() && (batch == null || batch.size() < maxCount)) {
+            Entry entry = it.next();
+            if (entry.notBefore > now) {
+                continue;
+            }
+            if (batch == null) {
+                if (excludedStreams.contains(entry.streamName)) {
+                    continue;
+                }
+                batch = new ArrayList<Entry>();
+                streamName = entry.streamName;
+            } else if (!streamName.equals(entry.streamName)
+                    || size + entry.data.length + recordOverhead > maxSize) {
+                continue;
+            }
+            batch.add(entry);
+            size += entry.data.length + recordOverhead;
+            it.remove();
+        }
+        return batch;
+    }
+
+    /**
+     * Reports the outcome of records returned by {@link #poll}. Records which
+     * failed again are put back in front of the queue without being written
+     * to disk, other records are done with and the journal is checkpointed.
+     * Failures which aren't part of the batch are added as new records.
+     *
+     * @param batch the records sent
+     * @param failures the data of the records which failed
+     * @param throttled the records rejected due to throttling
+     * @param now the current time
+     */
+    void complete(List<Entry> batch, Collection<byte[]> failures,
+            Collection<byte[]> throttled, long now) throws IOException {
+        Map<byte[], Entry> sent = new IdentityHashMap<byte[], Entry>();
+        for (Entry entry : batch) {
+            sent.put(entry.data, entry);
+        }
+        Set<byte[]> throttledSet = identitySet(throttled);
+        List<byte[]> unknown = new ArrayList<byte[]>();
+        List<Entry> retries = new ArrayList<Entry>();
+        for (byte[] data : failures) {
+            Entry entry = sent.remove(data);
+            if (entry == null) {
+                unknown.add(data);
+            } else {
+                schedule(entry, throttledSet.contains(data), now);
+                retries.add(entry);
+            }
+        }
+        entries.addAll(0, retries);
+        for (Entry entry : sent.values()) {
+            entry.done = true;
+        }
+        if (!unknown.isEmpty()) {
+            add(batch.get(0).streamName, unknown, throttled, now);
+        }
+        checkpoint(sent.values());
+    }
+
+    /**
+     * Removes all records and clears the journal.
+     */
+    void clear() throws IOException {
+        entries.clear();
+        journaled.clear();
+        journal.iterator().removeAllRecords();
+    }
+
+    private void schedule(Entry entry, boolean throttled, long now) {
+        if (!throttled) {
+            entry.throttledCount = 0;
+            entry.notBefore = now;
+            return;
+        }
+        entry.throttledCount++;
+        int shift = Math.min(entry.throttledCount - 1, 16);
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << shift);
+        entry.notBefore = now + (long) (random.nextDouble() * ceiling);
+    }
+
+    /**
+     * Removes the journaled records up to the oldest one which isn't done, and
+     * acknowledges the records done after it.
+     *
+     * @param done the records which were just done with
+     */
+    private void checkpoint(Collection<Entry> done) throws IOException {
+        Position position = null;
+        while (!journaled.isEmpty() && journaled.getFirst().done) {
+            position = journaled.removeFirst().position;
+        }
+        if (journaled.isEmpty()) {
+            // also removes the acknowledgements
+            if (journal.getFileSize() > 0) {
+                journal.iterator().removeAllRecords();
+            }
+            return;
+        }
+        if (position != null) {
+            journal.removeRecordsBefore(position);
+        }
+
+        Position oldest = journaled.getFirst().position;
+        List<Position> acknowledged = new ArrayList<Position>();
+        for (Entry entry : done) {
+            if (entry.position.compareTo(oldest) > 0) {
+                acknowledged.add(entry.position);
+            }
+        }
+        if (!acknowledged.isEmpty()
+                && journal.append(null, encodePositions(acknowledged)) == null) {
+            Log.w(TAG, "Not enough storage to acknowledge records. They may be sent again");
+        }
+    }
+
+    private static byte[] encodePositions(List<Position> positions) {
+        ByteBuffer buffer = ByteBuffer.allocate(positions.size() * POSITION_LENGTH);
+        for (Position position : positions) {
+            buffer.putLong(position.segment);
+            buffer.putLong(position.offset);
+        }
+        return buffer.array();
+    }
+
+    private static List<Position> decodePositions(byte[] data) {
+        if (data.length % POSITION_LENGTH != 0) {
+            return Collections.emptyList();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        List<Position> positions = new ArrayList<Position>(data.length / POSITION_LENGTH);
+        while (buffer.hasRemaining()) {
+            positions.add(new Position(buffer.getLong(), buffer.getLong()));
+        }
+        return positions;
+    }
+
+    private static Set<byte[]> identitySet(Collection<byte[]> items) {
+        if (items == null || items.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<byte[]> set = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        set.addAll(items);
+        return set;
+    }
+}
@@ -162,7 +162,7 @@ public class AmazonKinesisClient extends AmazonWebServiceClient implements Amazo
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AmazonKinesisClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -163,7 +163,7 @@ public class AmazonKinesisFirehoseClient extends AmazonWebServiceClient implemen
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AmazonKinesisFirehoseClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -25,6 +25,7 @@ import static org.junit.Assert.fail;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
+import com.amazonaws.util.StringUtils;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -32,9 +33,12 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -73,7 +77,7 @@ public class AbstractKinesisRecorderTest {
 
     @Before
     public void setup() throws IOException {
-        sender = Mockito.mock(RecordSender.class);
+        sender = mockSender();
         KinesisRecorderConfig config = new KinesisRecorderConfig();
         FileRecordStore recordStore = new FileRecordStore(temp.newFolder(), RECORD_FILE_NAME,
                 config.getMaxStorageSize());
@@ -123,8 +127,21 @@ public class AbstractKinesisRecorderTest {
 
         iterator = recorder.recordStore.iterator();
         recorder.nextBatch(iterator, data, 10, 5 * 1024 - 10);
-        // allows 1 record to bring the total size over the limit
-        assertEquals("read 5 records", 5, data.size());
+        // the batch doesn't exceed the size limit
+        assertEquals("read 4 records", 4, data.size());
+        iterator.close();
+
+        iterator = recorder.recordStore.iterator();
+        recorder.nextBatch(iterator, data, 10, 5 * 1024,
+                KinesisStreamRecordSender.PARTITION_KEY_LENGTH);
+        // the partition keys count toward the size limit
+        assertEquals("read 4 records", 4, data.size());
+        iterator.close();
+
+        iterator = recorder.recordStore.iterator();
+        recorder.nextBatch(iterator, data, 10, 10);
+        // a record larger than the limit makes a batch on its own
+        assertEquals("read 1 record", 1, data.size());
         iterator.close();
     }
 
@@ -208,7 +225,8 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), anotherStream);
         }
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any()))
                 .thenReturn(new ArrayList<byte[]>());
         recorder.submitAllRecords();
         assertEquals("no records after submitAllRecords", 0, recorder.getDiskBytesUsed());
@@ -221,7 +239,8 @@ public class AbstractKinesisRecorderTest {
         }
         long size = recorder.getDiskBytesUsed();
         AmazonServiceException ase = new AmazonServiceException("some failures");
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any()))
                 .thenThrow(ase);
         Mockito.when(sender.isRecoverable(ase)).thenReturn(true);
         try {
@@ -239,7 +258,8 @@ public class AbstractKinesisRecorderTest {
             recorder.saveRecord(randomBytes(1024), STREAM_NAME);
         }
         AmazonServiceException ase = new AmazonServiceException("some failures");
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any()))
                 .thenThrow(ase);
         Mockito.when(sender.isRecoverable(ase)).thenReturn(false);
         try {
@@ -256,7 +276,8 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), STREAM_NAME);
         }
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any()))
                 // one of the records fails, but succeeds the next time
                 .thenReturn(Arrays.asList(randomBytes(1024)))
                 .thenReturn(new ArrayList<byte[]>());
@@ -269,13 +290,189 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), STREAM_NAME);
         }
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any()))
                 // one of the records always failes
                 .thenReturn(Arrays.asList(randomBytes(1024)));
         recorder.submitAllRecords();
         assertTrue("records removed", recorder.getDiskBytesUsed() > 0);
     }
 
+    @Test
+    public void testSubmitAllRecordsWithThrottledRecords() {
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        long size = recorder.getDiskBytesUsed();
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any())).thenAnswer(new Answer<List<byte[]>>() {
+                    @Override
+                    public List<byte[]> answer(InvocationOnMock invocation) {
+                        // the first record is throttled
+                        List<byte[]> data = (List<byte[]>) invocation.getArguments()[1];
+                        List<byte[]> throttled = (List<byte[]>) invocation.getArguments()[2];
+                        throttled.add(data.get(0));
+                        return new ArrayList<byte[]>(throttled);
+                    }
+                });
+        recorder.submitAllRecords();
+        // the throttled record is kept for later rather than sent right away
+        Mockito.verify(sender, Mockito.times(1)).sendBatch(Mockito.anyString(),
+                Mockito.anyListOf(byte[].class), Mockito.<List<byte[]>> any());
+        assertTrue("throttled record kept", recorder.getDiskBytesUsed() > 0);
+        assertTrue("other records removed", recorder.getDiskBytesUsed() < size);
+    }
+
+    @Test
+    public void testSubmitAllRecordsCapsBatchesAtServiceLimit() {
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        // three records and their partition keys fit in a request
+        Mockito.when(sender.getMaxBatchBytes()).thenReturn(
+                3 * (1024 + KinesisStreamRecordSender.PARTITION_KEY_LENGTH));
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any()))
+                .thenReturn(new ArrayList<byte[]>());
+        recorder.submitAllRecords();
+        Mockito.verify(sender, Mockito.times(4)).sendBatch(Mockito.anyString(),
+                Mockito.anyListOf(byte[].class), Mockito.<List<byte[]>> any());
+        assertEquals("no records after submitAllRecords", 0, recorder.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testSubmitAllRecordsConcurrently() {
+        recorder.getKinesisRecorderConfig().withMaxConcurrentBatches(4).withMaxBatchRecords(2);
+        for (int i = 0; i < 20; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any()))
+                .thenReturn(new ArrayList<byte[]>());
+        recorder.submitAllRecords();
+        Mockito.verify(sender, Mockito.times(10)).sendBatch(Mockito.anyString(),
+                Mockito.anyListOf(byte[].class), Mockito.<List<byte[]>> any());
+        assertEquals("no records after submitAllRecords", 0, recorder.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testSubmitAllRecordsKeepsRecordsAfterFailedBatch() {
+        recorder.getKinesisRecorderConfig().withMaxConcurrentBatches(4)
+                .withPreserveStreamOrder(true);
+        String anotherStream = "another_stream";
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        long size = recorder.getDiskBytesUsed();
+        for (int i = 0; i < 10; i++) {
+            recorder.saveRecord(randomBytes(1024), anotherStream);
+        }
+        AmazonServiceException ase = new AmazonServiceException("some failures");
+        Mockito.when(sender.sendBatch(Mockito.eq(STREAM_NAME), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any()))
+                .thenThrow(ase);
+        Mockito.when(sender.sendBatch(Mockito.eq(anotherStream),
+                Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any())).thenReturn(new ArrayList<byte[]>());
+        Mockito.when(sender.isRecoverable(ase)).thenReturn(true);
+        try {
+            recorder.submitAllRecords();
+            fail("Should throw exception");
+        } catch (AmazonClientException ace) {
+            assertSame("same exception", ase, ace);
+        }
+        // records after the failed batch aren't removed even if they were sent
+        assertTrue("records kept", recorder.getDiskBytesUsed() > size);
+    }
+
+    @Test
+    public void testRestartDuringRetriesDoesNotSendRecordsTwice() throws IOException {
+        File directory = temp.newFolder();
+        for (int i = 0; i < 6; i++) {
+            recorder(directory, 6, null).saveRecord("record" + i, STREAM_NAME);
+        }
+        AmazonServiceException ase = new AmazonServiceException("connection lost");
+        List<String> accepted = new ArrayList<String>();
+
+        // all records are rejected and journaled, then the retry fails
+        RecordSender sender = mockSender();
+        Mockito.when(sender.isRecoverable(ase)).thenReturn(true);
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any())).thenAnswer(new Answer<List<byte[]>>() {
+                    @Override
+                    public List<byte[]> answer(InvocationOnMock invocation) {
+                        return new ArrayList<byte[]>(
+                                (List<byte[]>) invocation.getArguments()[1]);
+                    }
+                }).thenThrow(ase);
+        submitAndExpect(recorder(directory, 6, sender), ase);
+        assertTrue("records journaled", recorder(directory, 6, null).getDiskBytesUsed() > 0);
+
+        // the process restarts, the first retried batch goes through before
+        // the next one fails
+        sender = mockSender();
+        Mockito.when(sender.isRecoverable(ase)).thenReturn(true);
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any())).thenAnswer(accept(accepted)).thenThrow(ase);
+        submitAndExpect(recorder(directory, 2, sender), ase);
+        assertEquals(Arrays.asList("record0", "record1"), accepted);
+
+        // and restarts again
+        sender = mockSender();
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class),
+                Mockito.<List<byte[]>> any())).thenAnswer(accept(accepted));
+        AbstractKinesisRecorder restarted = recorder(directory, 2, sender);
+        restarted.submitAllRecords();
+        assertEquals(Arrays.asList("record0", "record1", "record2", "record3", "record4",
+                "record5"), accepted);
+        assertEquals("no records after submitAllRecords", 0, restarted.getDiskBytesUsed());
+    }
+
+    private AbstractKinesisRecorder recorder(File directory, int maxBatchRecords,
+            RecordSender sender) {
+        KinesisRecorderConfig config = new KinesisRecorderConfig()
+                .withMaxBatchRecords(maxBatchRecords);
+        MockAbstractKinesisRecorder mockRecorder = new MockAbstractKinesisRecorder(
+                new FileRecordStore(directory, RECORD_FILE_NAME, config.getMaxStorageSize()),
+                config);
+        mockRecorder.setRecordSender(sender);
+        return mockRecorder;
+    }
+
+    private static void submitAndExpect(AbstractKinesisRecorder recorder,
+            AmazonClientException expected) {
+        try {
+            recorder.submitAllRecords();
+            fail("Should throw exception");
+        } catch (AmazonClientException ace) {
+            assertSame("same exception", expected, ace);
+        }
+    }
+
+    /**
+     * Accepts all the records of a batch and adds them to the given list.
+     */
+    private static Answer<List<byte[]>> accept(final List<String> accepted) {
+        return new Answer<List<byte[]>>() {
+            @Override
+            public List<byte[]> answer(InvocationOnMock invocation) {
+                for (byte[] data : (List<byte[]>) invocation.getArguments()[1]) {
+                    accepted.add(new String(data, StringUtils.UTF8));
+                }
+                return new ArrayList<byte[]>();
+            }
+        };
+    }
+
+    private static RecordSender mockSender() {
+        RecordSender sender = Mockito.mock(RecordSender.class);
+        Mockito.when(sender.getMaxBatchBytes()).thenReturn(
+                KinesisStreamRecordSender.MAX_BATCH_BYTES);
+        Mockito.when(sender.getRecordOverheadBytes()).thenReturn(
+                KinesisStreamRecordSender.PARTITION_KEY_LENGTH);
+        return sender;
+    }
+
     private byte[] randomBytes(int length) {
         byte[] data = new byte[length];
         new Random().nextBytes(data);
@@ -20,7 +20,9 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.Position;
 import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
 import com.amazonaws.util.StringUtils;
 
@@ -28,18 +30,21 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FileRecordStoreTest {
 
@@ -69,7 +74,6 @@ public class FileRecordStoreTest {
     @Test
     public void testFileRecordStore_putIterateAndRemove() throws IOException {
 
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
                 RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
 
@@ -96,7 +100,7 @@ public class FileRecordStoreTest {
             // If we read 5 events remove the 5 last read events
             if (counter % 5 == 0) {
                 iter.removeReadRecords();
-                assertSame(getNumberOfLinesInFile(fileManager), (10 - counter));
+                assertSame(getNumberOfRecords(recordStore), (10 - counter));
             }
         }
 
@@ -119,7 +123,7 @@ public class FileRecordStoreTest {
             assertSame(Integer.valueOf(nextRecord), counter);
         }
         iter.removeReadRecords();
-        assertSame(getNumberOfLinesInFile(fileManager), 0);
+        assertSame(getNumberOfRecords(recordStore), 0);
 
         // Try getting a new iterator while the store is empty and verify
         // that hasNext is false
@@ -183,38 +187,51 @@ public class FileRecordStoreTest {
 
     @Test
     public void testWhenWritingExceedsMaxStorageSize_noMoreRecordsWritten() throws IOException {
-        File recordsDirectory = null;
-        File recordsFile = null;
-
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
                 RECORDER_FILE_NAME, 100L);
 
-        recordsDirectory = fileManager.getDirectory(Constants.RECORDS_DIRECTORY);
-        recordsFile = new File(recordsDirectory, Constants.RECORDS_FILE_NAME);
-
+        // the segment header takes 4 bytes and each record 6 bytes more than
+        // its data
         for (int i = 0; i < 10; i++) {
             recordStore.put("ten bytes");
         }
-        assertSame(recordsFile.length(), 100L);
+        assertEquals(94L, recordStore.getFileSize());
+        assertEquals(6, getNumberOfRecords(recordStore));
+
+        assertFalse(recordStore.put("0123456789"));
+        assertEquals(94L, recordStore.getFileSize());
+
+    }
 
-        recordStore.put("0123456789");
-        assertSame(recordsFile.length(), 100L);
+    @Test
+    public void testCompanionSharesMaxStorageSize() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, 100L);
+        FileRecordStore companion = recordStore.companion("_companion");
 
+        // 4 bytes of header and 15 bytes per record
+        for (int i = 0; i < 3; i++) {
+            assertTrue(recordStore.put("ten bytes"));
+        }
+        for (int i = 0; i < 3; i++) {
+            companion.put("ten bytes");
+        }
+        assertEquals(49L, recordStore.getFileSize());
+        assertEquals(49L, companion.getFileSize());
+        assertFalse(recordStore.put("ten bytes"));
+
+        // removed records make room for both
+        recordStore.iterator().removeAllRecords();
+        assertTrue(companion.put("ten bytes"));
+        assertTrue(recordStore.put("ten bytes"));
     }
 
     @Test
     public void testWhenWritingTooManyConcurrentRecords() throws
             InterruptedException, IOException {
-        File recordsDirectory = null;
-        File recordsFile = null;
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         final FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
                 RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
 
-        recordsDirectory = fileManager.getDirectory(Constants.RECORDS_DIRECTORY);
-        recordsFile = new File(recordsDirectory, Constants.RECORDS_FILE_NAME);
-
         SecureRandom random = new SecureRandom();
 
         // first fill the disk
@@ -229,8 +246,8 @@ public class FileRecordStoreTest {
             recordStore.put(recordStr);
         }
 
-        long initialSize = recordsFile.length();
-        assertTrue(recordsFile.length() <= MAX_STORAGE_SIZE);
+        long initialSize = recordStore.getFileSize();
+        assertTrue(recordStore.getFileSize() <= MAX_STORAGE_SIZE);
 
         final CountDownLatch latch = new CountDownLatch(1);
         ExecutorService threadPool = Executors.newFixedThreadPool(1);
@@ -259,17 +276,17 @@ public class FileRecordStoreTest {
 
         for (int i = 0; i < 10000; i++) {
             recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
+            assertTrue(recordStore.getFileSize() <= initialSize);
             recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
+            assertTrue(recordStore.getFileSize() <= initialSize);
             recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
+            assertTrue(recordStore.getFileSize() <= initialSize);
             Thread.sleep(1);
         }
 
         latch.await();
-        assertEquals(recordsFile.length(), initialSize);
-        assertTrue(recordsFile.length() < MAX_STORAGE_SIZE);
+        assertEquals(recordStore.getFileSize(), initialSize);
+        assertTrue(recordStore.getFileSize() < MAX_STORAGE_SIZE);
 
     }
 
@@ -328,28 +345,241 @@ public class FileRecordStoreTest {
 
     }
 
-    private int getNumberOfLinesInFile(final FileManager fileManager) throws NumberFormatException,
-            IOException {
-        BufferedReader reader = getRecordsFileReader(fileManager);
+    @Test
+    public void testSegmentsRollOverAndAreDeletedOnceRead() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, 20L);
+
+        // each record takes 15 bytes and a segment header 4 bytes, so a
+        // segment holds two records
+        for (int i = 0; i < 6; i++) {
+            recordStore.put("record " + i + "!");
+        }
+        assertEquals(102L, recordStore.getFileSize());
+        assertTrue(recordStore.segmentFile(0).isFile());
+        assertTrue(recordStore.segmentFile(2).isFile());
+        assertEquals(34L, recordStore.segmentFile(1).length());
+
+        RecordIterator iter = recordStore.iterator();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("record " + i + "!", iter.next());
+        }
+        iter.removeReadRecords();
+        assertEquals(49L, recordStore.getFileSize());
+        // the first segment was fully read, the second one only partially
+        assertFalse(recordStore.segmentFile(0).exists());
+        assertTrue(recordStore.segmentFile(1).exists());
+
+        assertEquals("record 3!", iter.next());
+        iter.removeReadRecords();
+        assertFalse(recordStore.segmentFile(1).exists());
+        assertEquals(34L, recordStore.getFileSize());
+        assertEquals(2, getNumberOfRecords(recordStore));
+
+        iter.removeAllRecords();
+        assertEquals(0L, recordStore.getFileSize());
+        assertFalse(recordStore.segmentFile(2).exists());
+        assertFalse(recordStore.iterator().hasNext());
+    }
+
+    @Test
+    public void testReopenResumesFromCheckpoint() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, 20L);
+        for (int i = 0; i < 5; i++) {
+            recordStore.put("record " + i + "!");
+        }
+        RecordIterator iter = recordStore.iterator();
+        iter.next();
+        iter.next();
+        iter.next();
+        iter.removeReadRecords();
+        iter.close();
+
+        // a record was partially written when the process died
+        OutputStream out = new FileOutputStream(recordStore.segmentFile(2), true);
+        out.write("partial".getBytes(StringUtils.UTF8));
+        out.close();
+
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME,
+                MAX_STORAGE_SIZE, 20L);
+        recordStore.put("record 5!");
+        // records are appended to a new segment instead of the damaged one
+        assertTrue(recordStore.segmentFile(3).isFile());
+        iter = recordStore.iterator();
+        assertEquals("record 3!", iter.next());
+        assertEquals("record 4!", iter.next());
+        assertEquals("record 5!", iter.next());
+        assertFalse(iter.hasNext());
+        iter.removeReadRecords();
+        assertEquals(0L, recordStore.getFileSize());
+    }
+
+    @Test
+    public void testIteratorSkipsRecordBeingWritten() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        recordStore.put("1");
+        OutputStream out = new FileOutputStream(recordStore.segmentFile(0), true);
+        // the start of a record with 5 bytes of data
+        out.write(new byte[] {
+                1, 5, '2'
+        });
+        out.close();
+
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("1", iter.next());
+        assertFalse(iter.hasNext());
+        iter.removeReadRecords();
+        assertEquals(0L, recordStore.getFileSize());
+    }
+
+    @Test
+    public void testStreamRecords() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, 64L);
+        byte[] data = new byte[] {
+                0, '\n', (byte) 0xFF, ','
+        };
+        for (int i = 0; i < 10; i++) {
+            recordStore.put(i % 2 == 0 ? "even" : "odd", data);
+        }
+
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("even", iter.peekStreamName());
+        assertTrue(Arrays.equals(data, iter.nextData()));
+        assertEquals("odd", iter.peekStreamName());
+        assertTrue(Arrays.equals(data, iter.nextData()));
+        iter.removeReadRecords();
+
+        // stream definitions before the checkpoint are read again
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME,
+                MAX_STORAGE_SIZE, 64L);
+        iter = recordStore.iterator();
+        for (int i = 2; i < 10; i++) {
+            assertEquals(i % 2 == 0 ? "even" : "odd", iter.peekStreamName());
+            assertTrue(Arrays.equals(data, iter.nextData()));
+        }
+        assertFalse(iter.hasNext());
+        assertNull(iter.peekStreamName());
+        assertNull(iter.nextData());
+    }
+
+    @Test
+    public void testReadsLinesOfPreviousVersion() throws IOException {
+        FileManager fileManager = new FileManager(TEST_DIRECTORY);
+        File recordsDirectory = fileManager.createDirectory(Constants.RECORDS_DIRECTORY);
+        OutputStream out = new FileOutputStream(new File(recordsDirectory, RECORDER_FILE_NAME));
+        out.write("stream,ZGF0YQ==\n{\"json\":1}\n".getBytes(StringUtils.UTF8));
+        out.close();
+
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        recordStore.put("stream", "new".getBytes(StringUtils.UTF8));
+        RecordIterator iter = recordStore.iterator();
+        assertNull(iter.peekStreamName());
+        assertEquals("stream,ZGF0YQ==", iter.next());
+        assertEquals("{\"json\":1}", iter.next());
+        assertEquals("stream", iter.peekStreamName());
+        assertEquals("new", iter.next());
+        assertFalse(iter.hasNext());
+
+        iter.removeReadRecords();
+        assertFalse(recordStore.segmentFile(0).exists());
+        assertEquals(0L, recordStore.getFileSize());
+    }
+
+    @Test
+    public void testRemoveRecordsBeforeKeepsReading() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, 20L);
+        for (int i = 0; i < 4; i++) {
+            recordStore.put("record " + i + "!");
+        }
+        RecordIterator iter = recordStore.iterator();
+        assertNull(iter.getReadPosition());
+        iter.next();
+        Position first = iter.getReadPosition();
+        iter.next();
+        iter.next();
+        Position third = iter.getReadPosition();
+
+        recordStore.removeRecordsBefore(third);
+        // an earlier position doesn't bring removed records back
+        recordStore.removeRecordsBefore(first);
+        assertEquals(15L, recordStore.getFileSize());
+        assertEquals("record 3!", iter.next());
+        assertFalse(iter.hasNext());
+        assertEquals(1, getNumberOfRecords(recordStore));
+    }
+
+    @Test
+    public void testFailedWriteStartsNewSegment() throws IOException {
+        FailingFileManager fileManager = new FailingFileManager(TEST_DIRECTORY);
+        FileRecordStore recordStore = new FileRecordStore(fileManager, TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE, 1024 * 1024L, new AtomicLong());
+        recordStore.put("record 0");
+        long size = recordStore.getFileSize();
+
+        // larger than the buffer, so part of it reaches the file
+        char[] large = new char[20 * 1024];
+        Arrays.fill(large, 'x');
+        fileManager.failNextWrite = true;
+        try {
+            recordStore.put(new String(large));
+            fail("expected the write to fail");
+        } catch (IOException expected) {
+        }
+        assertEquals(size, recordStore.getFileSize());
+
+        recordStore.put("record 2");
+        assertTrue(recordStore.segmentFile(1).isFile());
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("record 0", iter.next());
+        assertEquals("record 2", iter.next());
+        assertFalse(iter.hasNext());
+
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME,
+                MAX_STORAGE_SIZE);
+        assertEquals(2, getNumberOfRecords(recordStore));
+    }
+
+    private int getNumberOfRecords(final FileRecordStore recordStore) throws IOException {
+        RecordIterator iter = recordStore.iterator();
         int counter = 0;
-        while (reader.readLine() != null) {
+        while (iter.hasNext()) {
+            iter.next();
             counter++;
         }
+        iter.close();
         return counter;
     }
 
-    private BufferedReader getRecordsFileReader(final FileManager fileManager) {
-        InputStreamReader streamReader = null;
-        try {
-            streamReader = new InputStreamReader(
-                    fileManager.newInputStream(Constants.RECORDS_DIRECTORY + File.separator
-                            + Constants.RECORDS_FILE_NAME), StringUtils.UTF8);
-        } catch (FileNotFoundException e) {
+    /**
+     * Writes half of the bytes of the next write and then fails, when asked
+     * to.
+     */
+    private static class FailingFileManager extends FileManager {
+        volatile boolean failNextWrite;
+
+        FailingFileManager(File rootDirectory) {
+            super(rootDirectory);
         }
 
-        if (streamReader != null) {
-            return new BufferedReader(streamReader);
+        @Override
+        public OutputStream newOutputStream(File file, boolean append)
+                throws FileNotFoundException {
+            return new FilterOutputStream(super.newOutputStream(file, append)) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    if (failNextWrite) {
+                        failNextWrite = false;
+                        out.write(b, off, len / 2);
+                        throw new IOException("No space left on device");
+                    }
+                    out.write(b, off, len);
+                }
+            };
         }
-        return null;
     }
 }
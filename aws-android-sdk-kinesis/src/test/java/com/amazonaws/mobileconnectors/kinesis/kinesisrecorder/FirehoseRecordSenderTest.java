@@ -17,6 +17,7 @@ package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 
@@ -74,7 +75,7 @@ public class FirehoseRecordSenderTest {
             data.add(("record" + i).getBytes(StringUtils.UTF8));
         }
         Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class))).thenReturn(result);
-        List<byte[]> failures = sender.sendBatch(streamName, data);
+        List<byte[]> failures = sender.sendBatch(streamName, data, null);
 
         ArgumentCaptor<PutRecordBatchRequest> argument = ArgumentCaptor
                 .forClass(PutRecordBatchRequest.class);
@@ -101,6 +102,8 @@ public class FirehoseRecordSenderTest {
             // fail every other record
             if (i % 2 == 0) {
                 entry.setRecordId("record_id_" + i);
+            } else if (i == 1) {
+                entry.setErrorCode("ServiceUnavailableException");
             } else {
                 entry.setErrorCode("ServiceUnavailable");
             }
@@ -114,13 +117,16 @@ public class FirehoseRecordSenderTest {
             data.add(("record" + i).getBytes(StringUtils.UTF8));
         }
         Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class))).thenReturn(result);
-        List<byte[]> failures = sender.sendBatch(streamName, data);
+        List<byte[]> throttled = new ArrayList<byte[]>();
+        List<byte[]> failures = sender.sendBatch(streamName, data, throttled);
 
         assertTrue("has 5 failures", failures.size() == 5);
         for (int i = 0; i < 5; i++) {
             String failedRecordString = "record" + (i * 2 + 1);
             assertEquals(failedRecordString, new String(failures.get(i), StringUtils.UTF8));
         }
+        assertEquals("has 1 throttled record", 1, throttled.size());
+        assertSame("throttled record", data.get(1), throttled.get(0));
     }
 
     @Test(expected = AmazonClientException.class)
@@ -146,7 +152,7 @@ public class FirehoseRecordSenderTest {
         }
         Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class))).thenThrow(
                 new InvalidArgumentException("invalid argument"));
-        sender.sendBatch(streamName, data);
+        sender.sendBatch(streamName, data, null);
     }
 
     @Test
@@ -57,12 +57,17 @@ public class KinesisRecorderConfigTest {
     @Test
     public void copyConstructor() {
         KinesisRecorderConfig kConfig = new KinesisRecorderConfig();
-        kConfig.withMaxStorageSize(5);
+        kConfig.withMaxStorageSize(5).withMaxBatchRecords(500).withMaxBatchBytes(1024)
+                .withMaxConcurrentBatches(4).withPreserveStreamOrder(true);
 
         KinesisRecorderConfig copiedConfig = new KinesisRecorderConfig(kConfig);
 
         assertEquals(kConfig.getMaxStorageSize(),
                 copiedConfig.getMaxStorageSize());
+        assertEquals(500, copiedConfig.getMaxBatchRecords());
+        assertEquals(1024, copiedConfig.getMaxBatchBytes());
+        assertEquals(4, copiedConfig.getMaxConcurrentBatches());
+        assertEquals(true, copiedConfig.isPreserveStreamOrder());
 
     }
 
@@ -72,6 +77,19 @@ public class KinesisRecorderConfigTest {
         KinesisRecorderConfig kConfig = new KinesisRecorderConfig();
         kConfig.withMaxStorageSize(100);
         assertEquals(kConfig.getMaxStorageSize(), 100);
+        assertEquals(128, kConfig.getMaxBatchRecords());
+        assertEquals(512 * 1024, kConfig.getMaxBatchBytes());
+        assertEquals(1, kConfig.getMaxConcurrentBatches());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxBatchRecordsOverServiceLimit() {
+        new KinesisRecorderConfig().withMaxBatchRecords(501);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxBatchBytesOverServiceLimit() {
+        new KinesisRecorderConfig().withMaxBatchBytes(5 * 1024 * 1024 + 1);
     }
 
 }
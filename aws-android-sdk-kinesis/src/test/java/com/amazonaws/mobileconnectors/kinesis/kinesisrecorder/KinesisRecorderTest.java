@@ -100,13 +100,11 @@ public class KinesisRecorderTest {
         recorder = new KinesisRecorder(directory, Regions.US_EAST_1, provider);
         Thread.sleep(1000);
         RecordIterator iterator = recorder.recordStore.iterator();
-        FileRecordParser frp = new FileRecordParser();
         int count = 0;
         while (iterator.hasNext()) {
             count++;
-            frp.parse(iterator.next());
-            assertEquals("same stream", streamName, frp.streamName);
-            assertEquals("same data length", length, frp.bytes.length);
+            assertEquals("same stream", streamName, iterator.peekStreamName());
+            assertEquals("same data length", length, iterator.nextData().length);
         }
         assertEquals("has 10 records from upgrade", 10, count);
     }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public class RetryQueueTest {
+
+    private static final String RECORD_FILE_NAME = "records_retry";
+    private static final long MAX_STORAGE_SIZE = 1024 * 1024;
+    private static final Set<String> NO_STREAMS = Collections.emptySet();
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = temp.newFolder();
+    }
+
+    @Test
+    public void testPollGroupsRecordsByStream() throws IOException {
+        RetryQueue queue = newQueue();
+        queue.add("a", Arrays.asList(bytes("a1"), bytes("a2")), null, 0);
+        queue.add("b", Arrays.asList(bytes("b1")), null, 0);
+        queue.add("a", Arrays.asList(bytes("a3")), null, 0);
+
+        List<RetryQueue.Entry> batch = queue.poll(0, 10, 1024, 0, NO_STREAMS);
+        assertEquals(3, batch.size());
+        assertEquals("a3", string(batch.get(2).data));
+        batch = queue.poll(0, 10, 1024, 0, NO_STREAMS);
+        assertEquals(1, batch.size());
+        assertEquals("b", batch.get(0).streamName);
+        assertNull(queue.poll(0, 10, 1024, 0, NO_STREAMS));
+    }
+
+    @Test
+    public void testPollCountsRecordOverhead() throws IOException {
+        RetryQueue queue = newQueue();
+        queue.add("a", Arrays.asList(bytes("a1"), bytes("a2"), bytes("a3")), null, 0);
+
+        // each record counts for 2 bytes of data and 3 bytes of overhead
+        assertEquals(2, queue.poll(0, 10, 10, 3, NO_STREAMS).size());
+        assertEquals(1, queue.poll(0, 10, 10, 3, NO_STREAMS).size());
+    }
+
+    @Test
+    public void testPollSkipsExcludedStreams() throws IOException {
+        RetryQueue queue = newQueue();
+        queue.add("a", Arrays.asList(bytes("a1")), null, 0);
+        queue.add("b", Arrays.asList(bytes("b1")), null, 0);
+
+        List<RetryQueue.Entry> batch = queue.poll(0, 10, 1024, 0,
+                Collections.singleton("a"));
+        assertEquals("b", batch.get(0).streamName);
+    }
+
+    @Test
+    public void testThrottledRecordsBackOff() throws IOException {
+        RetryQueue queue = newQueue();
+        byte[] data = bytes("a1");
+        List<byte[]> failures = Arrays.asList(data);
+        queue.add("a", failures, failures, 0);
+        RetryQueue.Entry entry = queue.poll(Long.MAX_VALUE, 10, 1024, 0, NO_STREAMS).get(0);
+        assertTrue(entry.notBefore <= RetryQueue.BASE_BACKOFF_MILLIS);
+
+        for (int i = 0; i < 20; i++) {
+            queue.complete(Arrays.asList(entry), failures, failures, 0);
+            entry = queue.poll(Long.MAX_VALUE, 10, 1024, 0, NO_STREAMS).get(0);
+            assertTrue(entry.notBefore <= RetryQueue.MAX_BACKOFF_MILLIS);
+        }
+        assertEquals(21, entry.throttledCount);
+
+        // a failure which isn't throttling is sent again right away
+        queue.complete(Arrays.asList(entry), failures, null, 100);
+        assertSame(entry, queue.poll(100, 10, 1024, 0, NO_STREAMS).get(0));
+        assertEquals(0, entry.throttledCount);
+    }
+
+    @Test
+    public void testRecordsFailingAgainAreNotWrittenAgain() throws IOException {
+        RetryQueue queue = newQueue();
+        List<byte[]> failures = Arrays.asList(bytes("a1"), bytes("a2"));
+        queue.add("a", failures, null, 0);
+        long size = queue.getJournalSize();
+        assertTrue(size > 0);
+
+        List<RetryQueue.Entry> batch = queue.poll(0, 10, 1024, 0, NO_STREAMS);
+        queue.complete(batch, failures, null, 0);
+        assertEquals(size, queue.getJournalSize());
+        assertEquals(2, queue.size());
+
+        // the journal is cleared once all records went through
+        batch = queue.poll(0, 10, 1024, 0, NO_STREAMS);
+        queue.complete(batch, new ArrayList<byte[]>(), null, 0);
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getJournalSize());
+    }
+
+    @Test
+    public void testJournalIsCheckpointedAsBatchesGoThrough() throws IOException {
+        RetryQueue queue = newQueue();
+        queue.add("a", Arrays.asList(bytes("a1"), bytes("a2")), null, 0);
+        queue.add("b", Arrays.asList(bytes("b1")), null, 0);
+
+        List<RetryQueue.Entry> first = queue.poll(0, 10, 1024, 0, NO_STREAMS);
+        List<RetryQueue.Entry> second = queue.poll(0, 10, 1024, 0, NO_STREAMS);
+        // b1 went through while a1 and a2 are in flight
+        queue.complete(second, new ArrayList<byte[]>(), null, 0);
+        assertEquals(2, newQueue().size());
+
+        // a1 went through, a2 failed again
+        long size = queue.getJournalSize();
+        queue.complete(first, Arrays.asList(first.get(1).data), null, 0);
+        assertTrue(queue.getJournalSize() < size);
+
+        // only the record left is loaded again
+        RetryQueue reloaded = newQueue();
+        assertEquals(1, reloaded.size());
+        assertEquals("a2", string(reloaded.poll(0, 10, 1024, 0, NO_STREAMS).get(0).data));
+
+        queue.complete(queue.poll(0, 10, 1024, 0, NO_STREAMS), new ArrayList<byte[]>(), null, 0);
+        assertEquals(0, queue.getJournalSize());
+    }
+
+    @Test
+    public void testRecordsAreLoadedFromJournal() throws IOException {
+        RetryQueue queue = newQueue();
+        queue.add("a", Arrays.asList(bytes("a1")), null, 0);
+        queue.add("b", Arrays.asList(bytes("b1")), null, 0);
+
+        queue = newQueue();
+        assertEquals(2, queue.size());
+        List<RetryQueue.Entry> batch = queue.poll(0, 10, 1024, 0, NO_STREAMS);
+        assertEquals("a", batch.get(0).streamName);
+        assertEquals("a1", string(batch.get(0).data));
+
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertEquals(0, newQueue().size());
+    }
+
+    private RetryQueue newQueue() {
+        return new RetryQueue(new FileRecordStore(directory, RECORD_FILE_NAME,
+                MAX_STORAGE_SIZE));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StringUtils.UTF8);
+    }
+
+    private static String string(byte[] data) {
+        return new String(data, StringUtils.UTF8);
+    }
+}
@@ -257,7 +257,7 @@ public class AWSKMSClient extends AmazonWebServiceClient implements AWSKMS {
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AWSKMSClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
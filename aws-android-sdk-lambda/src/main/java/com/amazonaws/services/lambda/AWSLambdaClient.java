@@ -168,7 +168,7 @@ public class AWSLambdaClient extends AmazonWebServiceClient implements AWSLambda
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AWSLambdaClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -161,7 +161,7 @@ public class AmazonMachineLearningClient extends AmazonWebServiceClient implemen
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AmazonMachineLearningClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -48,6 +48,38 @@ public final class StringUtil {
         return string == null || string.trim().length() == 0;
     }
 
+    /**
+     * Returns the number of bytes of the UTF-8 encoding of a string, without
+     * encoding it.
+     *
+     * @param string a string
+     * @return the encoded length in bytes, 0 if the string is null
+     */
+    public static int utf8Length(final String string) {
+        if (string == null) {
+            return 0;
+        }
+        int length = 0;
+        final int count = string.length();
+        for (int i = 0; i < count; i++) {
+            final char c = string.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < count
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                // a supplementary character takes 4 bytes
+                length += 4;
+                i++;
+            } else {
+                // unpaired surrogates are encoded as '?'
+                length += c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
     /**
      * Converts an input stream into a string value.
      *
@@ -153,10 +153,23 @@ public class DefaultDeliveryClient implements DeliveryClient {
                     calculateAndSetAverageWriteEventTime(origEventsProcessed,
                             startEnqueueTimeMillis);
                 }
+                // events put while others are queued are written together
+                if (!hasQueuedEvents()) {
+                    try {
+                        eventStore.flush();
+                    } catch (EventStoreException e) {
+                        Log.w(TAG, "Events failed to be written to local filestore", e);
+                    }
+                }
             }
         });
     }
 
+    private boolean hasQueuedEvents() {
+        return eventsRunnableQueue instanceof ThreadPoolExecutor
+                && !((ThreadPoolExecutor) eventsRunnableQueue).getQueue().isEmpty();
+    }
+
     private void calculateAndSetAverageWriteEventTime(long origEventsProcessed,
             long enqueueTimeMillis) {
         long currentEventsProcessed = eventsProcessed.addAndGet(1L);
@@ -204,11 +217,13 @@ public class DefaultDeliveryClient implements DeliveryClient {
     }
 
     /**
-     * Gets the next array of json objects to submit, up to the max number of
-     * events These events will be removed from the iterator
+     * Gets the next array of json objects to submit, up to the max request
+     * size. The size of an event is the length of its UTF-8 encoded JSON. An
+     * event larger than the max request size is submitted on its own. These
+     * events will be removed from the iterator
      *
-     * @param itr
-     * @param maxNumOfEvents
+     * @param iter
+     * @param maxRequestSize max total size of the events in bytes
      * @return JSONArray the array of events
      * @throws JSONException
      */
@@ -220,11 +235,13 @@ public class DefaultDeliveryClient implements DeliveryClient {
         }
 
         long currentRequestSize = 0;
-        long eventLength = (iter.peek() != null) ? iter.peek().length() : 0L;
         JSONArray eventArray = new JSONArray();
-        while (currentRequestSize + eventLength <= maxRequestSize && iter.hasNext()) {
+        while (iter.hasNext()) {
+            long eventLength = StringUtil.utf8Length(iter.peek());
+            if (eventArray.length() > 0 && currentRequestSize + eventLength > maxRequestSize) {
+                break;
+            }
             currentRequestSize += eventLength;
-            eventLength = (iter.peek() != null) ? iter.peek().length() : 0L;
             eventArray.put(new JSONObject(iter.next()));
         }
 
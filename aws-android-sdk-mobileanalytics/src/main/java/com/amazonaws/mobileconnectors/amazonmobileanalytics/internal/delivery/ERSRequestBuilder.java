@@ -39,10 +39,16 @@ public class ERSRequestBuilder {
 
     private static final String TAG = "ERSRequestBuilder";
 
+    /**
+     * Creates a request to submit stored events. The marshaller writes the
+     * events of the request as gzip compressed JSON.
+     *
+     * @param events the stored events
+     * @param networkType the type of network the request is sent over
+     * @return the request
+     */
     public PutEventsRequest createRecordEventsRequest(JSONArray events, String networkType) {
-
-        String body = events.toString();
-        if (body == null) {
+        if (events == null) {
             return null;
         }
 
@@ -50,7 +56,7 @@ public class ERSRequestBuilder {
         List<Event> eventList = new ArrayList<Event>();
         JSONEventAdapter eventAdapter = new JSONEventAdapter();
 
-        ClientContext clientContext = null;
+        InternalEvent lastEvent = null;
         for (int i = 0; i < events.length(); i++) {
             JSONObject eventJSON = null;
             InternalEvent internalEvent = null;
@@ -61,7 +67,7 @@ public class ERSRequestBuilder {
                 Log.e(TAG, "Stored event was invalid JSON", e);
                 continue;
             }
-            clientContext = internalEvent.createClientContext(networkType);
+            lastEvent = internalEvent;
             Event event = new Event();
             Session session = new Session();
             session.withId(internalEvent.getSessionId());
@@ -86,6 +92,9 @@ public class ERSRequestBuilder {
             eventList.add(event);
         }
 
+        // the client context is the one of the last event
+        ClientContext clientContext = lastEvent != null ? lastEvent
+                .createClientContext(networkType) : null;
         if (clientContext != null && eventList.size() > 0) {
             putRequest.withEvents(eventList).withClientContext(
                     Base64.encodeAsString(clientContext.toJSONObject().toString()
@@ -20,6 +20,12 @@ import java.util.Iterator;
 public interface EventStore {
     public boolean put(final String event) throws EventStoreException;
 
+    /**
+     * Writes the events put so far to storage. A store may buffer events
+     * until this is called.
+     */
+    public void flush() throws EventStoreException;
+
     public EventIterator iterator();
 
     public static interface EventIterator extends Iterator<String> {
@@ -21,32 +21,92 @@ import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.Analyt
 import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.system.FileManager;
 import com.amazonaws.util.StringUtils;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Stores events as lines of UTF-8 JSON in a sequence of segment files. Events
+ * are appended to the last segment, and a new segment is started once it
+ * reaches {@link #SEGMENT_SIZE}. Submitted events aren't removed from the
+ * files; instead a checkpoint records the position after the last submitted
+ * event, and segments before it are deleted. The segments and their sizes are
+ * indexed in memory, so neither appending nor removing reads the files.
+ * <p>
+ * Appended events are buffered until {@link #flush()} is called, the buffer is
+ * full, or the events are read.
+ */
 public class FileEventStore implements EventStore {
     private static final String TAG = "FileEventStore";
     static final String EVENTS_DIRECTORY = "events";
     static final String EVENT_FILE_NAME = "eventsFile";
     static final String KEY_MAX_STORAGE_SIZE = "maxStorageSize";
     static final double ERROR_LENGTH_THRESHOLD_PERCENTAGE = 1.1;
-    private final ReentrantLock accessLock = new ReentrantLock(true);
+    static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    /** Size in bytes after which a new segment is started **/
+    static final long SEGMENT_SIZE = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final ReentrantLock accessLock = new ReentrantLock();
 
     static long MAX_STORAGE_SIZE = 1024 * 1024 * 5L;
 
     private final AnalyticsContext context;
-    private File eventsFile;
+    private File eventsDir;
+
+    /**
+     * Segments which haven't been removed, oldest first. The last one is the
+     * active segment events are appended to.
+     */
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+
+    /** Appends to the active segment, opened on the first put **/
+    private OutputStream output;
+
+    /**
+     * Whether the active segment was written before the store was opened. It
+     * may end with a partially written event, so a new segment is started
+     * instead of appending to it.
+     */
+    private boolean sealActiveSegment;
+
+    /** Position after the last removed event **/
+    private long checkpointSegment;
+    private long checkpointOffset;
+
+    /** Bytes of the events which haven't been removed **/
+    private long storedBytes;
+
+    /**
+     * A segment file and its length, including the bytes which are still
+     * buffered.
+     */
+    private static final class Segment {
+        final long number;
+        final File file;
+        long length;
+
+        Segment(long number, File file, long length) {
+            this.number = number;
+            this.file = file;
+            this.length = length;
+        }
+    }
 
     public static FileEventStore newInstance(final AnalyticsContext context) {
         return new FileEventStore(context);
@@ -54,256 +114,374 @@ public class FileEventStore implements EventStore {
 
     public FileEventStore(final AnalyticsContext context) {
         this.context = context;
-        tryCreateEventsFile();
+        open();
     }
 
     @Override
     public boolean put(final String event) throws EventStoreException {
-        boolean success = false;
-        BufferedWriter writer = null;
+        final byte[] bytes = (event + "\n").getBytes(StringUtils.UTF8);
+        final long maxStorageSize = context.getConfiguration().optLong(
+                KEY_MAX_STORAGE_SIZE, MAX_STORAGE_SIZE);
 
         accessLock.lock();
         try {
-            writer = tryInitializeWriter();
-            if (writer != null) {
-                final long maxStorageSize = context.getConfiguration().optLong(
-                        KEY_MAX_STORAGE_SIZE, MAX_STORAGE_SIZE);
-                if (eventsFile.length() + event.length() <= maxStorageSize) {
-                    writer.write(event);
-                    writer.newLine();
-                    writer.flush();
-                    success = true;
-                }
+            if (storedBytes + bytes.length > maxStorageSize) {
+                return false;
             }
+            Segment active = segments.getLast();
+            if (sealActiveSegment || active.length >= SEGMENT_SIZE) {
+                active = roll();
+            }
+            if (output == null) {
+                output = new BufferedOutputStream(context.getSystem().getFileManager()
+                        .newOutputStream(active.file, true), BUFFER_SIZE);
+            }
+            output.write(bytes);
+            active.length += bytes.length;
+            storedBytes += bytes.length;
+            return true;
         } catch (IOException e) {
             Log.e(TAG, "Failed to persist the event", e);
+            closeOutput();
+            return false;
         } finally {
-            tryCloseWriter(writer);
             accessLock.unlock();
         }
+    }
 
-        return success;
+    @Override
+    public void flush() throws EventStoreException {
+        accessLock.lock();
+        try {
+            flushOutput();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to flush the events", e);
+            closeOutput();
+            throw new EventStoreException("Unable to flush the events", e);
+        } finally {
+            accessLock.unlock();
+        }
     }
 
-    private boolean tryCreateEventsFile() {
-        if (eventsFile != null && eventsFile.exists()) {
-            return true;
+    /**
+     * Returns the number of bytes of the events which haven't been removed.
+     */
+    long getStoredBytes() {
+        accessLock.lock();
+        try {
+            return storedBytes;
+        } finally {
+            accessLock.unlock();
         }
+    }
 
-        synchronized (this) {
-            if (eventsFile != null && eventsFile.exists()) {
-                return true;
+    /**
+     * Lists the segments and reads the checkpoint.
+     */
+    private void open() {
+        FileManager fileManager = context.getSystem().getFileManager();
+        eventsDir = fileManager.createDirectory(EVENTS_DIRECTORY);
+        List<Long> numbers = new ArrayList<Long>();
+        for (File file : fileManager.listFilesInDirectory(eventsDir)) {
+            long number = segmentNumber(file.getName());
+            if (number >= 0) {
+                numbers.add(number);
             }
-
+        }
+        Collections.sort(numbers);
+        for (long number : numbers) {
+            File file = segmentFile(number);
+            segments.add(new Segment(number, file, file.length()));
+        }
+        if (segments.isEmpty()) {
+            File file = segmentFile(0);
             try {
-                FileManager fileManager = context.getSystem().getFileManager();
-                File eventsDir = fileManager.createDirectory(EVENTS_DIRECTORY);
-                eventsFile = fileManager.createFile(new File(eventsDir, EVENT_FILE_NAME));
-                return true;
+                fileManager.createFile(file);
             } catch (IOException e) {
-                Log.e(TAG, "Unable to open events file");
-                Log.e(TAG, "An error occurred while attempting to create/open the events file", e);
+                Log.e(TAG, "An error occurred while attempting to create/open the events file",
+                        e);
             }
-            return false;
+            segments.add(new Segment(0, file, 0));
+        }
+        sealActiveSegment = segments.getLast().length > 0;
+
+        readCheckpoint();
+        if (checkpointSegment < segments.getFirst().number
+                || checkpointSegment > segments.getLast().number) {
+            checkpointSegment = segments.getFirst().number;
+            checkpointOffset = 0;
+        }
+        // delete the segments removed before they could be deleted
+        while (segments.size() > 1 && segments.getFirst().number < checkpointSegment) {
+            deleteSegment(segments.removeFirst());
         }
+        storedBytes = 0;
+        for (Segment segment : segments) {
+            storedBytes += segment.length;
+        }
+        storedBytes -= Math.min(checkpointOffset, segments.getFirst().length);
     }
 
-    private BufferedWriter tryInitializeWriter() throws EventStoreException {
-        BufferedWriter writer = null;
+    private void readCheckpoint() {
+        File file = checkpointFile();
+        if (!file.exists()) {
+            return;
+        }
+        DataInputStream in = null;
         try {
-            if (tryCreateEventsFile()) {
-                OutputStream stream = context.getSystem().getFileManager()
-                        .newOutputStream(eventsFile, true);
-                writer = new BufferedWriter(new OutputStreamWriter(stream, StringUtils.UTF8));
-            } else {
-                throw new EventStoreException("Unable to create eventsFile");
-            }
-        } catch (EventStoreException e) {
-            throw e;
-        } catch (FileNotFoundException e) {
-            Log.e(TAG, "Events file not found to persist event to", e);
-            throw new EventStoreException("Unable to open events file writer", e);
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected exception", e);
-            throw new EventStoreException("Unexpected error while creating eventsFile writer", e);
+            in = new DataInputStream(context.getSystem().getFileManager().newInputStream(file));
+            checkpointSegment = in.readLong();
+            checkpointOffset = in.readLong();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read the events checkpoint, events may be sent again", e);
+            checkpointSegment = 0;
+            checkpointOffset = 0;
+        } finally {
+            closeQuietly(in);
         }
-        return writer;
     }
 
-    private void tryCloseWriter(final Writer writer) throws EventStoreException {
-        if (writer != null) {
-            try {
-                writer.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Unable to close writer for events file", e);
+    private void writeCheckpoint() throws IOException {
+        FileManager fileManager = context.getSystem().getFileManager();
+        File tempFile = new File(eventsDir, EVENT_FILE_NAME + CHECKPOINT_SUFFIX + ".tmp");
+        DataOutputStream out = new DataOutputStream(fileManager.newOutputStream(tempFile, false));
+        try {
+            out.writeLong(checkpointSegment);
+            out.writeLong(checkpointOffset);
+        } finally {
+            out.close();
+        }
+        File file = checkpointFile();
+        if (!tempFile.renameTo(file)) {
+            fileManager.deleteFile(file);
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to rename the events checkpoint");
             }
         }
     }
 
-    private File deleteReadEvents(final int lineNumber) {
-        // Write all events after line number to a temporary file
-        FileManager fileManager = context.getSystem().getFileManager();
-        File eventsDir = fileManager.createDirectory(EVENTS_DIRECTORY);
+    /**
+     * Starts a new segment and returns it.
+     */
+    private Segment roll() throws IOException {
+        closeOutput();
+        long number = segments.getLast().number + 1;
+        File file = context.getSystem().getFileManager().createFile(segmentFile(number));
+        Segment segment = new Segment(number, file, 0);
+        segments.add(segment);
+        sealActiveSegment = false;
+        return segment;
+    }
 
-        File tempEventsFile = null;
-        try {
-            File tempFile = new File(eventsDir, EVENT_FILE_NAME + ".tmp");
-            if (tempFile.exists()) {
-                if (!tempFile.delete()) {
-                    Log.e(TAG, "Failed to delete previous temp file");
-                }
+    private void flushOutput() throws IOException {
+        if (output != null) {
+            output.flush();
+        }
+    }
+
+    private void closeOutput() {
+        closeQuietly(output);
+        output = null;
+    }
+
+    /**
+     * Removes the events before a position. Segments which only hold removed
+     * events are deleted.
+     */
+    private void deleteReadEvents(long segmentNumber, long offset) {
+        if (segmentNumber < checkpointSegment
+                || segmentNumber == checkpointSegment && offset <= checkpointOffset) {
+            return;
+        }
+        long removedBytes = offset - checkpointOffset;
+        for (Segment segment : segments) {
+            if (segment.number >= segmentNumber) {
+                break;
             }
-            tempEventsFile = fileManager.createFile(tempFile);
+            if (segment.number >= checkpointSegment) {
+                removedBytes += segment.length;
+            }
+        }
+        checkpointSegment = segmentNumber;
+        checkpointOffset = offset;
+        storedBytes -= removedBytes;
+        try {
+            writeCheckpoint();
         } catch (IOException e) {
-            Log.e(TAG,
-                    "An error occurred while attempting to create/open the temporary events file",
-                    e);
-            return eventsFile;
+            Log.e(TAG, "Unable to write the events checkpoint, events may be sent again", e);
         }
+        while (segments.getFirst().number < checkpointSegment) {
+            deleteSegment(segments.removeFirst());
+        }
+    }
 
-        boolean errorsOccurred = false;
-        if (tempEventsFile != null && eventsFile.exists() && tempEventsFile.exists()) {
-            BufferedReader reader = null;
-            PrintWriter writer = null;
-            try {
-                reader = new BufferedReader(new FileReader(eventsFile));
-                writer = new PrintWriter(new FileWriter(tempEventsFile, true));
-
-                String line = null;
-                int currentLineNumber = 0;
-                while ((line = reader.readLine()) != null) {
-                    currentLineNumber++;
-                    if (currentLineNumber > lineNumber) {
-                        writer.println(line);
-                        writer.flush();
-                    }
-                }
-            } catch (FileNotFoundException e) {
-                errorsOccurred = true;
-                Log.e(TAG, "The events file count not be found", e);
-            } catch (IOException e) {
-                Log.e(TAG, "An error occurred while attempting to delete the read events", e);
-                errorsOccurred = true;
-            } finally {
-                if (writer != null) {
-                    writer.close();
-                }
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
+    private void deleteSegment(Segment segment) {
+        if (!context.getSystem().getFileManager().deleteFile(segment.file)) {
+            Log.e(TAG, "Failed to delete events file " + segment.file.getName());
+        }
+    }
 
-                    }
-                }
+    private File segmentFile(long number) {
+        return new File(eventsDir, number == 0 ? EVENT_FILE_NAME : EVENT_FILE_NAME + "."
+                + number);
+    }
 
-                if (!errorsOccurred) {
-                    if (eventsFile.delete()) {
-                        if (!tempEventsFile.renameTo(eventsFile)) {
-                            Log.e(TAG, "Failed to rename temp file to events file");
-                        }
-                        try {
-                            eventsFile = fileManager
-                                    .createFile(new File(eventsDir, EVENT_FILE_NAME));
-                        } catch (IOException e) {
-                            Log.e(TAG,
-                                    "An error occurred while attempting to create the eventsFile",
-                                    e);
-                        }
-                    } else {
-                        Log.e(TAG, "Failed to delete previous events file");
-                    }
-                }
-            }
+    private File checkpointFile() {
+        return new File(eventsDir, EVENT_FILE_NAME + CHECKPOINT_SUFFIX);
+    }
 
-            File tempFile = new File(eventsDir, EVENT_FILE_NAME + ".tmp");
-            if (tempFile.exists()) {
-                if (!tempFile.delete()) {
-                    Log.e(TAG, "Failed to delete temp file");
-                }
+    /**
+     * Returns the number of the segment of the given file name, or -1 if it
+     * isn't a segment.
+     */
+    private static long segmentNumber(String fileName) {
+        if (fileName.equals(EVENT_FILE_NAME)) {
+            return 0;
+        }
+        if (!fileName.startsWith(EVENT_FILE_NAME + ".")) {
+            return -1;
+        }
+        try {
+            long number = Long.parseLong(fileName.substring(EVENT_FILE_NAME.length() + 1));
+            return number > 0 ? number : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to close events file", e);
             }
         }
-        return eventsFile;
     }
 
     @Override
     public EventIterator iterator() {
         return new EventIterator() {
-            int linesRead = 0;
+            /** Position after the last event returned **/
+            long readSegment = -1;
+            long readOffset;
+            /** Event read ahead and the position after it **/
             String nextBuffer = null;
-            BufferedReader reader = null;
-            boolean isEndOfFile = false;
-
-            private boolean tryOpenReader() {
-                if (reader != null) {
-                    return true;
+            long nextSegment;
+            long nextOffset;
+            InputStream in = null;
+            /** Position after the last event read ahead **/
+            long inSegment;
+            long inOffset;
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+            /**
+             * Reads the next event into the buffer, returns false if there is
+             * none.
+             */
+            private boolean readNext() {
+                if (readSegment < 0) {
+                    readSegment = checkpointSegment;
+                    readOffset = checkpointOffset;
+                    inSegment = readSegment;
+                    inOffset = readOffset;
                 }
-
-                if (!isEndOfFile) {
-                    InputStreamReader streamReader = null;
-                    try {
-                        streamReader = new InputStreamReader(context.getSystem().getFileManager()
-                                .newInputStream(eventsFile), StringUtils.UTF8);
-                    } catch (FileNotFoundException e) {
-                        Log.e(TAG, "Could not open the events file", e);
+                try {
+                    flushOutput();
+                    while (true) {
+                        if (in == null && !tryOpenReader()) {
+                            return false;
+                        }
+                        line.reset();
+                        long offset = inOffset;
+                        int b;
+                        while ((b = in.read()) >= 0) {
+                            offset++;
+                            if (b == '\n') {
+                                break;
+                            }
+                            line.write(b);
+                        }
+                        if (b == '\n') {
+                            inOffset = offset;
+                            nextBuffer = new String(line.toByteArray(), StringUtils.UTF8);
+                            nextSegment = inSegment;
+                            nextOffset = inOffset;
+                            return true;
+                        }
+                        // end of the segment, a partial line is left for when
+                        // it's written completely
+                        tryCloseReader();
+                        if (inSegment == segments.getLast().number) {
+                            return false;
+                        }
+                        inSegment = nextSegmentNumber(inSegment);
+                        inOffset = 0;
                     }
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to read the events file", e);
+                    tryCloseReader();
+                    return false;
+                }
+            }
 
-                    if (streamReader != null) {
-                        reader = new BufferedReader(streamReader);
-                        return true;
+            private boolean tryOpenReader() throws IOException {
+                if (inSegment < checkpointSegment) {
+                    inSegment = checkpointSegment;
+                    inOffset = checkpointOffset;
+                }
+                Segment segment = null;
+                for (Segment s : segments) {
+                    if (s.number >= inSegment) {
+                        segment = s;
+                        break;
                     }
                 }
-                return false;
+                if (segment == null) {
+                    return false;
+                }
+                if (segment.number != inSegment) {
+                    inSegment = segment.number;
+                    inOffset = 0;
+                }
+                try {
+                    in = new BufferedInputStream(context.getSystem().getFileManager()
+                            .newInputStream(segment.file), BUFFER_SIZE);
+                } catch (FileNotFoundException e) {
+                    Log.e(TAG, "Could not open the events file", e);
+                    return false;
+                }
+                long skipped = 0;
+                while (skipped < inOffset) {
+                    long n = in.skip(inOffset - skipped);
+                    if (n <= 0) {
+                        break;
+                    }
+                    skipped += n;
+                }
+                inOffset = skipped;
+                return true;
             }
 
-            private void tryCloseReader() {
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException ioe) {
-                        Log.e(TAG, "Unable to close reader for events file", ioe);
-                    } finally {
-                        reader = null;
+            private long nextSegmentNumber(long number) {
+                for (Segment segment : segments) {
+                    if (segment.number > number) {
+                        return segment.number;
                     }
                 }
+                return number + 1;
+            }
+
+            private void tryCloseReader() {
+                closeQuietly(in);
+                in = null;
             }
 
             @Override
             public boolean hasNext() {
-                boolean hasNext = false;
                 accessLock.lock();
                 try {
-                    // If there is something already buffered then there is a
-                    // next
-                    if (nextBuffer != null) {
-                        hasNext = true;
-                    } else {
-                        if (!tryOpenReader()) {
-                            return hasNext;
-                        }
-                        // Nothing was previously buffered so try to read one
-                        // more line
-                        boolean found = false;
-                        while (!found) {
-                            try {
-                                nextBuffer = reader.readLine();
-                                found = true;
-                            } catch (IOException e) {
-                                nextBuffer = null;
-                                found = true;
-                            }
-                        }
-                        if (nextBuffer != null) {
-                            // There was at least one more line so there is a
-                            // next
-                            hasNext = true;
-                        } else {
-                            // The next line was null so it should be the end of
-                            // the file. Try to close the reader
-                            isEndOfFile = true;
-                            tryCloseReader();
-                        }
-                    }
-                    return hasNext;
+                    return nextBuffer != null || readNext();
                 } finally {
                     accessLock.unlock();
                 }
@@ -311,34 +489,15 @@ public class FileEventStore implements EventStore {
 
             @Override
             public String next() {
-                String next = null;
                 accessLock.lock();
                 try {
-                    if (nextBuffer != null) {
-                        next = nextBuffer;
-                        linesRead++;
-                        nextBuffer = null;
-                    } else {
-                        if (!tryOpenReader()) {
-                            return next;
-                        }
-                        boolean found = false;
-                        while (!found) {
-                            try {
-                                next = reader.readLine();
-                                found = true;
-                            } catch (IOException e) {
-                                next = null;
-                                found = true;
-                            }
-                        }
-                        if (next != null) {
-                            linesRead++;
-                        } else {
-                            isEndOfFile = true;
-                            tryCloseReader();
-                        }
+                    if (nextBuffer == null && !readNext()) {
+                        return null;
                     }
+                    String next = nextBuffer;
+                    nextBuffer = null;
+                    readSegment = nextSegment;
+                    readOffset = nextOffset;
                     return next;
                 } finally {
                     accessLock.unlock();
@@ -366,7 +525,9 @@ public class FileEventStore implements EventStore {
             public void removeReadEvents() {
                 accessLock.lock();
                 try {
-                    deleteReadEvents(linesRead);
+                    if (readSegment >= 0) {
+                        deleteReadEvents(readSegment, readOffset);
+                    }
                     resetReader();
                 } finally {
                     accessLock.unlock();
@@ -375,7 +536,7 @@ public class FileEventStore implements EventStore {
 
             private void resetReader() {
                 tryCloseReader();
-                linesRead = 0;
+                readSegment = -1;
                 nextBuffer = null;
             }
         };
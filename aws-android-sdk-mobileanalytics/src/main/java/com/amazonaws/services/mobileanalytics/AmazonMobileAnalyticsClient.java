@@ -159,7 +159,7 @@ public class AmazonMobileAnalyticsClient extends AmazonWebServiceClient implemen
      *                       (ex: proxy settings, retry counts, etc.).
      */
     public AmazonMobileAnalyticsClient(AWSCredentialsProvider awsCredentialsProvider, ClientConfiguration clientConfiguration) {
-        this(awsCredentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(awsCredentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -53,6 +53,18 @@ public class StringUtilTest {
         assertFalse(StringUtil.isNullOrEmpty("abcde"));
     }
 
+    @Test
+    public void utf8Length_matches_encoded_length() {
+        String[] strings = {
+                "", "abc", "caf\u00e9", "\u20ac100", "\ud83d\ude00!", "a\ud83db"
+        };
+        for (String string : strings) {
+            assertEquals(string, string.getBytes(StringUtils.UTF8).length,
+                    StringUtil.utf8Length(string));
+        }
+        assertEquals(0, StringUtil.utf8Length(null));
+    }
+
     @Test
     public void isBlank_empty_string() {
         assertTrue(StringUtil.isBlank(""));
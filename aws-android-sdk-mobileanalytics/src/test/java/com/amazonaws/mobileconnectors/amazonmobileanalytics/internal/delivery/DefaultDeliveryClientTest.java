@@ -231,6 +231,33 @@ public class DefaultDeliveryClientTest extends MobileAnalyticsTestBase {
         verify(mockIterator, times(3)).removeReadEvents();
     }
 
+    @Test
+    public void getNextBatchToSubmit_multibyteEventsAreSizedInBytes() throws JSONException {
+        // 13 characters but 18 bytes in UTF-8, so two of them fit in 30
+        // characters but not in 30 bytes
+        final String multibyteEvent = "{\"v\":\"\u00e9\u00e9\u00e9\u00e9\u00e9\"}";
+        final String asciiEvent = "{\"v\":\"eeeee\"}";
+
+        EventIterator mockIterator = mock(EventIterator.class);
+        when(mockIterator.hasNext()).thenReturn(true, true, true, true, true, true, false);
+        when(mockIterator.peek()).thenReturn(multibyteEvent, multibyteEvent, multibyteEvent,
+                asciiEvent, asciiEvent);
+        when(mockIterator.next()).thenReturn(multibyteEvent, multibyteEvent, asciiEvent,
+                asciiEvent);
+
+        JSONArray firstBatch = target.getNextBatchToSubmit(mockIterator, 30L);
+        assertThat(firstBatch.length(), is(1));
+        assertThat(firstBatch.getJSONObject(0).getString("v"), is("\u00e9\u00e9\u00e9\u00e9\u00e9"));
+
+        // the second multibyte event would go over the limit with the ascii
+        // one after it, the two ascii events fit together
+        JSONArray secondBatch = target.getNextBatchToSubmit(mockIterator, 30L);
+        assertThat(secondBatch.length(), is(1));
+        JSONArray thirdBatch = target.getNextBatchToSubmit(mockIterator, 30L);
+        assertThat(thirdBatch.length(), is(2));
+        verify(mockIterator, times(4)).next();
+    }
+
     @Test
     public void attemptDelivery_submissionTimePolicyPreventsSubmission() {
 
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.delivery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.MobileAnalyticsTestBase;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.AnalyticsContext;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.configuration.Configuration;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.core.system.DefaultFileManager;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.internal.delivery.EventStore.EventIterator;
+import com.amazonaws.mobileconnectors.amazonmobileanalytics.utils.AnalyticsContextBuilder;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FileEventStoreTest extends MobileAnalyticsTestBase {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Configuration mockConfig = Mockito.mock(Configuration.class);
+    private AnalyticsContext context;
+    private File eventsDir;
+
+    @Before
+    public void setup() throws IOException {
+        File root = temp.newFolder();
+        eventsDir = new File(root, FileEventStore.EVENTS_DIRECTORY);
+        when(mockConfig.optLong(FileEventStore.KEY_MAX_STORAGE_SIZE,
+                FileEventStore.MAX_STORAGE_SIZE)).thenReturn(FileEventStore.MAX_STORAGE_SIZE);
+        context = new AnalyticsContextBuilder()
+                .withConfiguration(mockConfig)
+                .withFileManager(new DefaultFileManager(root))
+                .build();
+    }
+
+    @Test
+    public void putIterateAndRemove() throws EventStoreException {
+        FileEventStore store = new FileEventStore(context);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(store.put(event(i)));
+        }
+
+        EventIterator iter = store.iterator();
+        assertEquals(event(0), iter.peek());
+        assertEquals(event(0), iter.next());
+        assertEquals(event(1), iter.next());
+        iter.removeReadEvents();
+
+        assertEquals(event(2), iter.next());
+        assertFalse(iter.hasNext());
+        assertTrue(store.put(event(3)));
+        assertTrue(iter.hasNext());
+        assertEquals(event(3), iter.next());
+        iter.removeReadEvents();
+        assertEquals(0, store.getStoredBytes());
+        assertFalse(store.iterator().hasNext());
+    }
+
+    @Test
+    public void removedSegmentsAreDeleted() throws EventStoreException {
+        FileEventStore store = new FileEventStore(context);
+        int count = (int) (3 * FileEventStore.SEGMENT_SIZE / event(0).length());
+        for (int i = 0; i < count; i++) {
+            assertTrue(store.put(event(i)));
+        }
+        store.flush();
+        assertTrue(new File(eventsDir, FileEventStore.EVENT_FILE_NAME + ".3").exists());
+
+        EventIterator iter = store.iterator();
+        for (int i = 0; i < count - 10; i++) {
+            assertEquals(event(i), iter.next());
+        }
+        iter.removeReadEvents();
+        assertFalse(new File(eventsDir, FileEventStore.EVENT_FILE_NAME).exists());
+        assertFalse(new File(eventsDir, FileEventStore.EVENT_FILE_NAME + ".2").exists());
+
+        // a new store continues after the removed events
+        store = new FileEventStore(context);
+        assertEquals(10, readAll(store).size());
+        assertEquals(event(count - 10), readAll(store).get(0));
+        assertTrue(store.getStoredBytes() > 0);
+    }
+
+    @Test
+    public void readsEventsOfPreviousVersion() throws IOException, EventStoreException {
+        eventsDir.mkdirs();
+        OutputStream out = new FileOutputStream(new File(eventsDir,
+                FileEventStore.EVENT_FILE_NAME));
+        out.write((event(0) + "\n" + event(1) + "\n").getBytes(StringUtils.UTF8));
+        out.close();
+
+        FileEventStore store = new FileEventStore(context);
+        assertTrue(store.put(event(2)));
+        List<String> events = readAll(store);
+        assertEquals(3, events.size());
+        assertEquals(event(0), events.get(0));
+        assertEquals(event(2), events.get(2));
+    }
+
+    @Test
+    public void skipsPartiallyWrittenEvent() throws IOException, EventStoreException {
+        eventsDir.mkdirs();
+        OutputStream out = new FileOutputStream(new File(eventsDir,
+                FileEventStore.EVENT_FILE_NAME));
+        out.write((event(0) + "\n{\"partial").getBytes(StringUtils.UTF8));
+        out.close();
+
+        FileEventStore store = new FileEventStore(context);
+        assertEquals(1, readAll(store).size());
+        assertTrue(store.put(event(1)));
+        List<String> events = readAll(store);
+        assertEquals(2, events.size());
+        assertEquals(event(1), events.get(1));
+    }
+
+    @Test
+    public void putFailsWhenStorageIsFull() throws EventStoreException {
+        when(mockConfig.optLong(FileEventStore.KEY_MAX_STORAGE_SIZE,
+                FileEventStore.MAX_STORAGE_SIZE)).thenReturn(2L * (event(0).length() + 1));
+        FileEventStore store = new FileEventStore(context);
+        assertTrue(store.put(event(0)));
+        assertTrue(store.put(event(1)));
+        assertFalse(store.put(event(2)));
+
+        EventIterator iter = store.iterator();
+        iter.next();
+        iter.removeReadEvents();
+        assertTrue(store.put(event(2)));
+    }
+
+    private static String event(int i) {
+        return String.format("{\"event_type\":\"custom\",\"id\":%08d}", i);
+    }
+
+    private static List<String> readAll(EventStore store) {
+        List<String> events = new ArrayList<String>();
+        EventIterator iter = store.iterator();
+        while (iter.hasNext()) {
+            events.add(iter.next());
+        }
+        return events;
+    }
+}
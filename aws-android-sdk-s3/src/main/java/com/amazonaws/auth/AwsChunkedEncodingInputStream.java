@@ -41,7 +41,7 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
     private static final String CHUNK_STRING_TO_SIGN_PREFIX = "AWS4-HMAC-SHA256-PAYLOAD";
     private static final String CHUNK_SIGNATURE_HEADER = ";chunk-signature=";
     private static final int SIGNATURE_LENGTH = 64;
-    private static final byte[] FINAL_CHUNK = new byte[0];
+    private static final byte[] TRAILER = CLRF.getBytes(UTF8);
 
     private InputStream is = null;
     private final int maxBufferSize;
@@ -52,6 +52,9 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
     private String priorChunkSignature;
     private final AWS4Signer aws4Signer;
 
+    /** Buffer for the data of the current chunk, reused for every chunk */
+    private byte[] chunkData;
+
     /** Iterator on the current chunk that has been signed */
     private ChunkContentIterator currentChunkIterator;
 
@@ -276,7 +279,9 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
      * @return Returns true if next chunk is the last empty chunk.
      */
     private boolean setUpNextChunk() throws IOException {
-        byte[] chunkData = new byte[DEFAULT_CHUNK_SIZE];
+        if (chunkData == null) {
+            chunkData = new byte[DEFAULT_CHUNK_SIZE];
+        }
         int chunkSizeInBytes = 0;
         while (chunkSizeInBytes < DEFAULT_CHUNK_SIZE) {
             /** Read from the buffer of the decoded stream */
@@ -297,27 +302,19 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
                     break;
             }
         }
-        if (chunkSizeInBytes == 0) {
-            byte[] signedFinalChunk = createSignedChunk(FINAL_CHUNK);
-            currentChunkIterator = new ChunkContentIterator(signedFinalChunk);
-            return true;
-        }
-        else {
-            if (chunkSizeInBytes < chunkData.length) {
-                byte[] temp = new byte[chunkSizeInBytes];
-                System.arraycopy(chunkData, 0, temp, 0, chunkSizeInBytes);
-                chunkData = temp;
-            }
-            byte[] signedChunkContent = createSignedChunk(chunkData);
-            currentChunkIterator = new ChunkContentIterator(signedChunkContent);
-            return false;
-        }
+        currentChunkIterator = createSignedChunk(chunkData, chunkSizeInBytes);
+        return chunkSizeInBytes == 0;
     }
 
-    private byte[] createSignedChunk(byte[] chunkData) {
+    /**
+     * Signs the first chunkSizeInBytes bytes of the chunk buffer and returns
+     * an iterator over the signed chunk. The chunk data is not copied, so the
+     * buffer must not be refilled until the iterator is exhausted.
+     */
+    private ChunkContentIterator createSignedChunk(byte[] chunkData, int chunkSizeInBytes) {
         StringBuilder chunkHeader = new StringBuilder();
         // chunk-size
-        chunkHeader.append(Integer.toHexString(chunkData.length));
+        chunkHeader.append(Integer.toHexString(chunkSizeInBytes));
         // nonsig-extension
         String nonsigExtension = "";
         // sig-extension
@@ -327,7 +324,7 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
                         keyPath + "\n" +
                         priorChunkSignature + "\n" +
                         BinaryUtils.toHex(aws4Signer.hash(nonsigExtension)) + "\n" +
-                        BinaryUtils.toHex(aws4Signer.hash(chunkData));
+                        BinaryUtils.toHex(aws4Signer.hash(chunkData, 0, chunkSizeInBytes));
         String chunkSignature = BinaryUtils.toHex(aws4Signer.sign(chunkStringToSign, kSigning,
                 SigningAlgorithm.HmacSHA256));
         priorChunkSignature = chunkSignature;
@@ -336,14 +333,7 @@ public final class AwsChunkedEncodingInputStream extends SdkInputStream {
 
         try {
             byte[] header = chunkHeader.toString().getBytes(UTF8);
-            byte[] trailer = CLRF.getBytes(UTF8);
-            byte[] signedChunk = new byte[header.length + chunkData.length + trailer.length];
-            System.arraycopy(header, 0, signedChunk, 0, header.length);
-            System.arraycopy(chunkData, 0, signedChunk, header.length, chunkData.length);
-            System.arraycopy(trailer, 0,
-                    signedChunk, header.length + chunkData.length,
-                    trailer.length);
-            return signedChunk;
+            return new ChunkContentIterator(header, chunkData, chunkSizeInBytes, TRAILER);
         } catch (Exception e) {
             throw new AmazonClientException("Unable to sign the chunked data. " + e.getMessage(), e);
         }
@@ -15,17 +15,36 @@
 
 package com.amazonaws.auth;
 
+/**
+ * Iterates over a signed chunk made up of the chunk header, the chunk data and
+ * the trailer, without copying them into a single array.
+ */
 class ChunkContentIterator {
 
-    private final byte[] signedChunk;
+    private final byte[] header;
+    private final byte[] data;
+    private final int dataLength;
+    private final byte[] trailer;
+    private final int length;
     private int pos;
 
-    public ChunkContentIterator(byte[] signedChunk) {
-        this.signedChunk = signedChunk;
+    /**
+     * @param header The chunk header, including the chunk signature.
+     * @param data The buffer holding the chunk data; may be null if the chunk
+     *            is empty.
+     * @param dataLength The number of bytes of chunk data in the buffer.
+     * @param trailer The chunk trailer; may be null.
+     */
+    public ChunkContentIterator(byte[] header, byte[] data, int dataLength, byte[] trailer) {
+        this.header = header;
+        this.data = data;
+        this.dataLength = dataLength;
+        this.trailer = trailer;
+        this.length = header.length + dataLength + (trailer == null ? 0 : trailer.length);
     }
 
     public boolean hasNext() {
-        return pos < signedChunk.length;
+        return pos < length;
     }
 
     public int read(byte[] output, int offset, int length) {
@@ -33,10 +52,29 @@ class ChunkContentIterator {
             return 0;
         if (!hasNext())
             return -1;
-        int remaingBytesNum = signedChunk.length - pos;
-        int bytesToRead = Math.min(remaingBytesNum, length);
-        System.arraycopy(signedChunk, pos, output, offset, bytesToRead);
-        pos += bytesToRead;
-        return bytesToRead;
+        int read = 0;
+        while (read < length && hasNext()) {
+            byte[] segment;
+            int segmentPos;
+            int segmentLength;
+            if (pos < header.length) {
+                segment = header;
+                segmentPos = pos;
+                segmentLength = header.length;
+            } else if (pos < header.length + dataLength) {
+                segment = data;
+                segmentPos = pos - header.length;
+                segmentLength = dataLength;
+            } else {
+                segment = trailer;
+                segmentPos = pos - header.length - dataLength;
+                segmentLength = trailer.length;
+            }
+            int bytesToRead = Math.min(segmentLength - segmentPos, length - read);
+            System.arraycopy(segment, segmentPos, output, offset + read, bytesToRead);
+            pos += bytesToRead;
+            read += bytesToRead;
+        }
+        return read;
     }
 }
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static com.amazonaws.services.s3.internal.Constants.MB;
+
+/**
+ * Chooses the part size of new multipart transfers and the number of parts
+ * transferred concurrently, based on the throughput and error rate of the
+ * parts that completed recently.
+ * <p>
+ * Every part reports its size, duration and outcome. Once as many parts as
+ * are allowed in flight have completed, the controller evaluates the window:
+ * <ul>
+ * <li>If the error rate exceeds the maximum error rate, both the part size
+ * and the concurrency are halved, since smaller parts are cheaper to retry on
+ * an unreliable network.</li>
+ * <li>Otherwise the concurrency is increased while the aggregate throughput
+ * keeps improving and decreased when it drops, and the part size is set so
+ * that a part takes about {@link #setTargetPartMillis(long)} to transfer.</li>
+ * </ul>
+ * The part size only applies to transfers created afterwards, as the parts of
+ * a transfer are recorded when it's created. All values stay within the
+ * configured bounds, and can be read back as metrics.
+ */
+public class AdaptiveTransferController {
+
+    private static final AdaptiveTransferController INSTANCE = new AdaptiveTransferController();
+
+    /**
+     * Relative change in throughput below which the concurrency is left
+     * unchanged.
+     */
+    private static final double THROUGHPUT_TOLERANCE = 0.05;
+
+    private boolean adaptive = true;
+    private long minPartSize = TransferUtility.MINIMUM_UPLOAD_PART_SIZE;
+    private long maxPartSize = 64 * MB;
+    private int minConcurrency = 1;
+    private int maxConcurrency;
+    private long targetPartMillis = 15 * 1000;
+    private double maxErrorRate = 0.1;
+
+    private long partSize;
+    private int concurrency;
+
+    // the current window
+    private int windowParts;
+    private int windowFailures;
+    private long windowBytes;
+    private long windowMillis;
+
+    // metrics
+    private double lastThroughput;
+    private double lastErrorRate;
+    private long partsSucceeded;
+    private long partsFailed;
+    private long adjustments;
+
+    /**
+     * Returns the controller shared by all transfers of this process.
+     */
+    public static AdaptiveTransferController getInstance() {
+        return INSTANCE;
+    }
+
+    AdaptiveTransferController() {
+        int defaultConcurrency = Runtime.getRuntime().availableProcessors() + 1;
+        maxConcurrency = 2 * defaultConcurrency;
+        concurrency = defaultConcurrency;
+        partSize = minPartSize;
+    }
+
+    /**
+     * Enables or disables adaptation. When disabled, the part size and the
+     * concurrency keep their current values. Enabled by default.
+     */
+    public synchronized void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public synchronized boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Sets the bounds of the part size. The lower bound can't be less than
+     * the minimum part size S3 accepts for multipart uploads, 5 MB.
+     */
+    public synchronized void setPartSizeBounds(long min, long max) {
+        if (min < TransferUtility.MINIMUM_UPLOAD_PART_SIZE || max < min) {
+            throw new IllegalArgumentException("Invalid part size bounds: [" + min + ", " + max
+                    + "]");
+        }
+        minPartSize = min;
+        maxPartSize = max;
+        partSize = clamp(partSize, min, max);
+    }
+
+    /**
+     * Sets the bounds of the number of parts transferred concurrently.
+     */
+    public synchronized void setConcurrencyBounds(int min, int max) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Invalid concurrency bounds: [" + min + ", " + max
+                    + "]");
+        }
+        minConcurrency = min;
+        maxConcurrency = max;
+        concurrency = (int) clamp(concurrency, min, max);
+    }
+
+    /**
+     * Sets how long the transfer of a single part should take. The part size
+     * is derived from the measured throughput of a part and this duration.
+     * Defaults to 15 seconds.
+     */
+    public synchronized void setTargetPartMillis(long targetPartMillis) {
+        if (targetPartMillis <= 0) {
+            throw new IllegalArgumentException("targetPartMillis must be positive");
+        }
+        this.targetPartMillis = targetPartMillis;
+    }
+
+    /**
+     * Sets the fraction of failed parts in a window above which the
+     * controller backs off. Defaults to 0.1.
+     */
+    public synchronized void setMaxErrorRate(double maxErrorRate) {
+        if (maxErrorRate < 0 || maxErrorRate > 1) {
+            throw new IllegalArgumentException("maxErrorRate must be between 0 and 1");
+        }
+        this.maxErrorRate = maxErrorRate;
+    }
+
+    /**
+     * Returns the part size for new multipart transfers, in bytes.
+     */
+    public synchronized long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Returns the number of parts to transfer concurrently.
+     */
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Returns the aggregate throughput of the last window, in bytes per
+     * second, or 0 if no window has been evaluated yet.
+     */
+    public synchronized double getThroughput() {
+        return lastThroughput * 1000;
+    }
+
+    /**
+     * Returns the error rate of the last window.
+     */
+    public synchronized double getErrorRate() {
+        return lastErrorRate;
+    }
+
+    /**
+     * Returns the number of parts transferred successfully.
+     */
+    public synchronized long getPartsSucceeded() {
+        return partsSucceeded;
+    }
+
+    /**
+     * Returns the number of parts which failed.
+     */
+    public synchronized long getPartsFailed() {
+        return partsFailed;
+    }
+
+    /**
+     * Returns the number of times the part size or the concurrency changed.
+     */
+    public synchronized long getAdjustmentCount() {
+        return adjustments;
+    }
+
+    /**
+     * Records the outcome of a part transfer.
+     *
+     * @param bytes the size of the part
+     * @param elapsedMillis how long the part took
+     * @param success whether the part was transferred successfully
+     */
+    synchronized void recordPart(long bytes, long elapsedMillis, boolean success) {
+        if (success) {
+            partsSucceeded++;
+            windowBytes += bytes;
+            windowMillis += Math.max(1, elapsedMillis);
+        } else {
+            partsFailed++;
+            windowFailures++;
+        }
+        windowParts++;
+        if (windowParts >= concurrency) {
+            evaluateWindow();
+        }
+    }
+
+    private void evaluateWindow() {
+        double errorRate = (double) windowFailures / windowParts;
+        // bytes per millisecond of a single part, and of all parts in flight
+        double partThroughput = windowMillis == 0 ? 0 : (double) windowBytes / windowMillis;
+        double throughput = partThroughput * concurrency;
+
+        long newPartSize = partSize;
+        int newConcurrency = concurrency;
+        if (errorRate > maxErrorRate) {
+            newPartSize = partSize / 2;
+            newConcurrency = concurrency / 2;
+        } else if (partThroughput > 0) {
+            newPartSize = (long) (partThroughput * targetPartMillis) / MB * MB;
+            if (throughput > lastThroughput * (1 + THROUGHPUT_TOLERANCE)) {
+                newConcurrency = concurrency + 1;
+            } else if (throughput < lastThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+                newConcurrency = concurrency - 1;
+            }
+            lastThroughput = throughput;
+        }
+        lastErrorRate = errorRate;
+
+        if (adaptive) {
+            newPartSize = clamp(newPartSize, minPartSize, maxPartSize);
+            newConcurrency = (int) clamp(newConcurrency, minConcurrency, maxConcurrency);
+            if (newPartSize != partSize || newConcurrency != concurrency) {
+                adjustments++;
+                partSize = newPartSize;
+                concurrency = newConcurrency;
+            }
+        }
+
+        windowParts = 0;
+        windowFailures = 0;
+        windowBytes = 0;
+        windowMillis = 0;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import android.util.Log;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+
+/**
+ * Downloads a byte range of an object and writes it at the same position in
+ * the destination file, which is preallocated by {@link DownloadTask}.
+ */
+class DownloadPartTask implements Callable<Boolean> {
+
+    private final static String TAG = "DownloadPartTask";
+
+    private final TransferRecord part;
+    private final String eTag;
+    private final AmazonS3 s3;
+    private final TransferDBUtil dbUtil;
+    private final ProgressListener progressListener;
+
+    public DownloadPartTask(TransferRecord part, String eTag, AmazonS3 s3,
+            TransferDBUtil dbUtil, ProgressListener progressListener) {
+        this.part = part;
+        this.eTag = eTag;
+        this.s3 = s3;
+        this.dbUtil = dbUtil;
+        this.progressListener = progressListener;
+    }
+
+    /*
+     * Runs part download task and returns whether successfully downloaded.
+     */
+    @Override
+    public Boolean call() throws Exception {
+        GetObjectRequest request = new GetObjectRequest(part.bucketName, part.key)
+                .withRange(part.rangeStart, part.rangeLast);
+        if (eTag != null) {
+            // fail rather than mix ranges of different versions of the object
+            request.withMatchingETagConstraint(eTag);
+        }
+        TransferUtility.appendMultipartTransferServiceUserAgentString(request);
+        PartProgressListener partProgress = new PartProgressListener(progressListener);
+        request.setGeneralProgressListener(partProgress);
+        long partSize = part.rangeLast - part.rangeStart + 1;
+        long startTime = System.currentTimeMillis();
+        try {
+            S3Object object = s3.getObject(request);
+            if (object == null) {
+                throw new AmazonClientException("Object " + part.key
+                        + " was modified while it was being downloaded");
+            }
+            writeToFile(object.getObjectContent(), new File(part.file), part.rangeStart,
+                    partSize);
+            dbUtil.updateState(part.id, TransferState.PART_COMPLETED);
+            TransferThreadPool.recordPart(partSize,
+                    System.currentTimeMillis() - startTime, true);
+            return true;
+        } catch (Exception e) {
+            // the whole range is fetched again, so its bytes aren't progress
+            partProgress.rollback();
+            dbUtil.updateState(part.id, TransferState.FAILED);
+            if (e instanceof AbortedException
+                    || e.getCause() != null && (e.getCause() instanceof InterruptedIOException
+                    || e.getCause() instanceof InterruptedException)) {
+                // thread interrupted by user
+                return false;
+            }
+            TransferThreadPool.recordPart(partSize,
+                    System.currentTimeMillis() - startTime, false);
+            Log.e(TAG, "Encountered error downloading part " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Passes the progress of a part on to the transfer, and takes it back when
+     * the part fails so that the bytes aren't counted twice when the part is
+     * downloaded again.
+     */
+    static class PartProgressListener implements ProgressListener {
+
+        private final ProgressListener transferProgress;
+        private long bytesTransferred;
+
+        PartProgressListener(ProgressListener transferProgress) {
+            this.transferProgress = transferProgress;
+        }
+
+        @Override
+        public synchronized void progressChanged(ProgressEvent progressEvent) {
+            bytesTransferred += progressEvent.getBytesTransferred();
+            transferProgress.progressChanged(progressEvent);
+        }
+
+        /**
+         * Reports the bytes of the part transferred so far as lost.
+         */
+        synchronized void rollback() {
+            if (bytesTransferred > 0) {
+                transferProgress.progressChanged(new ProgressEvent(-bytesTransferred));
+                bytesTransferred = 0;
+            }
+        }
+    }
+
+    /**
+     * Writes the stream data into the file at the given position using
+     * positional writes, so parts can be written concurrently.
+     *
+     * @param is input stream
+     * @param file file to be written
+     * @param position position in the file of the first byte
+     * @param length the expected number of bytes
+     */
+    private static void writeToFile(InputStream is, File file, long position, long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+            byte[] buffer = new byte[1024 * 16];
+            long written = 0;
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) != -1) {
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, bytesRead);
+                while (bb.hasRemaining()) {
+                    written += channel.write(bb, position + written);
+                }
+            }
+            if (written != length) {
+                throw new AmazonClientException("Expected " + length + " bytes but received "
+                        + written + " bytes for the range starting at " + position);
+            }
+        } catch (IOException e) {
+            throw new AmazonClientException(
+                    "Unable to store object contents to disk: " + e.getMessage(), e);
+        } finally {
+            try {
+                if (raf != null) {
+                    raf.close();
+                }
+            } catch (IOException ioe) {
+                // ignore
+            }
+            try {
+                is.close();
+            } catch (IOException ioe) {
+                // ignore
+            }
+        }
+    }
+}
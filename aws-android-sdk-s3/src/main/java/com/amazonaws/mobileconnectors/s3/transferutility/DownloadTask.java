@@ -15,12 +15,17 @@
 
 package com.amazonaws.mobileconnectors.s3.transferutility;
 
+import android.content.ContentValues;
 import android.util.Log;
 
 import com.amazonaws.AbortedException;
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.event.ProgressListener;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3EncryptionClient;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 
 import java.io.BufferedOutputStream;
@@ -30,18 +35,39 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Performs download operation and returns a Boolean value indicating whether
- * the file has been downloaded successfully.
+ * the file has been downloaded successfully. A new download starts with a
+ * ranged request for the first part, whose Content-Range gives the size of
+ * the object. Objects larger than that part are split into byte ranges which
+ * are downloaded in parallel by {@link DownloadPartTask}s. The state of each
+ * range is saved in the database, so a resumed download only fetches the
+ * ranges that are missing.
  */
 class DownloadTask implements Callable<Boolean> {
 
     private static final String TAG = "DownloadTask";
 
+    /**
+     * Maximum number of ranges a download is split into, which bounds the
+     * number of part records in the database. Larger objects use larger
+     * ranges.
+     */
+    static final int MAXIMUM_DOWNLOAD_PARTS = 10000;
+
+    /** Status code of a range which can't be satisfied, e.g. of an empty object **/
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
     private final AmazonS3 s3;
     private final TransferRecord download;
+    private final TransferDBUtil dbUtil;
     private final TransferStatusUpdater updater;
 
     /**
@@ -50,10 +76,14 @@ class DownloadTask implements Callable<Boolean> {
      * @param download A TransferRecord object storing all the information of
      *            the download
      * @param s3 Low-level S3 client
+     * @param dbUtil database util
+     * @param updater status updater
      */
-    public DownloadTask(TransferRecord download, AmazonS3 s3, TransferStatusUpdater updater) {
+    public DownloadTask(TransferRecord download, AmazonS3 s3, TransferDBUtil dbUtil,
+            TransferStatusUpdater updater) {
         this.download = download;
         this.s3 = s3;
+        this.dbUtil = dbUtil;
         this.updater = updater;
     }
 
@@ -64,10 +94,71 @@ class DownloadTask implements Callable<Boolean> {
     public Boolean call() throws Exception {
         updater.updateState(download.id, TransferState.IN_PROGRESS);
 
+        File file = new File(download.file);
+        if (download.isMultipart == 0 && file.length() == 0 && canDownloadInMultipart()) {
+            return downloadFirstPart(file);
+        }
+        if (download.isMultipart == 1) {
+            return downloadMultipartAndWaitForCompletion(file);
+        }
+        return downloadSinglePart(file);
+    }
+
+    /**
+     * Starts a new download with the first part of the object, which is
+     * written at the start of the file. If the object is larger, the rest of
+     * it is split into ranges which are recorded and downloaded in parallel.
+     * Until they are recorded, an interrupted download resumes as a single
+     * part download.
+     */
+    private Boolean downloadFirstPart(File file) {
+        long partSize = AdaptiveTransferController.getInstance().getPartSize();
+        GetObjectRequest getObjectRequest = new GetObjectRequest(download.bucketName,
+                download.key);
+        TransferUtility.appendTransferServiceUserAgentString(getObjectRequest);
+        getObjectRequest.setRange(0, partSize - 1);
+        getObjectRequest.setGeneralProgressListener(updater.newProgressListener(download.id));
+
+        try {
+            S3Object object;
+            try {
+                object = s3.getObject(getObjectRequest);
+            } catch (AmazonServiceException ase) {
+                if (ase.getStatusCode() != RANGE_NOT_SATISFIABLE) {
+                    throw ase;
+                }
+                // an empty object has no first byte
+                return downloadSinglePart(file);
+            }
+            if (object == null) {
+                updater.throwError(download.id, new IllegalStateException(
+                        "AmazonS3.getObject returns null"));
+                updater.updateState(download.id, TransferState.FAILED);
+                return false;
+            }
+
+            ObjectMetadata metadata = object.getObjectMetadata();
+            long bytesTotal = metadata.getInstanceLength();
+            updater.updateProgress(download.id, 0, bytesTotal);
+            saveToFile(object.getObjectContent(), file);
+            if (file.length() >= bytesTotal) {
+                updater.updateProgress(download.id, bytesTotal, bytesTotal);
+                updater.updateState(download.id, TransferState.COMPLETED);
+                return true;
+            }
+            createMultipartDownloadRecords(file, bytesTotal, metadata.getETag(),
+                    file.length(), partSize);
+        } catch (Exception e) {
+            handleException(e);
+            return false;
+        }
+        return downloadMultipartAndWaitForCompletion(file);
+    }
+
+    private Boolean downloadSinglePart(File file) {
         final GetObjectRequest getObjectRequest = new GetObjectRequest(download.bucketName,
                 download.key);
         TransferUtility.appendTransferServiceUserAgentString(getObjectRequest);
-        File file = new File(download.file);
         long bytesCurrent = file.length();
         if (bytesCurrent > 0) {
             Log.d(TAG, String.format("Resume transfer %d from %d bytes", download.id,
@@ -96,20 +187,202 @@ class DownloadTask implements Callable<Boolean> {
             updater.updateState(download.id, TransferState.COMPLETED);
             return true;
         } catch (Exception e) {
-            if (e instanceof AbortedException
-                    || e.getCause() != null && (e.getCause() instanceof InterruptedIOException
-                    || e.getCause() instanceof InterruptedException)) {
-                // thread interrupted by user
-                Log.d(TAG, "Transfer " + download.id + " is interrupted by user");
-                // don't update the state as it's set by caller who interrupted
-                // the transfer
+            handleException(e);
+        }
+        return false;
+    }
+
+    private Boolean downloadMultipartAndWaitForCompletion(File file) {
+        /*
+         * The parts are written into a file preallocated to the size of the
+         * object. If the file is gone or has been truncated, the parts
+         * recorded as completed have to be downloaded again.
+         */
+        boolean isFileIntact = file.length() == download.bytesTotal;
+        List<TransferRecord> parts = dbUtil.queryDownloadPartRecords(download.id, !isFileIntact);
+        long bytesAlreadyTransferred = 0;
+        try {
+            if (isFileIntact) {
+                bytesAlreadyTransferred = dbUtil.queryBytesTransferredByMainUploadId(download.id);
+                if (bytesAlreadyTransferred > 0) {
+                    Log.d(TAG, String.format("Resume transfer %d from %d bytes",
+                            download.id, bytesAlreadyTransferred));
+                }
+            } else {
+                preallocate(file, download.bytesTotal);
+            }
+            if (parts.isEmpty() && bytesAlreadyTransferred < download.bytesTotal) {
+                throw new AmazonClientException("No part records found for download "
+                        + download.id);
+            }
+        } catch (Exception e) {
+            handleException(e);
+            return false;
+        }
+        updater.updateProgress(download.id, bytesAlreadyTransferred, download.bytesTotal);
+
+        ProgressListener transferProgress = updater.newProgressListener(download.id);
+        Log.d(TAG, "multipart download " + download.id + " in " + parts.size() + " parts.");
+        ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (TransferRecord part : parts) {
+            futures.add(TransferThreadPool.submitTask(new DownloadPartTask(part, download.eTag,
+                    s3, dbUtil, transferProgress)));
+        }
+        try {
+            boolean isSuccess = true;
+            /*
+             * Future.get() will block the current thread until the method
+             * returns.
+             */
+            for (Future<Boolean> f : futures) {
+                // DownloadPartTask returns false when it's interrupted by user
+                // and the state is set by caller
+                boolean b = f.get();
+                isSuccess &= b;
+            }
+            if (!isSuccess) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            /*
+             * Future.get() will catch InterruptedException, but it's not a
+             * failure, it may be caused by a pause operation from applications.
+             */
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            // abort by user
+            Log.d(TAG, "Transfer " + download.id + " is interrupted by user");
+            return false;
+        } catch (ExecutionException ee) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            if (ee.getCause() != null && ee.getCause() instanceof Exception) {
+                handleException((Exception) ee.getCause());
             } else {
-                Log.e(TAG, "Failed to download: " + download.id + " due to " + e.getMessage());
-                updater.throwError(download.id, e);
                 updater.updateState(download.id, TransferState.FAILED);
             }
+            return false;
+        }
+
+        updater.updateProgress(download.id, download.bytesTotal, download.bytesTotal);
+        updater.updateState(download.id, TransferState.COMPLETED);
+        return true;
+    }
+
+    /**
+     * Ranged downloads aren't supported by the encryption client, which needs
+     * the whole object to decrypt it.
+     */
+    private boolean canDownloadInMultipart() {
+        return !(s3 instanceof AmazonS3EncryptionClient);
+    }
+
+    /**
+     * Records the first part, which is already in the file, as completed and
+     * inserts a part record for each range of the rest of the object. Then
+     * marks the download as a multipart download and extends the file to the
+     * size of the object.
+     *
+     * @param file The file to download to.
+     * @param bytesTotal The size of the object.
+     * @param eTag The Etag of the object, which each range must match.
+     * @param firstPartSize The size of the first part.
+     * @param minimumPartSize The smallest size of the other ranges.
+     */
+    private void createMultipartDownloadRecords(File file, long bytesTotal, String eTag,
+            long firstPartSize, long minimumPartSize) throws IOException {
+        // records left by an interrupted attempt may have other ranges
+        dbUtil.deletePartRecords(download.id);
+        long[][] ranges = splitIntoRanges(firstPartSize, bytesTotal, minimumPartSize);
+        ContentValues[] valuesArray = new ContentValues[ranges.length + 1];
+        valuesArray[0] = dbUtil.generateContentValuesForMultiPartDownload(download.bucketName,
+                download.key, file, 1, 0, firstPartSize - 1, 0);
+        valuesArray[0].put(TransferTable.COLUMN_STATE, TransferState.PART_COMPLETED.toString());
+        for (int i = 0; i < ranges.length; i++) {
+            valuesArray[i + 1] = dbUtil.generateContentValuesForMultiPartDownload(
+                    download.bucketName, download.key, file, i + 2, ranges[i][0],
+                    ranges[i][1], i == ranges.length - 1 ? 1 : 0);
+        }
+        dbUtil.bulkInsertDownloadPartRecords(download.id, valuesArray);
+        dbUtil.updateMultipartDownload(download.id, bytesTotal, eTag);
+        download.isMultipart = 1;
+        download.bytesTotal = bytesTotal;
+        download.eTag = eTag;
+        // an attempt interrupted before this downloads all the parts again
+        preallocate(file, bytesTotal);
+    }
+
+    /**
+     * Splits an object into consecutive byte ranges of at least the given
+     * size, and no more than {@link #MAXIMUM_DOWNLOAD_PARTS} of them. The last
+     * range holds the remainder.
+     *
+     * @param bytesTotal The size of the object.
+     * @param minimumPartSize The smallest size of a range.
+     * @return The first and the last byte, inclusive, of each range.
+     */
+    static long[][] splitIntoRanges(long bytesTotal, long minimumPartSize) {
+        return splitIntoRanges(0, bytesTotal, minimumPartSize);
+    }
+
+    /**
+     * Splits the bytes of an object from the given offset like
+     * {@link #splitIntoRanges(long, long)}.
+     *
+     * @param offset The first byte of the first range.
+     * @param bytesTotal The size of the object.
+     * @param minimumPartSize The smallest size of a range.
+     * @return The first and the last byte, inclusive, of each range.
+     */
+    static long[][] splitIntoRanges(long offset, long bytesTotal, long minimumPartSize) {
+        long bytesLeft = bytesTotal - offset;
+        long partSize = Math.max(minimumPartSize,
+                (long) Math.ceil((double) bytesLeft / (double) MAXIMUM_DOWNLOAD_PARTS));
+        int partCount = (int) Math.ceil((double) bytesLeft / (double) partSize);
+        long[][] ranges = new long[partCount][];
+        long rangeStart = offset;
+        for (int i = 0; i < partCount; i++) {
+            long rangeLast = Math.min(rangeStart + partSize, bytesTotal) - 1;
+            ranges[i] = new long[] {
+                    rangeStart, rangeLast
+            };
+            rangeStart += partSize;
+        }
+        return ranges;
+    }
+
+    /**
+     * Creates the file, and its parent if it doesn't exist, with the given
+     * length so that parts can be written at their offsets.
+     */
+    private static void preallocate(File file, long length) throws IOException {
+        File parentDirectory = file.getParentFile();
+        if (parentDirectory != null && !parentDirectory.exists()) {
+            parentDirectory.mkdirs();
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void handleException(Exception e) {
+        if (e instanceof AbortedException
+                || e.getCause() != null && (e.getCause() instanceof InterruptedIOException
+                || e.getCause() instanceof InterruptedException)) {
+            // thread interrupted by user
+            Log.d(TAG, "Transfer " + download.id + " is interrupted by user");
+            // don't update the state as it's set by caller who interrupted
+            // the transfer
+        } else {
+            Log.e(TAG, "Failed to download: " + download.id + " due to " + e.getMessage());
+            updater.throwError(download.id, e);
+            updater.updateState(download.id, TransferState.FAILED);
         }
-        return false;
     }
 
     /**
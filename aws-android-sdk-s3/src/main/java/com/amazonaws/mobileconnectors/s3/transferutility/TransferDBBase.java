@@ -19,11 +19,13 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.text.TextUtils;
-import android.util.Log;
+
+import com.amazonaws.AmazonClientException;
 
 /**
  * Provides methods to access database through which applications can interact
@@ -217,6 +219,11 @@ class TransferDBBase {
                                     + id + " and " + selection, selectionArgs);
                 }
                 break;
+            case TRANSFER_PART:
+                rowsDeleted = db.delete(TransferTable.TABLE_TRANSFER,
+                        TransferTable.COLUMN_MAIN_UPLOAD_ID + "=" + uri.getLastPathSegment(),
+                        null);
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
@@ -224,9 +231,13 @@ class TransferDBBase {
     }
 
     /**
+     * Inserts records in a single transaction, so either all or none of them
+     * are added.
+     *
      * @param uri The Uri of a table.
      * @param valuesArray A array of values to insert.
      * @return Number of rows inserted.
+     * @throws AmazonClientException if the records couldn't be inserted
      */
     public int bulkInsert(Uri uri, ContentValues[] valuesArray) {
         int uriType = uriMatcher.match(uri);
@@ -243,9 +254,28 @@ class TransferDBBase {
                         db.insertOrThrow(TransferTable.TABLE_TRANSFER, null, valuesArray[i]);
                     }
                     db.setTransactionSuccessful();
-                } catch (Exception e) {
-                    Log.e(TransferDBBase.class.getSimpleName(),
-                            "bulkInsert error : " + e.getMessage());
+                } catch (SQLException e) {
+                    throw new AmazonClientException("Failed to insert transfer records", e);
+                } finally {
+                    db.endTransaction();
+                }
+                break;
+            case TRANSFER_PART:
+                /*
+                 * Adds part records to an existing main record, whose id is
+                 * given by the Uri.
+                 */
+                mainUploadId = Integer.parseInt(uri.getLastPathSegment());
+                try {
+                    db.beginTransaction();
+                    for (ContentValues values : valuesArray) {
+                        values.put(TransferTable.COLUMN_MAIN_UPLOAD_ID, mainUploadId);
+                        db.insertOrThrow(TransferTable.TABLE_TRANSFER, null, values);
+                    }
+                    db.setTransactionSuccessful();
+                } catch (SQLException e) {
+                    throw new AmazonClientException(
+                            "Failed to insert the part records of transfer " + mainUploadId, e);
                 } finally {
                     db.endTransaction();
                 }
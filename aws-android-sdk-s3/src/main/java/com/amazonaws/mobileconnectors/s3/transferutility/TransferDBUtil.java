@@ -142,6 +142,18 @@ class TransferDBUtil {
         return transferDBBase.bulkInsert(transferDBBase.getContentUri(), valuesArray);
     }
 
+    /**
+     * Inserts the part records of a multipart download. The records are
+     * inserted in a single transaction, so either all or none of them are
+     * added.
+     *
+     * @param mainDownloadId The id of the main download record.
+     * @param valuesArray An array of values to insert, one per part.
+     */
+    public void bulkInsertDownloadPartRecords(int mainDownloadId, ContentValues[] valuesArray) {
+        transferDBBase.bulkInsert(getPartUri(mainDownloadId), valuesArray);
+    }
+
     /**
      * Writes transfer status including transfer state, current transferred
      * bytes and total bytes into database.
@@ -230,6 +242,23 @@ class TransferDBUtil {
                 TransferTable.COLUMN_ID + "=" + id, null);
     }
 
+    /**
+     * Marks a download record as a multipart download of an object with the
+     * given size and Etag.
+     *
+     * @param id The id of the transfer.
+     * @param bytesTotal The total bytes of the download.
+     * @param etag The Etag of the object being downloaded.
+     * @return Number of rows updated.
+     */
+    public int updateMultipartDownload(int id, long bytesTotal, String etag) {
+        ContentValues values = new ContentValues();
+        values.put(TransferTable.COLUMN_IS_MULTIPART, 1);
+        values.put(TransferTable.COLUMN_BYTES_TOTAL, bytesTotal);
+        values.put(TransferTable.COLUMN_ETAG, etag);
+        return transferDBBase.update(getRecordUri(id), values, null, null);
+    }
+
     /**
      * Updates the multipart id of the transfer record.
      *
@@ -455,13 +484,24 @@ class TransferDBUtil {
     }
 
     /**
-     * Deletes the record with the given id.
+     * Deletes the record with the given id, and its part records if it's a
+     * multipart transfer.
      *
      * @param id The id of the transfer to be deleted.
      * @return Number of rows deleted.
      */
     public int deleteTransferRecords(int id) {
-        return transferDBBase.delete(getRecordUri(id), null, null);
+        return deletePartRecords(id) + transferDBBase.delete(getRecordUri(id), null, null);
+    }
+
+    /**
+     * Deletes the part records of a multipart transfer.
+     *
+     * @param mainUploadId The id of the main transfer record.
+     * @return Number of rows deleted.
+     */
+    public int deletePartRecords(int mainUploadId) {
+        return transferDBBase.delete(getPartUri(mainUploadId), null, null);
     }
 
     /**
@@ -537,6 +577,66 @@ class TransferDBUtil {
         return list;
     }
 
+    /**
+     * Queries the part records of a multipart download. When
+     * includeCompleted is false, parts that are already downloaded are
+     * skipped. It's used when resuming a multipart download.
+     *
+     * @param mainDownloadId The id of the main download record.
+     * @param includeCompleted Whether to include completed parts.
+     * @return A list of TransferRecord of the parts
+     */
+    public List<TransferRecord> queryDownloadPartRecords(int mainDownloadId,
+            boolean includeCompleted) {
+        List<TransferRecord> list = new ArrayList<TransferRecord>();
+        Cursor c = transferDBBase.query(getPartUri(mainDownloadId), null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                TransferRecord part = new TransferRecord(0);
+                part.updateFromDB(c);
+                if (includeCompleted || !TransferState.PART_COMPLETED.equals(part.state)) {
+                    list.add(part);
+                }
+            }
+        } finally {
+            c.close();
+        }
+        return list;
+    }
+
+    /**
+     * Generates a ContentValues object to insert into the database with the
+     * given values for a part record of a multipart download.
+     *
+     * @param bucket The name of the bucket to download from.
+     * @param key The key of the object to download.
+     * @param file The file to download to.
+     * @param partNumber The part number of this part.
+     * @param rangeStart The first byte of the part in the object.
+     * @param rangeLast The last byte of the part in the object, inclusive.
+     * @param isLastPart Whether this part is the last part of the download.
+     * @return The ContentValues object generated.
+     */
+    public ContentValues generateContentValuesForMultiPartDownload(String bucket, String key,
+            File file, int partNumber, long rangeStart, long rangeLast, int isLastPart) {
+        ContentValues values = new ContentValues();
+        values.put(TransferTable.COLUMN_TYPE, TransferType.DOWNLOAD.toString());
+        values.put(TransferTable.COLUMN_STATE, TransferState.WAITING.toString());
+        values.put(TransferTable.COLUMN_BUCKET_NAME, bucket);
+        values.put(TransferTable.COLUMN_KEY, key);
+        values.put(TransferTable.COLUMN_FILE, file.getAbsolutePath());
+        values.put(TransferTable.COLUMN_BYTES_CURRENT, 0l);
+        values.put(TransferTable.COLUMN_BYTES_TOTAL, rangeLast - rangeStart + 1);
+        values.put(TransferTable.COLUMN_IS_MULTIPART, 1);
+        values.put(TransferTable.COLUMN_PART_NUM, partNumber);
+        values.put(TransferTable.COLUMN_FILE_OFFSET, rangeStart);
+        values.put(TransferTable.COLUMN_DATA_RANGE_START, rangeStart);
+        values.put(TransferTable.COLUMN_DATA_RANGE_LAST, rangeLast);
+        values.put(TransferTable.COLUMN_IS_LAST_PART, isLastPart);
+        values.put(TransferTable.COLUMN_IS_ENCRYPTED, 0);
+        return values;
+    }
+
     /**
      * Generates a ContentValues object to insert into the database with the
      * given values for a multipart upload record.
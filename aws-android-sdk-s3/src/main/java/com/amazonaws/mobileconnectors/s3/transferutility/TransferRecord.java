@@ -157,7 +157,8 @@ class TransferRecord {
     public boolean start(AmazonS3 s3, TransferDBUtil dbUtil, TransferStatusUpdater updater) {
         if (!isRunning() && checkIsReadyToRun()) {
             if (type.equals(TransferType.DOWNLOAD)) {
-                submittedTask = TransferThreadPool.submitTask(new DownloadTask(this, s3, updater));
+                submittedTask = TransferThreadPool.submitTask(new DownloadTask(this, s3, dbUtil,
+                        updater));
             } else {
                 submittedTask = TransferThreadPool.submitTask(new UploadTask(this, s3, dbUtil,
                         updater));
@@ -201,7 +202,10 @@ class TransferRecord {
                 submittedTask.cancel(true);
             }
             // additional cleanups
-            if (isMultipart == 1) {
+            if (TransferType.DOWNLOAD.equals(type)) {
+                // remove partially download file
+                new File(file).delete();
+            } else if (isMultipart == 1) {
                 new Thread(new Runnable() {
                     @Override
                     public void run() {
@@ -214,9 +218,6 @@ class TransferRecord {
                         }
                     }
                 }).start();
-            } else if (TransferType.DOWNLOAD.equals(type)) {
-                // remove partially download file
-                new File(file).delete();
             }
             return true;
         }
@@ -310,10 +310,15 @@ class TransferStatusUpdater {
             this.transfer = transfer;
         }
 
+        /*
+         * Synchronized because the listener is shared by the parts of a
+         * multipart transfer, which run concurrently.
+         */
         @Override
-        public void progressChanged(ProgressEvent progressEvent) {
+        public synchronized void progressChanged(ProgressEvent progressEvent) {
             // TODO: handle retry of upload where progress could be problematic.
-            if (progressEvent.getBytesTransferred() > 0) {
+            // Negative progress takes back the bytes of a failed download part.
+            if (progressEvent.getBytesTransferred() != 0) {
                 transfer.bytesCurrent += progressEvent.getBytesTransferred();
                 updateProgress(transfer.id, transfer.bytesCurrent, transfer.bytesTotal);
             }
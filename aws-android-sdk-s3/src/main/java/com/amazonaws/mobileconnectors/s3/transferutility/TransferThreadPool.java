@@ -24,8 +24,8 @@ import java.util.concurrent.TimeUnit;
 
 class TransferThreadPool {
 
-    private static ExecutorService executorMainTask;
-    private static ExecutorService executorPartTask;
+    private static ThreadPoolExecutor executorMainTask;
+    private static ThreadPoolExecutor executorPartTask;
 
     private synchronized static void init() {
         int processors = Runtime.getRuntime().availableProcessors();
@@ -33,19 +33,56 @@ class TransferThreadPool {
             executorMainTask = buildExecutor(processors + 1);
         }
         if (executorPartTask == null) {
-            executorPartTask = buildExecutor(processors + 1);
+            executorPartTask = buildExecutor(
+                    AdaptiveTransferController.getInstance().getConcurrency());
         }
     }
 
     public static <T> Future<T> submitTask(Callable<T> c) {
         init();
-        if (c instanceof UploadPartTask) {
+        if (c instanceof UploadPartTask || c instanceof DownloadPartTask) {
+            resizePartExecutor(AdaptiveTransferController.getInstance().getConcurrency());
             return executorPartTask.submit(c);
         } else {
             return executorMainTask.submit(c);
         }
     }
 
+    /**
+     * Records the outcome of a part with {@link AdaptiveTransferController}
+     * and applies the concurrency it chooses, so the parts a transfer already
+     * queued run at the new concurrency too. The concurrency is read after
+     * recording rather than under the controller's lock, since the pool is
+     * locked before the controller when it's created.
+     *
+     * @param bytes the size of the part
+     * @param elapsedMillis how long the part took
+     * @param success whether the part was transferred successfully
+     */
+    static void recordPart(long bytes, long elapsedMillis, boolean success) {
+        AdaptiveTransferController controller = AdaptiveTransferController.getInstance();
+        controller.recordPart(bytes, elapsedMillis, success);
+        resizePartExecutor(controller.getConcurrency());
+    }
+
+    /**
+     * Applies the concurrency chosen by {@link AdaptiveTransferController} to
+     * the part executor. The pool has as many core threads as it may have
+     * threads, since its queue is unbounded.
+     */
+    private synchronized static void resizePartExecutor(int threads) {
+        if (executorPartTask == null || executorPartTask.getMaximumPoolSize() == threads) {
+            return;
+        }
+        if (threads > executorPartTask.getMaximumPoolSize()) {
+            executorPartTask.setMaximumPoolSize(threads);
+            executorPartTask.setCorePoolSize(threads);
+        } else {
+            executorPartTask.setCorePoolSize(threads);
+            executorPartTask.setMaximumPoolSize(threads);
+        }
+    }
+
     public static void closeThreadPool() {
         shutdown(executorPartTask);
         executorPartTask = null;
@@ -71,7 +108,7 @@ class TransferThreadPool {
         }
     }
 
-    private static ExecutorService buildExecutor(int maxThreadsAllowed) {
+    private static ThreadPoolExecutor buildExecutor(int maxThreadsAllowed) {
         /*
          * Create a bounded thread pool for executing transfers; it creates
          * threads as needed (up to maximum) and reclaims them when finished.
@@ -301,7 +301,8 @@ public class TransferUtility {
         long remainingLenth = file.length();
         double partSize = (double) remainingLenth / (double) MAXIMUM_UPLOAD_PARTS;
         partSize = Math.ceil(partSize);
-        long optimalPartSize = (long) Math.max(partSize, MINIMUM_UPLOAD_PART_SIZE);
+        long optimalPartSize = (long) Math.max(partSize,
+                AdaptiveTransferController.getInstance().getPartSize());
         long fileOffset = 0;
         int partNumber = 1;
 
@@ -44,10 +44,13 @@ class UploadPartTask implements Callable<Boolean> {
      */
     @Override
     public Boolean call() throws Exception {
+        long startTime = System.currentTimeMillis();
         try {
             UploadPartResult putPartResult = s3.uploadPart(request);
             dbUtil.updateState(request.getId(), TransferState.PART_COMPLETED);
             dbUtil.updateETag(request.getId(), putPartResult.getETag());
+            TransferThreadPool.recordPart(request.getPartSize(),
+                    System.currentTimeMillis() - startTime, true);
             return true;
         } catch (Exception e) {
             dbUtil.updateState(request.getId(), TransferState.FAILED);
@@ -57,6 +60,8 @@ class UploadPartTask implements Callable<Boolean> {
                 // thread interrupted by user
                 return false;
             }
+            TransferThreadPool.recordPart(request.getPartSize(),
+                    System.currentTimeMillis() - startTime, false);
             Log.e(TAG, "Encountered error uploading part " + e.getMessage());
             throw e;
         }
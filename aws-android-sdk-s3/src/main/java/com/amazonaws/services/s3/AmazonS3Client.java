@@ -45,9 +45,9 @@ import com.amazonaws.handlers.HandlerChainFactory;
 import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.http.ExecutionContext;
 import com.amazonaws.http.HttpClient;
+import com.amazonaws.http.HttpClients;
 import com.amazonaws.http.HttpMethodName;
 import com.amazonaws.http.HttpResponseHandler;
-import com.amazonaws.http.UrlHttpClient;
 import com.amazonaws.internal.StaticCredentialsProvider;
 import com.amazonaws.metrics.AwsSdkMetrics;
 import com.amazonaws.metrics.RequestMetricCollector;
@@ -57,10 +57,9 @@ import com.amazonaws.services.s3.internal.BucketNameUtils;
 import com.amazonaws.services.s3.internal.Constants;
 import com.amazonaws.services.s3.internal.DeleteObjectsResponse;
 import com.amazonaws.services.s3.internal.DigestValidationInputStream;
-import com.amazonaws.services.s3.internal.InputSubstream;
+import com.amazonaws.services.s3.internal.FileRegionInputStream;
 import com.amazonaws.services.s3.internal.MD5DigestCalculatingInputStream;
 import com.amazonaws.services.s3.internal.ObjectExpirationHeaderHandler;
-import com.amazonaws.services.s3.internal.RepeatableFileInputStream;
 import com.amazonaws.services.s3.internal.ResponseHeaderHandlerChain;
 import com.amazonaws.services.s3.internal.S3ErrorResponseHandler;
 import com.amazonaws.services.s3.internal.S3ExecutionContext;
@@ -366,7 +365,7 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
      */
     public AmazonS3Client(AWSCredentialsProvider credentialsProvider,
             ClientConfiguration clientConfiguration) {
-        this(credentialsProvider, clientConfiguration, new UrlHttpClient(clientConfiguration));
+        this(credentialsProvider, clientConfiguration, HttpClients.create(clientConfiguration));
     }
 
     /**
@@ -385,7 +384,7 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
     public AmazonS3Client(AWSCredentialsProvider credentialsProvider,
             ClientConfiguration clientConfiguration,
             RequestMetricCollector requestMetricCollector) {
-        super(clientConfiguration, new UrlHttpClient(clientConfiguration),
+        super(clientConfiguration, HttpClients.create(clientConfiguration),
                 requestMetricCollector);
         this.awsCredentialsProvider = credentialsProvider;
         init();
@@ -1500,25 +1499,13 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
             // Always set the content length, even if it's already set
             metadata.setContentLength(file.length());
 
-            final boolean calculateMD5 = metadata.getContentMD5() == null;
-
             // Only set the content type if it hasn't already been set
             if (metadata.getContentType() == null) {
                 metadata.setContentType(Mimetypes.getInstance().getMimetype(file));
             }
 
-            if (calculateMD5 && !skipContentMd5Check) {
-                try {
-                    String contentMd5_b64 = Md5Utils.md5AsBase64(file);
-                    metadata.setContentMD5(contentMd5_b64);
-                } catch (Exception e) {
-                    throw new AmazonClientException(
-                            "Unable to calculate MD5 hash: " + e.getMessage(), e);
-                }
-            }
-
             try {
-                input = new RepeatableFileInputStream(file);
+                input = new FileRegionInputStream(file);
             } catch (FileNotFoundException fnfe) {
                 throw new AmazonClientException("Unable to find file to upload", fnfe);
             }
@@ -1595,13 +1582,31 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
         MD5DigestCalculatingInputStream md5DigestStream = null;
         if (metadata.getContentMD5() == null
                 && !skipContentMd5Check) {
-            /*
-             * If the user hasn't set the content MD5, then we don't want to
-             * buffer the whole stream in memory just to calculate it. Instead,
-             * we can calculate it on the fly and validate it with the returned
-             * ETag from the object upload.
-             */
-            input = md5DigestStream = new MD5DigestCalculatingInputStream(input);
+            if (putObjectRequest.getFile() != null
+                    && !(createSigner(request, bucketName, key) instanceof AWSS3V4Signer)) {
+                /*
+                 * Without the chunk signatures of SigV4, S3 can only reject a
+                 * corrupted upload before the object is replaced if the MD5 is
+                 * sent up front, so the file is read once to calculate it.
+                 */
+                try {
+                    String contentMd5_b64 = Md5Utils.md5AsBase64(
+                            new FileRegionInputStream(putObjectRequest.getFile()));
+                    metadata.setContentMD5(contentMd5_b64);
+                } catch (Exception e) {
+                    throw new AmazonClientException(
+                            "Unable to calculate MD5 hash: " + e.getMessage(), e);
+                }
+            } else {
+                /*
+                 * If the user hasn't set the content MD5, then we don't want to
+                 * buffer the whole stream in memory just to calculate it.
+                 * Instead, we can calculate it on the fly and validate it with
+                 * the returned ETag from the object upload. A chunk-signed
+                 * upload is checked by S3 chunk by chunk as it's received.
+                 */
+                input = md5DigestStream = new MD5DigestCalculatingInputStream(input);
+            }
         }
 
         if (metadata.getContentType() == null) {
@@ -3268,9 +3273,8 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
             inputStream = uploadPartRequest.getInputStream();
         } else if (uploadPartRequest.getFile() != null) {
             try {
-                inputStream = new InputSubstream(new RepeatableFileInputStream(
-                        uploadPartRequest.getFile()),
-                        uploadPartRequest.getFileOffset(), partSize, true);
+                inputStream = new FileRegionInputStream(uploadPartRequest.getFile(),
+                        uploadPartRequest.getFileOffset(), partSize);
             } catch (FileNotFoundException e) {
                 throw new IllegalArgumentException("The specified file doesn't exist", e);
             }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal;
+
+import com.amazonaws.internal.SdkInputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A repeatable input stream over a region of a file. Data is read with
+ * positional {@link FileChannel} reads directly into the caller's buffer, so
+ * no intermediate buffer is used, and {@link #reset()} only moves the read
+ * position instead of reopening the file and skipping to the mark point like
+ * {@link RepeatableFileInputStream}.
+ */
+public class FileRegionInputStream extends SdkInputStream {
+    private static final Log log = LogFactory.getLog(FileRegionInputStream.class);
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final long offset;
+    private final long length;
+    private long position;
+    private long markPosition;
+    private final byte[] singleByte = new byte[1];
+
+    /**
+     * Creates a repeatable input stream over the whole file.
+     *
+     * @param file The file from which this input stream reads data.
+     * @throws FileNotFoundException If the specified file doesn't exist, or
+     *             can't be opened.
+     */
+    public FileRegionInputStream(File file) throws FileNotFoundException {
+        this(file, 0, file == null ? 0 : file.length());
+    }
+
+    /**
+     * Creates a repeatable input stream over a region of a file.
+     *
+     * @param file The file from which this input stream reads data.
+     * @param offset The offset in the file of the first byte of the region.
+     * @param length The number of bytes in the region. The stream ends early
+     *            if the file is shorter than offset + length.
+     * @throws FileNotFoundException If the specified file doesn't exist, or
+     *             can't be opened.
+     */
+    public FileRegionInputStream(File file, long offset, long length)
+            throws FileNotFoundException {
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Offset and length must not be negative");
+        }
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.channel = randomAccessFile.getChannel();
+    }
+
+    /**
+     * Returns the File this stream is reading data from.
+     *
+     * @return the File this stream is reading data from.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int count = read(singleByte, 0, 1);
+        return count == -1 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        abortIfNeeded();
+        if (len == 0) {
+            return 0;
+        }
+        int toRead = (int) Math.min(len, length - position);
+        if (toRead <= 0) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, toRead);
+        int count = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + position + count);
+            if (read == -1) {
+                break;
+            }
+            count += read;
+        }
+        if (count == 0) {
+            return -1;
+        }
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        abortIfNeeded();
+        long skipped = Math.max(0, Math.min(n, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        abortIfNeeded();
+        long remaining = Math.min(length - position, channel.size() - offset - position);
+        return (int) Math.max(0, Math.min(remaining, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        abortIfNeeded();
+        markPosition = position;
+        if (log.isDebugEnabled()) {
+            log.debug("Input stream marked at " + markPosition + " bytes");
+        }
+    }
+
+    /**
+     * Resets the input stream to the last mark point, or the beginning of the
+     * region if there is no mark point.
+     */
+    @Override
+    public void reset() throws IOException {
+        abortIfNeeded();
+        if (log.isDebugEnabled()) {
+            log.debug("Reset to mark point " + markPosition
+                    + " after returning " + (position - markPosition) + " bytes");
+        }
+        position = markPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+        abortIfNeeded();
+    }
+
+    @Override
+    protected InputStream getWrappedInputStream() {
+        return null;
+    }
+}
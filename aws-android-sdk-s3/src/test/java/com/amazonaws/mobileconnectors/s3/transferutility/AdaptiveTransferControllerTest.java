@@ -0,0 +1,112 @@
+/**
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static com.amazonaws.services.s3.internal.Constants.MB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdaptiveTransferControllerTest {
+
+    private AdaptiveTransferController controller;
+
+    @Before
+    public void setUp() {
+        controller = new AdaptiveTransferController();
+        // start from two parts in flight regardless of the number of cores
+        controller.setConcurrencyBounds(2, 2);
+        controller.setConcurrencyBounds(2, 8);
+        controller.setPartSizeBounds(5 * MB, 64 * MB);
+        controller.setTargetPartMillis(10 * 1000);
+    }
+
+    @Test
+    public void testScalesUpOnFastNetwork() {
+        int concurrency = controller.getConcurrency();
+        // 5 MB per second per part
+        recordWindow(5 * MB, 1000, true);
+        assertEquals(concurrency + 1, controller.getConcurrency());
+        assertEquals(50 * MB, controller.getPartSize());
+        assertEquals(5.0 * MB * concurrency, controller.getThroughput(), 1);
+
+        // throughput keeps improving with more parts in flight
+        recordWindow(5 * MB, 1000, true);
+        assertEquals(concurrency + 2, controller.getConcurrency());
+        assertEquals(2, controller.getAdjustmentCount());
+    }
+
+    @Test
+    public void testBacksOffOnErrors() {
+        recordWindow(8 * MB, 1000, true);
+        long partSize = controller.getPartSize();
+        int concurrency = controller.getConcurrency();
+
+        for (int i = 0; i < concurrency; i++) {
+            controller.recordPart(partSize, 1000, i % 2 == 0);
+        }
+        assertEquals(Math.max(2, concurrency / 2), controller.getConcurrency());
+        assertEquals(Math.max(5 * MB, partSize / 2), controller.getPartSize());
+        assertTrue(controller.getErrorRate() > 0.1);
+        assertTrue(controller.getPartsFailed() > 0);
+    }
+
+    @Test
+    public void testStaysWithinBounds() {
+        // failing parts keep halving the part size and the concurrency down to
+        // their minimums
+        for (int i = 0; i < 20; i++) {
+            recordWindow(5 * MB, 60 * 1000, false);
+        }
+        assertEquals(5 * MB, controller.getPartSize());
+        assertEquals(2, controller.getConcurrency());
+
+        for (int i = 0; i < 20; i++) {
+            recordWindow(64 * MB, 100 - i, true);
+        }
+        assertEquals(64 * MB, controller.getPartSize());
+        assertEquals(8, controller.getConcurrency());
+    }
+
+    @Test
+    public void testNotAdaptive() {
+        controller.setAdaptive(false);
+        long partSize = controller.getPartSize();
+        int concurrency = controller.getConcurrency();
+        recordWindow(5 * MB, 1000, true);
+        assertEquals(partSize, controller.getPartSize());
+        assertEquals(concurrency, controller.getConcurrency());
+        assertEquals(concurrency, controller.getPartsSucceeded());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartSizeBelowS3Minimum() {
+        controller.setPartSizeBounds(MB, 64 * MB);
+    }
+
+    /**
+     * Records as many parts as the current concurrency, which completes a
+     * window.
+     */
+    private void recordWindow(long bytes, long millis, boolean success) {
+        int parts = controller.getConcurrency();
+        for (int i = 0; i < parts; i++) {
+            controller.recordPart(bytes, millis, success);
+        }
+    }
+}
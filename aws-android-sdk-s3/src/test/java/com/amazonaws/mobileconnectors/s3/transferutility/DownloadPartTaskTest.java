@@ -0,0 +1,197 @@
+/**
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.StringUtils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DownloadPartTaskTest {
+
+    private static final String ETAG = "etag";
+
+    private final AmazonS3 s3 = mock(AmazonS3.class);
+    private final TransferDBUtil dbUtil = mock(TransferDBUtil.class);
+    private final CountingProgressListener transferProgress = new CountingProgressListener();
+    private File file;
+    private TransferRecord part;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("DownloadPartTaskTest", null);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(10);
+        raf.close();
+
+        // bytes 3 to 6 of a 10 byte object
+        part = new TransferRecord(2);
+        part.bucketName = "bucket";
+        part.key = "key";
+        part.file = file.getAbsolutePath();
+        part.rangeStart = 3;
+        part.rangeLast = 6;
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testWritesRangeMatchingETag() throws Exception {
+        final GetObjectRequest[] sent = new GetObjectRequest[1];
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) {
+                sent[0] = (GetObjectRequest) invocation.getArguments()[0];
+                return respond(sent[0], "abcd");
+            }
+        });
+
+        assertTrue(new DownloadPartTask(part, ETAG, s3, dbUtil, transferProgress).call());
+
+        assertArrayEquals(new long[] {
+                3, 6
+        }, sent[0].getRange());
+        assertEquals(Arrays.asList(ETAG), sent[0].getMatchingETagConstraints());
+        assertEquals("\0\0\0abcd\0\0\0", readFile());
+        assertEquals(4, transferProgress.bytes);
+        verify(dbUtil).updateState(2, TransferState.PART_COMPLETED);
+    }
+
+    @Test
+    public void testFailsWhenObjectChanged() throws Exception {
+        // S3 answers 412 to the If-Match of a changed object, for which the
+        // client returns null
+        when(s3.getObject(any(GetObjectRequest.class))).thenReturn(null);
+
+        try {
+            new DownloadPartTask(part, ETAG, s3, dbUtil, transferProgress).call();
+            fail("Expected the part to fail");
+        } catch (AmazonClientException e) {
+            assertTrue(e.getMessage().contains("modified"));
+        }
+
+        assertEquals("\0\0\0\0\0\0\0\0\0\0", readFile());
+        assertEquals(0, transferProgress.bytes);
+        verify(dbUtil).updateState(2, TransferState.FAILED);
+        verify(dbUtil, never()).updateState(2, TransferState.PART_COMPLETED);
+    }
+
+    @Test
+    public void testRetriedPartIsNotCountedTwice() throws Exception {
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) {
+                // the connection drops after two bytes
+                GetObjectRequest request = (GetObjectRequest) invocation.getArguments()[0];
+                request.getGeneralProgressListener().progressChanged(new ProgressEvent(2));
+                S3Object object = new S3Object();
+                object.setObjectContent(new InputStream() {
+                    private int read;
+
+                    @Override
+                    public int read() throws IOException {
+                        if (read++ < 2) {
+                            return 'x';
+                        }
+                        throw new IOException("Connection reset");
+                    }
+                });
+                return object;
+            }
+        }).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) {
+                return respond((GetObjectRequest) invocation.getArguments()[0], "abcd");
+            }
+        });
+
+        try {
+            new DownloadPartTask(part, ETAG, s3, dbUtil, transferProgress).call();
+            fail("Expected the part to fail");
+        } catch (AmazonClientException e) {
+            // expected
+        }
+        assertEquals(0, transferProgress.bytes);
+        verify(dbUtil).updateState(2, TransferState.FAILED);
+
+        assertTrue(new DownloadPartTask(part, ETAG, s3, dbUtil, transferProgress).call());
+        assertEquals(4, transferProgress.bytes);
+        assertEquals("\0\0\0abcd\0\0\0", readFile());
+        verify(dbUtil).updateState(2, TransferState.PART_COMPLETED);
+    }
+
+    /**
+     * Returns the content as S3 would, reporting its bytes as read.
+     */
+    private static S3Object respond(GetObjectRequest request, String content) {
+        byte[] bytes = content.getBytes(StringUtils.UTF8);
+        request.getGeneralProgressListener().progressChanged(new ProgressEvent(bytes.length));
+        S3Object object = new S3Object();
+        object.setObjectContent(new ByteArrayInputStream(bytes));
+        return object;
+    }
+
+    private String readFile() throws IOException {
+        return new String(FileUtils.readFileToByteArray(file), StringUtils.UTF8);
+    }
+
+    /**
+     * Adds up the bytes reported for the transfer.
+     */
+    static class CountingProgressListener implements ProgressListener {
+        long bytes;
+
+        @Override
+        public synchronized void progressChanged(ProgressEvent progressEvent) {
+            bytes += progressEvent.getBytesTransferred();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentValues;
+
+import com.amazonaws.event.ProgressEvent;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.StringUtils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DownloadTaskTest {
+
+    private static final String CONTENT = "0123456789";
+    private static final int ID = 1;
+
+    private final AmazonS3 s3 = mock(AmazonS3.class);
+    private final TransferDBUtil dbUtil = mock(TransferDBUtil.class);
+    private final TransferStatusUpdater updater = mock(TransferStatusUpdater.class);
+    private final DownloadPartTaskTest.CountingProgressListener transferProgress =
+            new DownloadPartTaskTest.CountingProgressListener();
+    private final List<long[]> requestedRanges = new ArrayList<long[]>();
+    private byte[] content = CONTENT.getBytes(StringUtils.UTF8);
+    private File file;
+    private TransferRecord download;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("DownloadTaskTest", null);
+
+        download = new TransferRecord(ID);
+        download.bucketName = "bucket";
+        download.key = "key";
+        download.file = file.getAbsolutePath();
+        download.isMultipart = 1;
+        download.bytesTotal = CONTENT.length();
+        download.eTag = "etag";
+
+        when(updater.newProgressListener(ID)).thenReturn(transferProgress);
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) {
+                GetObjectRequest request = (GetObjectRequest) invocation.getArguments()[0];
+                long[] range = request.getRange();
+                synchronized (requestedRanges) {
+                    requestedRanges.add(range);
+                }
+                int start = range == null ? 0 : (int) range[0];
+                int last = range == null || range[1] < 0 ? content.length - 1
+                        : (int) Math.min(range[1], content.length - 1);
+                request.getGeneralProgressListener().progressChanged(
+                        new ProgressEvent(last - start + 1));
+                S3Object object = new S3Object();
+                object.setObjectContent(new ByteArrayInputStream(content, start,
+                        last - start + 1));
+                object.getObjectMetadata().setHeader(Headers.ETAG, "etag");
+                object.getObjectMetadata().setHeader(Headers.CONTENT_RANGE,
+                        "bytes " + start + "-" + last + "/" + content.length);
+                return object;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testSplitIntoRanges() {
+        long[][] ranges = DownloadTask.splitIntoRanges(10, 4);
+        assertEquals(3, ranges.length);
+        assertArrayEquals(new long[] {
+                0, 3
+        }, ranges[0]);
+        assertArrayEquals(new long[] {
+                4, 7
+        }, ranges[1]);
+        assertArrayEquals(new long[] {
+                8, 9
+        }, ranges[2]);
+
+        assertEquals(1, DownloadTask.splitIntoRanges(4, 4).length);
+        assertEquals(2, DownloadTask.splitIntoRanges(5, 4).length);
+    }
+
+    @Test
+    public void testSplitIntoRangesCapsPartCount() {
+        long bytesTotal = DownloadTask.MAXIMUM_DOWNLOAD_PARTS * 10L + 1;
+        long[][] ranges = DownloadTask.splitIntoRanges(bytesTotal, 1);
+        assertTrue(ranges.length <= DownloadTask.MAXIMUM_DOWNLOAD_PARTS);
+
+        // the ranges cover the object without gaps or overlaps
+        long next = 0;
+        for (long[] range : ranges) {
+            assertEquals(next, range[0]);
+            assertTrue(range[1] >= range[0]);
+            next = range[1] + 1;
+        }
+        assertEquals(bytesTotal, next);
+    }
+
+    @Test
+    public void testResumeSkipsCompletedParts() throws Exception {
+        // parts 1 and 3 are in the file already, part 2 is not
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write("0123".getBytes(StringUtils.UTF8));
+        raf.seek(8);
+        raf.write("89".getBytes(StringUtils.UTF8));
+        raf.setLength(CONTENT.length());
+        raf.close();
+        when(dbUtil.queryDownloadPartRecords(ID, false)).thenReturn(
+                Arrays.asList(part(3, 4, 7)));
+        when(dbUtil.queryBytesTransferredByMainUploadId(ID)).thenReturn(6L);
+
+        assertTrue(new DownloadTask(download, s3, dbUtil, updater).call());
+
+        assertEquals(1, requestedRanges.size());
+        assertArrayEquals(new long[] {
+                4, 7
+        }, requestedRanges.get(0));
+        assertEquals(CONTENT, readFile());
+        verify(dbUtil, never()).queryDownloadPartRecords(ID, true);
+        verify(updater).updateProgress(ID, 6, CONTENT.length());
+        assertEquals(4, transferProgress.bytes);
+        verify(dbUtil).updateState(3, TransferState.PART_COMPLETED);
+        verify(updater).updateState(ID, TransferState.COMPLETED);
+    }
+
+    @Test
+    public void testResumeDownloadsAllPartsWhenFileIsGone() throws Exception {
+        // the completed parts were written to a file that no longer exists
+        file.delete();
+        when(dbUtil.queryDownloadPartRecords(ID, true)).thenReturn(
+                Arrays.asList(part(2, 0, 3), part(3, 4, 7), part(4, 8, 9)));
+
+        assertTrue(new DownloadTask(download, s3, dbUtil, updater).call());
+
+        assertEquals(3, requestedRanges.size());
+        assertEquals(CONTENT, readFile());
+        verify(dbUtil, never()).queryDownloadPartRecords(ID, false);
+        verify(updater).updateProgress(ID, 0, CONTENT.length());
+        assertEquals(CONTENT.length(), transferProgress.bytes);
+        verify(updater).updateState(ID, TransferState.COMPLETED);
+    }
+
+    @Test
+    public void testNewDownloadLearnsSizeFromFirstPart() throws Exception {
+        long partSize = AdaptiveTransferController.getInstance().getPartSize();
+        content = new byte[(int) partSize + 10];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        file.delete();
+        download.isMultipart = 0;
+        download.bytesTotal = 0;
+        download.eTag = null;
+        when(dbUtil.queryDownloadPartRecords(ID, false)).thenReturn(
+                Arrays.asList(part(3, partSize, partSize + 9)));
+        when(dbUtil.queryBytesTransferredByMainUploadId(ID)).thenReturn(partSize);
+        when(dbUtil.generateContentValuesForMultiPartDownload(anyString(), anyString(),
+                any(File.class), anyInt(), anyLong(), anyLong(), anyInt()))
+                .thenCallRealMethod();
+
+        assertTrue(new DownloadTask(download, s3, dbUtil, updater).call());
+
+        // no HEAD request, the first range gives the size
+        verify(s3, never()).getObjectMetadata(any(GetObjectMetadataRequest.class));
+        assertEquals(2, requestedRanges.size());
+        assertArrayEquals(new long[] {
+                0, partSize - 1
+        }, requestedRanges.get(0));
+        assertArrayEquals(new long[] {
+                partSize, partSize + 9
+        }, requestedRanges.get(1));
+        assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+
+        // the first part is recorded as completed
+        ArgumentCaptor<ContentValues[]> valuesArray = ArgumentCaptor
+                .forClass(ContentValues[].class);
+        verify(dbUtil).deletePartRecords(ID);
+        verify(dbUtil).bulkInsertDownloadPartRecords(eq(ID), valuesArray.capture());
+        assertEquals(2, valuesArray.getValue().length);
+        assertEquals(TransferState.PART_COMPLETED.toString(),
+                valuesArray.getValue()[0].getAsString(TransferTable.COLUMN_STATE));
+        assertEquals(TransferState.WAITING.toString(),
+                valuesArray.getValue()[1].getAsString(TransferTable.COLUMN_STATE));
+        verify(dbUtil).updateMultipartDownload(ID, content.length, "etag");
+        verify(updater).updateProgress(ID, partSize, content.length);
+        verify(updater).updateState(ID, TransferState.COMPLETED);
+    }
+
+    @Test
+    public void testNewSmallDownloadIsSinglePart() throws Exception {
+        file.delete();
+        download.isMultipart = 0;
+        download.bytesTotal = 0;
+        download.eTag = null;
+
+        assertTrue(new DownloadTask(download, s3, dbUtil, updater).call());
+
+        assertEquals(1, requestedRanges.size());
+        assertEquals(CONTENT, readFile());
+        verify(s3, never()).getObjectMetadata(any(GetObjectMetadataRequest.class));
+        verify(dbUtil, never()).bulkInsertDownloadPartRecords(eq(ID),
+                any(ContentValues[].class));
+        verify(updater).updateProgress(ID, CONTENT.length(), CONTENT.length());
+        verify(updater).updateState(ID, TransferState.COMPLETED);
+    }
+
+    private TransferRecord part(int id, long rangeStart, long rangeLast) {
+        TransferRecord part = new TransferRecord(id);
+        part.bucketName = download.bucketName;
+        part.key = download.key;
+        part.file = download.file;
+        part.rangeStart = rangeStart;
+        part.rangeLast = rangeLast;
+        return part;
+    }
+
+    private String readFile() throws IOException {
+        return new String(FileUtils.readFileToByteArray(file), StringUtils.UTF8);
+    }
+}
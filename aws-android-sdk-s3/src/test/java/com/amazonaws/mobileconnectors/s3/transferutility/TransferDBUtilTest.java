@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TransferDBUtilTest {
+
+    @Test
+    public void testMultipartDownloadRecords() {
+        TransferDBUtil dbUtil = new TransferDBUtil(Robolectric.application);
+        File file = new File("download");
+        int id = Integer.parseInt(dbUtil.insertSingleTransferRecord(TransferType.DOWNLOAD,
+                "bucket", "key", file).getLastPathSegment());
+
+        assertEquals(1, dbUtil.updateMultipartDownload(id, 10, "etag"));
+        Cursor c = dbUtil.queryTransferById(id);
+        TransferRecord download = new TransferRecord(id);
+        try {
+            assertTrue(c.moveToFirst());
+            download.updateFromDB(c);
+        } finally {
+            c.close();
+        }
+        assertEquals(1, download.isMultipart);
+        assertEquals(10, download.bytesTotal);
+        assertEquals("etag", download.eTag);
+
+        long[][] ranges = DownloadTask.splitIntoRanges(10, 4);
+        ContentValues[] valuesArray = new ContentValues[ranges.length];
+        for (int i = 0; i < ranges.length; i++) {
+            valuesArray[i] = dbUtil.generateContentValuesForMultiPartDownload("bucket", "key",
+                    file, i + 1, ranges[i][0], ranges[i][1], i == ranges.length - 1 ? 1 : 0);
+        }
+        dbUtil.bulkInsertDownloadPartRecords(id, valuesArray);
+
+        List<TransferRecord> parts = dbUtil.queryDownloadPartRecords(id, false);
+        assertEquals(3, parts.size());
+        assertEquals(0, dbUtil.queryBytesTransferredByMainUploadId(id));
+
+        // the middle part is done
+        TransferRecord completed = parts.get(1);
+        assertEquals(4, completed.rangeStart);
+        assertEquals(7, completed.rangeLast);
+        dbUtil.updateState(completed.id, TransferState.PART_COMPLETED);
+
+        parts = dbUtil.queryDownloadPartRecords(id, false);
+        assertEquals(2, parts.size());
+        for (TransferRecord part : parts) {
+            assertTrue(part.id != completed.id);
+        }
+        assertEquals(3, dbUtil.queryDownloadPartRecords(id, true).size());
+        assertEquals(4, dbUtil.queryBytesTransferredByMainUploadId(id));
+
+        // the part records go with the download
+        assertEquals(4, dbUtil.deleteTransferRecords(id));
+        assertEquals(0, dbUtil.queryDownloadPartRecords(id, true).size());
+        Cursor deleted = dbUtil.queryTransferById(id);
+        try {
+            assertEquals(0, deleted.getCount());
+        } finally {
+            deleted.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.amazonaws.util.IOUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+public class FileRegionInputStreamTest {
+
+    private File tmp;
+
+    @Before
+    public void setUp() throws IOException {
+        tmp = File.createTempFile("FileRegionInputStreamTest", null);
+        FileWriter writer = new FileWriter(tmp);
+        writer.write("0123456789");
+        writer.close();
+    }
+
+    @After
+    public void tearDown() {
+        tmp.delete();
+    }
+
+    @Test
+    public void testReadWholeFile() throws IOException {
+        FileRegionInputStream in = new FileRegionInputStream(tmp);
+        try {
+            assertEquals(10, in.available());
+            assertEquals("0123456789", IOUtils.toString(in));
+            assertEquals(-1, in.read());
+            assertSame(tmp, in.getFile());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testReadRegion() throws IOException {
+        FileRegionInputStream in = new FileRegionInputStream(tmp, 2, 5);
+        try {
+            assertEquals('2', in.read());
+            assertEquals(2, in.skip(2));
+            byte[] b = new byte[10];
+            assertEquals(2, in.read(b, 1, 10));
+            assertEquals('5', b[1]);
+            assertEquals('6', b[2]);
+            assertEquals(-1, in.read(b, 0, 10));
+            assertEquals(0, in.skip(1));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testMarkAndReset() throws IOException {
+        FileRegionInputStream in = new FileRegionInputStream(tmp, 1, 8);
+        try {
+            in.mark(-1);
+            assertEquals("12345678", IOUtils.toString(in));
+            in.reset();
+            assertEquals('1', in.read());
+            in.mark(-1);
+            assertEquals('2', in.read());
+            in.reset();
+            assertEquals("2345678", IOUtils.toString(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testRegionPastEndOfFile() throws IOException {
+        FileRegionInputStream in = new FileRegionInputStream(tmp, 8, 10);
+        try {
+            assertEquals(2, in.available());
+            assertEquals("89", IOUtils.toString(in));
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -14,7 +14,6 @@
  */
 package com.amazonaws.services.sqs;
 
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -28,6 +27,7 @@ import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 
 import com.amazonaws.services.sqs.model.*;
+import com.amazonaws.services.sqs.model.transform.*;
 
 /**
  * Asynchronous client for accessing AmazonSQS.
@@ -358,12 +358,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<Void> setQueueAttributesAsync(final SetQueueAttributesRequest setQueueAttributesRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-                setQueueAttributes(setQueueAttributesRequest);
-                return null;
-        }
-    });
+        return invokeAsync(setQueueAttributesRequest, new SetQueueAttributesRequestMarshaller(),
+                null, executorService, null);
     }
 
     /**
@@ -403,18 +399,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final SetQueueAttributesRequest setQueueAttributesRequest,
             final AsyncHandler<SetQueueAttributesRequest, Void> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-              try {
-                setQueueAttributes(setQueueAttributesRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(setQueueAttributesRequest, null);
-                 return null;
-        }
-    });
+        return invokeAsync(setQueueAttributesRequest, new SetQueueAttributesRequestMarshaller(),
+                null, executorService, asyncHandler);
     }
     
     /**
@@ -462,11 +448,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(final ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ChangeMessageVisibilityBatchResult>() {
-            public ChangeMessageVisibilityBatchResult call() throws Exception {
-                return changeMessageVisibilityBatch(changeMessageVisibilityBatchRequest);
-        }
-    });
+        return invokeAsync(changeMessageVisibilityBatchRequest, new ChangeMessageVisibilityBatchRequestMarshaller(),
+                new ChangeMessageVisibilityBatchResultStaxUnmarshaller(), executorService, null);
     }
 
     /**
@@ -520,19 +503,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest,
             final AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ChangeMessageVisibilityBatchResult>() {
-            public ChangeMessageVisibilityBatchResult call() throws Exception {
-              ChangeMessageVisibilityBatchResult result;
-                try {
-                result = changeMessageVisibilityBatch(changeMessageVisibilityBatchRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(changeMessageVisibilityBatchRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(changeMessageVisibilityBatchRequest, new ChangeMessageVisibilityBatchRequestMarshaller(),
+                new ChangeMessageVisibilityBatchResultStaxUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -597,12 +569,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<Void> changeMessageVisibilityAsync(final ChangeMessageVisibilityRequest changeMessageVisibilityRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-                changeMessageVisibility(changeMessageVisibilityRequest);
-                return null;
-        }
-    });
+        return invokeAsync(changeMessageVisibilityRequest, new ChangeMessageVisibilityRequestMarshaller(),
+                null, executorService, null);
     }
 
     /**
@@ -673,18 +641,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final ChangeMessageVisibilityRequest changeMessageVisibilityRequest,
             final AsyncHandler<ChangeMessageVisibilityRequest, Void> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-              try {
-                changeMessageVisibility(changeMessageVisibilityRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(changeMessageVisibilityRequest, null);
-                 return null;
-        }
-    });
+        return invokeAsync(changeMessageVisibilityRequest, new ChangeMessageVisibilityRequestMarshaller(),
+                null, executorService, asyncHandler);
     }
     
     /**
@@ -719,11 +677,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<GetQueueUrlResult> getQueueUrlAsync(final GetQueueUrlRequest getQueueUrlRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<GetQueueUrlResult>() {
-            public GetQueueUrlResult call() throws Exception {
-                return getQueueUrl(getQueueUrlRequest);
-        }
-    });
+        return invokeAsync(getQueueUrlRequest, new GetQueueUrlRequestMarshaller(),
+                new GetQueueUrlResultStaxUnmarshaller(), executorService, null);
     }
 
     /**
@@ -764,19 +719,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final GetQueueUrlRequest getQueueUrlRequest,
             final AsyncHandler<GetQueueUrlRequest, GetQueueUrlResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<GetQueueUrlResult>() {
-            public GetQueueUrlResult call() throws Exception {
-              GetQueueUrlResult result;
-                try {
-                result = getQueueUrl(getQueueUrlRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(getQueueUrlRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(getQueueUrlRequest, new GetQueueUrlRequestMarshaller(),
+                new GetQueueUrlResultStaxUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -803,12 +747,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<Void> removePermissionAsync(final RemovePermissionRequest removePermissionRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-                removePermission(removePermissionRequest);
-                return null;
-        }
-    });
+        return invokeAsync(removePermissionRequest, new RemovePermissionRequestMarshaller(),
+                null, executorService, null);
     }
 
     /**
@@ -841,18 +781,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final RemovePermissionRequest removePermissionRequest,
             final AsyncHandler<RemovePermissionRequest, Void> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-              try {
-                removePermission(removePermissionRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(removePermissionRequest, null);
-                 return null;
-        }
-    });
+        return invokeAsync(removePermissionRequest, new RemovePermissionRequestMarshaller(),
+                null, executorService, asyncHandler);
     }
     
     /**
@@ -938,11 +868,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<GetQueueAttributesResult> getQueueAttributesAsync(final GetQueueAttributesRequest getQueueAttributesRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<GetQueueAttributesResult>() {
-            public GetQueueAttributesResult call() throws Exception {
-                return getQueueAttributes(getQueueAttributesRequest);
-        }
-    });
+        return invokeAsync(getQueueAttributesRequest, new GetQueueAttributesRequestMarshaller(),
+                new GetQueueAttributesResultStaxUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1034,19 +961,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final GetQueueAttributesRequest getQueueAttributesRequest,
             final AsyncHandler<GetQueueAttributesRequest, GetQueueAttributesResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<GetQueueAttributesResult>() {
-            public GetQueueAttributesResult call() throws Exception {
-              GetQueueAttributesResult result;
-                try {
-                result = getQueueAttributes(getQueueAttributesRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(getQueueAttributesRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(getQueueAttributesRequest, new GetQueueAttributesRequestMarshaller(),
+                new GetQueueAttributesResultStaxUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1108,11 +1024,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<SendMessageBatchResult> sendMessageBatchAsync(final SendMessageBatchRequest sendMessageBatchRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<SendMessageBatchResult>() {
-            public SendMessageBatchResult call() throws Exception {
-                return sendMessageBatch(sendMessageBatchRequest);
-        }
-    });
+        return invokeAsync(sendMessageBatchRequest, new SendMessageBatchRequestMarshaller(),
+                new SendMessageBatchResultStaxUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1180,19 +1093,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final SendMessageBatchRequest sendMessageBatchRequest,
             final AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<SendMessageBatchResult>() {
-            public SendMessageBatchResult call() throws Exception {
-              SendMessageBatchResult result;
-                try {
-                result = sendMessageBatch(sendMessageBatchRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(sendMessageBatchRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(sendMessageBatchRequest, new SendMessageBatchRequestMarshaller(),
+                new SendMessageBatchResultStaxUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1229,12 +1131,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<Void> purgeQueueAsync(final PurgeQueueRequest purgeQueueRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-                purgeQueue(purgeQueueRequest);
-                return null;
-        }
-    });
+        return invokeAsync(purgeQueueRequest, new PurgeQueueRequestMarshaller(),
+                null, executorService, null);
     }
 
     /**
@@ -1277,18 +1175,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final PurgeQueueRequest purgeQueueRequest,
             final AsyncHandler<PurgeQueueRequest, Void> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-              try {
-                purgeQueue(purgeQueueRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(purgeQueueRequest, null);
-                 return null;
-        }
-    });
+        return invokeAsync(purgeQueueRequest, new PurgeQueueRequestMarshaller(),
+                null, executorService, asyncHandler);
     }
     
     /**
@@ -1320,11 +1208,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<ListDeadLetterSourceQueuesResult> listDeadLetterSourceQueuesAsync(final ListDeadLetterSourceQueuesRequest listDeadLetterSourceQueuesRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ListDeadLetterSourceQueuesResult>() {
-            public ListDeadLetterSourceQueuesResult call() throws Exception {
-                return listDeadLetterSourceQueues(listDeadLetterSourceQueuesRequest);
-        }
-    });
+        return invokeAsync(listDeadLetterSourceQueuesRequest, new ListDeadLetterSourceQueuesRequestMarshaller(),
+                new ListDeadLetterSourceQueuesResultStaxUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1362,19 +1247,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final ListDeadLetterSourceQueuesRequest listDeadLetterSourceQueuesRequest,
             final AsyncHandler<ListDeadLetterSourceQueuesRequest, ListDeadLetterSourceQueuesResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ListDeadLetterSourceQueuesResult>() {
-            public ListDeadLetterSourceQueuesResult call() throws Exception {
-              ListDeadLetterSourceQueuesResult result;
-                try {
-                result = listDeadLetterSourceQueues(listDeadLetterSourceQueuesRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(listDeadLetterSourceQueuesRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(listDeadLetterSourceQueuesRequest, new ListDeadLetterSourceQueuesRequestMarshaller(),
+                new ListDeadLetterSourceQueuesResultStaxUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1419,12 +1293,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<Void> deleteQueueAsync(final DeleteQueueRequest deleteQueueRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-                deleteQueue(deleteQueueRequest);
-                return null;
-        }
-    });
+        return invokeAsync(deleteQueueRequest, new DeleteQueueRequestMarshaller(),
+                null, executorService, null);
     }
 
     /**
@@ -1475,18 +1345,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final DeleteQueueRequest deleteQueueRequest,
             final AsyncHandler<DeleteQueueRequest, Void> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-              try {
-                deleteQueue(deleteQueueRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(deleteQueueRequest, null);
-                 return null;
-        }
-    });
+        return invokeAsync(deleteQueueRequest, new DeleteQueueRequestMarshaller(),
+                null, executorService, asyncHandler);
     }
     
     /**
@@ -1523,11 +1383,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<SendMessageResult> sendMessageAsync(final SendMessageRequest sendMessageRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<SendMessageResult>() {
-            public SendMessageResult call() throws Exception {
-                return sendMessage(sendMessageRequest);
-        }
-    });
+        return invokeAsync(sendMessageRequest, new SendMessageRequestMarshaller(),
+                new SendMessageResultStaxUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1570,19 +1427,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final SendMessageRequest sendMessageRequest,
             final AsyncHandler<SendMessageRequest, SendMessageResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<SendMessageResult>() {
-            public SendMessageResult call() throws Exception {
-              SendMessageResult result;
-                try {
-                result = sendMessage(sendMessageRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(sendMessageRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(sendMessageRequest, new SendMessageRequestMarshaller(),
+                new SendMessageResultStaxUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1675,11 +1521,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<ReceiveMessageResult> receiveMessageAsync(final ReceiveMessageRequest receiveMessageRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ReceiveMessageResult>() {
-            public ReceiveMessageResult call() throws Exception {
-                return receiveMessage(receiveMessageRequest);
-        }
-    });
+        return invokeAsync(receiveMessageRequest, new ReceiveMessageRequestMarshaller(),
+                new ReceiveMessageResultStaxUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1778,19 +1621,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final ReceiveMessageRequest receiveMessageRequest,
             final AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ReceiveMessageResult>() {
-            public ReceiveMessageResult call() throws Exception {
-              ReceiveMessageResult result;
-                try {
-                result = receiveMessage(receiveMessageRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(receiveMessageRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(receiveMessageRequest, new ReceiveMessageRequestMarshaller(),
+                new ReceiveMessageResultStaxUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1818,11 +1650,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<ListQueuesResult> listQueuesAsync(final ListQueuesRequest listQueuesRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ListQueuesResult>() {
-            public ListQueuesResult call() throws Exception {
-                return listQueues(listQueuesRequest);
-        }
-    });
+        return invokeAsync(listQueuesRequest, new ListQueuesRequestMarshaller(),
+                new ListQueuesResultStaxUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1856,19 +1685,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final ListQueuesRequest listQueuesRequest,
             final AsyncHandler<ListQueuesRequest, ListQueuesResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<ListQueuesResult>() {
-            public ListQueuesResult call() throws Exception {
-              ListQueuesResult result;
-                try {
-                result = listQueues(listQueuesRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(listQueuesRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(listQueuesRequest, new ListQueuesRequestMarshaller(),
+                new ListQueuesResultStaxUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -1913,11 +1731,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<DeleteMessageBatchResult> deleteMessageBatchAsync(final DeleteMessageBatchRequest deleteMessageBatchRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<DeleteMessageBatchResult>() {
-            public DeleteMessageBatchResult call() throws Exception {
-                return deleteMessageBatch(deleteMessageBatchRequest);
-        }
-    });
+        return invokeAsync(deleteMessageBatchRequest, new DeleteMessageBatchRequestMarshaller(),
+                new DeleteMessageBatchResultStaxUnmarshaller(), executorService, null);
     }
 
     /**
@@ -1968,19 +1783,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final DeleteMessageBatchRequest deleteMessageBatchRequest,
             final AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<DeleteMessageBatchResult>() {
-            public DeleteMessageBatchResult call() throws Exception {
-              DeleteMessageBatchResult result;
-                try {
-                result = deleteMessageBatch(deleteMessageBatchRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(deleteMessageBatchRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(deleteMessageBatchRequest, new DeleteMessageBatchRequestMarshaller(),
+                new DeleteMessageBatchResultStaxUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -2041,11 +1845,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<CreateQueueResult> createQueueAsync(final CreateQueueRequest createQueueRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<CreateQueueResult>() {
-            public CreateQueueResult call() throws Exception {
-                return createQueue(createQueueRequest);
-        }
-    });
+        return invokeAsync(createQueueRequest, new CreateQueueRequestMarshaller(),
+                new CreateQueueResultStaxUnmarshaller(), executorService, null);
     }
 
     /**
@@ -2112,19 +1913,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final CreateQueueRequest createQueueRequest,
             final AsyncHandler<CreateQueueRequest, CreateQueueResult> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<CreateQueueResult>() {
-            public CreateQueueResult call() throws Exception {
-              CreateQueueResult result;
-                try {
-                result = createQueue(createQueueRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(createQueueRequest, result);
-                 return result;
-        }
-    });
+        return invokeAsync(createQueueRequest, new CreateQueueRequestMarshaller(),
+                new CreateQueueResultStaxUnmarshaller(), executorService, asyncHandler);
     }
     
     /**
@@ -2176,12 +1966,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<Void> addPermissionAsync(final AddPermissionRequest addPermissionRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-                addPermission(addPermissionRequest);
-                return null;
-        }
-    });
+        return invokeAsync(addPermissionRequest, new AddPermissionRequestMarshaller(),
+                null, executorService, null);
     }
 
     /**
@@ -2239,18 +2025,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final AddPermissionRequest addPermissionRequest,
             final AsyncHandler<AddPermissionRequest, Void> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-              try {
-                addPermission(addPermissionRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(addPermissionRequest, null);
-                 return null;
-        }
-    });
+        return invokeAsync(addPermissionRequest, new AddPermissionRequestMarshaller(),
+                null, executorService, asyncHandler);
     }
     
     /**
@@ -2298,12 +2074,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
      */
     public Future<Void> deleteMessageAsync(final DeleteMessageRequest deleteMessageRequest) 
             throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-                deleteMessage(deleteMessageRequest);
-                return null;
-        }
-    });
+        return invokeAsync(deleteMessageRequest, new DeleteMessageRequestMarshaller(),
+                null, executorService, null);
     }
 
     /**
@@ -2357,18 +2129,8 @@ public class AmazonSQSAsyncClient extends AmazonSQSClient
             final DeleteMessageRequest deleteMessageRequest,
             final AsyncHandler<DeleteMessageRequest, Void> asyncHandler)
                     throws AmazonServiceException, AmazonClientException {
-        return executorService.submit(new Callable<Void>() {
-            public Void call() throws Exception {
-              try {
-                deleteMessage(deleteMessageRequest);
-              } catch (Exception ex) {
-                  asyncHandler.onError(ex);
-            throw ex;
-              }
-              asyncHandler.onSuccess(deleteMessageRequest, null);
-                 return null;
-        }
-    });
+        return invokeAsync(deleteMessageRequest, new DeleteMessageRequestMarshaller(),
+                null, executorService, asyncHandler);
     }
     
 }